@@ -16,7 +16,10 @@
 package com.google.cloud.bigtable.config;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 import com.google.cloud.bigtable.grpc.BigtableInstanceName;
 import com.google.cloud.bigtable.grpc.BigtableSession;
@@ -24,6 +27,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 
 /**
  * An immutable class providing access to configuration options for Bigtable.
@@ -87,6 +91,12 @@ public class BigtableOptions implements Serializable, Cloneable {
       options.dataChannelCount = BIGTABLE_DATA_CHANNEL_COUNT_DEFAULT;
       options.usePlaintextNegotiation = false;
       options.useCachedDataPool = false;
+      options.warmUpEnabled = false;
+      options.warmUpTableIds = ImmutableList.of();
+      options.readCoalescingEnabled = false;
+      options.readCoalescingWindowMicros = 0;
+      options.readModifyWriteAggregationEnabled = false;
+      options.readModifyWriteAggregationWindowMicros = 0;
 
       options.retryOptions = new RetryOptions.Builder().build();
       options.callOptionsConfig = new CallOptionsConfig.Builder().build();
@@ -178,6 +188,49 @@ public class BigtableOptions implements Serializable, Cloneable {
       return this;
     }
 
+    /**
+     * Enables {@link BigtableSession#warmUp(String...)} when a {@link BigtableSession} is created.
+     * All data channels are connected and an OAuth token is fetched before the session is used.
+     * @param tableIds optional tables on which to perform a cheap SampleRowKeys request to prime
+     *          the first RPC.
+     * @return this
+     */
+    public Builder enableWarmUp(String... tableIds) {
+      options.warmUpEnabled = true;
+      options.warmUpTableIds = ImmutableList.copyOf(Arrays.asList(tableIds));
+      return this;
+    }
+
+    /**
+     * Enables coalescing of single row reads. Concurrent reads of the same row with the same filter
+     * share a single RPC, and reads of different rows that arrive within {@code window} of each
+     * other are sent as a single multi-get.
+     * @param window how long to wait for more reads before sending a multi-get. A window of 0 only
+     *          shares RPCs for identical in-flight reads.
+     * @param unit the {@link TimeUnit} of the window.
+     * @return this
+     */
+    public Builder enableReadCoalescing(long window, TimeUnit unit) {
+      Preconditions.checkArgument(window >= 0, "window must not be negative");
+      options.readCoalescingEnabled = true;
+      options.readCoalescingWindowMicros = unit.toMicros(window);
+      return this;
+    }
+
+    /**
+     * Enables aggregation of increments and appends. Read-modify-write requests that modify the
+     * same cells of a row within {@code window} of each other are sent as a single RPC.
+     * @param window how long to wait for more requests to the same cells. It must be positive.
+     * @param unit the {@link TimeUnit} of the window.
+     * @return this
+     */
+    public Builder enableReadModifyWriteAggregation(long window, TimeUnit unit) {
+      Preconditions.checkArgument(window > 0, "window must be positive");
+      options.readModifyWriteAggregationEnabled = true;
+      options.readModifyWriteAggregationWindowMicros = unit.toMicros(window);
+      return this;
+    }
+
     public Builder setCallOptionsConfig(CallOptionsConfig callOptionsConfig) {
       options.callOptionsConfig = callOptionsConfig;
       return this;
@@ -267,6 +320,12 @@ public class BigtableOptions implements Serializable, Cloneable {
   private int dataChannelCount;
   private boolean usePlaintextNegotiation;
   private boolean useCachedDataPool;
+  private boolean warmUpEnabled;
+  private List<String> warmUpTableIds = ImmutableList.of();
+  private boolean readCoalescingEnabled;
+  private long readCoalescingWindowMicros;
+  private boolean readModifyWriteAggregationEnabled;
+  private long readModifyWriteAggregationWindowMicros;
 
   private BigtableInstanceName instanceName;
 
@@ -420,6 +479,13 @@ public class BigtableOptions implements Serializable, Cloneable {
         && (dataChannelCount == other.dataChannelCount)
         && (usePlaintextNegotiation == other.usePlaintextNegotiation)
         && (useCachedDataPool == other.useCachedDataPool)
+        && (warmUpEnabled == other.warmUpEnabled)
+        && Objects.equals(warmUpTableIds, other.warmUpTableIds)
+        && (readCoalescingEnabled == other.readCoalescingEnabled)
+        && (readCoalescingWindowMicros == other.readCoalescingWindowMicros)
+        && (readModifyWriteAggregationEnabled == other.readModifyWriteAggregationEnabled)
+        && (readModifyWriteAggregationWindowMicros
+            == other.readModifyWriteAggregationWindowMicros)
         && Objects.equals(adminHost, other.adminHost)
         && Objects.equals(dataHost, other.dataHost)
         && Objects.equals(projectId, other.projectId)
@@ -451,6 +517,12 @@ public class BigtableOptions implements Serializable, Cloneable {
         .add("callOptionsConfig", callOptionsConfig)
         .add("usePlaintextNegotiation", usePlaintextNegotiation)
         .add("useCachedDataPool", useCachedDataPool)
+        .add("warmUpEnabled", warmUpEnabled)
+        .add("warmUpTableIds", warmUpTableIds)
+        .add("readCoalescingEnabled", readCoalescingEnabled)
+        .add("readCoalescingWindowMicros", readCoalescingWindowMicros)
+        .add("readModifyWriteAggregationEnabled", readModifyWriteAggregationEnabled)
+        .add("readModifyWriteAggregationWindowMicros", readModifyWriteAggregationWindowMicros)
         .toString();
   }
 
@@ -472,6 +544,49 @@ public class BigtableOptions implements Serializable, Cloneable {
     return useCachedDataPool;
   }
 
+  /**
+   * @return true if {@link BigtableSession} should be warmed up when it's created.
+   */
+  public boolean isWarmUpEnabled() {
+    return warmUpEnabled;
+  }
+
+  /**
+   * @return the tables on which a SampleRowKeys request should be performed during warm up.
+   */
+  public List<String> getWarmUpTableIds() {
+    return warmUpTableIds;
+  }
+
+  /**
+   * @return true if concurrent single row reads should be coalesced.
+   */
+  public boolean isReadCoalescingEnabled() {
+    return readCoalescingEnabled;
+  }
+
+  /**
+   * @return how long, in microseconds, single row reads wait for other reads to be sent with.
+   */
+  public long getReadCoalescingWindowMicros() {
+    return readCoalescingWindowMicros;
+  }
+
+  /**
+   * @return true if increments and appends to the same cells should be aggregated.
+   */
+  public boolean isReadModifyWriteAggregationEnabled() {
+    return readModifyWriteAggregationEnabled;
+  }
+
+  /**
+   * @return how long, in microseconds, increments and appends wait for other requests to the same
+   *         cells.
+   */
+  public long getReadModifyWriteAggregationWindowMicros() {
+    return readModifyWriteAggregationWindowMicros;
+  }
+
   protected BigtableOptions clone() {
     try {
       return (BigtableOptions) super.clone();
@@ -16,6 +16,7 @@
 package com.google.cloud.bigtable.config;
 
 import java.io.Serializable;
+import java.util.Objects;
 
 import com.google.cloud.bigtable.grpc.async.BulkMutation;
 import com.google.common.annotations.VisibleForTesting;
@@ -91,6 +92,10 @@ public class BulkOptions implements Serializable {
     private long maxMemory = BIGTABLE_MAX_MEMORY_DEFAULT;
     private boolean enableBulkMutationThrottling = BIGTABLE_BULK_ENABLE_THROTTLE_REBALANCE_DEFAULT;
     private int bulkMutationRpcTargetMs = BIGTABLE_BULK_THROTTLE_TARGET_MS_DEFAULT;
+    private boolean useEncodedMutations = false;
+    private boolean coalesceMutations = false;
+    private String spillDirectory = null;
+    private boolean alignBulkReadsToTablets = false;
 
     public Builder() {
     }
@@ -105,6 +110,10 @@ public class BulkOptions implements Serializable {
       this.maxMemory = original.maxMemory;
       this.enableBulkMutationThrottling = original.enableBulkMutationThrottling;
       this.bulkMutationRpcTargetMs = original.bulkMutationRpcTargetMs;
+      this.useEncodedMutations = original.useEncodedMutations;
+      this.coalesceMutations = original.coalesceMutations;
+      this.spillDirectory = original.spillDirectory;
+      this.alignBulkReadsToTablets = original.alignBulkReadsToTablets;
     }
 
     public Builder setAsyncMutatorWorkerCount(int asyncMutatorCount) {
@@ -169,6 +178,59 @@ public class BulkOptions implements Serializable {
       return this;
     }
 
+    /**
+     * Enable an experimental feature that serializes the entries of {@link BulkMutation} batches
+     * into pooled buffers as they are added, and sends the buffers without building
+     * {@link com.google.bigtable.v2.MutateRowsRequest}s.
+     *
+     * @param useEncodedMutations true to serialize entries as they are added.
+     * @return this, for convenience.
+     */
+    public Builder setUseEncodedMutations(boolean useEncodedMutations) {
+      this.useEncodedMutations = useEncodedMutations;
+      return this;
+    }
+
+    /**
+     * Merge mutations to a row into the entry of an earlier mutation to the same row in the same
+     * {@link BulkMutation} batch. The mutations of the row are applied in the order in which they
+     * were added, but atomically. This does not apply to encoded mutations.
+     *
+     * @param coalesceMutations true to merge mutations to the same row.
+     * @return this, for convenience.
+     */
+    public Builder setCoalesceMutations(boolean coalesceMutations) {
+      this.coalesceMutations = coalesceMutations;
+      return this;
+    }
+
+    /**
+     * Spill buffered mutations to an append-only log in this directory while the
+     * {@link com.google.cloud.bigtable.grpc.async.ResourceLimiter} is full, instead of blocking.
+     * The log is drained as capacity frees up, and is replayed when the directory is reused after a
+     * crash.
+     *
+     * @param spillDirectory a local directory, or null to block when the buffer is full.
+     * @return this, for convenience.
+     */
+    public Builder setSpillDirectory(String spillDirectory) {
+      this.spillDirectory = spillDirectory;
+      return this;
+    }
+
+    /**
+     * Group the keys of a {@link com.google.cloud.bigtable.grpc.async.BulkRead} by tablet before
+     * they are split into RPCs. The tablet boundaries of every table that is read this way are
+     * loaded with SampleRowKeys in the background, and refreshed periodically.
+     *
+     * @param alignBulkReadsToTablets true to align bulk read RPCs to tablet boundaries.
+     * @return this, for convenience.
+     */
+    public Builder setAlignBulkReadsToTablets(boolean alignBulkReadsToTablets) {
+      this.alignBulkReadsToTablets = alignBulkReadsToTablets;
+      return this;
+    }
+
     public BulkOptions build() {
       return new BulkOptions(
           asyncMutatorCount,
@@ -179,7 +241,11 @@ public class BulkOptions implements Serializable {
           maxInflightRpcs,
           maxMemory,
           enableBulkMutationThrottling,
-          bulkMutationRpcTargetMs);
+          bulkMutationRpcTargetMs,
+          useEncodedMutations,
+          coalesceMutations,
+          spillDirectory,
+          alignBulkReadsToTablets);
     }
   }
 
@@ -194,6 +260,10 @@ public class BulkOptions implements Serializable {
 
   private final boolean enableBulkMutationThrottling;
   private final int bulkMutationRpcTargetMs;
+  private final boolean useEncodedMutations;
+  private final boolean coalesceMutations;
+  private final String spillDirectory;
+  private final boolean alignBulkReadsToTablets;
 
   @VisibleForTesting
   BulkOptions() {
@@ -206,6 +276,10 @@ public class BulkOptions implements Serializable {
       maxMemory = -1l;
       enableBulkMutationThrottling = false;
       bulkMutationRpcTargetMs = -1;
+      useEncodedMutations = false;
+      coalesceMutations = false;
+      spillDirectory = null;
+      alignBulkReadsToTablets = false;
   }
 
   private BulkOptions(
@@ -217,7 +291,11 @@ public class BulkOptions implements Serializable {
       int maxInflightRpcs,
       long maxMemory,
       boolean enableBulkMutationThrottling,
-      int bulkMutationRpcTargetMs) {
+      int bulkMutationRpcTargetMs,
+      boolean useEncodedMutations,
+      boolean coalesceMutations,
+      String spillDirectory,
+      boolean alignBulkReadsToTablets) {
     this.asyncMutatorCount = asyncMutatorCount;
     this.useBulkApi = useBulkApi;
     this.bulkMaxRowKeyCount = bulkMaxKeyCount;
@@ -227,6 +305,10 @@ public class BulkOptions implements Serializable {
     this.maxMemory = maxMemory;
     this.enableBulkMutationThrottling = enableBulkMutationThrottling;
     this.bulkMutationRpcTargetMs = bulkMutationRpcTargetMs;
+    this.useEncodedMutations = useEncodedMutations;
+    this.coalesceMutations = coalesceMutations;
+    this.spillDirectory = spillDirectory;
+    this.alignBulkReadsToTablets = alignBulkReadsToTablets;
   }
 
   /**
@@ -310,6 +392,42 @@ public class BulkOptions implements Serializable {
     return bulkMutationRpcTargetMs;
   }
 
+  /**
+   * Is the experimental feature of serializing bulk mutation entries as they are added turned on?
+   *
+   * @return a boolean
+   */
+  public boolean useEncodedMutations() {
+    return useEncodedMutations;
+  }
+
+  /**
+   * Are mutations to the same row merged into one entry of a bulk mutation batch?
+   *
+   * @return a boolean
+   */
+  public boolean coalesceMutations() {
+    return coalesceMutations;
+  }
+
+  /**
+   * The directory to which buffered mutations are spilled while the buffer is full.
+   *
+   * @return a {@link String}, or null if mutations are not spilled.
+   */
+  public String getSpillDirectory() {
+    return spillDirectory;
+  }
+
+  /**
+   * Are the keys of bulk reads grouped by tablet before they are split into RPCs?
+   *
+   * @return a boolean
+   */
+  public boolean alignBulkReadsToTablets() {
+    return alignBulkReadsToTablets;
+  }
+
   /** {@inheritDoc} */
   @Override
   public boolean equals(Object obj) {
@@ -328,7 +446,11 @@ public class BulkOptions implements Serializable {
         && (maxInflightRpcs == other.maxInflightRpcs)
         && (maxMemory == other.maxMemory)
         && (enableBulkMutationThrottling == other.enableBulkMutationThrottling)
-        && (bulkMutationRpcTargetMs == other.bulkMutationRpcTargetMs);
+        && (bulkMutationRpcTargetMs == other.bulkMutationRpcTargetMs)
+        && (useEncodedMutations == other.useEncodedMutations)
+        && (coalesceMutations == other.coalesceMutations)
+        && Objects.equals(spillDirectory, other.spillDirectory)
+        && (alignBulkReadsToTablets == other.alignBulkReadsToTablets);
   }
 
   /** {@inheritDoc} */
@@ -345,6 +467,10 @@ public class BulkOptions implements Serializable {
         .add("maxMemory", maxMemory)
         .add("enableBulkMutationThrottling", enableBulkMutationThrottling)
         .add("bulkMutationRpcTargetMs", bulkMutationRpcTargetMs)
+        .add("useEncodedMutations", useEncodedMutations)
+        .add("coalesceMutations", coalesceMutations)
+        .add("spillDirectory", spillDirectory)
+        .add("alignBulkReadsToTablets", alignBulkReadsToTablets)
         .toString();
   }
 
@@ -45,6 +45,8 @@ import com.google.bigtable.v2.SampleRowKeysResponse;
 import com.google.cloud.bigtable.config.BigtableOptions;
 import com.google.cloud.bigtable.config.RetryOptions;
 import com.google.cloud.bigtable.grpc.async.BigtableAsyncUtilities;
+import com.google.cloud.bigtable.grpc.async.EncodedMutateRowsRequest;
+import com.google.cloud.bigtable.grpc.async.RetryingEncodedMutateRowsOperation;
 import com.google.cloud.bigtable.grpc.async.RetryingMutateRowsOperation;
 import com.google.cloud.bigtable.grpc.async.RetryingStreamOperation;
 import com.google.cloud.bigtable.grpc.async.RetryingUnaryOperation;
@@ -77,7 +79,7 @@ import com.google.common.util.concurrent.ListenableFuture;
  * @author sduskis
  * @version $Id: $Id
  */
-public class BigtableDataGrpcClient implements BigtableDataClient {
+public class BigtableDataGrpcClient implements EncodedMutateRowsClient {
 
   // Retryable Predicates
   /** Constant <code>IS_RETRYABLE_MUTATION</code> */
@@ -108,6 +110,23 @@ public class BigtableDataGrpcClient implements BigtableDataClient {
         }
       };
 
+  private static final Predicate<EncodedMutateRowsRequest> ARE_RETRYABLE_ENCODED_MUTATIONS =
+      new Predicate<EncodedMutateRowsRequest>() {
+        @Override
+        public boolean apply(EncodedMutateRowsRequest request) {
+          return request != null && request.isIdempotent();
+        }
+      };
+
+  /**
+   * A MutateRows method that sends {@link EncodedMutateRowsRequest}s with
+   * {@link EncodedMutateRowsRequest#MARSHALLER}.
+   */
+  private static final MethodDescriptor<EncodedMutateRowsRequest, MutateRowsResponse>
+      METHOD_MUTATE_ROWS_ENCODED = BigtableGrpc.METHOD_MUTATE_ROWS.toBuilder(
+        EncodedMutateRowsRequest.MARSHALLER,
+        BigtableGrpc.METHOD_MUTATE_ROWS.getResponseMarshaller()).build();
+
   private static final boolean allCellsHaveTimestamps(Iterable<Mutation> mutations) {
     for (Mutation mut : mutations) {
       if (mut.getSetCell().getTimestampMicros() <= 0) {
@@ -156,6 +175,8 @@ public class BigtableDataGrpcClient implements BigtableDataClient {
   @VisibleForTesting
   final BigtableAsyncRpc<MutateRowsRequest, MutateRowsResponse> mutateRowsRpc;
   @VisibleForTesting
+  final BigtableAsyncRpc<EncodedMutateRowsRequest, MutateRowsResponse> encodedMutateRowsRpc;
+  @VisibleForTesting
   final BigtableAsyncRpc<CheckAndMutateRowRequest, CheckAndMutateRowResponse> checkAndMutateRpc;
   private final BigtableAsyncRpc<ReadModifyWriteRowRequest, ReadModifyWriteRowResponse> readWriteModifyRpc;
 
@@ -191,6 +212,10 @@ public class BigtableDataGrpcClient implements BigtableDataClient {
         asyncUtilities.createAsyncRpc(
             BigtableGrpc.METHOD_MUTATE_ROWS,
             getMutationRetryableFunction(ARE_RETRYABLE_MUTATIONS));
+    this.encodedMutateRowsRpc =
+        asyncUtilities.createAsyncRpc(
+            METHOD_MUTATE_ROWS_ENCODED,
+            getMutationRetryableFunction(ARE_RETRYABLE_ENCODED_MUTATIONS));
     this.checkAndMutateRpc =
         asyncUtilities.createAsyncRpc(
             BigtableGrpc.METHOD_CHECK_AND_MUTATE_ROW,
@@ -266,6 +291,19 @@ public class BigtableDataGrpcClient implements BigtableDataClient {
         retryOptions, request, mutateRowsRpc, callOptions, retryExecutorService, metadata);
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public ListenableFuture<List<MutateRowsResponse>> mutateRowsAsync(
+      EncodedMutateRowsRequest request) {
+    if (shouldOverrideAppProfile(request.getAppProfileId())) {
+      request = request.withAppProfileId(clientDefaultAppProfileId);
+    }
+    CallOptions callOptions = getCallOptions(encodedMutateRowsRpc.getMethodDescriptor(), request);
+    Metadata metadata = createMetadata(request.getTableName());
+    return new RetryingEncodedMutateRowsOperation(retryOptions, request, encodedMutateRowsRpc,
+        callOptions, retryExecutorService, metadata).getAsyncResult();
+  }
+
   /** {@inheritDoc} */
   @Override
   public CheckAndMutateRowResponse checkAndMutateRow(CheckAndMutateRowRequest request) {
@@ -27,29 +27,41 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.net.ssl.SSLException;
 
 import com.google.api.client.util.Strings;
 import com.google.bigtable.admin.v2.ListClustersResponse;
+import com.google.bigtable.v2.SampleRowKeysRequest;
+import com.google.bigtable.v2.SampleRowKeysResponse;
 import com.google.cloud.bigtable.config.BigtableOptions;
 import com.google.cloud.bigtable.config.BigtableVersionInfo;
 import com.google.cloud.bigtable.config.BulkOptions;
 import com.google.cloud.bigtable.config.CredentialOptions;
 import com.google.cloud.bigtable.config.Logger;
 import com.google.cloud.bigtable.config.RetryOptions;
+import com.google.cloud.bigtable.grpc.async.AdaptiveBatchSizer;
 import com.google.cloud.bigtable.grpc.async.AsyncExecutor;
 import com.google.cloud.bigtable.grpc.async.BulkMutation;
 import com.google.cloud.bigtable.grpc.async.BulkRead;
+import com.google.cloud.bigtable.grpc.async.ReadCoalescer;
+import com.google.cloud.bigtable.grpc.async.ReadModifyWriteAggregator;
 import com.google.cloud.bigtable.grpc.async.ResourceLimiter;
 import com.google.cloud.bigtable.grpc.async.ResourceLimiterStats;
 import com.google.cloud.bigtable.grpc.async.ThrottlingClientInterceptor;
 import com.google.cloud.bigtable.grpc.io.ChannelPool;
 import com.google.cloud.bigtable.grpc.io.CredentialInterceptorCache;
 import com.google.cloud.bigtable.grpc.io.GoogleCloudResourcePrefixInterceptor;
+import com.google.cloud.bigtable.grpc.io.RefreshingOAuth2CredentialsInterceptor;
 import com.google.cloud.bigtable.metrics.BigtableClientMetrics;
 import com.google.cloud.bigtable.metrics.BigtableClientMetrics.MetricLevel;
 import com.google.common.annotations.VisibleForTesting;
@@ -60,6 +72,7 @@ import io.grpc.ClientInterceptor;
 import io.grpc.ClientInterceptors;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
 import io.grpc.internal.GrpcUtil;
 
 /**
@@ -86,6 +99,9 @@ public class BigtableSession implements Closeable {
   // 256 MB, server has 256 MB limit.
   private final static int MAX_MESSAGE_SIZE = 1 << 28;
 
+  // The maximum amount of time that warmUp() will wait for channels, credentials and RPCs.
+  private final static long WARM_UP_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
   @VisibleForTesting
   static final String PROJECT_ID_EMPTY_OR_NULL = "ProjectId must not be empty or null.";
   @VisibleForTesting
@@ -146,11 +162,13 @@ public class BigtableSession implements Closeable {
     return resourceLimiter;
   }
 
+  private final ChannelPool dataChannelPool;
   private final BigtableDataClient dataClient;
 
   // This BigtableDataClient has an additional throttling interceptor, which is not recommended for
   // synchronous operations.
   private final BigtableDataClient throttlingDataClient;
+  private final ResourceLimiter resourceLimiter;
 
   private BigtableTableAdminClient tableAdminClient;
   private BigtableInstanceGrpcClient instanceAdminClient;
@@ -159,6 +177,7 @@ public class BigtableSession implements Closeable {
   private final List<ManagedChannel> managedChannels = Collections
       .synchronizedList(new ArrayList<ManagedChannel>());
   private final ClientInterceptor[] clientInterceptors;
+  private ClientInterceptor credentialsInterceptor;
 
   /**
    * This cluster name is either configured via BigtableOptions' clusterId, or via a lookup of the
@@ -166,6 +185,21 @@ public class BigtableSession implements Closeable {
    */
   private BigtableClusterName clusterName;
 
+  /**
+   * {@link AdaptiveBatchSizer}s by table name, so that the multi-get batch size learned by one
+   * {@link BulkRead} is used by later {@link BulkRead}s of the same table.
+   */
+  private final ConcurrentMap<String, AdaptiveBatchSizer> bulkReadBatchSizers =
+      new ConcurrentHashMap<>();
+
+  /** {@link KeyRangeIndex}es by table name, used to align {@link BulkRead}s to tablets. */
+  private final ConcurrentMap<String, KeyRangeIndex> keyRangeIndexes = new ConcurrentHashMap<>();
+
+  /** {@link ReadCoalescer}s by table name. */
+  private final ConcurrentMap<String, ReadCoalescer> readCoalescers = new ConcurrentHashMap<>();
+
+  private ReadModifyWriteAggregator readModifyWriteAggregator;
+
   /**
    * <p>Constructor for BigtableSession.</p>
    *
@@ -197,7 +231,7 @@ public class BigtableSession implements Closeable {
     RetryOptions retryOptions = options.getRetryOptions();
     CredentialOptions credentialOptions = options.getCredentialOptions();
     try {
-      ClientInterceptor credentialsInterceptor =
+      credentialsInterceptor =
           credentialsCache.getCredentialsInterceptor(credentialOptions, retryOptions);
       if (credentialsInterceptor != null) {
         clientInterceptorsList.add(credentialsInterceptor);
@@ -209,7 +243,8 @@ public class BigtableSession implements Closeable {
     clientInterceptors =
         clientInterceptorsList.toArray(new ClientInterceptor[clientInterceptorsList.size()]);
 
-    Channel dataChannel = getDataChannelPool();
+    dataChannelPool = getDataChannelPool();
+    Channel dataChannel = dataChannelPool;
 
     BigtableSessionSharedThreadPools sharedPools = BigtableSessionSharedThreadPools.getInstance();
 
@@ -226,7 +261,7 @@ public class BigtableSession implements Closeable {
     //
     // Throttling should not be used in blocking operations, or streaming reads. We have not tested
     // the impact of throttling on blocking operations.
-    ResourceLimiter resourceLimiter = initializeResourceLimiter(options);
+    resourceLimiter = initializeResourceLimiter(options);
     Channel asyncDataChannel =
         ClientInterceptors.intercept(dataChannel, new ThrottlingClientInterceptor(resourceLimiter));
     throttlingDataClient =
@@ -234,8 +269,85 @@ public class BigtableSession implements Closeable {
 
     BigtableClientMetrics.counter(MetricLevel.Info, "sessions.active").inc();
 
+    if (options.isWarmUpEnabled()) {
+      List<String> tableIds = options.getWarmUpTableIds();
+      warmUp(tableIds.toArray(new String[tableIds.size()]));
+    }
+
     // Defer the creation of both the tableAdminClient until we need them.
+  }
+
+  /**
+   * Prepares this session to serve traffic. All data channels are connected in parallel, the OAuth
+   * token is fetched, and a SampleRowKeys request is sent for each of the given tables. Without a
+   * warm up, the first RPC on each channel pays for DNS, TCP, TLS, HTTP/2 and authentication.
+   *
+   * <p>Warming up is best effort: failures are logged, and the session remains usable.
+   *
+   * @param tableIds the ids of tables in this session's instance on which to send a SampleRowKeys
+   *          request
+   * @return the number of milliseconds that the warm up took
+   * @throws IOException if the warm up was interrupted
+   */
+  public long warmUp(String... tableIds) throws IOException {
+    long startNanos = System.nanoTime();
+    long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(WARM_UP_TIMEOUT_MS);
+
+    // Connecting the channels is mostly network time, so it can be done while the token is being
+    // retrieved on this thread.
+    Future<Integer> readyChannels = BigtableSessionSharedThreadPools.getInstance()
+        .getBatchThreadPool().submit(new Callable<Integer>() {
+          @Override
+          public Integer call() throws Exception {
+            return dataChannelPool.connect(WARM_UP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+          }
+        });
+
+    if (credentialsInterceptor instanceof RefreshingOAuth2CredentialsInterceptor) {
+      Status status = ((RefreshingOAuth2CredentialsInterceptor) credentialsInterceptor)
+          .prefetchToken(WARM_UP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      if (!status.isOk()) {
+        LOG.warn("Could not get credentials during warm up: %s", status);
+      }
+    }
+
+    List<Future<List<SampleRowKeysResponse>>> sampleRowKeysFutures = new ArrayList<>();
+    for (String tableId : tableIds) {
+      SampleRowKeysRequest request = SampleRowKeysRequest.newBuilder()
+          .setTableName(options.getInstanceName().toTableNameStr(tableId))
+          .build();
+      sampleRowKeysFutures.add(dataClient.sampleRowKeysAsync(request));
+    }
+
+    int readyChannelCount = 0;
+    try {
+      readyChannelCount = getBeforeDeadline(readyChannels, deadlineNanos, 0);
+      for (Future<List<SampleRowKeysResponse>> future : sampleRowKeysFutures) {
+        getBeforeDeadline(future, deadlineNanos, null);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while warming up the session", e);
+    }
+
+    long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    BigtableClientMetrics.timer(MetricLevel.Info, "sessions.warmup.latency")
+        .update(durationMs, TimeUnit.MILLISECONDS);
+    LOG.info("Warmed up %d of %d channels and %d tables in %d ms.", readyChannelCount,
+      dataChannelPool.size(), tableIds.length, durationMs);
+    return durationMs;
+  }
+
+  private static <T> T getBeforeDeadline(Future<T> future, long deadlineNanos, T defaultValue)
+      throws InterruptedException {
+    try {
+      return future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (ExecutionException | TimeoutException e) {
+      LOG.warn("Could not complete a warm up operation: %s", e.getMessage());
+      future.cancel(true);
+      return defaultValue;
     }
+  }
 
   private ChannelPool getDataChannelPool() throws IOException {
     String host = options.getDataHost();
@@ -288,9 +400,38 @@ public class BigtableSession implements Closeable {
    * @return a {@link com.google.cloud.bigtable.grpc.async.AsyncExecutor} object.
    */
   public AsyncExecutor createAsyncExecutor() {
+    if (options.isReadModifyWriteAggregationEnabled()) {
+      return new AsyncExecutor(throttlingDataClient, getReadModifyWriteAggregator());
+    }
     return new AsyncExecutor(throttlingDataClient);
   }
 
+  /**
+   * Gets the {@link ReadModifyWriteAggregator} that is shared by all of the increments and appends
+   * in this session. This should only be used if
+   * {@link BigtableOptions#isReadModifyWriteAggregationEnabled()}.
+   *
+   * @return a {@link com.google.cloud.bigtable.grpc.async.ReadModifyWriteAggregator} object.
+   */
+  public synchronized ReadModifyWriteAggregator getReadModifyWriteAggregator() {
+    if (readModifyWriteAggregator == null) {
+      readModifyWriteAggregator = new ReadModifyWriteAggregator(throttlingDataClient,
+          BigtableSessionSharedThreadPools.getInstance().getRetryExecutor(),
+          options.getReadModifyWriteAggregationWindowMicros(), TimeUnit.MICROSECONDS);
+    }
+    return readModifyWriteAggregator;
+  }
+
+  /**
+   * Gets the {@link ResourceLimiter} that throttles the async operations of this session. It is
+   * shared by all sessions of the same instance.
+   *
+   * @return a {@link com.google.cloud.bigtable.grpc.async.ResourceLimiter} object.
+   */
+  public ResourceLimiter getResourceLimiter() {
+    return resourceLimiter;
+  }
+
   /**
    * <p>createBulkMutation.</p>
    *
@@ -325,9 +466,67 @@ public class BigtableSession implements Closeable {
    * @return a {@link com.google.cloud.bigtable.grpc.async.BulkRead} object.
    */
   public BulkRead createBulkRead(BigtableTableName tableName) {
-    return new BulkRead(dataClient, tableName, options.getBulkOptions().getBulkMaxRowKeyCount(),
-        BigtableSessionSharedThreadPools.getInstance().getBatchThreadPool()
-    );
+    KeyRangeIndex keyRangeIndex = options.getBulkOptions().alignBulkReadsToTablets()
+        ? getKeyRangeIndex(tableName)
+        : null;
+    return new BulkRead(dataClient, tableName, getBulkReadBatchSizer(tableName), keyRangeIndex);
+  }
+
+  /**
+   * Gets the {@link KeyRangeIndex} that is shared by all users of a table in this session.
+   *
+   * @param tableName a {@link com.google.cloud.bigtable.grpc.BigtableTableName} object.
+   * @return a {@link com.google.cloud.bigtable.grpc.KeyRangeIndex} object.
+   */
+  public KeyRangeIndex getKeyRangeIndex(BigtableTableName tableName) {
+    String key = tableName.toString();
+    KeyRangeIndex keyRangeIndex = keyRangeIndexes.get(key);
+    if (keyRangeIndex == null) {
+      KeyRangeIndex newKeyRangeIndex = new KeyRangeIndex(dataClient, tableName,
+          KeyRangeIndex.DEFAULT_MAX_AGE_MILLIS, TimeUnit.MILLISECONDS);
+      keyRangeIndex = keyRangeIndexes.putIfAbsent(key, newKeyRangeIndex);
+      if (keyRangeIndex == null) {
+        keyRangeIndex = newKeyRangeIndex;
+      }
+    }
+    return keyRangeIndex;
+  }
+
+  /**
+   * Gets the {@link ReadCoalescer} that is shared by all single row reads of a table in this
+   * session. This should only be used if {@link BigtableOptions#isReadCoalescingEnabled()}.
+   *
+   * @param tableName a {@link com.google.cloud.bigtable.grpc.BigtableTableName} object.
+   * @return a {@link com.google.cloud.bigtable.grpc.async.ReadCoalescer} object.
+   */
+  public ReadCoalescer getReadCoalescer(BigtableTableName tableName) {
+    String key = tableName.toString();
+    ReadCoalescer readCoalescer = readCoalescers.get(key);
+    if (readCoalescer == null) {
+      ReadCoalescer newReadCoalescer = new ReadCoalescer(dataClient, tableName,
+          getBulkReadBatchSizer(tableName),
+          BigtableSessionSharedThreadPools.getInstance().getRetryExecutor(),
+          options.getReadCoalescingWindowMicros(), TimeUnit.MICROSECONDS);
+      readCoalescer = readCoalescers.putIfAbsent(key, newReadCoalescer);
+      if (readCoalescer == null) {
+        readCoalescer = newReadCoalescer;
+      }
+    }
+    return readCoalescer;
+  }
+
+  private AdaptiveBatchSizer getBulkReadBatchSizer(BigtableTableName tableName) {
+    String key = tableName.toString();
+    AdaptiveBatchSizer batchSizer = bulkReadBatchSizers.get(key);
+    if (batchSizer == null) {
+      AdaptiveBatchSizer newBatchSizer =
+          new AdaptiveBatchSizer(options.getBulkOptions().getBulkMaxRowKeyCount());
+      batchSizer = bulkReadBatchSizers.putIfAbsent(key, newBatchSizer);
+      if (batchSizer == null) {
+        batchSizer = newBatchSizer;
+      }
+    }
+    return batchSizer;
   }
 
   /**
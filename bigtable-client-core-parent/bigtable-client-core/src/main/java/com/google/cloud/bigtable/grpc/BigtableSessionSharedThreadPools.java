@@ -15,16 +15,26 @@
  */
 package com.google.cloud.bigtable.grpc;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
+import com.google.cloud.bigtable.config.Logger;
+import com.google.common.base.Preconditions;
+
 import io.grpc.internal.GrpcUtil;
 
 /**
  * This class contains executors and other thread pool related resources that can be reused across a
  * few {@link com.google.cloud.bigtable.grpc.BigtableSession}s.  All executors are automatically expand if there is higher use.
  *
+ * <p>The executors can be replaced via {@link #setBatchThreadPool(ExecutorService)} and
+ * {@link #setRetryExecutor(ScheduledExecutorService)} before any
+ * {@link com.google.cloud.bigtable.grpc.BigtableSession}s are created. On JDKs that support virtual
+ * threads, {@link #useVirtualThreadBatchPool()} replaces the cached batch pool with a
+ * virtual-thread-per-task executor.
+ *
  * @author sduskis
  * @version $Id: $Id
  */
@@ -37,6 +47,8 @@ public class BigtableSessionSharedThreadPools {
   /** Number of threads to use to initiate retry calls */
   public static final int RETRY_THREAD_COUNT = 4;
 
+  private static final Logger LOG = new Logger(BigtableSessionSharedThreadPools.class);
+
   private static BigtableSessionSharedThreadPools INSTANCE = new BigtableSessionSharedThreadPools();
 
   /**
@@ -83,4 +95,64 @@ public class BigtableSessionSharedThreadPools {
     }
     return retryExecutor;
   }
+
+  /**
+   * Sets the {@link ExecutorService} used for i/o work. This must be called before the batch pool
+   * is used by a {@link BigtableSession}. The caller is responsible for shutting down the
+   * {@link ExecutorService}.
+   *
+   * @param batchThreadPool a {@link java.util.concurrent.ExecutorService} object.
+   */
+  public synchronized void setBatchThreadPool(ExecutorService batchThreadPool) {
+    Preconditions.checkNotNull(batchThreadPool);
+    this.batchThreadPool = batchThreadPool;
+  }
+
+  /**
+   * Sets the {@link ScheduledExecutorService} used for retries. This must be called before any
+   * {@link BigtableSession}s are created. The caller is responsible for shutting down the
+   * {@link ScheduledExecutorService}.
+   *
+   * @param retryExecutor a {@link java.util.concurrent.ScheduledExecutorService} object.
+   */
+  public synchronized void setRetryExecutor(ScheduledExecutorService retryExecutor) {
+    Preconditions.checkNotNull(retryExecutor);
+    this.retryExecutor = retryExecutor;
+  }
+
+  /**
+   * Replaces the batch pool with a virtual-thread-per-task executor, if the JDK supports virtual
+   * threads. Tasks on the batch pool often block on i/o, so virtual threads avoid creating an
+   * unbounded number of platform threads under heavy load.
+   *
+   * @return true if virtual threads are used for the batch pool.
+   */
+  public synchronized boolean useVirtualThreadBatchPool() {
+    ExecutorService virtualThreadExecutor = createVirtualThreadPerTaskExecutor();
+    if (virtualThreadExecutor == null) {
+      LOG.info("Virtual threads are not available. Using the default batch pool.");
+      return false;
+    }
+    batchThreadPool = virtualThreadExecutor;
+    return true;
+  }
+
+  /**
+   * Creates a virtual-thread-per-task {@link ExecutorService} via reflection, so that this class
+   * can still be compiled and run on JDKs without virtual threads.
+   *
+   * @return a virtual-thread-per-task {@link ExecutorService}, or null if the JDK does not support
+   *         virtual threads.
+   */
+  public static ExecutorService createVirtualThreadPerTaskExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (NoSuchMethodException e) {
+      return null;
+    } catch (Exception e) {
+      LOG.warn("Could not create a virtual thread executor.", e);
+      return null;
+    }
+  }
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc;
+
+import java.util.List;
+
+import com.google.bigtable.v2.MutateRowsResponse;
+import com.google.cloud.bigtable.grpc.async.EncodedMutateRowsRequest;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * A {@link BigtableDataClient} that can also send {@link EncodedMutateRowsRequest}s. This is
+ * separate from {@link BigtableDataClient} so that existing implementations of that interface keep
+ * working; {@link com.google.cloud.bigtable.grpc.async.BulkMutation} sends plain
+ * {@link com.google.bigtable.v2.MutateRowsRequest}s to clients that do not implement it.
+ *
+ * @author sduskis
+ * @version $Id: $Id
+ */
+public interface EncodedMutateRowsClient extends BigtableDataClient {
+
+  /**
+   * Mutates multiple rows in a batch, from entries that are already in protobuf wire format. Each
+   * individual row is mutated atomically as in MutateRow, but the entire batch is not executed
+   * atomically.
+   *
+   * @return a {@link com.google.common.util.concurrent.ListenableFuture} that will finish when the mutations have all been completed.
+   * @param request a {@link com.google.cloud.bigtable.grpc.async.EncodedMutateRowsRequest} object.
+   */
+  ListenableFuture<List<MutateRowsResponse>> mutateRowsAsync(EncodedMutateRowsRequest request);
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.api.client.util.NanoClock;
+import com.google.bigtable.v2.SampleRowKeysRequest;
+import com.google.bigtable.v2.SampleRowKeysResponse;
+import com.google.cloud.bigtable.config.Logger;
+import com.google.cloud.bigtable.config.RetryOptions;
+import com.google.cloud.bigtable.util.ByteStringComparator;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.ByteString;
+
+/**
+ * A cached index of the tablet boundaries of a table, from SampleRowKeys. A single index per table
+ * is shared by all the users of a {@link BigtableSession}, such as {@link
+ * com.google.cloud.bigtable.grpc.async.BulkRead} and the HBase region locators, so that they all
+ * work from the same snapshot and the table is only sampled once per refresh.
+ *
+ * <p>Lookups never block. A snapshot is refreshed in the background once it is three quarters of
+ * the way to its maximum age, so in steady state callers never see an expired snapshot. If a
+ * refresh fails, the previous snapshot keeps being served, and the refresh is retried on a later
+ * lookup once an exponential backoff has expired, so that an unavailable table is not sampled on
+ * every lookup.
+ *
+ * @author sduskis
+ * @version $Id: $Id
+ */
+public class KeyRangeIndex {
+
+  /** Constant <code>LOG</code> */
+  protected static final Logger LOG = new Logger(KeyRangeIndex.class);
+
+  /** The default maximum age of a snapshot, in milliseconds. */
+  public static final long DEFAULT_MAX_AGE_MILLIS = 60 * 1000;
+
+  /**
+   * The time to wait before sampling the table again after a failed refresh, in milliseconds. The
+   * wait grows by {@link RetryOptions#DEFAULT_BACKOFF_MULTIPLIER} with every consecutive failure,
+   * up to the maximum age of a snapshot.
+   */
+  public static final long INITIAL_REFRESH_BACKOFF_MILLIS = 1000;
+
+  /**
+   * The SampleRowKeys responses of a table, and the split keys that were derived from them.
+   */
+  private static class Snapshot {
+    private final List<SampleRowKeysResponse> responses;
+    private final List<ByteString> splitKeys;
+    private final long fetchTimeNanos;
+
+    Snapshot(List<SampleRowKeysResponse> responses, long fetchTimeNanos) {
+      List<ByteString> keys = new ArrayList<>(responses.size());
+      for (SampleRowKeysResponse response : responses) {
+        if (!response.getRowKey().isEmpty()) {
+          keys.add(response.getRowKey());
+        }
+      }
+      Collections.sort(keys, ByteStringComparator.INSTANCE);
+      this.responses = Collections.unmodifiableList(new ArrayList<>(responses));
+      this.splitKeys = Collections.unmodifiableList(keys);
+      this.fetchTimeNanos = fetchTimeNanos;
+    }
+  }
+
+  private final BigtableDataClient client;
+  private final String tableName;
+  private final long maxAgeNanos;
+  private final long refreshAgeNanos;
+  private final AtomicReference<SettableFuture<List<SampleRowKeysResponse>>> refreshFuture =
+      new AtomicReference<>();
+
+  private volatile Snapshot snapshot;
+
+  // The state of the refresh backoff. These are only written by the callback of the single refresh
+  // that is in progress.
+  private volatile int consecutiveFailures;
+  private volatile Throwable lastFailure;
+  private volatile long retryAfterNanos;
+
+  @VisibleForTesting
+  NanoClock clock = NanoClock.SYSTEM;
+
+  /**
+   * <p>Constructor for KeyRangeIndex.</p>
+   *
+   * @param client a {@link BigtableDataClient} used to call SampleRowKeys.
+   * @param tableName a {@link BigtableTableName} object.
+   * @param maxAge the maximum age of a snapshot.
+   * @param unit the {@link TimeUnit} of the maximum age.
+   */
+  public KeyRangeIndex(BigtableDataClient client, BigtableTableName tableName, long maxAge,
+      TimeUnit unit) {
+    this.client = client;
+    this.tableName = tableName.toString();
+    this.maxAgeNanos = unit.toNanos(maxAge);
+    this.refreshAgeNanos = maxAgeNanos / 4 * 3;
+  }
+
+  /**
+   * Gets the start keys of all tablets except the first one, sorted. Starts a background refresh
+   * if the snapshot is due for one.
+   *
+   * @return the split keys, or an empty list if they are not known yet.
+   */
+  public List<ByteString> getSplitKeys() {
+    Snapshot current = snapshot;
+    if (current == null || getAge(current) >= refreshAgeNanos) {
+      refresh();
+      // The refresh may have completed already.
+      current = snapshot;
+    }
+    return current == null ? Collections.<ByteString> emptyList() : current.splitKeys;
+  }
+
+  /**
+   * Gets the SampleRowKeys responses of the table. The future is already resolved unless there is
+   * no snapshot yet, or the snapshot has expired because the background refreshes failed; in those
+   * cases it resolves when the next SampleRowKeys call completes.
+   *
+   * @return a {@link ListenableFuture} with the {@link SampleRowKeysResponse}s.
+   */
+  public ListenableFuture<List<SampleRowKeysResponse>> getSampleRowKeysAsync() {
+    Snapshot current = snapshot;
+    if (current == null) {
+      return refresh();
+    }
+    long age = getAge(current);
+    if (age < refreshAgeNanos) {
+      return Futures.immediateFuture(current.responses);
+    }
+    ListenableFuture<List<SampleRowKeysResponse>> refresh = refresh();
+    return age < maxAgeNanos ? Futures.immediateFuture(current.responses) : refresh;
+  }
+
+  /**
+   * Samples the table again, regardless of the age of the snapshot. If a refresh is already in
+   * progress, its result is used. If the last refresh failed and its backoff has not expired yet,
+   * the returned future fails with the cause of that failure.
+   *
+   * @return a {@link ListenableFuture} with the new {@link SampleRowKeysResponse}s.
+   */
+  public ListenableFuture<List<SampleRowKeysResponse>> reload() {
+    return refresh();
+  }
+
+  private long getAge(Snapshot current) {
+    return clock.nanoTime() - current.fetchTimeNanos;
+  }
+
+  /**
+   * Starts a SampleRowKeys call, unless one is already in progress or the last one failed less
+   * than a backoff ago.
+   */
+  private ListenableFuture<List<SampleRowKeysResponse>> refresh() {
+    Throwable failure = lastFailure;
+    if (failure != null && clock.nanoTime() - retryAfterNanos < 0) {
+      SettableFuture<List<SampleRowKeysResponse>> inProgress = refreshFuture.get();
+      return inProgress != null ? inProgress
+          : Futures.<List<SampleRowKeysResponse>> immediateFailedFuture(failure);
+    }
+    final SettableFuture<List<SampleRowKeysResponse>> future = SettableFuture.create();
+    while (!refreshFuture.compareAndSet(null, future)) {
+      SettableFuture<List<SampleRowKeysResponse>> inProgress = refreshFuture.get();
+      if (inProgress != null) {
+        return inProgress;
+      }
+    }
+    LOG.debug("Sampling rowkeys for table %s", tableName);
+    FutureCallback<List<SampleRowKeysResponse>> callback =
+        new FutureCallback<List<SampleRowKeysResponse>>() {
+          @Override
+          public void onSuccess(List<SampleRowKeysResponse> responses) {
+            Snapshot newSnapshot = new Snapshot(responses, clock.nanoTime());
+            snapshot = newSnapshot;
+            consecutiveFailures = 0;
+            lastFailure = null;
+            refreshFuture.set(null);
+            future.set(newSnapshot.responses);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            long backoffNanos = getBackoffNanos(++consecutiveFailures);
+            LOG.warn("Could not sample the row keys of %s. Retrying in %d ms.", t, tableName,
+              TimeUnit.NANOSECONDS.toMillis(backoffNanos));
+            retryAfterNanos = clock.nanoTime() + backoffNanos;
+            lastFailure = t;
+            refreshFuture.set(null);
+            future.setException(t);
+          }
+        };
+    try {
+      Futures.addCallback(client.sampleRowKeysAsync(
+        SampleRowKeysRequest.newBuilder().setTableName(tableName).build()), callback,
+        MoreExecutors.directExecutor());
+    } catch (Throwable t) {
+      callback.onFailure(t);
+    }
+    return future;
+  }
+
+  /**
+   * Gets the time to wait after a number of consecutive failed refreshes.
+   */
+  private long getBackoffNanos(int failures) {
+    double backoffNanos = TimeUnit.MILLISECONDS.toNanos(INITIAL_REFRESH_BACKOFF_MILLIS)
+        * Math.pow(RetryOptions.DEFAULT_BACKOFF_MULTIPLIER, failures - 1);
+    return (long) Math.min(backoffNanos, maxAgeNanos);
+  }
+
+  /**
+   * Finds the tablet that contains a row key.
+   *
+   * @param splitKeys split keys from {@link #getSplitKeys()}.
+   * @param rowKey a row key.
+   * @return the index of the tablet, from 0 to {@code splitKeys.size()}.
+   */
+  public static int getTabletIndex(List<ByteString> splitKeys, ByteString rowKey) {
+    int index = Collections.binarySearch(splitKeys, rowKey, ByteStringComparator.INSTANCE);
+    // A split key is the first key of the next tablet.
+    return index >= 0 ? index + 1 : -(index + 1);
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc.async;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+import com.google.api.client.util.BackOff;
+import com.google.bigtable.v2.MutateRowsResponse;
+import com.google.cloud.bigtable.config.RetryOptions;
+import com.google.cloud.bigtable.grpc.async.AbstractMutateRowsRequestManager.ProcessingStatus;
+import com.google.common.collect.ImmutableMap;
+
+import io.grpc.CallOptions;
+import io.grpc.Metadata;
+import io.opencensus.trace.AttributeValue;
+
+/**
+ * Performs retries for MutateRows operations. Entries that fail with a retryable status are
+ * retried in a new request, as tracked by an {@link AbstractMutateRowsRequestManager}.
+ *
+ * @param <RequestT> the type of the MutateRows request.
+ */
+public abstract class AbstractRetryingMutateRowsOperation<RequestT> extends
+    AbstractRetryingOperation<RequestT, MutateRowsResponse, List<MutateRowsResponse>> {
+  private final static io.grpc.Status INVALID_RESPONSE =
+      io.grpc.Status.INTERNAL.withDescription("The server returned an invalid response");
+
+  private final AbstractMutateRowsRequestManager<RequestT> requestManager;
+
+  protected AbstractRetryingMutateRowsOperation(RetryOptions retryOptions,
+      AbstractMutateRowsRequestManager<RequestT> requestManager,
+      BigtableAsyncRpc<RequestT, MutateRowsResponse> retryableRpc, CallOptions callOptions,
+      ScheduledExecutorService retryExecutorService, Metadata originalMetadata) {
+    super(retryOptions, requestManager.getRetryRequest(), retryableRpc, callOptions,
+        retryExecutorService, originalMetadata);
+    this.requestManager = requestManager;
+    operationSpan.addAnnotation("MutationCount", ImmutableMap.of("count",
+      AttributeValue.longAttributeValue(requestManager.getRetryEntriesCount())));
+  }
+
+  @Override
+  public void onMessage(MutateRowsResponse message) {
+    tableRpcMetrics.markResponse(message);
+    try {
+      requestManager.onMessage(message);
+    } catch (Exception e) {
+      setException(e);
+    }
+  }
+
+  @Override
+  protected RequestT getRetryRequest() {
+    return requestManager.getRetryRequest();
+  }
+
+  @Override
+  protected boolean onOK(Metadata trailers) {
+    ProcessingStatus status = requestManager.onOK();
+
+    if (status == ProcessingStatus.INVALID) {
+      // Set an exception.
+      onError(INVALID_RESPONSE, trailers);
+      return true;
+    }
+
+    // There was a problem in the data found in onMessage(), so fail the RPC.
+    if (status == ProcessingStatus.SUCCESS || status == ProcessingStatus.NOT_RETRYABLE) {
+      // Set the response, with either success, or non-retryable responses.
+      completionFuture.set(Arrays.asList(requestManager.buildResponse()));
+      return true;
+    }
+
+    // Perform a partial retry, if the backoff policy allows it.
+    long nextBackOff = getNextBackoff();
+    if (nextBackOff == BackOff.STOP) {
+      // Return the response as is, and don't retry;
+      rpc.getRpcMetrics().markRetriesExhasted();
+      completionFuture.set(Arrays.asList(requestManager.buildResponse()));
+      operationSpan.addAnnotation("MutationCount", ImmutableMap.of("failureCount",
+        AttributeValue.longAttributeValue(requestManager.getRetryEntriesCount())));
+      return true;
+    }
+
+    performRetry(nextBackOff);
+    operationSpan.addAnnotation("MutationCount", ImmutableMap.of("retryCount",
+      AttributeValue.longAttributeValue(requestManager.getRetryEntriesCount())));
+    return false;
+  }
+}
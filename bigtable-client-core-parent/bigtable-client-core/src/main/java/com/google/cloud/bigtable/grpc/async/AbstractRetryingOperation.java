@@ -30,6 +30,8 @@ import com.google.bigtable.v2.BigtableGrpc;
 import com.google.cloud.bigtable.config.Logger;
 import com.google.cloud.bigtable.config.RetryOptions;
 import com.google.cloud.bigtable.grpc.CallOptionsFactory;
+import com.google.cloud.bigtable.grpc.async.BigtableAsyncRpc.TableRpcMetrics;
+import com.google.cloud.bigtable.grpc.io.GoogleCloudResourcePrefixInterceptor;
 import com.google.cloud.bigtable.grpc.io.ChannelPool;
 import com.google.cloud.bigtable.grpc.scanner.BigtableRetriesExhaustedException;
 import com.google.cloud.bigtable.metrics.Timer;
@@ -97,6 +99,21 @@ public abstract class AbstractRetryingOperation<RequestT, ResponseT, ResultT>
     return prefix + "." + fullMethodName.replace('/', '.');
   }
 
+  /**
+   * Combines the method level and table level {@link Timer.Context}s so that they can be stopped
+   * together.
+   */
+  private static Timer.Context combine(final Timer.Context methodContext,
+      final Timer.Context tableContext) {
+    return new Timer.Context() {
+      @Override
+      public void close() {
+        methodContext.close();
+        tableContext.close();
+      }
+    };
+  }
+
   protected class GrpcFuture<RespT> extends AbstractFuture<RespT> {
     /**
      * This gets called from {@link Future#cancel(boolean)} for cancel(true). If a user explicitly
@@ -141,6 +158,7 @@ public abstract class AbstractRetryingOperation<RequestT, ResponseT, ResultT>
   protected Timer.Context rpcTimerContext;
 
   protected final Span operationSpan;
+  protected final TableRpcMetrics tableRpcMetrics;
 
   /**
    * <p>Constructor for AbstractRetryingRpcListener.</p>
@@ -168,6 +186,9 @@ public abstract class AbstractRetryingOperation<RequestT, ResponseT, ResultT>
     this.completionFuture = new GrpcFuture<>();
     String spanName = makeSpanName("Operation", rpc.getMethodDescriptor().getFullMethodName());
     operationSpan = TRACER.spanBuilder(spanName).setRecordEvents(true).startSpan();
+    String tableName =
+        originalMetadata.get(GoogleCloudResourcePrefixInterceptor.GRPC_RESOURCE_PREFIX_KEY);
+    this.tableRpcMetrics = rpc.getRpcMetrics().getTableRpcMetrics(tableName);
   }
 
   /** {@inheritDoc} */
@@ -297,7 +318,7 @@ public abstract class AbstractRetryingOperation<RequestT, ResponseT, ResultT>
    */
   protected void run() {
     try (Closeable s = TRACER.withSpan(operationSpan)) {
-      rpcTimerContext = rpc.getRpcMetrics().timeRpc();
+      rpcTimerContext = combine(rpc.getRpcMetrics().timeRpc(), tableRpcMetrics.timeRpc());
       operationSpan.addAnnotation(Annotation.fromDescriptionAndAttributes("rpcStart",
         ImmutableMap.of("attempt", AttributeValue.longAttributeValue(failedCount))));
       Metadata metadata = new Metadata();
@@ -307,7 +328,9 @@ public abstract class AbstractRetryingOperation<RequestT, ResponseT, ResultT>
         // newCall/start split. The call variable needs to be set before onMessage() happens; that
         // usually will occur, but some unit tests broke with a merged newCall and start.
         call = rpc.newCall(getCallOptions());
-        rpc.start(getRetryRequest(), this, metadata, call);
+        RequestT retryRequest = getRetryRequest();
+        tableRpcMetrics.markRequest(retryRequest);
+        rpc.start(retryRequest, this, metadata, call);
       }
     } catch (Exception e) {
       setException(e);
@@ -347,7 +370,8 @@ public abstract class AbstractRetryingOperation<RequestT, ResponseT, ResultT>
    */
   public ListenableFuture<ResultT> getAsyncResult() {
     Preconditions.checkState(operationTimerContext == null);
-    operationTimerContext = rpc.getRpcMetrics().timeOperation();
+    operationTimerContext =
+        combine(rpc.getRpcMetrics().timeOperation(), tableRpcMetrics.timeOperation());
     run();
     return completionFuture;
   }
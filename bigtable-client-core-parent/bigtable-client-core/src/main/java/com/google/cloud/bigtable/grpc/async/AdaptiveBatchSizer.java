@@ -0,0 +1,169 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc.async;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Chooses the number of keys to send per multi-get RPC in {@link BulkRead}. The size is derived
+ * from the observed latency per key of previous batches: when keys are cheap to look up, batches
+ * grow towards the configured maximum so that fewer RPCs are sent; when keys are expensive,
+ * batches shrink so that a slow batch does not hold back a large number of keys. This class is
+ * thread safe, and is meant to be shared by all {@link BulkRead}s of a single table.
+ *
+ * <p>The latency of a batch is modeled as a fixed overhead, such as the round trip time, plus a
+ * cost per key, with an exponentially weighted linear regression over the observed batches. Only
+ * the cost per key depends on the batch size, so the target latency applies to that part; a high
+ * round trip time does not shrink the batches. Until batches of different sizes have been seen,
+ * the overhead cannot be told apart, and the whole latency is attributed to the keys. When the
+ * batches stop varying in size, the last fitted overhead is kept, and the rest of the latency is
+ * attributed to the keys, so that a slowdown still shrinks the batches.
+ *
+ * @author sduskis
+ * @version $Id: $Id
+ */
+public class AdaptiveBatchSizer {
+
+  /** The default lower bound on the number of keys per batch. */
+  public static final int DEFAULT_MIN_BATCH_SIZE = 10;
+
+  /** The default latency that a single batch should aim for. */
+  public static final long DEFAULT_TARGET_LATENCY_MS = 100;
+
+  /** Weight of the most recent observation in the regression of latency over batch size. */
+  private static final double SMOOTHING_FACTOR = 0.2;
+
+  /**
+   * The smallest standard deviation of the observed batch sizes, relative to their mean, that is
+   * needed to estimate the cost per key with the regression.
+   */
+  private static final double MIN_BATCH_SIZE_VARIATION = 0.05;
+
+  private final int minBatchSize;
+  private final int maxBatchSize;
+  private final long targetLatencyNanos;
+
+  // Exponentially weighted sums of the observed batch sizes and latencies.
+  private double weight = 0;
+  private double sumKeys = 0;
+  private double sumLatency = 0;
+  private double sumKeysSquared = 0;
+  private double sumKeysLatency = 0;
+
+  private double overheadNanos = 0;
+  private volatile int batchSize;
+
+  /**
+   * <p>Constructor for AdaptiveBatchSizer.</p>
+   *
+   * @param maxBatchSize the largest number of keys to send in a single RPC.
+   */
+  public AdaptiveBatchSizer(int maxBatchSize) {
+    this(Math.min(DEFAULT_MIN_BATCH_SIZE, maxBatchSize), maxBatchSize,
+        DEFAULT_TARGET_LATENCY_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * <p>Constructor for AdaptiveBatchSizer.</p>
+   *
+   * @param minBatchSize the smallest number of keys to send in a single RPC.
+   * @param maxBatchSize the largest number of keys to send in a single RPC.
+   * @param targetLatency the latency that the keys of a single batch should add to the fixed
+   *          overhead of an RPC.
+   * @param unit the {@link TimeUnit} of the targetLatency.
+   */
+  public AdaptiveBatchSizer(int minBatchSize, int maxBatchSize, long targetLatency,
+      TimeUnit unit) {
+    Preconditions.checkArgument(minBatchSize > 0, "minBatchSize must be positive");
+    Preconditions.checkArgument(maxBatchSize >= minBatchSize,
+      "maxBatchSize must be at least minBatchSize");
+    Preconditions.checkArgument(targetLatency > 0, "targetLatency must be positive");
+    this.minBatchSize = minBatchSize;
+    this.maxBatchSize = maxBatchSize;
+    this.targetLatencyNanos = unit.toNanos(targetLatency);
+    this.batchSize = maxBatchSize;
+  }
+
+  /**
+   * @return the number of keys that should currently be sent in a single RPC.
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * @return the largest number of keys that will be sent in a single RPC.
+   */
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * Computes the number of keys for each RPC so that {@code keyCount} keys are spread evenly over
+   * the fewest RPCs allowed by the current batch size.
+   *
+   * @param keyCount the number of keys waiting to be sent.
+   * @return the number of keys to put in each RPC.
+   */
+  public int getBatchSize(int keyCount) {
+    int currentBatchSize = batchSize;
+    if (keyCount <= currentBatchSize) {
+      return Math.max(keyCount, 1);
+    }
+    int batchCount = (keyCount + currentBatchSize - 1) / currentBatchSize;
+    return (keyCount + batchCount - 1) / batchCount;
+  }
+
+  /**
+   * Records the outcome of a successful batch, and adjusts the batch size.
+   *
+   * @param keyCount the number of keys in the batch.
+   * @param latencyNanos the time between sending the batch and receiving the last row.
+   */
+  public synchronized void update(int keyCount, long latencyNanos) {
+    if (keyCount <= 0 || latencyNanos < 0) {
+      return;
+    }
+    double decay = 1 - SMOOTHING_FACTOR;
+    weight = decay * weight + 1;
+    sumKeys = decay * sumKeys + keyCount;
+    sumLatency = decay * sumLatency + latencyNanos;
+    sumKeysSquared = decay * sumKeysSquared + (double) keyCount * keyCount;
+    sumKeysLatency = decay * sumKeysLatency + (double) keyCount * latencyNanos;
+
+    double meanKeys = sumKeys / weight;
+    double meanLatency = sumLatency / weight;
+    double keysVariance = sumKeysSquared / weight - meanKeys * meanKeys;
+    double minStdDev = MIN_BATCH_SIZE_VARIATION * meanKeys;
+    if (keysVariance > minStdDev * minStdDev) {
+      double slope = (sumKeysLatency / weight - meanKeys * meanLatency) / keysVariance;
+      if (slope > 0) {
+        // A negative overhead means that there is none to separate out.
+        overheadNanos = Math.max(0, meanLatency - slope * meanKeys);
+      }
+      // Otherwise, the latency did not grow with the batch size; keep the previous overhead.
+    }
+    double nanosPerKey = (meanLatency - overheadNanos) / meanKeys;
+    if (nanosPerKey <= 0) {
+      batchSize = maxBatchSize;
+    } else {
+      long size = (long) (targetLatencyNanos / nanosPerKey);
+      batchSize = (int) Math.max(minBatchSize, Math.min(maxBatchSize, size));
+    }
+  }
+}
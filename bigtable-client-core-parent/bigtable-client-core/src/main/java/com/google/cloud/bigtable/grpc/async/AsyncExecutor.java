@@ -125,6 +125,7 @@ public class AsyncExecutor {
 
   private final BigtableDataClient client;
   private final OperationAccountant operationsAccountant;
+  private final ReadModifyWriteAggregator readModifyWriteAggregator;
 
   /**
    * <p>
@@ -148,8 +149,30 @@ public class AsyncExecutor {
    */
   @VisibleForTesting
   AsyncExecutor(BigtableDataClient client, OperationAccountant operationAccountant) {
+    this(client, operationAccountant, null);
+  }
+
+  /**
+   * <p>
+   * Constructor for AsyncExecutor.
+   * </p>
+   * @param client a {@link com.google.cloud.bigtable.grpc.BigtableDataClient} object for executing
+   *          RPCs.
+   * @param readModifyWriteAggregator a {@link ReadModifyWriteAggregator} that sends
+   *          {@link com.google.bigtable.v2.ReadModifyWriteRowRequest}s, or null to send them
+   *          directly.
+   */
+  public AsyncExecutor(BigtableDataClient client,
+      ReadModifyWriteAggregator readModifyWriteAggregator) {
+    this(client, new OperationAccountant(), readModifyWriteAggregator);
+  }
+
+  @VisibleForTesting
+  AsyncExecutor(BigtableDataClient client, OperationAccountant operationAccountant,
+      ReadModifyWriteAggregator readModifyWriteAggregator) {
     this.client = client;
     this.operationsAccountant = operationAccountant;
+    this.readModifyWriteAggregator = readModifyWriteAggregator;
   }
 
   /**
@@ -205,6 +228,15 @@ public class AsyncExecutor {
    */
   public ListenableFuture<ReadModifyWriteRowResponse>
       readModifyWriteRowAsync(ReadModifyWriteRowRequest request) throws InterruptedException {
+    if (readModifyWriteAggregator != null) {
+      return call(new AsyncCall<ReadModifyWriteRowRequest, ReadModifyWriteRowResponse>() {
+        @Override
+        public ListenableFuture<ReadModifyWriteRowResponse> call(BigtableDataClient client,
+            ReadModifyWriteRowRequest request) {
+          return readModifyWriteAggregator.readModifyWriteRowAsync(request);
+        }
+      }, request);
+    }
     return call(READ_MODIFY_WRITE_ASYNC, request);
   }
 
@@ -259,6 +291,9 @@ public class AsyncExecutor {
    */
   public void flush() throws IOException {
     LOG.trace("Flushing");
+    if (readModifyWriteAggregator != null) {
+      readModifyWriteAggregator.flush();
+    }
     try {
       operationsAccountant.awaitCompletion();
     } catch (InterruptedException e) {
@@ -17,8 +17,14 @@ package com.google.cloud.bigtable.grpc.async;
 
 import com.google.cloud.bigtable.metrics.BigtableClientMetrics;
 import com.google.cloud.bigtable.metrics.BigtableClientMetrics.MetricLevel;
+import com.google.cloud.bigtable.metrics.Histogram;
 import com.google.cloud.bigtable.metrics.Meter;
+import com.google.cloud.bigtable.metrics.MetricRegistry;
 import com.google.cloud.bigtable.metrics.Timer;
+import com.google.protobuf.MessageLite;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import io.grpc.CallOptions;
 import io.grpc.ClientCall;
@@ -35,7 +41,73 @@ import io.grpc.ClientCall.Listener;
  */
 public interface BigtableAsyncRpc<REQUEST, RESPONSE> {
 
+  /**
+   * Per-table metrics for a single RPC method. These are reported as
+   * "grpc.method.[method].table.[tableId].*". See
+   * {@link BigtableClientMetrics#tableDimension(String)} for how the number of tables is bounded.
+   */
+  public static class TableRpcMetrics {
+    private static final TableRpcMetrics NULL_TABLE_METRICS = new TableRpcMetrics(null);
+
+    private final Timer operationTimer;
+    private final Timer rpcTimer;
+    private final Histogram requestSizeHistogram;
+    private final Histogram responseSizeHistogram;
+
+    private TableRpcMetrics(String prefix) {
+      if (prefix == null) {
+        MetricRegistry nullRegistry = MetricRegistry.NULL_METRICS_REGISTRY;
+        this.operationTimer = nullRegistry.timer("");
+        this.rpcTimer = nullRegistry.timer("");
+        this.requestSizeHistogram = Histogram.NULL_HISTOGRAM;
+        this.responseSizeHistogram = Histogram.NULL_HISTOGRAM;
+      } else {
+        this.operationTimer =
+            BigtableClientMetrics.timer(MetricLevel.Info, prefix + ".operation.latency");
+        this.rpcTimer = BigtableClientMetrics.timer(MetricLevel.Debug, prefix + ".rpc.latency");
+        this.requestSizeHistogram =
+            BigtableClientMetrics.histogram(MetricLevel.Info, prefix + ".request.bytes");
+        this.responseSizeHistogram =
+            BigtableClientMetrics.histogram(MetricLevel.Info, prefix + ".response.bytes");
+      }
+    }
+
+    public Timer.Context timeOperation() {
+      return operationTimer.time();
+    }
+
+    public Timer.Context timeRpc() {
+      return rpcTimer.time();
+    }
+
+    /**
+     * Records the serialized size of a request. The size is only calculated if metrics are being
+     * collected.
+     */
+    public void markRequest(Object request) {
+      if (this != NULL_TABLE_METRICS) {
+        if (request instanceof MessageLite) {
+          requestSizeHistogram.update(((MessageLite) request).getSerializedSize());
+        } else if (request instanceof EncodedMutateRowsRequest) {
+          requestSizeHistogram.update(((EncodedMutateRowsRequest) request).getSerializedSize());
+        }
+      }
+    }
+
+    /**
+     * Records the serialized size of a response message. The size is only calculated if metrics
+     * are being collected.
+     */
+    public void markResponse(Object response) {
+      if (this != NULL_TABLE_METRICS && response instanceof MessageLite) {
+        responseSizeHistogram.update(((MessageLite) response).getSerializedSize());
+      }
+    }
+  }
+
   public static class RpcMetrics {
+    private final String prefix;
+    private final ConcurrentMap<String, TableRpcMetrics> tableMetrics = new ConcurrentHashMap<>();
     private final Timer operationTimer;
     private final Timer rpcTimer;
     private final Meter retryMeter;
@@ -45,6 +117,7 @@ public interface BigtableAsyncRpc<REQUEST, RESPONSE> {
     public static RpcMetrics createRpcMetrics(MethodDescriptor<?, ?> descriptor) {
       String prefix = "grpc.method." + descriptor.getFullMethodName().split("/")[1];
       return new RpcMetrics(
+          prefix,
           BigtableClientMetrics.timer(MetricLevel.Info, prefix + ".operation.latency"),
           BigtableClientMetrics.timer(MetricLevel.Debug, prefix + ".rpc.latency"),
           BigtableClientMetrics.meter(MetricLevel.Info, prefix + ".retries.performed"),
@@ -52,8 +125,9 @@ public interface BigtableAsyncRpc<REQUEST, RESPONSE> {
           BigtableClientMetrics.meter(MetricLevel.Info, prefix + ".retries.exhausted"));
     }
 
-    private RpcMetrics(Timer operationTimer, Timer rpcTimer, Meter retryCounter,
+    private RpcMetrics(String prefix, Timer operationTimer, Timer rpcTimer, Meter retryCounter,
         Meter failureCounter, Meter retriesExhastedCounter) {
+      this.prefix = prefix;
       this.operationTimer = operationTimer;
       this.rpcTimer = rpcTimer;
       this.retryMeter = retryCounter;
@@ -80,6 +154,31 @@ public interface BigtableAsyncRpc<REQUEST, RESPONSE> {
     public void markRetriesExhasted() {
       retriesExhastedMeter.mark();
     }
+
+    /**
+     * Gets the {@link TableRpcMetrics} for a table. If no metrics are being collected, a
+     * {@link TableRpcMetrics} that does nothing is returned.
+     *
+     * @param tableName the full table name of the request, which may be null.
+     * @return a {@link TableRpcMetrics} for the table.
+     */
+    public TableRpcMetrics getTableRpcMetrics(String tableName) {
+      if (tableName == null || BigtableClientMetrics
+          .getMetricRegistry(MetricLevel.Info) == MetricRegistry.NULL_METRICS_REGISTRY) {
+        return TableRpcMetrics.NULL_TABLE_METRICS;
+      }
+      String tableDimension = BigtableClientMetrics.tableDimension(tableName);
+      TableRpcMetrics metrics = tableMetrics.get(tableDimension);
+      if (metrics == null) {
+        TableRpcMetrics newMetrics =
+            new TableRpcMetrics(prefix + ".table." + tableDimension);
+        metrics = tableMetrics.putIfAbsent(tableDimension, newMetrics);
+        if (metrics == null) {
+          metrics = newMetrics;
+        }
+      }
+      return metrics;
+    }
   }
 
   /**
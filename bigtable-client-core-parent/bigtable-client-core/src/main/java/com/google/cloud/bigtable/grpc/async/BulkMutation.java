@@ -27,7 +27,9 @@ import com.google.cloud.bigtable.config.BulkOptions;
 import com.google.cloud.bigtable.config.Logger;
 import com.google.cloud.bigtable.grpc.BigtableDataClient;
 import com.google.cloud.bigtable.grpc.BigtableTableName;
+import com.google.cloud.bigtable.grpc.EncodedMutateRowsClient;
 import com.google.cloud.bigtable.metrics.BigtableClientMetrics;
+import com.google.cloud.bigtable.metrics.Histogram;
 import com.google.cloud.bigtable.metrics.Meter;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
@@ -37,15 +39,24 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import com.google.protobuf.Any;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.rpc.Status;
 
 import io.grpc.StatusRuntimeException;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -55,6 +66,15 @@ import java.util.concurrent.TimeUnit;
  * MutateRowsRequest}. This class is not thread safe, and requires calling classes to make it thread
  * safe.
  *
+ * <p>If {@link BulkOptions#useEncodedMutations()} is set and the client is an
+ * {@link EncodedMutateRowsClient}, entries are serialized as they are added, and each batch is sent
+ * as an {@link EncodedMutateRowsRequest}. {@link #add(EncodedEntry)} then
+ * writes entries straight into the batch's buffer.
+ *
+ * <p>If {@link BulkOptions#coalesceMutations()} is set, the mutations of an entry for a row that
+ * already has an entry in the current batch are appended to that entry, so a batch has one entry
+ * per row. Each call to {@link #add(MutateRowsRequest.Entry)} still gets its own future.
+ *
  * @author sduskis
  * @version $Id: $Id
  */
@@ -90,6 +110,21 @@ public class BulkMutation {
     }
   }
 
+  /**
+   * Parses an {@link EncodedEntry}, for batches that are sent as {@link MutateRowsRequest}s.
+   */
+  private static MutateRowsRequest.Entry parse(EncodedEntry entry) {
+    byte[] bytes = new byte[entry.getSerializedSize()];
+    try {
+      entry.writeTo(CodedOutputStream.newInstance(bytes));
+      return MutateRowsRequest.Entry.parseFrom(bytes);
+    } catch (InvalidProtocolBufferException e) {
+      throw new IllegalArgumentException("Invalid entry", e);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not serialize the entry", e);
+    }
+  }
+
   private static Set<Integer> getIndexes(List<Entry> entries) {
     Set<Integer> indexes = new HashSet<>(entries.size());
     for (Entry entry : entries) {
@@ -116,6 +151,16 @@ public class BulkMutation {
     final MutateRowsRequest.Builder builder =
         MutateRowsRequest.newBuilder().setTableName(tableName);
 
+    // Only used if the batch is sent as an EncodedMutateRowsRequest.
+    @VisibleForTesting
+    final EncodedMutateRowsRequest.Builder encodedBuilder =
+        useEncodedMutations ? EncodedMutateRowsRequest.newBuilder(tableName) : null;
+    private EncodedMutateRowsRequest encodedRequest;
+
+    // The index of the entry of each row, if mutations to the same row are coalesced.
+    private final Map<ByteString, Integer> rowIndexes =
+        coalesceMutations && !useEncodedMutations ? new HashMap<ByteString, Integer>() : null;
+
     private ListenableFuture<List<MutateRowsResponse>> mutateRowsFuture;
     private ScheduledFuture<?> stalenessFuture;
     private long approximateByteSize = 0l;
@@ -136,26 +181,80 @@ public class BulkMutation {
      */
     private ListenableFuture<MutateRowResponse> add(MutateRowsRequest.Entry entry) {
       Preconditions.checkNotNull(entry);
+      if (rowIndexes != null) {
+        return coalesce(entry);
+      }
+      if (encodedBuilder != null) {
+        encodedBuilder.addEntry(entry);
+      } else {
+        builder.addEntries(entry);
+      }
+      return addFuture(entry.getSerializedSize(), entry.getMutationsCount());
+    }
+
+    /**
+     * Appends the mutations of the entry to the entry of an earlier mutation to the same row, or
+     * adds the entry if there is none. Each caller gets its own future.
+     */
+    private ListenableFuture<MutateRowResponse> coalesce(MutateRowsRequest.Entry entry) {
+      Integer index = rowIndexes.get(entry.getRowKey());
+      if (index == null) {
+        rowIndexes.put(entry.getRowKey(), futures.size());
+        builder.addEntries(entry);
+        // Cancelling the future of one mutation must not affect the other mutations of the row.
+        return Futures.nonCancellationPropagating(
+          addFuture(entry.getSerializedSize(), entry.getMutationsCount()));
+      }
+      builder.getEntriesBuilder(index).addAllMutations(entry.getMutationsList());
+      mutationMeter.mark();
+      coalescedMeter.mark();
+      approximateByteSize += entry.getSerializedSize()
+          - CodedOutputStream
+              .computeBytesSize(MutateRowsRequest.Entry.ROW_KEY_FIELD_NUMBER, entry.getRowKey());
+      numberOfMutations += entry.getMutationsCount();
+      return Futures.nonCancellationPropagating(futures.get(index));
+    }
+
+    /**
+     * @return true if a mutation to the row would be added to an existing entry.
+     */
+    private boolean canCoalesce(ByteString rowKey) {
+      return rowIndexes != null && rowIndexes.containsKey(rowKey);
+    }
+
+    /**
+     * Adds an {@link EncodedEntry}. See {@link #add(MutateRowsRequest.Entry)}.
+     */
+    private ListenableFuture<MutateRowResponse> add(EncodedEntry entry) {
+      Preconditions.checkNotNull(entry);
+      if (encodedBuilder != null) {
+        encodedBuilder.addEntry(entry);
+      } else {
+        builder.addEntries(parse(entry));
+      }
+      return addFuture(entry.getSerializedSize(), entry.getMutationsCount());
+    }
+
+    private ListenableFuture<MutateRowResponse> addFuture(int entrySize, int mutationsCount) {
       SettableFuture<MutateRowResponse> future = SettableFuture.create();
       mutationMeter.mark();
       futures.add(future);
-      builder.addEntries(entry);
-      approximateByteSize += entry.getSerializedSize();
-      numberOfMutations += entry.getMutationsCount();
+      approximateByteSize += entrySize;
+      numberOfMutations += mutationsCount;
       return future;
     }
 
-    private boolean wouldBeFull(MutateRowsRequest.Entry entry) {
-      boolean hitMutationMax = numberOfMutations + entry.getMutationsCount() > MAX_NUMBER_OF_MUTATIONS;
+    private boolean wouldBeFull(int entrySize, int mutationsCount, boolean newRow) {
+      boolean hitMutationMax = numberOfMutations + mutationsCount > MAX_NUMBER_OF_MUTATIONS;
       if (hitMutationMax) {
         LOG.debug(
             "Would overflow maximum number of mutations, current = %d, adding = %d",
             numberOfMutations,
-            entry.getMutationsCount());
+            mutationsCount);
       }
 
-      return getRequestCount() + 1 > maxRowKeyCount
-          || (approximateByteSize + entry.getSerializedSize() > maxRequestSize)
+      return (newRow && getRequestCount() + 1 > maxRowKeyCount)
+          || (approximateByteSize + entrySize > maxRequestSize)
           || hitMutationMax;
     }
 
@@ -168,16 +267,33 @@ public class BulkMutation {
       Futures.addCallback(bulkFuture, new FutureCallback<List<MutateRowsResponse>>() {
         @Override
         public void onSuccess(List<MutateRowsResponse> result) {
-          handleResult(result);
+          try {
+            handleResult(result);
+          } finally {
+            releaseEncodedRequest();
+          }
         }
 
         @Override
         public void onFailure(Throwable t) {
-          setFailure(t);
+          try {
+            setFailure(t);
+          } finally {
+            // A cancelled operation may still have a retry scheduled, which would read the buffer.
+            if (!(t instanceof CancellationException)) {
+              releaseEncodedRequest();
+            }
+          }
         }
       }, MoreExecutors.directExecutor());
     }
 
+    private void releaseEncodedRequest() {
+      if (encodedRequest != null) {
+        encodedRequest.release();
+      }
+    }
+
     @VisibleForTesting
     synchronized void handleResult(List<MutateRowsResponse> results) {
       if (futures.isEmpty()) {
@@ -250,8 +366,14 @@ public class BulkMutation {
       }
       Preconditions.checkState(!completionFuture.isDone(), "The Batch was already run");
       try {
-        MutateRowsRequest request = builder.build();
-        mutateRowsFuture = client.mutateRowsAsync(request);
+        batchSizeHistogram.update(approximateByteSize);
+        batchEntryCountHistogram.update(getRequestCount());
+        if (encodedBuilder != null) {
+          encodedRequest = encodedBuilder.build();
+          mutateRowsFuture = ((EncodedMutateRowsClient) client).mutateRowsAsync(encodedRequest);
+        } else {
+          mutateRowsFuture = client.mutateRowsAsync(builder.build());
+        }
         lastRpcSentTimeNanos = clock.nanoTime();
       } catch (Throwable e) {
         mutateRowsFuture = Futures.<List<MutateRowsResponse>> immediateFailedFuture(e);
@@ -344,8 +466,14 @@ public class BulkMutation {
   private final int maxRowKeyCount;
   private final long maxRequestSize;
   private final long autoflushMs;
+  private final boolean useEncodedMutations;
+  private final boolean coalesceMutations;
+  private final Meter coalescedMeter =
+      BigtableClientMetrics.meter(MetricLevel.Info, "bulk-mutator.mutations.coalesced");
   private final Meter batchMeter =
       BigtableClientMetrics.meter(MetricLevel.Info, "bulk-mutator.batch.meter");
+  private final Histogram batchSizeHistogram;
+  private final Histogram batchEntryCountHistogram;
 
   @VisibleForTesting
   NanoClock clock = NanoClock.SYSTEM;
@@ -382,6 +510,17 @@ public class BulkMutation {
     this.maxRowKeyCount = bulkOptions.getBulkMaxRowKeyCount();
     this.maxRequestSize = bulkOptions.getBulkMaxRequestSize();
     this.autoflushMs = bulkOptions.getAutoflushMs();
+    this.useEncodedMutations =
+        bulkOptions.useEncodedMutations() && client instanceof EncodedMutateRowsClient;
+    this.coalesceMutations = bulkOptions.coalesceMutations();
+
+    // Used to size bulkMaxRequestSize and bulkMaxRowKeyCount for each table.
+    String tablePrefix =
+        "bulk-mutator.table." + BigtableClientMetrics.tableDimension(this.tableName);
+    this.batchSizeHistogram =
+        BigtableClientMetrics.histogram(MetricLevel.Info, tablePrefix + ".batch.bytes");
+    this.batchEntryCountHistogram =
+        BigtableClientMetrics.histogram(MetricLevel.Info, tablePrefix + ".batch.entries");
   }
 
   public ListenableFuture<MutateRowResponse> add(MutateRowRequest request) {
@@ -399,12 +538,80 @@ public class BulkMutation {
    *     SettableFuture is set.
    */
   public synchronized ListenableFuture<MutateRowResponse> add(MutateRowsRequest.Entry entry) {
+    return add(entry, null);
+  }
+
+  /**
+   * Adds a {@link com.google.bigtable.v2.MutateRowsRequest.Entry} like
+   * {@link #add(MutateRowsRequest.Entry)}, but if the entry fills the current batch, the full batch
+   * is sent on the sendExecutor instead of on the calling thread. Sending a batch may block until
+   * the {@link ResourceLimiter} has room for it.
+   *
+   * @param entry The {@link com.google.bigtable.v2.MutateRowsRequest.Entry} to add
+   * @param sendExecutor the {@link Executor} on which to send a full batch.
+   * @return a {@link com.google.common.util.concurrent.SettableFuture} that will be populated when
+   *     the {@link MutateRowsResponse} returns from the server.
+   */
+  public synchronized ListenableFuture<MutateRowResponse> add(MutateRowsRequest.Entry entry,
+      Executor sendExecutor) {
     Preconditions.checkNotNull(entry, "Request null");
     Preconditions.checkArgument(!entry.getRowKey().isEmpty(), "Request has an empty rowkey");
 
+    boolean newRow = currentBatch == null || !currentBatch.canCoalesce(entry.getRowKey());
+    boolean didSend =
+        prepareBatch(entry.getSerializedSize(), entry.getMutationsCount(), newRow, sendExecutor);
+    ListenableFuture<MutateRowResponse> future = currentBatch.add(entry);
+    scheduleFlush(didSend);
+    return future;
+  }
+
+  /**
+   * Adds an {@link EncodedEntry}, which is written directly into the buffer of the batch if
+   * {@link BulkOptions#useEncodedMutations()} is set. The entry must have a row key.
+   *
+   * @param entry The {@link EncodedEntry} to add
+   * @return a {@link com.google.common.util.concurrent.SettableFuture} that will be populated when
+   *     the {@link MutateRowsResponse} returns from the server.
+   */
+  public synchronized ListenableFuture<MutateRowResponse> add(EncodedEntry entry) {
+    return add(entry, null);
+  }
+
+  /**
+   * Adds an {@link EncodedEntry} like {@link #add(EncodedEntry)}, but if the entry fills the
+   * current batch, the full batch is sent on the sendExecutor instead of on the calling thread.
+   *
+   * @param entry The {@link EncodedEntry} to add
+   * @param sendExecutor the {@link Executor} on which to send a full batch.
+   * @return a {@link com.google.common.util.concurrent.SettableFuture} that will be populated when
+   *     the {@link MutateRowsResponse} returns from the server.
+   */
+  public synchronized ListenableFuture<MutateRowResponse> add(EncodedEntry entry,
+      Executor sendExecutor) {
+    Preconditions.checkNotNull(entry, "Request null");
+
+    boolean didSend =
+        prepareBatch(entry.getSerializedSize(), entry.getMutationsCount(), true, sendExecutor);
+    ListenableFuture<MutateRowResponse> future = currentBatch.add(entry);
+    scheduleFlush(didSend);
+    return future;
+  }
+
+  /**
+   * Sends the current batch if the entry would not fit into it, and creates a new batch if needed.
+   * The batch is sent on the sendExecutor if there is one, or on the calling thread otherwise.
+   *
+   * @return true if a batch was sent.
+   */
+  private boolean prepareBatch(int entrySize, int mutationsCount, boolean newRow,
+      Executor sendExecutor) {
     boolean didSend = false;
-    if (currentBatch != null && currentBatch.wouldBeFull(entry)) {
-      sendUnsent();
+    if (currentBatch != null && currentBatch.wouldBeFull(entrySize, mutationsCount, newRow)) {
+      if (sendExecutor == null) {
+        sendUnsent();
+      } else {
+        sendUnsent(sendExecutor);
+      }
       if (scheduledFlush != null) {
         scheduledFlush.cancel(true);
         scheduledFlush = null;
@@ -416,8 +623,10 @@ public class BulkMutation {
       batchMeter.mark();
       currentBatch = new Batch();
     }
+    return didSend;
+  }
 
-    ListenableFuture<MutateRowResponse> future = currentBatch.add(entry);
+  private void scheduleFlush(boolean didSend) {
     if (!didSend) {
       // TODO (sduskis): enable flush by default.
       // If autoflushing is enabled and there is pending data then schedule a flush if one hasn't been scheduled
@@ -434,8 +643,6 @@ public class BulkMutation {
         }, autoflushMs, TimeUnit.MILLISECONDS);
       }
     }
-
-    return future;
   }
 
   /**
@@ -457,6 +664,27 @@ public class BulkMutation {
     }
   }
 
+  /**
+   * Detaches the current batch and sends it on the executor. The batch is registered right away, so
+   * that {@link #flush()} waits for it. If the executor rejects the batch, it is sent on the
+   * calling thread.
+   */
+  private void sendUnsent(Executor sendExecutor) {
+    final Batch batch = currentBatch;
+    currentBatch = null;
+    operationAccountant.registerOperation(batch.completionFuture);
+    try {
+      sendExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          batch.run();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      batch.run();
+    }
+  }
+
   /**
    * @return false if there are any outstanding {@link MutateRowRequest} that still need to be sent.
    */
@@ -18,11 +18,9 @@ package com.google.cloud.bigtable.grpc.async;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import com.google.common.base.Preconditions;
 import com.google.bigtable.v2.ReadRowsRequest;
@@ -31,9 +29,10 @@ import com.google.bigtable.v2.RowSet;
 import com.google.cloud.bigtable.config.Logger;
 import com.google.cloud.bigtable.grpc.BigtableDataClient;
 import com.google.cloud.bigtable.grpc.BigtableTableName;
+import com.google.cloud.bigtable.grpc.KeyRangeIndex;
 import com.google.cloud.bigtable.grpc.scanner.FlatRow;
-import com.google.cloud.bigtable.grpc.scanner.ResultScanner;
 import com.google.cloud.bigtable.util.ByteStringComparator;
+import com.google.cloud.bigtable.util.RowSetUtil;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
@@ -41,6 +40,9 @@ import com.google.common.collect.Multimap;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import com.google.protobuf.ByteString;
+
+import io.grpc.stub.StreamObserver;
+
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -48,6 +50,20 @@ import java.util.concurrent.ExecutorService;
  * {@link com.google.bigtable.v2.ReadRowsRequest} with a {@link com.google.bigtable.v2.RowSet} which will result in fewer round trips. This class
  * is not thread safe, and requires calling classes to make it thread safe.
  *
+ * <p>Batches are sent asynchronously, and the futures are resolved on the gRPC callback thread as
+ * rows arrive, so no threads are held while the RPCs are in flight. The number of keys per RPC is
+ * chosen by an {@link AdaptiveBatchSizer}.
+ *
+ * <p>Runs of densely clustered keys, such as sequential or time-bucketed keys, are requested as a
+ * single {@link com.google.bigtable.v2.RowRange} instead of one key at a time, which keeps the
+ * request small and lets the server read the run sequentially. Rows in those ranges that were not
+ * requested are discarded. See {@link RowSetUtil#collapseKeys(List, long, int)}.
+ *
+ * <p>When a {@link KeyRangeIndex} is available, the keys are grouped by tablet before they are
+ * split into RPCs, so that the keys of a tablet are only spread over several RPCs when they do not
+ * fit in one batch. Adjacent tablets with few keys share an RPC, up to the batch size. Until the
+ * index has been loaded, keys are split in key order only.
+ *
  * @author sduskis
  * @version $Id: $Id
  */
@@ -56,19 +72,19 @@ public class BulkRead {
   /** Constant <code>LOG</code> */
   protected static final Logger LOG = new Logger(BulkRead.class);
 
-  private static final Comparator<Entry<ByteString, SettableFuture<FlatRow>>> ENTRY_SORTER =
-      new Comparator<Entry<ByteString, SettableFuture<FlatRow>>>() {
-        @Override
-        public int compare(Entry<ByteString, SettableFuture<FlatRow>> o1,
-            Entry<ByteString, SettableFuture<FlatRow>> o2) {
-          return ByteStringComparator.INSTANCE.compare(o1.getKey(), o2.getKey());
-        }
-      };
+  /**
+   * The maximum distance between two adjacent keys that are requested with a range. At most one
+   * unrequested key of the same length can be between them.
+   */
+  static final long MAX_KEY_GAP = 2;
+
+  /** The minimum number of adjacent keys that are requested with a range. */
+  static final int MIN_RUN_LENGTH = 4;
 
   private final BigtableDataClient client;
-  private final int batchSizes;
-  private final ExecutorService threadPool;
+  private final AdaptiveBatchSizer batchSizer;
   private final String tableName;
+  private final KeyRangeIndex keyRangeIndex;
 
   private final Map<RowFilter, Batch> batches;
 
@@ -76,15 +92,43 @@ public class BulkRead {
    * Constructor for BulkRead.
    * @param client a {@link BigtableDataClient} object.
    * @param tableName a {@link BigtableTableName} object.
-   * @param batchSizes The number of keys to lookup per RPC.
-   * @param threadPool the {@link ExecutorService} to execute the batched reads on
+   * @param batchSizes The maximum number of keys to lookup per RPC.
+   * @param threadPool unused, since batches no longer block a thread.
+   * @deprecated use {@link #BulkRead(BigtableDataClient, BigtableTableName, AdaptiveBatchSizer)}.
    */
+  @Deprecated
   public BulkRead(BigtableDataClient client, BigtableTableName tableName, int batchSizes,
       ExecutorService threadPool) {
+    this(client, tableName, new AdaptiveBatchSizer(batchSizes));
+  }
+
+  /**
+   * Constructor for BulkRead.
+   * @param client a {@link BigtableDataClient} object.
+   * @param tableName a {@link BigtableTableName} object.
+   * @param batchSizer an {@link AdaptiveBatchSizer} that determines the number of keys per RPC.
+   *     The sizer can be shared across {@link BulkRead}s of the same table.
+   */
+  public BulkRead(BigtableDataClient client, BigtableTableName tableName,
+      AdaptiveBatchSizer batchSizer) {
+    this(client, tableName, batchSizer, null);
+  }
+
+  /**
+   * Constructor for BulkRead.
+   * @param client a {@link BigtableDataClient} object.
+   * @param tableName a {@link BigtableTableName} object.
+   * @param batchSizer an {@link AdaptiveBatchSizer} that determines the number of keys per RPC.
+   *     The sizer can be shared across {@link BulkRead}s of the same table.
+   * @param keyRangeIndex a {@link KeyRangeIndex} of the table's tablets, used to align RPCs to
+   *     tablet boundaries. May be null.
+   */
+  public BulkRead(BigtableDataClient client, BigtableTableName tableName,
+      AdaptiveBatchSizer batchSizer, KeyRangeIndex keyRangeIndex) {
     this.client = client;
     this.tableName = tableName.toString();
-    this.batchSizes = batchSizes;
-    this.threadPool = threadPool;
+    this.batchSizer = Preconditions.checkNotNull(batchSizer);
+    this.keyRangeIndex = keyRangeIndex;
     this.batches = new HashMap<>();
   }
 
@@ -119,7 +163,7 @@ public class BulkRead {
     for (Batch batch : batches.values()) {
       Collection<Batch> subbatches = batch.split();
       for (Batch miniBatch : subbatches) {
-        threadPool.submit(miniBatch);
+        miniBatch.run();
       }
     }
     batches.clear();
@@ -139,6 +183,7 @@ public class BulkRead {
      * interface of {@link BigtableDataClient#readRowsAsync(ReadRowsRequest)}.
      */
     private final Multimap<ByteString, SettableFuture<FlatRow>> futures;
+    private boolean hasRanges = false;
 
     public Batch(RowFilter filter) {
       this.filter = filter;
@@ -146,20 +191,30 @@ public class BulkRead {
     }
 
     public Collection<Batch> split() {
-      if (futures.values().size() <= batchSizes) {
+      int keyCount = futures.keySet().size();
+      int batchSize = batchSizer.getBatchSize(keyCount);
+      if (keyCount <= batchSize) {
         return ImmutableList.of(this);
       }
-      List<Entry<ByteString, SettableFuture<FlatRow>>> toSplit =
-          new ArrayList<>(futures.entries());
-      Collections.sort(toSplit, ENTRY_SORTER);
-      
+      List<ByteString> splitKeys = keyRangeIndex == null
+          ? Collections.<ByteString> emptyList()
+          : keyRangeIndex.getSplitKeys();
+      List<ByteString> toSplit = new ArrayList<>(futures.keySet());
+      Collections.sort(toSplit, ByteStringComparator.INSTANCE);
+
       List<Batch> batches = new ArrayList<>();
-      for (List<Entry<ByteString, SettableFuture<FlatRow>>> entries : Iterables.partition(toSplit, batchSizes)) {
-        Batch batch = new Batch(filter);
-        for (Entry<ByteString, SettableFuture<FlatRow>> entry : entries) {
-          batch.futures.put(entry.getKey(), entry.getValue());
+      Batch batch = null;
+      for (List<ByteString> tabletKeys : groupByTablet(toSplit, splitKeys)) {
+        for (List<ByteString> keys : Iterables.partition(tabletKeys, batchSize)) {
+          // Only start a new RPC if the keys do not fit with those of the previous tablets.
+          if (batch == null || batch.futures.keySet().size() + keys.size() > batchSize) {
+            batch = new Batch(filter);
+            batches.add(batch);
+          }
+          for (ByteString key : keys) {
+            batch.futures.putAll(key, futures.get(key));
+          }
         }
-        batches.add(batch);
       }
       return batches;
     }
@@ -171,45 +226,109 @@ public class BulkRead {
     }
 
     /**
-     * Sends the requests and resolves the futures using the response.
+     * Sends the requests and resolves the futures as the rows stream in. This method does not
+     * block on the response; the futures are completed on the gRPC callback thread.
      */
     @Override
     public void run() {
       try {
-        ResultScanner<FlatRow> scanner = client.readFlatRows(ReadRowsRequest.newBuilder()
+        final int keyCount = futures.keySet().size();
+        ReadRowsRequest request = ReadRowsRequest.newBuilder()
             .setTableName(tableName)
             .setFilter(filter)
-            .setRows(RowSet.newBuilder().addAllRowKeys(futures.keys()).build())
-            .build()
-        );
-        while (true) {
-          FlatRow row = scanner.next();
-          if (row == null) {
-            break;
+            .setRows(createRowSet())
+            .build();
+        final long start = System.nanoTime();
+        client.readFlatRows(request, new StreamObserver<FlatRow>() {
+          @Override
+          public void onNext(FlatRow row) {
+            handleRow(row);
           }
-          Collection<SettableFuture<FlatRow>> rowFutures = futures.get(row.getRowKey());
-          if (rowFutures != null) {
-            for (SettableFuture<FlatRow> rowFuture : rowFutures) {
-              rowFuture.set(row);
-            }
-            futures.removeAll(row.getRowKey());
-          } else {
-            LOG.warn("Found key: %s, but it was not in the original request.", row.getRowKey());
+
+          @Override
+          public void onError(Throwable t) {
+            setException(t);
           }
-        }
-        // Deal with remaining/missing keys
-        for (Entry<ByteString, SettableFuture<FlatRow>> entry : futures.entries()) {
-          entry.getValue().set(null);
-        }
+
+          @Override
+          public void onCompleted() {
+            batchSizer.update(keyCount, System.nanoTime() - start);
+            setMissingRows();
+          }
+        });
       } catch (Throwable e) {
-        for (Entry<ByteString, SettableFuture<FlatRow>> entry : futures.entries()) {
-          entry.getValue().setException(e);
-        }
+        setException(e);
+      }
+    }
+
+    private synchronized RowSet createRowSet() {
+      List<ByteString> keys = new ArrayList<>(futures.keySet());
+      Collections.sort(keys, ByteStringComparator.INSTANCE);
+      RowSet rowSet = RowSetUtil.collapseKeys(keys, MAX_KEY_GAP, MIN_RUN_LENGTH);
+      hasRanges = rowSet.getRowRangesCount() > 0;
+      return rowSet;
+    }
+
+    private synchronized void handleRow(FlatRow row) {
+      Collection<SettableFuture<FlatRow>> rowFutures = futures.removeAll(row.getRowKey());
+      if (rowFutures.isEmpty() && !hasRanges) {
+        LOG.warn("Found key: %s, but it was not in the original request.", row.getRowKey());
+      }
+      for (SettableFuture<FlatRow> rowFuture : rowFutures) {
+        rowFuture.set(row);
+      }
+    }
+
+    /**
+     * Deal with remaining/missing keys.
+     */
+    private synchronized void setMissingRows() {
+      for (SettableFuture<FlatRow> future : futures.values()) {
+        future.set(null);
+      }
+      futures.clear();
+    }
+
+    private synchronized void setException(Throwable t) {
+      for (SettableFuture<FlatRow> future : futures.values()) {
+        future.setException(t);
+      }
+      futures.clear();
+    }
+  }
+
+  /**
+   * Groups sorted keys by the tablet that serves them.
+   *
+   * @param sortedKeys row keys, sorted.
+   * @param splitKeys the split keys from {@link KeyRangeIndex#getSplitKeys()}.
+   * @return the keys of every tablet with at least one key, in key order.
+   */
+  static List<List<ByteString>> groupByTablet(List<ByteString> sortedKeys,
+      List<ByteString> splitKeys) {
+    if (splitKeys.isEmpty()) {
+      return Collections.singletonList(sortedKeys);
+    }
+    List<List<ByteString>> groups = new ArrayList<>();
+    int start = 0;
+    int tablet = KeyRangeIndex.getTabletIndex(splitKeys, sortedKeys.get(0));
+    for (int i = 1; i < sortedKeys.size(); i++) {
+      // Keys are sorted, so the tablet can only change once the key reaches the next split key.
+      if (tablet < splitKeys.size()
+          && ByteStringComparator.INSTANCE.compare(sortedKeys.get(i), splitKeys.get(tablet)) >= 0) {
+        groups.add(sortedKeys.subList(start, i));
+        start = i;
+        tablet = KeyRangeIndex.getTabletIndex(splitKeys, sortedKeys.get(i));
       }
     }
+    groups.add(sortedKeys.subList(start, sortedKeys.size()));
+    return groups;
   }
 
+  /**
+   * @return the number of keys that are currently sent per RPC.
+   */
   public int getBatchSizes() {
-    return batchSizes;
+    return batchSizer.getBatchSize();
   }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc.async;
+
+import java.io.IOException;
+
+import com.google.protobuf.CodedOutputStream;
+
+/**
+ * A {@link com.google.bigtable.v2.MutateRowsRequest.Entry} that writes itself in protobuf wire
+ * format. This lets a client serialize its own mutation objects directly into an
+ * {@link EncodedMutateRowsRequest}, without building {@link com.google.bigtable.v2.Mutation}s
+ * first.
+ *
+ * @author sduskis
+ */
+public interface EncodedEntry {
+
+  /**
+   * @return the number of bytes that {@link #writeTo(CodedOutputStream)} writes.
+   */
+  int getSerializedSize();
+
+  /**
+   * @return the number of {@link com.google.bigtable.v2.Mutation}s in the entry.
+   */
+  int getMutationsCount();
+
+  /**
+   * @return true if every mutation of the entry is a SetCell with an explicit timestamp, so the
+   *         entry can be safely retried.
+   */
+  boolean isIdempotent();
+
+  /**
+   * Writes the fields of the entry, without a tag or length prefix, as
+   * {@link com.google.bigtable.v2.MutateRowsRequest.Entry#writeTo(CodedOutputStream)} would.
+   *
+   * @param output the {@link CodedOutputStream} to write to.
+   * @throws IOException if the entry could not be written.
+   */
+  void writeTo(CodedOutputStream output) throws IOException;
+}
@@ -0,0 +1,558 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc.async;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.bigtable.v2.MutateRowsRequest;
+import com.google.bigtable.v2.Mutation;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.WireFormat;
+
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor.Marshaller;
+import io.grpc.Status;
+
+/**
+ * A {@link MutateRowsRequest} whose entries are kept in protobuf wire format. Entries are
+ * serialized once, when they are added to the {@link Builder}, into a single buffer that is taken
+ * from a pool and returned to it by {@link #release()}. {@link #MARSHALLER} sends the buffer as is,
+ * so no {@link MutateRowsRequest.Entry} or {@link Mutation} objects need to exist for entries that
+ * are written by an {@link EncodedEntry}. Requests that retry a subset of the entries share the
+ * buffer of the original request.
+ *
+ * @author sduskis
+ */
+public final class EncodedMutateRowsRequest {
+
+  /**
+   * A {@link Marshaller} that writes an {@link EncodedMutateRowsRequest} in the wire format of a
+   * {@link MutateRowsRequest}.
+   */
+  public static final Marshaller<EncodedMutateRowsRequest> MARSHALLER =
+      new Marshaller<EncodedMutateRowsRequest>() {
+        @Override
+        public InputStream stream(EncodedMutateRowsRequest request) {
+          return request.new RequestStream();
+        }
+
+        @Override
+        public EncodedMutateRowsRequest parse(InputStream stream) {
+          try {
+            return fromRequest(MutateRowsRequest.parseFrom(stream));
+          } catch (IOException e) {
+            throw Status.INTERNAL.withDescription("Invalid MutateRowsRequest").withCause(e)
+                .asRuntimeException();
+          }
+        }
+      };
+
+  @VisibleForTesting
+  static final int MIN_BUFFER_SIZE = 16 * 1024;
+
+  // Larger buffers are left to the garbage collector, so that an occasional huge request does not
+  // pin its memory.
+  @VisibleForTesting
+  static final int MAX_POOLED_BUFFER_SIZE = 8 * 1024 * 1024;
+
+  private static final int MAX_POOLED_BUFFERS = 32;
+
+  private static final BlockingQueue<byte[]> BUFFER_POOL =
+      new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+
+  /**
+   * @return the size of the tag and the length of an entry.
+   */
+  private static int getPrefixSize(int entrySize) {
+    return CodedOutputStream.computeTagSize(MutateRowsRequest.ENTRIES_FIELD_NUMBER)
+        + CodedOutputStream.computeUInt32SizeNoTag(entrySize);
+  }
+
+  private static byte[] takeBuffer(int minSize) {
+    byte[] buffer = BUFFER_POOL.poll();
+    if (buffer == null || buffer.length < minSize) {
+      buffer = new byte[Math.max(minSize, MIN_BUFFER_SIZE)];
+    }
+    return buffer;
+  }
+
+  /**
+   * Checks whether a {@link MutateRowsRequest.Entry} can be safely retried. This is the same rule
+   * as {@link com.google.cloud.bigtable.grpc.BigtableDataGrpcClient} uses for
+   * {@link MutateRowsRequest}s.
+   */
+  private static boolean isIdempotent(MutateRowsRequest.Entry entry) {
+    for (Mutation mutation : entry.getMutationsList()) {
+      if (mutation.getSetCell().getTimestampMicros() <= 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * <p>newBuilder.</p>
+   *
+   * @param tableName the full name of the table.
+   * @return a new {@link Builder}.
+   */
+  public static Builder newBuilder(String tableName) {
+    return new Builder(tableName);
+  }
+
+  /**
+   * Encodes the entries of a {@link MutateRowsRequest}.
+   *
+   * @param request a {@link MutateRowsRequest}.
+   * @return an {@link EncodedMutateRowsRequest} with the same content.
+   */
+  public static EncodedMutateRowsRequest fromRequest(MutateRowsRequest request) {
+    Builder builder = newBuilder(request.getTableName()).setAppProfileId(request.getAppProfileId());
+    for (MutateRowsRequest.Entry entry : request.getEntriesList()) {
+      builder.addEntry(entry);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Builds an {@link EncodedMutateRowsRequest}. A builder is not thread safe, and can only build
+   * one request.
+   */
+  public static final class Builder {
+    private final String tableName;
+    private String appProfileId = "";
+
+    private byte[] buffer;
+    private CodedOutputStream output;
+    // The position in the buffer at which output starts.
+    private int outputStart;
+
+    private int[] offsets = new int[16];
+    private int[] lengths = new int[16];
+    private boolean[] idempotent = new boolean[16];
+    private int count = 0;
+
+    private Builder(String tableName) {
+      this.tableName = Preconditions.checkNotNull(tableName);
+    }
+
+    /**
+     * <p>setAppProfileId.</p>
+     *
+     * @param appProfileId the app profile of the request.
+     * @return this {@link Builder}.
+     */
+    public Builder setAppProfileId(String appProfileId) {
+      this.appProfileId = Preconditions.checkNotNull(appProfileId);
+      return this;
+    }
+
+    /**
+     * Serializes a {@link MutateRowsRequest.Entry} into the request.
+     *
+     * @param entry a {@link MutateRowsRequest.Entry}.
+     * @return this {@link Builder}.
+     */
+    public Builder addEntry(MutateRowsRequest.Entry entry) {
+      int size = entry.getSerializedSize();
+      try {
+        entry.writeTo(startEntry(size, isIdempotent(entry)));
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not serialize the entry", e);
+      }
+      endEntry(size);
+      return this;
+    }
+
+    /**
+     * Serializes an {@link EncodedEntry} into the request.
+     *
+     * @param entry an {@link EncodedEntry}.
+     * @return this {@link Builder}.
+     */
+    public Builder addEntry(EncodedEntry entry) {
+      int size = entry.getSerializedSize();
+      try {
+        entry.writeTo(startEntry(size, entry.isIdempotent()));
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not serialize the entry", e);
+      }
+      endEntry(size);
+      return this;
+    }
+
+    /**
+     * Writes the tag and the length of an entry, and returns the stream to write its fields to.
+     */
+    private CodedOutputStream startEntry(int size, boolean isIdempotent) throws IOException {
+      Preconditions.checkState(count >= 0, "The request was already built");
+      int position = getPosition();
+      ensureCapacity(position, getPrefixSize(size) + size);
+      if (count == offsets.length) {
+        int newLength = count * 2;
+        offsets = Arrays.copyOf(offsets, newLength);
+        lengths = Arrays.copyOf(lengths, newLength);
+        idempotent = Arrays.copyOf(idempotent, newLength);
+      }
+      offsets[count] = position;
+      idempotent[count] = isIdempotent;
+      output.writeTag(MutateRowsRequest.ENTRIES_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+      output.writeUInt32NoTag(size);
+      return output;
+    }
+
+    private void endEntry(int size) {
+      int end = getPosition();
+      lengths[count] = end - offsets[count];
+      int written = lengths[count] - getPrefixSize(size);
+      Preconditions.checkState(written == size,
+        "Entry size mismatch: expected %s bytes, but %s were written", size, written);
+      count++;
+    }
+
+    private int getPosition() {
+      return output == null ? 0 : outputStart + output.getTotalBytesWritten();
+    }
+
+    private void ensureCapacity(int position, int size) {
+      if (buffer == null) {
+        buffer = takeBuffer(size);
+      } else if (buffer.length - position >= size) {
+        return;
+      } else {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + size));
+      }
+      output = CodedOutputStream.newInstance(buffer, position, buffer.length - position);
+      outputStart = position;
+    }
+
+    /**
+     * @return the number of entries that were added.
+     */
+    public int getEntriesCount() {
+      return Math.max(count, 0);
+    }
+
+    /**
+     * @return the number of bytes of all of the entries that were added.
+     */
+    public int getEntriesSize() {
+      return getPosition();
+    }
+
+    /**
+     * Builds the request. The {@link Builder} can't be used afterwards.
+     *
+     * @return an {@link EncodedMutateRowsRequest}.
+     */
+    public EncodedMutateRowsRequest build() {
+      Preconditions.checkState(count >= 0, "The request was already built");
+      int entryCount = count;
+      count = -1;
+      boolean allIdempotent = true;
+      for (int i = 0; i < entryCount; i++) {
+        allIdempotent &= idempotent[i];
+      }
+      return new EncodedMutateRowsRequest(tableName, appProfileId,
+          buffer == null ? new byte[0] : buffer, Arrays.copyOf(offsets, entryCount),
+          Arrays.copyOf(lengths, entryCount), Arrays.copyOf(idempotent, entryCount),
+          allIdempotent, new AtomicBoolean());
+    }
+  }
+
+  private final String tableName;
+  private final String appProfileId;
+  private final byte[] buffer;
+  private final int[] offsets;
+  private final int[] lengths;
+  private final boolean[] idempotentEntries;
+  private final boolean idempotent;
+  // Shared by a request and the requests that retry its entries.
+  private final AtomicBoolean released;
+
+  // The table name field, which precedes the entries, and the app profile field, which follows
+  // them, in the same order as MutateRowsRequest.writeTo() writes them.
+  private final byte[] header;
+  private final byte[] trailer;
+  private final int serializedSize;
+
+  private EncodedMutateRowsRequest(String tableName, String appProfileId, byte[] buffer,
+      int[] offsets, int[] lengths, boolean[] idempotentEntries, boolean idempotent,
+      AtomicBoolean released) {
+    this.tableName = tableName;
+    this.appProfileId = appProfileId;
+    this.buffer = buffer;
+    this.offsets = offsets;
+    this.lengths = lengths;
+    this.idempotentEntries = idempotentEntries;
+    this.idempotent = idempotent;
+    this.released = released;
+
+    this.header = encodeString(MutateRowsRequest.TABLE_NAME_FIELD_NUMBER, tableName);
+    this.trailer = encodeString(MutateRowsRequest.APP_PROFILE_ID_FIELD_NUMBER, appProfileId);
+
+    int size = header.length + trailer.length;
+    for (int length : lengths) {
+      size += length;
+    }
+    this.serializedSize = size;
+  }
+
+  /**
+   * Encodes a string field, or returns an empty array for an empty string, as proto3 omits
+   * default values.
+   */
+  private static byte[] encodeString(int fieldNumber, String value) {
+    if (value.isEmpty()) {
+      return new byte[0];
+    }
+    byte[] bytes = new byte[CodedOutputStream.computeStringSize(fieldNumber, value)];
+    try {
+      CodedOutputStream.newInstance(bytes).writeString(fieldNumber, value);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not serialize field " + fieldNumber, e);
+    }
+    return bytes;
+  }
+
+  /**
+   * @return the full name of the table.
+   */
+  public String getTableName() {
+    return tableName;
+  }
+
+  /**
+   * @return the app profile of the request, or an empty String for the default app profile.
+   */
+  public String getAppProfileId() {
+    return appProfileId;
+  }
+
+  /**
+   * @return the number of entries in the request.
+   */
+  public int getEntriesCount() {
+    return offsets.length;
+  }
+
+  /**
+   * @return the number of bytes in the wire format of the request.
+   */
+  public int getSerializedSize() {
+    return serializedSize;
+  }
+
+  /**
+   * @return true if all of the entries of the request can be safely retried.
+   */
+  public boolean isIdempotent() {
+    return idempotent;
+  }
+
+  /**
+   * Parses an entry of the request. This is meant for debugging and tests; the entries are not
+   * otherwise parsed on the client.
+   *
+   * @param index the index of the entry.
+   * @return the {@link MutateRowsRequest.Entry} at the index.
+   */
+  public MutateRowsRequest.Entry getEntry(int index) {
+    checkNotReleased();
+    try {
+      CodedInputStream input = CodedInputStream.newInstance(buffer, offsets[index], lengths[index]);
+      input.readTag();
+      return input.readMessage(MutateRowsRequest.Entry.parser(),
+        ExtensionRegistryLite.getEmptyRegistry());
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not parse entry " + index, e);
+    }
+  }
+
+  /**
+   * Parses the request. This is meant for debugging and tests.
+   *
+   * @return a {@link MutateRowsRequest} with the same content.
+   */
+  public MutateRowsRequest toMutateRowsRequest() {
+    MutateRowsRequest.Builder builder = MutateRowsRequest.newBuilder()
+        .setTableName(tableName)
+        .setAppProfileId(appProfileId);
+    for (int i = 0; i < getEntriesCount(); i++) {
+      builder.addEntries(getEntry(i));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Creates a request with a subset of the entries of this request. The new request shares the
+   * buffer of this one.
+   *
+   * @param indices the indices of the entries to keep.
+   * @return a new {@link EncodedMutateRowsRequest}.
+   */
+  public EncodedMutateRowsRequest retainEntries(int[] indices) {
+    int[] newOffsets = new int[indices.length];
+    int[] newLengths = new int[indices.length];
+    boolean[] newIdempotentEntries = new boolean[indices.length];
+    boolean allIdempotent = true;
+    for (int i = 0; i < indices.length; i++) {
+      int index = indices[i];
+      newOffsets[i] = offsets[index];
+      newLengths[i] = lengths[index];
+      newIdempotentEntries[i] = idempotentEntries[index];
+      allIdempotent &= idempotentEntries[index];
+    }
+    return new EncodedMutateRowsRequest(tableName, appProfileId, buffer, newOffsets, newLengths,
+        newIdempotentEntries, allIdempotent, released);
+  }
+
+  /**
+   * Creates a request that is sent with a different app profile. The new request shares the
+   * buffer of this one.
+   *
+   * @param appProfileId the app profile of the new request.
+   * @return a new {@link EncodedMutateRowsRequest}.
+   */
+  public EncodedMutateRowsRequest withAppProfileId(String appProfileId) {
+    return new EncodedMutateRowsRequest(tableName, appProfileId, buffer, offsets, lengths,
+        idempotentEntries, idempotent, released);
+  }
+
+  /**
+   * Returns the buffer to the pool. Neither this request nor any request that shares its buffer
+   * can be used afterwards, so this must only be called once every RPC that sends the request,
+   * including retries, is complete.
+   */
+  public void release() {
+    if (released.compareAndSet(false, true)
+        && buffer.length >= MIN_BUFFER_SIZE && buffer.length <= MAX_POOLED_BUFFER_SIZE) {
+      BUFFER_POOL.offer(buffer);
+    }
+  }
+
+  @VisibleForTesting
+  boolean isReleased() {
+    return released.get();
+  }
+
+  private void checkNotReleased() {
+    Preconditions.checkState(!released.get(), "The request was released");
+  }
+
+  /**
+   * Streams the header, each of the entries and the trailer. gRPC calls
+   * {@link #drainTo(OutputStream)} to copy the request into its own buffers while the message is
+   * sent.
+   */
+  private final class RequestStream extends InputStream implements KnownLength, Drainable {
+    // -1 is the header, offsets.length is the trailer, and other values are entry indices.
+    private int segment = -1;
+    private int segmentPosition = 0;
+    private int remaining = serializedSize;
+
+    RequestStream() {
+      checkNotReleased();
+    }
+
+    private byte[] segmentArray() {
+      if (segment < 0) {
+        return header;
+      }
+      return segment == offsets.length ? trailer : buffer;
+    }
+
+    private int segmentOffset() {
+      return segment < 0 || segment == offsets.length ? 0 : offsets[segment];
+    }
+
+    private int segmentLength() {
+      if (segment < 0) {
+        return header.length;
+      }
+      return segment == offsets.length ? trailer.length : lengths[segment];
+    }
+
+    /**
+     * Moves to the next segment with bytes to read. Only called while bytes remain.
+     */
+    private void advance() {
+      while (segmentPosition == segmentLength()) {
+        segment++;
+        segmentPosition = 0;
+      }
+    }
+
+    @Override
+    public int available() {
+      return remaining;
+    }
+
+    @Override
+    public int read() {
+      if (remaining == 0) {
+        return -1;
+      }
+      advance();
+      int value = segmentArray()[segmentOffset() + segmentPosition] & 0xFF;
+      segmentPosition++;
+      remaining--;
+      return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (remaining == 0) {
+        return len == 0 ? 0 : -1;
+      }
+      int read = 0;
+      while (read < len && remaining > 0) {
+        advance();
+        int toCopy = Math.min(len - read, segmentLength() - segmentPosition);
+        System.arraycopy(segmentArray(), segmentOffset() + segmentPosition, b, off + read, toCopy);
+        segmentPosition += toCopy;
+        remaining -= toCopy;
+        read += toCopy;
+      }
+      return read;
+    }
+
+    @Override
+    public int drainTo(OutputStream target) throws IOException {
+      checkNotReleased();
+      int drained = remaining;
+      while (remaining > 0) {
+        advance();
+        int toCopy = segmentLength() - segmentPosition;
+        target.write(segmentArray(), segmentOffset() + segmentPosition, toCopy);
+        segmentPosition += toCopy;
+        remaining -= toCopy;
+      }
+      return drained;
+    }
+  }
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc.async;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.zip.CRC32;
+
+import com.google.bigtable.v2.MutateRowsRequest;
+import com.google.cloud.bigtable.config.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * An append-only log of {@link MutateRowsRequest.Entry}s, kept in memory-mapped segment files in a
+ * local directory. It holds buffered mutations while the {@link ResourceLimiter} is full, so that
+ * they do not have to be kept on the heap. Entries are read back in the order in which they were
+ * appended.
+ *
+ * <p>An entry stays in the log until it is marked as complete. When a log is opened on a directory
+ * that already has segments, for example after a crash, the entries that were not completed are
+ * read again. Entries are therefore delivered at least once: an entry that was sent, but not
+ * completed before a crash, will be sent again.
+ *
+ * <p>Each segment starts with a header that holds the offset up to which its entries were
+ * completed, followed by records of a length, a CRC32 checksum and a serialized entry. Replay stops
+ * at the first record of a segment that is incomplete or does not match its checksum.
+ *
+ * @author sduskis
+ */
+public class MutationSpillLog implements Closeable {
+
+  private static final Logger LOG = new Logger(MutationSpillLog.class);
+
+  /** The default size of a segment file: 64 MB. */
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private static final int MAGIC = 0x42545350;
+
+  /** A segment's header: the magic number, and the offset up to which entries were completed. */
+  @VisibleForTesting
+  static final int HEADER_SIZE = 8;
+  private static final int COMPLETED_OFFSET_POSITION = 4;
+
+  /** A record's header: the length of the entry, and its checksum. */
+  @VisibleForTesting
+  static final int RECORD_HEADER_SIZE = 8;
+
+  private static final String SEGMENT_PREFIX = "spill-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final String LOCK_FILE_NAME = "spill.lock";
+
+  /**
+   * An entry that was read from the log. {@link #complete()} has to be called once the entry no
+   * longer needs to be replayed, whether or not it was written successfully.
+   */
+  public final class SpilledEntry {
+    private final Segment segment;
+    private final int endOffset;
+    private final MutateRowsRequest.Entry entry;
+    private boolean completed = false;
+
+    private SpilledEntry(Segment segment, int endOffset, MutateRowsRequest.Entry entry) {
+      this.segment = segment;
+      this.endOffset = endOffset;
+      this.entry = entry;
+    }
+
+    /**
+     * @return the {@link MutateRowsRequest.Entry}, or null if it could not be parsed. An entry that
+     *         could not be parsed is already complete.
+     */
+    public MutateRowsRequest.Entry getEntry() {
+      return entry;
+    }
+
+    /**
+     * Marks this entry as complete. The space of a segment is released once all of its entries
+     * are complete.
+     */
+    public void complete() {
+      MutationSpillLog.this.complete(this);
+    }
+  }
+
+  /**
+   * A memory-mapped segment file.
+   */
+  private static class Segment {
+    private final File file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    /** The end of the last record. */
+    private int writeOffset = HEADER_SIZE;
+    /** The end of the last record that was read. */
+    private int readOffset = HEADER_SIZE;
+    /** The end of the last record that was completed, along with all of the records before it. */
+    private int completedOffset = HEADER_SIZE;
+
+    private Segment(File file, int capacity) throws IOException {
+      this.file = file;
+      this.capacity = capacity;
+      this.channel = new RandomAccessFile(file, "rw").getChannel();
+      try {
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+      } catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+    }
+
+    private void setCompletedOffset(int completedOffset) {
+      this.completedOffset = completedOffset;
+      buffer.putInt(COMPLETED_OFFSET_POSITION, completedOffset);
+    }
+
+    private boolean isComplete() {
+      return completedOffset == writeOffset;
+    }
+
+    private void close() throws IOException {
+      buffer.force();
+      channel.close();
+    }
+  }
+
+  private final File directory;
+  private final int segmentSize;
+  private final FileChannel lockChannel;
+  private final FileLock lock;
+
+  /** The segments, from oldest to newest. Entries are appended to the last segment. */
+  private final Deque<Segment> segments = new ArrayDeque<>();
+
+  /** The entries that were read, but not yet completed, in the order in which they were read. */
+  private final Deque<SpilledEntry> readEntries = new ArrayDeque<>();
+
+  private long nextSegmentSequence = 0;
+  private int unreadCount = 0;
+  private boolean closed = false;
+
+  /**
+   * Opens the log in the directory, and replays the entries that were not completed by a previous
+   * log in the same directory. Only one log can use a directory at a time.
+   *
+   * @param directory the directory of the segment files. It is created if needed.
+   * @param segmentSize the size of each segment file. Entries must fit in a segment.
+   * @throws IOException if the directory could not be used.
+   */
+  public MutationSpillLog(File directory, int segmentSize) throws IOException {
+    Preconditions.checkArgument(segmentSize > HEADER_SIZE + RECORD_HEADER_SIZE,
+      "segmentSize must be larger than " + (HEADER_SIZE + RECORD_HEADER_SIZE));
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create spill directory " + directory);
+    }
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.lockChannel = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw").getChannel();
+    FileLock fileLock = null;
+    try {
+      fileLock = lockChannel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      // This JVM already holds the lock.
+    }
+    if (fileLock == null) {
+      lockChannel.close();
+      throw new IOException("Spill directory " + directory + " is used by another log.");
+    }
+    this.lock = fileLock;
+    replay();
+  }
+
+  private void replay() throws IOException {
+    File[] files = directory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+      }
+    });
+    // The sequence numbers are zero padded, so the names sort in the order the files were created.
+    Arrays.sort(files);
+    for (File file : files) {
+      long sequence = parseSequence(file.getName());
+      nextSegmentSequence = Math.max(nextSegmentSequence, sequence + 1);
+      Segment segment = new Segment(file, (int) Math.min(file.length(), Integer.MAX_VALUE));
+      if (segment.capacity < HEADER_SIZE || segment.buffer.getInt(0) != MAGIC) {
+        LOG.warn("Ignoring spill file %s, which is not a valid segment.", file);
+        segment.channel.close();
+        continue;
+      }
+      int completedOffset = segment.buffer.getInt(COMPLETED_OFFSET_POSITION);
+      if (completedOffset < HEADER_SIZE || completedOffset > segment.capacity) {
+        completedOffset = HEADER_SIZE;
+      }
+      segment.completedOffset = completedOffset;
+      segment.readOffset = completedOffset;
+      int offset = completedOffset;
+      for (int length = readRecordLength(segment, offset); length >= 0;
+          length = readRecordLength(segment, offset)) {
+        offset += RECORD_HEADER_SIZE + length;
+        unreadCount++;
+      }
+      segment.writeOffset = offset;
+      segments.addLast(segment);
+    }
+    deleteCompletedSegments();
+    if (unreadCount > 0) {
+      LOG.info("Replaying %d spilled entries from %s.", unreadCount, directory);
+    }
+  }
+
+  private static long parseSequence(String name) {
+    try {
+      return Long.parseLong(
+        name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Checks the record at the offset.
+   *
+   * @return the length of the record's entry, or -1 if there is no valid record at the offset.
+   */
+  private static int readRecordLength(Segment segment, int offset) {
+    if (offset + RECORD_HEADER_SIZE > segment.capacity) {
+      return -1;
+    }
+    int length = segment.buffer.getInt(offset);
+    if (length <= 0 || length > segment.capacity - offset - RECORD_HEADER_SIZE) {
+      return -1;
+    }
+    int checksum = segment.buffer.getInt(offset + 4);
+    CRC32 crc = new CRC32();
+    crc.update(readBytes(segment, offset + RECORD_HEADER_SIZE, length));
+    return (int) crc.getValue() == checksum ? length : -1;
+  }
+
+  private static byte[] readBytes(Segment segment, int offset, int length) {
+    byte[] bytes = new byte[length];
+    // Cast, so that the Java 8 signature is called even when this is compiled on Java 9+.
+    ByteBuffer buffer = ((ByteBuffer) segment.buffer).duplicate();
+    buffer.position(offset);
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  /**
+   * Appends an entry to the log.
+   *
+   * @param entry a non-empty {@link MutateRowsRequest.Entry}.
+   * @throws IOException if the entry could not be written, or is larger than a segment.
+   */
+  public synchronized void append(MutateRowsRequest.Entry entry) throws IOException {
+    Preconditions.checkState(!closed, "The spill log is closed.");
+    byte[] bytes = entry.toByteArray();
+    Preconditions.checkArgument(bytes.length > 0, "Cannot spill an empty entry.");
+    int recordSize = RECORD_HEADER_SIZE + bytes.length;
+    if (HEADER_SIZE + recordSize > segmentSize) {
+      throw new IOException("An entry of " + bytes.length
+          + " bytes does not fit in a spill segment of " + segmentSize + " bytes.");
+    }
+    Segment segment = segments.peekLast();
+    if (segment == null || segment.writeOffset + recordSize > segment.capacity) {
+      segment = createSegment();
+    }
+
+    int offset = segment.writeOffset;
+    int end = offset + recordSize;
+    // Cast, so that the Java 8 signature is called even when this is compiled on Java 9+.
+    ByteBuffer buffer = ((ByteBuffer) segment.buffer).duplicate();
+    buffer.position(offset + RECORD_HEADER_SIZE);
+    buffer.put(bytes);
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    buffer.putInt(offset + 4, (int) crc.getValue());
+    // Make sure that stale bytes after this record are not read as a record after a restart.
+    if (end + 4 <= segment.capacity) {
+      buffer.putInt(end, 0);
+    }
+    // The length is written last, so that a partially written record is not valid.
+    buffer.putInt(offset, bytes.length);
+    segment.writeOffset = end;
+    unreadCount++;
+  }
+
+  private Segment createSegment() throws IOException {
+    File file = new File(directory,
+        String.format("%s%020d%s", SEGMENT_PREFIX, nextSegmentSequence++, SEGMENT_SUFFIX));
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(segmentSize);
+    }
+    Segment segment = new Segment(file, segmentSize);
+    segment.buffer.putInt(0, MAGIC);
+    segment.setCompletedOffset(HEADER_SIZE);
+    segment.buffer.putInt(HEADER_SIZE, 0);
+    segments.addLast(segment);
+    deleteCompletedSegments();
+    return segment;
+  }
+
+  /**
+   * Reads the oldest entry that was not read yet.
+   *
+   * @return a {@link SpilledEntry}, or null if all of the entries were read.
+   */
+  public synchronized SpilledEntry poll() {
+    Preconditions.checkState(!closed, "The spill log is closed.");
+    for (Segment segment : segments) {
+      if (segment.readOffset < segment.writeOffset) {
+        int offset = segment.readOffset;
+        int length = segment.buffer.getInt(offset);
+        int end = offset + RECORD_HEADER_SIZE + length;
+        segment.readOffset = end;
+        unreadCount--;
+        try {
+          SpilledEntry spilledEntry = new SpilledEntry(segment, end,
+              MutateRowsRequest.Entry.parseFrom(readBytes(segment, offset + RECORD_HEADER_SIZE,
+                length)));
+          readEntries.addLast(spilledEntry);
+          return spilledEntry;
+        } catch (InvalidProtocolBufferException e) {
+          LOG.warn("Skipping a spilled entry that could not be parsed.", e);
+          SpilledEntry skipped = new SpilledEntry(segment, end, null);
+          readEntries.addLast(skipped);
+          complete(skipped);
+          return skipped;
+        }
+      }
+    }
+    return null;
+  }
+
+  private synchronized void complete(SpilledEntry spilledEntry) {
+    if (spilledEntry.completed) {
+      return;
+    }
+    spilledEntry.completed = true;
+    if (closed) {
+      // The entry will be replayed when the directory is reopened.
+      return;
+    }
+    while (!readEntries.isEmpty() && readEntries.peekFirst().completed) {
+      SpilledEntry head = readEntries.removeFirst();
+      head.segment.setCompletedOffset(head.endOffset);
+    }
+    deleteCompletedSegments();
+  }
+
+  /**
+   * Deletes the segments that are complete, except for the newest one, to which entries are still
+   * appended.
+   */
+  private void deleteCompletedSegments() {
+    while (segments.size() > 1 && segments.peekFirst().isComplete()) {
+      Segment segment = segments.removeFirst();
+      try {
+        segment.channel.close();
+      } catch (IOException e) {
+        LOG.warn("Could not close spill segment %s", e, segment.file);
+      }
+      if (!segment.file.delete()) {
+        LOG.warn("Could not delete spill segment %s", segment.file);
+      }
+    }
+  }
+
+  /**
+   * @return the number of entries that were appended or replayed, but not read yet.
+   */
+  public synchronized int size() {
+    return unreadCount;
+  }
+
+  /**
+   * @return true if all of the entries were read.
+   */
+  public synchronized boolean isEmpty() {
+    return unreadCount == 0;
+  }
+
+  @VisibleForTesting
+  synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+  /**
+   * Writes the segments to the storage device, so that they can be replayed after a system crash
+   * as well as a process crash.
+   */
+  public synchronized void force() {
+    for (Segment segment : segments) {
+      segment.buffer.force();
+    }
+  }
+
+  /**
+   * Closes the segment files. Entries that were not completed remain in the directory, and are
+   * replayed by the next log that opens it.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      for (Segment segment : segments) {
+        segment.close();
+      }
+      segments.clear();
+    } finally {
+      lock.release();
+      lockChannel.close();
+    }
+  }
+}
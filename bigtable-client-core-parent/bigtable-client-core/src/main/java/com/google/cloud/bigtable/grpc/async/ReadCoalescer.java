@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc.async;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.bigtable.v2.ReadRowsRequest;
+import com.google.bigtable.v2.RowFilter;
+import com.google.cloud.bigtable.grpc.BigtableDataClient;
+import com.google.cloud.bigtable.grpc.BigtableTableName;
+import com.google.cloud.bigtable.grpc.scanner.FlatRow;
+import com.google.cloud.bigtable.metrics.BigtableClientMetrics;
+import com.google.cloud.bigtable.metrics.BigtableClientMetrics.MetricLevel;
+import com.google.cloud.bigtable.metrics.Counter;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+
+/**
+ * Coalesces concurrent single row reads of a table. Reads of the same row with the same
+ * {@link RowFilter} that are in flight at the same time share a single RPC. Reads of different
+ * rows that arrive within a short window are combined into a {@link BulkRead}. Unlike
+ * {@link BulkRead}, this class is thread safe, and is meant to be shared by all of the callers
+ * reading a table.
+ *
+ * @author sduskis
+ * @version $Id: $Id
+ */
+public class ReadCoalescer {
+
+  private static final Counter COALESCED_READS =
+      BigtableClientMetrics.counter(MetricLevel.Info, "read-coalescer.reads.coalesced");
+
+  /**
+   * The identity of a single row read.
+   */
+  private static class ReadKey {
+    private final ByteString rowKey;
+    private final RowFilter filter;
+
+    ReadKey(ByteString rowKey, RowFilter filter) {
+      this.rowKey = rowKey;
+      this.filter = filter;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof ReadKey)) {
+        return false;
+      }
+      ReadKey other = (ReadKey) obj;
+      return rowKey.equals(other.rowKey) && filter.equals(other.filter);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(rowKey, filter);
+    }
+  }
+
+  private final BigtableDataClient client;
+  private final BigtableTableName tableName;
+  private final AdaptiveBatchSizer batchSizer;
+  private final ScheduledExecutorService scheduler;
+  private final long windowMicros;
+
+  private final Map<ReadKey, ListenableFuture<FlatRow>> inFlight = new HashMap<>();
+  private BulkRead pending;
+  private int pendingCount;
+
+  /**
+   * <p>Constructor for ReadCoalescer.</p>
+   *
+   * @param client a {@link BigtableDataClient} object.
+   * @param tableName a {@link BigtableTableName} object.
+   * @param batchSizer the {@link AdaptiveBatchSizer} for the table.
+   * @param scheduler a {@link ScheduledExecutorService} that sends the pending reads at the end of
+   *          the window.
+   * @param window how long to wait for more reads before sending a multi-get. A window of 0 sends
+   *          every read immediately, and only shares RPCs for identical in-flight reads.
+   * @param unit the {@link TimeUnit} of the window.
+   */
+  public ReadCoalescer(BigtableDataClient client, BigtableTableName tableName,
+      AdaptiveBatchSizer batchSizer, ScheduledExecutorService scheduler, long window,
+      TimeUnit unit) {
+    Preconditions.checkArgument(window >= 0, "window must not be negative");
+    this.client = client;
+    this.tableName = tableName;
+    this.batchSizer = batchSizer;
+    this.scheduler = scheduler;
+    this.windowMicros = unit.toMicros(window);
+  }
+
+  /**
+   * Reads a single row. The returned future may be shared with other callers that read the same
+   * row, so cancelling it does not cancel the underlying RPC.
+   *
+   * @param request a {@link ReadRowsRequest} with a single row key.
+   * @return a {@link ListenableFuture} that will be populated with the {@link FlatRow}, or null if
+   *         the row does not exist.
+   */
+  public ListenableFuture<FlatRow> read(ReadRowsRequest request) {
+    Preconditions.checkArgument(request.getRows().getRowKeysCount() == 1,
+      "Only single row reads can be coalesced");
+    final ReadKey key = new ReadKey(request.getRows().getRowKeys(0), request.getFilter());
+    ListenableFuture<FlatRow> future;
+    BulkRead toSend = null;
+    synchronized (this) {
+      future = inFlight.get(key);
+      if (future != null) {
+        COALESCED_READS.inc();
+        return Futures.nonCancellationPropagating(future);
+      }
+      if (pending == null) {
+        pending = new BulkRead(client, tableName, batchSizer);
+        if (windowMicros > 0) {
+          scheduleFlush(pending);
+        }
+      }
+      future = pending.add(request);
+      inFlight.put(key, future);
+      if (windowMicros == 0 || ++pendingCount >= batchSizer.getBatchSize()) {
+        toSend = takePending();
+      }
+    }
+    future.addListener(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (ReadCoalescer.this) {
+          inFlight.remove(key);
+        }
+      }
+    }, MoreExecutors.directExecutor());
+    if (toSend != null) {
+      toSend.flush();
+    }
+    return Futures.nonCancellationPropagating(future);
+  }
+
+  /**
+   * Sends all pending reads without waiting for the end of the window.
+   */
+  public void flush() {
+    BulkRead toSend;
+    synchronized (this) {
+      toSend = takePending();
+    }
+    if (toSend != null) {
+      toSend.flush();
+    }
+  }
+
+  private void scheduleFlush(final BulkRead bulkRead) {
+    scheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        BulkRead toSend = null;
+        synchronized (ReadCoalescer.this) {
+          if (pending == bulkRead) {
+            toSend = takePending();
+          }
+        }
+        if (toSend != null) {
+          toSend.flush();
+        }
+      }
+    }, windowMicros, TimeUnit.MICROSECONDS);
+  }
+
+  private BulkRead takePending() {
+    BulkRead toSend = pending;
+    pending = null;
+    pendingCount = 0;
+    return toSend;
+  }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc.async;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.bigtable.v2.Cell;
+import com.google.bigtable.v2.Column;
+import com.google.bigtable.v2.Family;
+import com.google.bigtable.v2.ReadModifyWriteRowRequest;
+import com.google.bigtable.v2.ReadModifyWriteRowResponse;
+import com.google.bigtable.v2.ReadModifyWriteRule;
+import com.google.bigtable.v2.Row;
+import com.google.cloud.bigtable.grpc.BigtableDataClient;
+import com.google.cloud.bigtable.metrics.BigtableClientMetrics;
+import com.google.cloud.bigtable.metrics.BigtableClientMetrics.MetricLevel;
+import com.google.cloud.bigtable.metrics.Counter;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.ByteString;
+
+/**
+ * Aggregates {@link ReadModifyWriteRowRequest}s that modify the same cells of a row. Requests
+ * with the same table, app profile, row key and rules (ignoring the amounts and the appended
+ * values) that arrive within a short window are sent as a single RPC: increments are summed and
+ * appended values are concatenated, in the order in which the requests arrived.
+ *
+ * <p>Each caller gets the row as if its request had been applied on its own, in that order: the
+ * value of an incremented cell does not include the amounts of later requests, and an appended
+ * cell does not include the values of later requests. All of the aggregated requests succeed or
+ * fail together.
+ *
+ * <p>Requests that modify the same cell more than once, or that have no rules, are sent on their
+ * own. This class is thread safe, and is meant to be shared by all of the callers of a session.
+ *
+ * @author sduskis
+ * @version $Id: $Id
+ */
+public class ReadModifyWriteAggregator {
+
+  private static final Counter AGGREGATED_REQUESTS = BigtableClientMetrics
+      .counter(MetricLevel.Info, "read-modify-write-aggregator.requests.aggregated");
+
+  /**
+   * The most requests that are aggregated into a single RPC. Larger aggregates are sent before the
+   * end of the window.
+   */
+  @VisibleForTesting
+  static final int MAX_AGGREGATED_REQUESTS = 1000;
+
+  /**
+   * The requests that are sent as a single RPC.
+   */
+  private static class Aggregate {
+    private final List<ReadModifyWriteRowRequest> requests = new ArrayList<>();
+    private final List<SettableFuture<ReadModifyWriteRowResponse>> futures = new ArrayList<>();
+  }
+
+  private final BigtableDataClient client;
+  private final ScheduledExecutorService scheduler;
+  private final long windowMicros;
+
+  private final Map<ReadModifyWriteRowRequest, Aggregate> pending = new HashMap<>();
+
+  /**
+   * <p>Constructor for ReadModifyWriteAggregator.</p>
+   *
+   * @param client a {@link BigtableDataClient} object.
+   * @param scheduler a {@link ScheduledExecutorService} that sends the aggregated requests at the
+   *          end of the window.
+   * @param window how long to wait for more requests to the same cells.
+   * @param unit the {@link TimeUnit} of the window.
+   */
+  public ReadModifyWriteAggregator(BigtableDataClient client, ScheduledExecutorService scheduler,
+      long window, TimeUnit unit) {
+    Preconditions.checkArgument(window > 0, "window must be positive");
+    this.client = client;
+    this.scheduler = scheduler;
+    this.windowMicros = unit.toMicros(window);
+  }
+
+  /**
+   * Sends the request, aggregated with other requests to the same cells. The returned future is
+   * not shared with other callers, but cancelling it does not cancel the underlying RPC.
+   *
+   * @param request a {@link ReadModifyWriteRowRequest}.
+   * @return a {@link ListenableFuture} that will be populated with the row as modified by this
+   *         request.
+   */
+  public ListenableFuture<ReadModifyWriteRowResponse>
+      readModifyWriteRowAsync(ReadModifyWriteRowRequest request) {
+    if (!canAggregate(request)) {
+      return client.readModifyWriteRowAsync(request);
+    }
+    final ReadModifyWriteRowRequest key = toKey(request);
+    SettableFuture<ReadModifyWriteRowResponse> future = SettableFuture.create();
+    Aggregate toSend = null;
+    synchronized (this) {
+      Aggregate aggregate = pending.get(key);
+      if (aggregate == null) {
+        aggregate = new Aggregate();
+        pending.put(key, aggregate);
+        scheduleFlush(key, aggregate);
+      } else {
+        AGGREGATED_REQUESTS.inc();
+      }
+      aggregate.requests.add(request);
+      aggregate.futures.add(future);
+      if (aggregate.requests.size() >= MAX_AGGREGATED_REQUESTS) {
+        pending.remove(key);
+        toSend = aggregate;
+      }
+    }
+    if (toSend != null) {
+      send(toSend);
+    }
+    return future;
+  }
+
+  /**
+   * Sends all pending requests without waiting for the end of the window.
+   */
+  public void flush() {
+    List<Aggregate> toSend;
+    synchronized (this) {
+      toSend = new ArrayList<>(pending.values());
+      pending.clear();
+    }
+    for (Aggregate aggregate : toSend) {
+      send(aggregate);
+    }
+  }
+
+  private void scheduleFlush(final ReadModifyWriteRowRequest key, final Aggregate aggregate) {
+    scheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        boolean isPending;
+        synchronized (ReadModifyWriteAggregator.this) {
+          isPending = pending.get(key) == aggregate;
+          if (isPending) {
+            pending.remove(key);
+          }
+        }
+        if (isPending) {
+          send(aggregate);
+        }
+      }
+    }, windowMicros, TimeUnit.MICROSECONDS);
+  }
+
+  private void send(final Aggregate aggregate) {
+    ListenableFuture<ReadModifyWriteRowResponse> response;
+    try {
+      response = client.readModifyWriteRowAsync(combine(aggregate.requests));
+    } catch (Throwable t) {
+      response = Futures.immediateFailedFuture(t);
+    }
+    Futures.addCallback(response, new FutureCallback<ReadModifyWriteRowResponse>() {
+      @Override
+      public void onSuccess(ReadModifyWriteRowResponse result) {
+        try {
+          List<ReadModifyWriteRowResponse> results = split(aggregate.requests, result);
+          for (int i = 0; i < results.size(); i++) {
+            aggregate.futures.get(i).set(results.get(i));
+          }
+        } catch (Throwable t) {
+          onFailure(t);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        for (SettableFuture<ReadModifyWriteRowResponse> future : aggregate.futures) {
+          future.setException(t);
+        }
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * @return true if the request has rules, and no two rules modify the same cell.
+   */
+  @VisibleForTesting
+  static boolean canAggregate(ReadModifyWriteRowRequest request) {
+    if (request.getRulesCount() == 0) {
+      return false;
+    }
+    Set<List<ByteString>> cells = new HashSet<>();
+    for (ReadModifyWriteRule rule : request.getRulesList()) {
+      if (rule.getRuleCase() == ReadModifyWriteRule.RuleCase.RULE_NOT_SET
+          || !cells.add(getCell(rule))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static List<ByteString> getCell(ReadModifyWriteRule rule) {
+    return Arrays.asList(rule.getFamilyNameBytes(), rule.getColumnQualifier());
+  }
+
+  /**
+   * @return the request without its amounts and appended values. Requests with the same key can be
+   *         aggregated.
+   */
+  private static ReadModifyWriteRowRequest toKey(ReadModifyWriteRowRequest request) {
+    ReadModifyWriteRowRequest.Builder key = request.toBuilder();
+    for (ReadModifyWriteRule.Builder rule : key.getRulesBuilderList()) {
+      if (rule.getRuleCase() == ReadModifyWriteRule.RuleCase.INCREMENT_AMOUNT) {
+        rule.setIncrementAmount(0);
+      } else {
+        rule.setAppendValue(ByteString.EMPTY);
+      }
+    }
+    return key.build();
+  }
+
+  /**
+   * Sums the increments and concatenates the appended values of requests with the same key.
+   */
+  @VisibleForTesting
+  static ReadModifyWriteRowRequest combine(List<ReadModifyWriteRowRequest> requests) {
+    ReadModifyWriteRowRequest first = requests.get(0);
+    if (requests.size() == 1) {
+      return first;
+    }
+    ReadModifyWriteRowRequest.Builder combined = first.toBuilder();
+    for (int i = 0; i < first.getRulesCount(); i++) {
+      ReadModifyWriteRule.Builder rule = combined.getRulesBuilder(i);
+      if (rule.getRuleCase() == ReadModifyWriteRule.RuleCase.INCREMENT_AMOUNT) {
+        long amount = 0;
+        for (ReadModifyWriteRowRequest request : requests) {
+          amount += request.getRules(i).getIncrementAmount();
+        }
+        rule.setIncrementAmount(amount);
+      } else {
+        ByteString value = ByteString.EMPTY;
+        for (ReadModifyWriteRowRequest request : requests) {
+          value = value.concat(request.getRules(i).getAppendValue());
+        }
+        rule.setAppendValue(value);
+      }
+    }
+    return combined.build();
+  }
+
+  /**
+   * Creates the response of each request from the response of the combined request. The cells
+   * of each response exclude the modifications of the requests that follow it.
+   */
+  @VisibleForTesting
+  static List<ReadModifyWriteRowResponse> split(List<ReadModifyWriteRowRequest> requests,
+      ReadModifyWriteRowResponse response) {
+    int count = requests.size();
+    ReadModifyWriteRowResponse[] results = new ReadModifyWriteRowResponse[count];
+    results[count - 1] = response;
+    if (count == 1) {
+      return Arrays.asList(results);
+    }
+
+    List<ReadModifyWriteRule> rules = requests.get(0).getRulesList();
+    // The increments and appended lengths of the requests after the current one, by rule.
+    long[] laterIncrements = new long[rules.size()];
+    long[] laterAppendLengths = new long[rules.size()];
+    for (int i = count - 2; i >= 0; i--) {
+      List<ReadModifyWriteRule> nextRules = requests.get(i + 1).getRulesList();
+      for (int r = 0; r < rules.size(); r++) {
+        laterIncrements[r] += nextRules.get(r).getIncrementAmount();
+        laterAppendLengths[r] += nextRules.get(r).getAppendValue().size();
+      }
+      Row row = exclude(response.getRow(), rules, laterIncrements, laterAppendLengths);
+      results[i] = response.toBuilder().setRow(row).build();
+    }
+    return Arrays.asList(results);
+  }
+
+  private static Row exclude(Row row, List<ReadModifyWriteRule> rules, long[] laterIncrements,
+      long[] laterAppendLengths) {
+    Row.Builder builder = row.toBuilder();
+    for (Family.Builder family : builder.getFamiliesBuilderList()) {
+      for (Column.Builder column : family.getColumnsBuilderList()) {
+        int r = findRule(rules, family.getName(), column.getQualifier());
+        if (r < 0) {
+          continue;
+        }
+        for (Cell.Builder cell : column.getCellsBuilderList()) {
+          cell.setValue(exclude(rules.get(r), cell.getValue(), laterIncrements[r],
+            laterAppendLengths[r]));
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  private static ByteString exclude(ReadModifyWriteRule rule, ByteString value,
+      long laterIncrement, long laterAppendLength) {
+    if (rule.getRuleCase() == ReadModifyWriteRule.RuleCase.INCREMENT_AMOUNT) {
+      if (value.size() != Longs.BYTES) {
+        return value;
+      }
+      long total = Longs.fromByteArray(value.toByteArray());
+      return ByteString.copyFrom(Longs.toByteArray(total - laterIncrement));
+    }
+    return value.substring(0, (int) Math.max(0, value.size() - laterAppendLength));
+  }
+
+  private static int findRule(List<ReadModifyWriteRule> rules, String family,
+      ByteString qualifier) {
+    for (int r = 0; r < rules.size(); r++) {
+      ReadModifyWriteRule rule = rules.get(r);
+      if (rule.getFamilyName().equals(family) && rule.getColumnQualifier().equals(qualifier)) {
+        return r;
+      }
+    }
+    return -1;
+  }
+}
@@ -5,15 +5,19 @@ import com.google.api.client.util.NanoClock;
 import com.google.cloud.bigtable.config.Logger;
 import com.google.cloud.bigtable.grpc.BigtableSessionSharedThreadPools;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.SettableFuture;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This class limits access by RPCs to system resources
@@ -36,7 +40,20 @@ public class ResourceLimiter {
 
   private long currentWriteBufferSize;
   private boolean isThrottling = false;
-  private int currentInFlightMaxRpcs;
+  private volatile int currentInFlightMaxRpcs;
+
+  /**
+   * The sizes of the operations that have not called {@link #markCanBeCompleted(long)} yet, with
+   * their total and count. Unlike {@link #pendingOperationsWithSize}, they are updated without the
+   * monitor, so that {@link #hasCapacity()} never waits for a thread that is blocked in
+   * {@link #registerOperationWithHeapSize(long)}.
+   */
+  private final ConcurrentHashMap<Long, Long> uncompletedSizes = new ConcurrentHashMap<>();
+  private final AtomicLong uncompletedHeapSize = new AtomicLong();
+  private final AtomicInteger uncompletedCount = new AtomicInteger();
+
+  /** Notifies the listeners that are waiting for the limiter to have room. */
+  private final AtomicReference<SettableFuture<Void>> availableFuture = new AtomicReference<>();
 
   @VisibleForTesting
   NanoClock clock = NanoClock.SYSTEM;
@@ -76,11 +93,65 @@ public class ResourceLimiter {
       long operationId = operationSequenceGenerator.incrementAndGet();
       pendingOperationsWithSize.put(operationId, heapSize);
       currentWriteBufferSize += heapSize;
+      uncompletedSizes.put(operationId, heapSize);
+      uncompletedHeapSize.addAndGet(heapSize);
+      uncompletedCount.incrementAndGet();
       starTimes.put(operationId, waitComplete);
       return operationId;
     }
   }
 
+  /**
+   * Checks if another operation could be registered without blocking. Unlike {@link #isFull()},
+   * this takes no lock, so it never waits for a thread that is blocked in
+   * {@link #registerOperationWithHeapSize(long)}. The answer is only a snapshot; it is meant for
+   * callers that would rather back off than block.
+   *
+   * @return true if the limits are not reached by the operations that have not completed.
+   */
+  public boolean hasCapacity() {
+    return uncompletedHeapSize.get() < maxHeapSize
+        && uncompletedCount.get() < currentInFlightMaxRpcs;
+  }
+
+  /**
+   * Runs the listener on the executor once this limiter has room for another operation. If there
+   * is already room, the listener is run right away. Each listener is run only once.
+   *
+   * @param listener a {@link Runnable} to run when there is room.
+   * @param executor the {@link Executor} on which to run the listener.
+   */
+  public void addAvailabilityListener(Runnable listener, Executor executor) {
+    if (hasCapacity()) {
+      executor.execute(listener);
+      return;
+    }
+    SettableFuture<Void> future = availableFuture.get();
+    if (future == null) {
+      SettableFuture<Void> newFuture = SettableFuture.create();
+      future = availableFuture.compareAndSet(null, newFuture) ? newFuture : availableFuture.get();
+    }
+    if (future == null) {
+      // The listeners were notified in the meantime.
+      executor.execute(listener);
+      return;
+    }
+    future.addListener(listener, executor);
+    // An operation may have completed before the listener was added.
+    notifyIfAvailable();
+  }
+
+  /**
+   * An estimate of how long it will take for this limiter to have room: the mean latency of the
+   * RPCs that were registered with it, and at least a millisecond.
+   *
+   * @return a number of milliseconds after which a caller could try again.
+   */
+  public long getRetryAfterMillis() {
+    return Math.max(1, TimeUnit.NANOSECONDS
+        .toMillis((long) stats.getMutationTimer().getSnapshot().getMean()));
+  }
+
   /**
    * Mark an operation id, as returned by {@code registerOperationWithHeapSize}, as complete
    *
@@ -93,6 +164,25 @@ public class ResourceLimiter {
     if (start != null) {
       stats.markRpcComplete(clock.nanoTime() - start);
     }
+    Long heapSize = uncompletedSizes.remove(opId);
+    if (heapSize != null) {
+      uncompletedHeapSize.addAndGet(-heapSize);
+      uncompletedCount.decrementAndGet();
+    }
+    notifyIfAvailable();
+  }
+
+  /**
+   * Notifies the availability listeners if there is room. This takes no lock, since it runs on
+   * RPC callback threads, and the listeners are likely to start new operations.
+   */
+  private void notifyIfAvailable() {
+    if (availableFuture.get() != null && hasCapacity()) {
+      SettableFuture<Void> available = availableFuture.getAndSet(null);
+      if (available != null) {
+        available.set(null);
+      }
+    }
   }
 
   /**
@@ -127,6 +217,7 @@ public class ResourceLimiter {
    */
   public void setCurrentInFlightMaxRpcs(int currentInFlightMaxRpcs) {
     this.currentInFlightMaxRpcs = currentInFlightMaxRpcs;
+    notifyIfAvailable();
   }
 
   /**
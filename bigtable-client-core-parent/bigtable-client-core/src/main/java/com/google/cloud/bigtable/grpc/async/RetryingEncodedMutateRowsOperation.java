@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc.async;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+import com.google.bigtable.v2.MutateRowsResponse;
+import com.google.cloud.bigtable.config.RetryOptions;
+import com.google.cloud.bigtable.grpc.BigtableDataClient;
+
+import io.grpc.CallOptions;
+import io.grpc.Metadata;
+
+/**
+ * Performs retries for {@link BigtableDataClient#mutateRowsAsync(EncodedMutateRowsRequest)}
+ * operations. Retries send the failed entries straight from the buffer of the original request.
+ */
+public class RetryingEncodedMutateRowsOperation
+    extends AbstractRetryingMutateRowsOperation<EncodedMutateRowsRequest> {
+
+  private static class EncodedMutateRowsRequestManager
+      extends AbstractMutateRowsRequestManager<EncodedMutateRowsRequest> {
+
+    EncodedMutateRowsRequestManager(RetryOptions retryOptions,
+        EncodedMutateRowsRequest originalRequest) {
+      super(retryOptions, originalRequest, originalRequest.getEntriesCount());
+    }
+
+    @Override
+    protected EncodedMutateRowsRequest createRetryRequest(EncodedMutateRowsRequest originalRequest,
+        int[] indicesToRetry) {
+      return originalRequest.retainEntries(indicesToRetry);
+    }
+  }
+
+  public RetryingEncodedMutateRowsOperation(RetryOptions retryOptions,
+      EncodedMutateRowsRequest originalRequest,
+      BigtableAsyncRpc<EncodedMutateRowsRequest, MutateRowsResponse> retryableRpc,
+      CallOptions callOptions, ScheduledExecutorService retryExecutorService,
+      Metadata originalMetadata) {
+    super(retryOptions, new EncodedMutateRowsRequestManager(retryOptions, originalRequest),
+        retryableRpc, callOptions, retryExecutorService, originalMetadata);
+  }
+}
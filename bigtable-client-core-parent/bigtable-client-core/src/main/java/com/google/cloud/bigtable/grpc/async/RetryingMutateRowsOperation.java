@@ -15,87 +15,26 @@
  */
 package com.google.cloud.bigtable.grpc.async;
 
-import java.util.Arrays;
-import java.util.List;
 import java.util.concurrent.ScheduledExecutorService;
 
-import com.google.api.client.util.BackOff;
 import com.google.bigtable.v2.MutateRowsRequest;
 import com.google.bigtable.v2.MutateRowsResponse;
 import com.google.cloud.bigtable.config.RetryOptions;
 import com.google.cloud.bigtable.grpc.BigtableDataClient;
-import com.google.cloud.bigtable.grpc.async.MutateRowsRequestManager.ProcessingStatus;
-import com.google.common.collect.ImmutableMap;
 
 import io.grpc.CallOptions;
 import io.grpc.Metadata;
-import io.opencensus.trace.AttributeValue;
 
 /**
  * Performs retries for {@link BigtableDataClient#mutateRows(MutateRowsRequest)} operations.
  */
-public class RetryingMutateRowsOperation extends
-    AbstractRetryingOperation<MutateRowsRequest, MutateRowsResponse, List<MutateRowsResponse>> {
-  private final static io.grpc.Status INVALID_RESPONSE =
-      io.grpc.Status.INTERNAL.withDescription("The server returned an invalid response");
-
-  private final MutateRowsRequestManager requestManager;
+public class RetryingMutateRowsOperation
+    extends AbstractRetryingMutateRowsOperation<MutateRowsRequest> {
 
   public RetryingMutateRowsOperation(RetryOptions retryOptions, MutateRowsRequest originalRquest,
       BigtableAsyncRpc<MutateRowsRequest, MutateRowsResponse> retryableRpc, CallOptions callOptions,
       ScheduledExecutorService retryExecutorService, Metadata originalMetadata) {
-    super(retryOptions, originalRquest, retryableRpc, callOptions, retryExecutorService, originalMetadata);
-    requestManager = new MutateRowsRequestManager(retryOptions, originalRquest);
-    operationSpan.addAnnotation("MutationCount", ImmutableMap.of("count",
-      AttributeValue.longAttributeValue(originalRquest.getEntriesCount())));
-  }
-
-  @Override
-  public void onMessage(MutateRowsResponse message) {
-    try {
-      requestManager.onMessage(message);
-    } catch (Exception e) {
-      setException(e);
-    }
-  }
-
-  @Override
-  protected MutateRowsRequest getRetryRequest() {
-    return requestManager.getRetryRequest();
-  }
-
-  @Override
-  protected boolean onOK(Metadata trailers) {
-    ProcessingStatus status = requestManager.onOK();
-
-    if (status == ProcessingStatus.INVALID) {
-      // Set an exception.
-      onError(INVALID_RESPONSE, trailers);
-      return true;
-    }
-
-    // There was a problem in the data found in onMessage(), so fail the RPC.
-    if (status == ProcessingStatus.SUCCESS || status == ProcessingStatus.NOT_RETRYABLE) {
-      // Set the response, with either success, or non-retryable responses.
-      completionFuture.set(Arrays.asList(requestManager.buildResponse()));
-      return true;
-    }
-
-    // Perform a partial retry, if the backoff policy allows it.
-    long nextBackOff = getNextBackoff();
-    if (nextBackOff == BackOff.STOP) {
-      // Return the response as is, and don't retry;
-      rpc.getRpcMetrics().markRetriesExhasted();
-      completionFuture.set(Arrays.asList(requestManager.buildResponse()));
-      operationSpan.addAnnotation("MutationCount", ImmutableMap.of("failureCount",
-        AttributeValue.longAttributeValue(requestManager.getRetryRequest().getEntriesCount())));
-      return true;
-    }
-
-    performRetry(nextBackOff);
-    operationSpan.addAnnotation("MutationCount", ImmutableMap.of("retryCount",
-      AttributeValue.longAttributeValue(requestManager.getRetryRequest().getEntriesCount())));
-    return false;
+    super(retryOptions, new MutateRowsRequestManager(retryOptions, originalRquest), retryableRpc,
+        callOptions, retryExecutorService, originalMetadata);
   }
-
 }
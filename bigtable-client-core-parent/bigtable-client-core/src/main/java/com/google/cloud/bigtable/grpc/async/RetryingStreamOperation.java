@@ -62,6 +62,7 @@ public class RetryingStreamOperation<RequestT, ResponseT>
   /** {@inheritDoc} */
   @Override
   public void onMessage(ResponseT message) {
+    tableRpcMetrics.markResponse(message);
     getCall().request(1);
     buffer.add(message);
   }
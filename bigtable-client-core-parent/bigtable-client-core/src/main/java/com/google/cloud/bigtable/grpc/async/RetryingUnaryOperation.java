@@ -57,6 +57,7 @@ public class RetryingUnaryOperation<RequestT, ResponseT>
   /** {@inheritDoc} */
   @Override
   public void onMessage(ResponseT message) {
+    tableRpcMetrics.markResponse(message);
     value = message;
     completionFuture.set(value);
   }
@@ -16,6 +16,7 @@
 package com.google.cloud.bigtable.grpc.io;
 
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -33,6 +34,7 @@ import com.google.common.collect.ImmutableList;
 import io.grpc.CallOptions;
 import io.grpc.ClientCall;
 import io.grpc.ClientInterceptors.CheckedForwardingClientCall;
+import io.grpc.ConnectivityState;
 import io.grpc.ManagedChannel;
 import io.grpc.Metadata;
 import io.grpc.Metadata.Key;
@@ -154,6 +156,16 @@ public class ChannelPool extends ManagedChannel {
       return delegate.awaitTermination(timeout, unit);
     }
 
+    @Override
+    public ConnectivityState getState(boolean requestConnection) {
+      return delegate.getState(requestConnection);
+    }
+
+    @Override
+    public void notifyWhenStateChanged(ConnectivityState source, Runnable callback) {
+      delegate.notifyWhenStateChanged(source, callback);
+    }
+
     @Override
     public <ReqT, RespT> ClientCall<ReqT, RespT>
         newCall(MethodDescriptor<ReqT, RespT> methodDescriptor, CallOptions callOptions) {
@@ -282,6 +294,53 @@ public class ChannelPool extends ManagedChannel {
     return getNextChannel().newCall(methodDescriptor, callOptions);
   }
 
+  /**
+   * Requests a connection on all of the channels in parallel, and waits until all of them are ready
+   * or until the timeout elapses. Establishing connections up front moves the cost of DNS, TCP,
+   * TLS and HTTP/2 setup out of the first RPCs on each channel.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the unit for {@code timeout}
+   * @return the number of channels that are ready
+   * @throws InterruptedException if the thread was interrupted while waiting
+   */
+  public int connect(long timeout, TimeUnit unit) throws InterruptedException {
+    Preconditions.checkState(!shutdown, "Cannot perform operations on a closed connection");
+    long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+    CountDownLatch latch = new CountDownLatch(channels.size());
+    AtomicInteger readyCount = new AtomicInteger();
+    for (ManagedChannel channel : channels) {
+      connect(channel, latch, readyCount, deadlineNanos);
+    }
+    latch.await(timeout, unit);
+    return readyCount.get();
+  }
+
+  private static void connect(final ManagedChannel channel, final CountDownLatch latch,
+      final AtomicInteger readyCount, final long deadlineNanos) {
+    ConnectivityState state;
+    try {
+      state = channel.getState(true);
+    } catch (UnsupportedOperationException e) {
+      // This channel does not expose its state; the connection will be created on the first RPC.
+      latch.countDown();
+      return;
+    }
+    if (state == ConnectivityState.READY) {
+      readyCount.incrementAndGet();
+      latch.countDown();
+    } else if (state == ConnectivityState.SHUTDOWN || System.nanoTime() > deadlineNanos) {
+      latch.countDown();
+    } else {
+      channel.notifyWhenStateChanged(state, new Runnable() {
+        @Override
+        public void run() {
+          connect(channel, latch, readyCount, deadlineNanos);
+        }
+      });
+    }
+  }
+
   /**
    * <p>size.</p>
    *
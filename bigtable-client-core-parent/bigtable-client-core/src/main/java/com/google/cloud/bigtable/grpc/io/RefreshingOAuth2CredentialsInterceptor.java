@@ -170,6 +170,18 @@ public class RefreshingOAuth2CredentialsInterceptor implements ClientInterceptor
     };
   }
 
+  /**
+   * Fetches an OAuth2 token if there isn't a valid one already, and waits for up to the given
+   * timeout for it. This allows the token to be retrieved before the first RPC needs it.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the unit for {@code timeout}
+   * @return the {@link Status} of the token retrieval.
+   */
+  public Status prefetchToken(long timeout, TimeUnit unit) {
+    return store.getHeader(timeout, unit).getStatus();
+  }
+
   /**
    * Refreshes the OAuth2 token asynchronously. This method will only start an async refresh if
    * there isn't a currently running asynchronous refresh.
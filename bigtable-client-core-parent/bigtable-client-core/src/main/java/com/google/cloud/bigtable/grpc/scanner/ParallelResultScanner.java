@@ -0,0 +1,233 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc.scanner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.google.bigtable.v2.ReadRowsRequest;
+import com.google.bigtable.v2.RowSet;
+import com.google.cloud.bigtable.config.Logger;
+import com.google.cloud.bigtable.grpc.BigtableDataClient;
+import com.google.cloud.bigtable.util.RowSetUtil;
+import com.google.common.base.Preconditions;
+import com.google.protobuf.ByteString;
+
+/**
+ * A {@link ResultScanner} that splits a {@link ReadRowsRequest} at a set of split keys, such as
+ * tablet boundaries from SampleRowKeys, and reads up to {@code parallelism} segments at the same
+ * time. Each segment buffers at most {@code prefetchRows} rows ahead of the caller.
+ *
+ * <p>In ordered mode, rows are returned in key order: the segments are disjoint and sorted, so the
+ * caller reads them one after the other while the next segments prefetch in the background. In
+ * unordered mode, rows are returned as soon as any segment produces them.
+ *
+ * <p>Requests with a rows limit can not be split, since the limit applies to the whole scan.
+ */
+@NotThreadSafe
+public class ParallelResultScanner implements ResultScanner<FlatRow> {
+
+  /** Constant <code>LOG</code> */
+  protected static final Logger LOG = new Logger(ParallelResultScanner.class);
+
+  /** The default number of rows that each segment reads ahead of the caller. */
+  public static final int DEFAULT_PREFETCH_ROWS = 100;
+
+  private static final long OFFER_WAIT_MS = 100;
+
+  /**
+   * Reads a single segment on a thread from the executor, and puts the rows on a bounded queue.
+   */
+  private class Segment implements Runnable {
+    private final ReadRowsRequest request;
+    private final BlockingQueue<ResultQueueEntry<FlatRow>> queue;
+    private volatile ResultScanner<FlatRow> scanner;
+
+    Segment(ReadRowsRequest request, BlockingQueue<ResultQueueEntry<FlatRow>> queue) {
+      this.request = request;
+      this.queue = queue;
+    }
+
+    @Override
+    public void run() {
+      try {
+        scanner = client.readFlatRows(request);
+        FlatRow row;
+        while (!closed && (row = scanner.next()) != null) {
+          put(ResultQueueEntry.fromResponse(row));
+        }
+        put(ResultQueueEntry.<FlatRow> completionMarker());
+      } catch (Throwable t) {
+        put(ResultQueueEntry.<FlatRow> fromThrowable(t));
+      } finally {
+        if (closed) {
+          close();
+        }
+      }
+    }
+
+    private void put(ResultQueueEntry<FlatRow> entry) {
+      try {
+        while (!closed) {
+          if (queue.offer(entry, OFFER_WAIT_MS, TimeUnit.MILLISECONDS)) {
+            return;
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    void close() {
+      ResultScanner<FlatRow> toClose = scanner;
+      if (toClose != null) {
+        try {
+          toClose.close();
+        } catch (IOException e) {
+          LOG.warn("Could not close a parallel scan segment.", e);
+        }
+      }
+    }
+  }
+
+  private final BigtableDataClient client;
+  private final ExecutorService executor;
+  private final boolean ordered;
+  private final List<Segment> segments = new ArrayList<>();
+  private final BlockingQueue<ResultQueueEntry<FlatRow>> sharedQueue;
+
+  private volatile boolean closed = false;
+  private int startedCount = 0;
+  private int completedCount = 0;
+
+  /**
+   * <p>Constructor for ParallelResultScanner.</p>
+   *
+   * @param client a {@link BigtableDataClient} used to read each segment.
+   * @param request the {@link ReadRowsRequest} to split. It must not have a rows limit.
+   * @param splitKeys the keys at which to split the request, in any order.
+   * @param parallelism the maximum number of segments to read at the same time.
+   * @param ordered true if rows must be returned in key order.
+   * @param prefetchRows the maximum number of rows that each segment reads ahead of the caller.
+   * @param executor the {@link ExecutorService} that reads the segments. Each running segment
+   *          holds a thread until it is complete.
+   */
+  public ParallelResultScanner(BigtableDataClient client, ReadRowsRequest request,
+      Collection<ByteString> splitKeys, int parallelism, boolean ordered, int prefetchRows,
+      ExecutorService executor) {
+    Preconditions.checkArgument(request.getRowsLimit() == 0,
+      "Requests with a rows limit can not be read in parallel.");
+    Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+    Preconditions.checkArgument(prefetchRows > 0, "prefetchRows must be positive");
+    this.client = client;
+    this.executor = executor;
+    this.ordered = ordered;
+    this.sharedQueue =
+        ordered ? null : new LinkedBlockingQueue<ResultQueueEntry<FlatRow>>(
+            prefetchRows * parallelism);
+    for (RowSet rowSet : RowSetUtil.split(request.getRows(), splitKeys)) {
+      BlockingQueue<ResultQueueEntry<FlatRow>> queue =
+          ordered ? new LinkedBlockingQueue<ResultQueueEntry<FlatRow>>(prefetchRows) : sharedQueue;
+      segments.add(new Segment(request.toBuilder().setRows(rowSet).build(), queue));
+    }
+    for (int i = 0; i < parallelism && i < segments.size(); i++) {
+      startNextSegment();
+    }
+  }
+
+  /**
+   * @return the number of segments that the request was split into.
+   */
+  public int getSegmentCount() {
+    return segments.size();
+  }
+
+  private void startNextSegment() {
+    if (startedCount < segments.size()) {
+      executor.execute(segments.get(startedCount++));
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public FlatRow next() throws IOException {
+    while (!closed && completedCount < segments.size()) {
+      BlockingQueue<ResultQueueEntry<FlatRow>> queue =
+          ordered ? segments.get(completedCount).queue : sharedQueue;
+      ResultQueueEntry<FlatRow> entry;
+      try {
+        entry = queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for next result", e);
+      }
+      switch (entry.getType()) {
+      case Data:
+        return entry.getResponseOrThrow();
+      case CompletionMarker:
+        completedCount++;
+        startNextSegment();
+        break;
+      case Exception:
+        close();
+        return entry.getResponseOrThrow();
+      default:
+        throw new IllegalStateException("Cannot process type: " + entry.getType());
+      }
+    }
+    return null;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public FlatRow[] next(int count) throws IOException {
+    ArrayList<FlatRow> resultList = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      FlatRow row = next();
+      if (row == null) {
+        break;
+      }
+      resultList.add(row);
+    }
+    return resultList.toArray(new FlatRow[resultList.size()]);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int available() {
+    if (closed || completedCount >= segments.size()) {
+      return 0;
+    }
+    return ordered ? segments.get(completedCount).queue.size() : sharedQueue.size();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() {
+    closed = true;
+    for (int i = 0; i < startedCount; i++) {
+      segments.get(i).close();
+    }
+  }
+}
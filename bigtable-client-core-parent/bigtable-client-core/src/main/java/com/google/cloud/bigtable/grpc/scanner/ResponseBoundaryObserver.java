@@ -0,0 +1,36 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc.scanner;
+
+import io.grpc.stub.StreamObserver;
+
+/**
+ * A {@link StreamObserver} of {@link FlatRow}s that is also told where each ReadRowsResponse ends.
+ * This lets observers handle the rows of a response as a batch, and, together with
+ * {@link io.grpc.stub.ClientResponseObserver}, request the next response only when they are ready
+ * for it.
+ *
+ * @author sduskis
+ * @version $Id: $Id
+ */
+public interface ResponseBoundaryObserver extends StreamObserver<FlatRow> {
+
+  /**
+   * Called after all the complete rows of a ReadRowsResponse were passed to
+   * {@link #onNext(Object)}. The response may not have had any complete rows.
+   */
+  void onResponseProcessed();
+}
@@ -16,6 +16,8 @@
 package com.google.cloud.bigtable.grpc.scanner;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -27,7 +29,6 @@ import com.google.cloud.bigtable.grpc.BigtableDataGrpcClient;
 import com.google.cloud.bigtable.metrics.BigtableClientMetrics;
 import com.google.cloud.bigtable.metrics.BigtableClientMetrics.MetricLevel;
 import com.google.cloud.bigtable.metrics.Timer;
-import com.google.common.base.Preconditions;
 
 import io.grpc.stub.ClientCallStreamObserver;
 import io.grpc.stub.ClientResponseObserver;
@@ -55,6 +56,13 @@ public class ResponseQueueReader
   }
 
   private final BlockingQueue<ResultQueueEntry<FlatRow>> resultQueue =  new LinkedBlockingQueue<>();
+  /**
+   * Entries that were moved out of {@link #resultQueue} in bulk by {@link
+   * #getNextMergedRows(List, int)}, and were not processed yet. Only accessed while holding the
+   * lock; {@link #drainedCount} mirrors its size for {@link #available()}.
+   */
+  private final ArrayDeque<ResultQueueEntry<FlatRow>> drained = new ArrayDeque<>();
+  private volatile int drainedCount = 0;
   private final long waitTimeMs;
   private final AtomicBoolean completionMarkerFound = new AtomicBoolean(false);
   private boolean lastResponseProcessed = false;
@@ -85,17 +93,55 @@ public class ResponseQueueReader
    * @throws java.io.IOException On errors.
    */
   public synchronized FlatRow getNextMergedRow() throws IOException {
-    if (lastResponseProcessed) {
-      return null;
+    while (!lastResponseProcessed) {
+      FlatRow row = process(getNext());
+      if (row != null) {
+        return row;
+      }
     }
+    return null;
+  }
 
-    ResultQueueEntry<FlatRow> queueEntry = getNext();
+  /**
+   * Gets up to {@code count} complete {@link FlatRow}s from the response queue. Rows that are
+   * already queued are moved out of the queue in bulk, under a single acquisition of the lock, and
+   * this method only waits on the network when the queue is empty.
+   *
+   * @param rows the {@link List} to add the rows to. Rows that were read before an exception was
+   *          thrown stay in the list.
+   * @param count the maximum number of rows to add.
+   * @return the number of rows that were added. Fewer than {@code count} rows are only added at
+   *         end-of-stream.
+   * @throws java.io.IOException On errors.
+   */
+  public synchronized int getNextMergedRows(List<FlatRow> rows, int count) throws IOException {
+    int added = 0;
+    while (added < count && !lastResponseProcessed) {
+      if (drained.isEmpty()) {
+        // Every row is usually followed by a RequestResultMarker, so drain two entries per row.
+        resultQueue.drainTo(drained, 2 * (count - added));
+        drainedCount = drained.size();
+      }
+      FlatRow row = process(getNext());
+      if (row != null) {
+        rows.add(row);
+        added++;
+      }
+    }
+    return added;
+  }
 
+  /**
+   * Processes a single {@link ResultQueueEntry}.
+   *
+   * @return the {@link FlatRow} of a data entry, or null for a marker.
+   */
+  private FlatRow process(ResultQueueEntry<FlatRow> queueEntry) throws IOException {
     switch (queueEntry.getType()) {
     case CompletionMarker:
       lastResponseProcessed = true;
       markerCounter.decrementAndGet();
-      break;
+      return null;
     case Data:
       if (startTime != null) {
         getFirstResponseTimer().update(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
@@ -110,14 +156,10 @@ public class ResponseQueueReader
       if (!completionMarkerFound.get()) {
         requestStream.request(1);
       }
-      return getNextMergedRow();
+      return null;
     default:
       throw new IllegalStateException("Cannot process type: " + queueEntry.getType());
     }
-
-    Preconditions.checkState(lastResponseProcessed,
-      "Should only exit merge loop with by returning a complete FlatRow or hitting end of stream.");
-    return null;
   }
 
   /**
@@ -127,6 +169,11 @@ public class ResponseQueueReader
    * @throws java.io.IOException if any.
    */
   protected ResultQueueEntry<FlatRow> getNext() throws IOException {
+    if (!drained.isEmpty()) {
+      ResultQueueEntry<FlatRow> queueEntry = drained.poll();
+      drainedCount = drained.size();
+      return queueEntry;
+    }
     ResultQueueEntry<FlatRow> queueEntry;
     try {
       queueEntry = resultQueue.poll(waitTimeMs, TimeUnit.MILLISECONDS);
@@ -147,7 +194,7 @@ public class ResponseQueueReader
    * @return a int.
    */
   public int available() {
-    return resultQueue.size() - markerCounter.get();
+    return resultQueue.size() + drainedCount - markerCounter.get();
   }
 
   /** {@inheritDoc} */
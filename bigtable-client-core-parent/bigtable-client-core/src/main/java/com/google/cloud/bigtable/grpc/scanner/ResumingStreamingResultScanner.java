@@ -56,16 +56,30 @@ public class ResumingStreamingResultScanner implements ResultScanner<FlatRow> {
     this.scanHandler = scanHandler;
   }
 
-  /** {@inheritDoc} */
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Rows that have already arrived are read in bulk, with {@link
+   * ResponseQueueReader#getNextMergedRows(java.util.List, int)}.
+   */
   @Override
   public final FlatRow[] next(int count) throws IOException {
     ArrayList<FlatRow> resultList = new ArrayList<>(count);
-    for (int i = 0; i < count; i++) {
-      FlatRow row = next();
-      if (row == null) {
-        break;
+    try(Timer.Context ignored = resultsTimer.time()) {
+      while (resultList.size() < count) {
+        try {
+          int added = responseQueueReader.getNextMergedRows(resultList, count - resultList.size());
+          if (added == 0) {
+            break;
+          }
+          resultsMeter.mark(added);
+        } catch (ScanTimeoutException rte) {
+          scanHandler.handleTimeout(rte);
+        } catch (Throwable e) {
+          scanHandler.cancel();
+          throw new BigtableRetriesExhaustedException("Exhausted streaming retries.", e);
+        }
       }
-      resultList.add(row);
     }
     return resultList.toArray(new FlatRow[resultList.size()]);
   }
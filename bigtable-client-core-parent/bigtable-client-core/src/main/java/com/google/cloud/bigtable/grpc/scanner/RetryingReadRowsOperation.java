@@ -149,8 +149,11 @@ public class RetryingReadRowsOperation extends
     try {
       // restart the clock.
       super.run();
-      // pre-fetch one more result, for performance reasons.
-      adapter.request(1);
+      // pre-fetch one more result, for performance reasons. Observers that disabled automatic flow
+      // control request their own responses, so retries do not prefetch for them.
+      if (adapter.autoFlowControlEnabled) {
+        adapter.request(1);
+      }
       if (rowObserver instanceof ClientResponseObserver) {
         ((ClientResponseObserver<ReadRowsRequest, FlatRow>) rowObserver).beforeStart(adapter);
       }
@@ -164,6 +167,7 @@ public class RetryingReadRowsOperation extends
   @Override
   public void onMessage(ReadRowsResponse message) {
     try {
+      tableRpcMetrics.markResponse(message);
       resetStatusBasedBackoff();
       lastResponseMs = clock.currentTimeMillis();
       // We've had at least one successful RPC, reset the backoff and retry counter
@@ -193,6 +197,10 @@ public class RetryingReadRowsOperation extends
         updateLastFoundKey(message.getLastScannedRowKey());
       }
 
+      if (rowObserver instanceof ResponseBoundaryObserver) {
+        ((ResponseBoundaryObserver) rowObserver).onResponseProcessed();
+      }
+
       if (adapter.autoFlowControlEnabled) {
         adapter.request(1);
       }
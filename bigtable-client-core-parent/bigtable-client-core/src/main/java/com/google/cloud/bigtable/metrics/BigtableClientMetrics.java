@@ -16,6 +16,10 @@
 package com.google.cloud.bigtable.metrics;
 
 import com.codahale.metrics.Reporter;
+import com.google.common.annotations.VisibleForTesting;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +47,19 @@ public final class BigtableClientMetrics {
   private static MetricRegistry registry = MetricRegistry.NULL_METRICS_REGISTRY;
   private static MetricLevel levelToLog = MetricLevel.Info;
 
+  /**
+   * The table dimension used for all tables once {@link #getMaxTableDimensions()} distinct tables
+   * have been seen.
+   */
+  public static final String OVERFLOW_TABLE_DIMENSION = "_other";
+
+  /** The default maximum number of distinct tables that get their own metrics. */
+  public static final int DEFAULT_MAX_TABLE_DIMENSIONS = 100;
+
+  private static int maxTableDimensions = DEFAULT_MAX_TABLE_DIMENSIONS;
+  private static final Set<String> tableDimensions =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
   public enum MetricLevel {
     Info(1), Debug(2), Trace(3);
 
@@ -120,6 +137,69 @@ public final class BigtableClientMetrics {
     return getMetricRegistry(level).meter(METRIC_PREFIX + name);
   }
 
+  /** Creates a named {@link Histogram}.  This is a shortcut for
+   * {@link BigtableClientMetrics#getMetricRegistry(MetricLevel)}.
+   * {@link HistogramRegistry#histogram(String)}.
+   *
+   * @return a {@link Histogram}, or {@link Histogram#NULL_HISTOGRAM} if the registry is not a
+   *         {@link HistogramRegistry}.
+   */
+  public static Histogram histogram(MetricLevel level, String name) {
+    MetricRegistry registry = getMetricRegistry(level);
+    if (registry instanceof HistogramRegistry) {
+      return ((HistogramRegistry) registry).histogram(METRIC_PREFIX + name);
+    }
+    return Histogram.NULL_HISTOGRAM;
+  }
+
+  /**
+   * Converts a table name into a metric name component. Full table names of the form
+   * "projects/{projectId}/instances/{instanceId}/tables/{tableId}" are shortened to the tableId.
+   * Only the first {@link #getMaxTableDimensions()} distinct tables get their own dimension; all
+   * other tables are reported as {@link #OVERFLOW_TABLE_DIMENSION} so that the number of metrics
+   * stays bounded.
+   *
+   * @param tableName a full table name or a table id
+   * @return the metric name component to use for the table
+   */
+  public static String tableDimension(String tableName) {
+    if (tableName == null || tableName.isEmpty()) {
+      return OVERFLOW_TABLE_DIMENSION;
+    }
+    String tableId = tableName.substring(tableName.lastIndexOf('/') + 1);
+    if (tableDimensions.contains(tableId)) {
+      return tableId;
+    }
+    synchronized (tableDimensions) {
+      if (tableDimensions.size() < maxTableDimensions) {
+        tableDimensions.add(tableId);
+        return tableId;
+      }
+    }
+    return tableDimensions.contains(tableId) ? tableId : OVERFLOW_TABLE_DIMENSION;
+  }
+
+  /**
+   * Sets the maximum number of distinct tables that get their own per-table metrics. By default,
+   * the value is {@link #DEFAULT_MAX_TABLE_DIMENSIONS}. Tables that were already assigned a
+   * dimension keep it.
+   *
+   * @param maxTableDimensions
+   */
+  public static void setMaxTableDimensions(int maxTableDimensions) {
+    BigtableClientMetrics.maxTableDimensions = maxTableDimensions;
+  }
+
+  /** @return the maximum number of distinct tables that get their own per-table metrics. */
+  public static int getMaxTableDimensions() {
+    return maxTableDimensions;
+  }
+
+  @VisibleForTesting
+  static void clearTableDimensions() {
+    tableDimensions.clear();
+  }
+
   /**
    * Set a level at which to log.  By default, the value is {@link MetricLevel#Info}.
    *
@@ -26,7 +26,7 @@ import org.slf4j.Logger;
  * A {@link MetricRegistry} that wraps a Dropwizard Metrics {@link
  * com.codahale.metrics.MetricRegistry}.
  */
-public class DropwizardMetricRegistry implements MetricRegistry {
+public class DropwizardMetricRegistry implements HistogramRegistry {
 
   private final com.codahale.metrics.MetricRegistry registry =
       new com.codahale.metrics.MetricRegistry();
@@ -137,7 +137,26 @@ public class DropwizardMetricRegistry implements MetricRegistry {
       }
     };
   }
-  
+
+  /**
+   * Creates a named {@link Histogram} that wraps a Dropwizard Metrics {@link
+   * com.codahale.metrics.Histogram}.
+   *
+   * @param name
+   * @return a {@link Histogram} that wraps a Dropwizard Metrics {@link
+   *     com.codahale.metrics.Histogram}
+   */
+  @Override
+  public Histogram histogram(String name) {
+    final com.codahale.metrics.Histogram histogram = registry.histogram(name);
+    return new Histogram() {
+      @Override
+      public void update(long value) {
+        histogram.update(value);
+      }
+    };
+  }
+
   /** @return the Dropwizard {@link com.codahale.metrics.MetricRegistry} */
   public com.codahale.metrics.MetricRegistry getRegistry() {
     return registry;
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.metrics;
+
+/**
+ * A histogram metric which measures the statistical distribution of values in a stream of data,
+ * such as the byte size of requests and responses.
+ */
+public interface Histogram {
+  /**
+   * Adds a recorded value.
+   *
+   * @param value the length of the value
+   */
+  void update(long value);
+
+  /** A {@link Histogram} that ignores its values. */
+  public static final Histogram NULL_HISTOGRAM =
+      new Histogram() {
+        @Override
+        public void update(long value) {}
+      };
+}
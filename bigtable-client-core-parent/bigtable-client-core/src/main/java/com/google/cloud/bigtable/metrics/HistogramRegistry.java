@@ -0,0 +1,27 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.metrics;
+
+/**
+ * A {@link MetricRegistry} that can also create {@link Histogram}s. This is separate from
+ * {@link MetricRegistry} so that existing implementations of that interface keep working;
+ * {@link BigtableClientMetrics#histogram(BigtableClientMetrics.MetricLevel, String)} returns
+ * {@link Histogram#NULL_HISTOGRAM} for registries that do not implement it.
+ */
+public interface HistogramRegistry extends MetricRegistry {
+  /** Creates a named {@link Histogram}. */
+  Histogram histogram(String name);
+}
@@ -55,15 +55,11 @@ public class ByteStringer {
   }
 
   /**
-   * Wraps a byte array in a {@link ByteString} without copying it.
+   * Wraps a range of a byte array in a {@link ByteString} without copying it.
    */
   public static ByteString wrap(final byte[] array, int offset, int length) {
-    if (USE_ZEROCOPYBYTESTRING && offset == 0 && length == array.length) {
-      return ZeroCopyByteStringUtil.wrap(array);
-    }
-    else {
-      return ByteString.copyFrom(array, offset, length);
-    }
+    return USE_ZEROCOPYBYTESTRING ? ZeroCopyByteStringUtil.wrap(array, offset, length)
+        : ByteString.copyFrom(array, offset, length);
   }
 
   public static byte[] extract(ByteString buf) {
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+import com.google.bigtable.v2.RowRange;
+import com.google.bigtable.v2.RowSet;
+import com.google.protobuf.ByteString;
+
+/**
+ * Static utilities for {@link RowSet}s. In a {@link RowRange}, an unset or empty start key means
+ * the start of the table, and an unset or empty end key means the end of the table.
+ */
+public class RowSetUtil {
+
+  private RowSetUtil() {
+  }
+
+  /**
+   * Splits a {@link RowSet} into segments at the given split keys. Segment {@code i} contains the
+   * parts of the {@link RowSet} that are at or after split key {@code i - 1} and before split key
+   * {@code i}. Segments that do not contain any part of the {@link RowSet} are omitted, so the
+   * result never contains an empty {@link RowSet}, which would mean a full table scan.
+   *
+   * @param rowSet the {@link RowSet} to split. An empty {@link RowSet} is the full table.
+   * @param splitKeys the keys at which to split, in any order. Empty keys are ignored.
+   * @return the non-empty segments, sorted by key.
+   */
+  public static List<RowSet> split(RowSet rowSet, Collection<ByteString> splitKeys) {
+    TreeSet<ByteString> sortedKeys = new TreeSet<>(ByteStringComparator.INSTANCE);
+    for (ByteString splitKey : splitKeys) {
+      if (!splitKey.isEmpty()) {
+        sortedKeys.add(splitKey);
+      }
+    }
+    if (isFullTable(rowSet)) {
+      rowSet = RowSet.newBuilder().addRowRanges(RowRange.getDefaultInstance()).build();
+    }
+
+    List<RowSet> segments = new ArrayList<>();
+    ByteString segmentStart = ByteString.EMPTY;
+    for (ByteString splitKey : sortedKeys) {
+      addSegment(segments, rowSet, segmentStart, splitKey);
+      segmentStart = splitKey;
+    }
+    addSegment(segments, rowSet, segmentStart, ByteString.EMPTY);
+    return segments;
+  }
+
+  /**
+   * Builds a {@link RowSet} for a list of row keys, where runs of densely clustered keys are
+   * replaced by a single closed {@link RowRange}. Two keys are adjacent if they have the same
+   * length, differ only in their last 8 bytes, and those bytes differ by at most {@code maxGap}
+   * when read as an unsigned big-endian number. This matches sequential or time-bucketed keys.
+   *
+   * <p>A range may return rows that were not requested, such as the keys in the gaps, or longer
+   * keys that start with a requested key, so callers have to discard them.
+   *
+   * @param sortedKeys distinct row keys, sorted by {@link ByteStringComparator}.
+   * @param maxGap the maximum distance between adjacent keys in a run.
+   * @param minRunLength the minimum number of keys in a run that is replaced by a range.
+   * @return a {@link RowSet} that contains all of the keys.
+   */
+  public static RowSet collapseKeys(List<ByteString> sortedKeys, long maxGap, int minRunLength) {
+    RowSet.Builder result = RowSet.newBuilder();
+    int runStart = 0;
+    for (int i = 1; i <= sortedKeys.size(); i++) {
+      if (i < sortedKeys.size() && isAdjacent(sortedKeys.get(i - 1), sortedKeys.get(i), maxGap)) {
+        continue;
+      }
+      if (i - runStart >= minRunLength) {
+        result.addRowRanges(RowRange.newBuilder()
+            .setStartKeyClosed(sortedKeys.get(runStart))
+            .setEndKeyClosed(sortedKeys.get(i - 1)));
+      } else {
+        result.addAllRowKeys(sortedKeys.subList(runStart, i));
+      }
+      runStart = i;
+    }
+    return result.build();
+  }
+
+  private static boolean isAdjacent(ByteString key1, ByteString key2, long maxGap) {
+    int length = key1.size();
+    if (length != key2.size()) {
+      return false;
+    }
+    int suffixStart = Math.max(0, length - 8);
+    for (int i = 0; i < suffixStart; i++) {
+      if (key1.byteAt(i) != key2.byteAt(i)) {
+        return false;
+      }
+    }
+    long difference = 0;
+    for (int i = suffixStart; i < length; i++) {
+      difference = (difference << 8) + ((key2.byteAt(i) & 0xFF) - (key1.byteAt(i) & 0xFF));
+    }
+    // The keys are sorted, so a negative difference means that it overflowed.
+    return difference > 0 && difference <= maxGap;
+  }
+
+  /**
+   * @param rowSet a {@link RowSet}.
+   * @return true if the {@link RowSet} does not restrict the rows, which means a full table scan.
+   */
+  public static boolean isFullTable(RowSet rowSet) {
+    return rowSet.getRowKeysCount() == 0 && rowSet.getRowRangesCount() == 0;
+  }
+
+  private static void addSegment(List<RowSet> segments, RowSet rowSet, ByteString segmentStart,
+      ByteString segmentEnd) {
+    RowSet.Builder segment = RowSet.newBuilder();
+    for (ByteString rowKey : rowSet.getRowKeysList()) {
+      if (compareStart(rowKey, segmentStart) >= 0 && compareEnd(rowKey, segmentEnd) < 0) {
+        segment.addRowKeys(rowKey);
+      }
+    }
+    for (RowRange rowRange : rowSet.getRowRangesList()) {
+      RowRange intersection = intersect(rowRange, segmentStart, segmentEnd);
+      if (intersection != null) {
+        segment.addRowRanges(intersection);
+      }
+    }
+    if (segment.getRowKeysCount() > 0 || segment.getRowRangesCount() > 0) {
+      segments.add(segment.build());
+    }
+  }
+
+  /**
+   * Intersects a {@link RowRange} with the segment [segmentStart, segmentEnd).
+   *
+   * @return the intersection, or null if it's empty.
+   */
+  private static RowRange intersect(RowRange rowRange, ByteString segmentStart,
+      ByteString segmentEnd) {
+    RowRange.Builder result = rowRange.toBuilder();
+
+    ByteString rangeStart = getStartKey(rowRange);
+    if (!segmentStart.isEmpty() && compareStart(rangeStart, segmentStart) < 0) {
+      result.setStartKeyClosed(segmentStart);
+      rangeStart = segmentStart;
+    }
+
+    ByteString rangeEnd = getEndKey(rowRange);
+    boolean endClosed = rowRange.getEndKeyCase() == RowRange.EndKeyCase.END_KEY_CLOSED;
+    if (!segmentEnd.isEmpty()) {
+      int comparison = compareEnd(rangeEnd, segmentEnd);
+      if (comparison > 0 || (comparison == 0 && endClosed)) {
+        result.setEndKeyOpen(segmentEnd);
+        rangeEnd = segmentEnd;
+        endClosed = false;
+      }
+    }
+
+    if (!rangeStart.isEmpty() && !rangeEnd.isEmpty()) {
+      int comparison = ByteStringComparator.INSTANCE.compare(rangeStart, rangeEnd);
+      boolean startClosed = result.getStartKeyCase() != RowRange.StartKeyCase.START_KEY_OPEN;
+      if (comparison > 0 || (comparison == 0 && !(startClosed && endClosed))) {
+        return null;
+      }
+    }
+    return result.build();
+  }
+
+  private static ByteString getStartKey(RowRange rowRange) {
+    switch (rowRange.getStartKeyCase()) {
+    case START_KEY_CLOSED:
+      return rowRange.getStartKeyClosed();
+    case START_KEY_OPEN:
+      return rowRange.getStartKeyOpen();
+    default:
+      return ByteString.EMPTY;
+    }
+  }
+
+  private static ByteString getEndKey(RowRange rowRange) {
+    switch (rowRange.getEndKeyCase()) {
+    case END_KEY_CLOSED:
+      return rowRange.getEndKeyClosed();
+    case END_KEY_OPEN:
+      return rowRange.getEndKeyOpen();
+    default:
+      return ByteString.EMPTY;
+    }
+  }
+
+  /** Compares two start keys, where an empty key is the start of the table. */
+  private static int compareStart(ByteString key1, ByteString key2) {
+    return ByteStringComparator.INSTANCE.compare(key1, key2);
+  }
+
+  /** Compares two end keys, where an empty key is the end of the table. */
+  private static int compareEnd(ByteString key1, ByteString key2) {
+    if (key1.isEmpty()) {
+      return key2.isEmpty() ? 0 : 1;
+    } else if (key2.isEmpty()) {
+      return -1;
+    }
+    return ByteStringComparator.INSTANCE.compare(key1, key2);
+  }
+}
@@ -46,6 +46,18 @@ public final class ZeroCopyByteStringUtil {
     return UnsafeByteOperations.unsafeWrap(array);
   }
 
+  /**
+   * Wraps a range of a byte array in a {@link com.google.protobuf.ByteString} without copying it.
+   *
+   * @param array an array of byte.
+   * @param offset the offset of the range in the array.
+   * @param length the length of the range.
+   * @return a {@link com.google.protobuf.ByteString} object.
+   */
+  public static ByteString wrap(final byte[] array, int offset, int length) {
+    return UnsafeByteOperations.unsafeWrap(array, offset, length);
+  }
+
   /**
    * Extracts the byte array from the given {@link com.google.protobuf.ByteString} without copy.
    *
@@ -57,7 +69,9 @@ public final class ZeroCopyByteStringUtil {
       ZeroCopyByteOutput byteOutput = new ZeroCopyByteOutput();
       UnsafeByteOperations.unsafeWriteTo(byteString, byteOutput);
       return byteOutput.bytes;
-    } catch (IOException e) {
+    } catch (IOException | UnsupportedOperationException e) {
+      // ByteStrings that wrap a range of an array, or that are made of several arrays, can't be
+      // extracted, so they are copied.
       return byteString.toByteArray();
     }
   }
@@ -67,7 +81,8 @@ public final class ZeroCopyByteStringUtil {
 
     @Override
     public void writeLazy(byte[] value, int offset, int length) {
-      if (offset != 0 || length != value.length) {
+      // A second call means that the ByteString is a concatenation of several arrays.
+      if (bytes != null || offset != 0 || length != value.length) {
         throw new UnsupportedOperationException();
       }
       bytes = value;
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.api.client.util.NanoClock;
+import com.google.bigtable.v2.SampleRowKeysRequest;
+import com.google.bigtable.v2.SampleRowKeysResponse;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.ByteString;
+
+/**
+ * Tests for {@link KeyRangeIndex}.
+ */
+@RunWith(JUnit4.class)
+public class TestKeyRangeIndex {
+
+  private static final BigtableTableName TABLE_NAME =
+      new BigtableTableName("projects/SomeProject/instances/SomeInstance/tables/SomeTable");
+
+  @Mock
+  BigtableDataClient mockClient;
+
+  private final AtomicLong time = new AtomicLong();
+  private KeyRangeIndex underTest;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    underTest = new KeyRangeIndex(mockClient, TABLE_NAME, 1, TimeUnit.SECONDS);
+    underTest.clock = new NanoClock() {
+      @Override
+      public long nanoTime() {
+        return time.get();
+      }
+    };
+  }
+
+  @Test
+  public void testRefreshDoesNotBlock() {
+    SettableFuture<List<SampleRowKeysResponse>> future = SettableFuture.create();
+    when(mockClient.sampleRowKeysAsync(any(SampleRowKeysRequest.class))).thenReturn(future);
+
+    Assert.assertTrue(underTest.getSplitKeys().isEmpty());
+    Assert.assertTrue(underTest.getSplitKeys().isEmpty());
+    verify(mockClient, times(1)).sampleRowKeysAsync(any(SampleRowKeysRequest.class));
+
+    future.set(Arrays.asList(createResponse("b"), createResponse("a"), createResponse("")));
+    Assert.assertEquals(
+      Arrays.asList(ByteString.copyFromUtf8("a"), ByteString.copyFromUtf8("b")),
+      underTest.getSplitKeys());
+    verify(mockClient, times(1)).sampleRowKeysAsync(any(SampleRowKeysRequest.class));
+  }
+
+  @Test
+  public void testStaleSnapshotIsRefreshed() {
+    SettableFuture<List<SampleRowKeysResponse>> first = SettableFuture.create();
+    first.set(Arrays.asList(createResponse("a")));
+    SettableFuture<List<SampleRowKeysResponse>> second = SettableFuture.create();
+    when(mockClient.sampleRowKeysAsync(any(SampleRowKeysRequest.class)))
+        .thenReturn(first, second);
+
+    Assert.assertEquals(Arrays.asList(ByteString.copyFromUtf8("a")), underTest.getSplitKeys());
+    time.addAndGet(TimeUnit.SECONDS.toNanos(2));
+    // The stale snapshot is still used until the refresh completes.
+    Assert.assertEquals(Arrays.asList(ByteString.copyFromUtf8("a")), underTest.getSplitKeys());
+    second.set(Arrays.asList(createResponse("b")));
+    Assert.assertEquals(Arrays.asList(ByteString.copyFromUtf8("b")), underTest.getSplitKeys());
+    verify(mockClient, times(2)).sampleRowKeysAsync(any(SampleRowKeysRequest.class));
+  }
+
+  @Test
+  public void testFailedRefreshIsRetried() {
+    SettableFuture<List<SampleRowKeysResponse>> failed = SettableFuture.create();
+    failed.setException(new RuntimeException("unavailable"));
+    SettableFuture<List<SampleRowKeysResponse>> succeeded = SettableFuture.create();
+    succeeded.set(Arrays.asList(createResponse("a")));
+    when(mockClient.sampleRowKeysAsync(any(SampleRowKeysRequest.class)))
+        .thenReturn(failed, succeeded);
+
+    Assert.assertTrue(underTest.getSplitKeys().isEmpty());
+    // The refresh is not retried until the backoff expires.
+    Assert.assertTrue(underTest.getSplitKeys().isEmpty());
+    verify(mockClient, times(1)).sampleRowKeysAsync(any(SampleRowKeysRequest.class));
+    time.addAndGet(TimeUnit.MILLISECONDS.toNanos(KeyRangeIndex.INITIAL_REFRESH_BACKOFF_MILLIS));
+    Assert.assertEquals(Arrays.asList(ByteString.copyFromUtf8("a")), underTest.getSplitKeys());
+  }
+
+  @Test
+  public void testFailingClientBacksOff() throws Exception {
+    underTest = new KeyRangeIndex(mockClient, TABLE_NAME, 1, TimeUnit.MINUTES);
+    underTest.clock = new NanoClock() {
+      @Override
+      public long nanoTime() {
+        return time.get();
+      }
+    };
+    RuntimeException failure = new RuntimeException("unavailable");
+    when(mockClient.sampleRowKeysAsync(any(SampleRowKeysRequest.class)))
+        .thenReturn(Futures.<List<SampleRowKeysResponse>> immediateFailedFuture(failure));
+
+    long initialBackoffNanos =
+        TimeUnit.MILLISECONDS.toNanos(KeyRangeIndex.INITIAL_REFRESH_BACKOFF_MILLIS);
+    for (int i = 0; i < 100; i++) {
+      underTest.getSplitKeys();
+    }
+    verify(mockClient, times(1)).sampleRowKeysAsync(any(SampleRowKeysRequest.class));
+    try {
+      underTest.reload().get();
+      Assert.fail("Expected the last failure during the backoff");
+    } catch (ExecutionException e) {
+      Assert.assertSame(failure, e.getCause());
+    }
+    verify(mockClient, times(1)).sampleRowKeysAsync(any(SampleRowKeysRequest.class));
+
+    // The second failure doubles the backoff.
+    time.addAndGet(initialBackoffNanos);
+    underTest.getSplitKeys();
+    verify(mockClient, times(2)).sampleRowKeysAsync(any(SampleRowKeysRequest.class));
+    time.addAndGet(initialBackoffNanos);
+    underTest.getSplitKeys();
+    verify(mockClient, times(2)).sampleRowKeysAsync(any(SampleRowKeysRequest.class));
+    time.addAndGet(initialBackoffNanos);
+    underTest.getSplitKeys();
+    verify(mockClient, times(3)).sampleRowKeysAsync(any(SampleRowKeysRequest.class));
+  }
+
+  @Test
+  public void testSampleRowKeysAreRefreshedBeforeExpiry() throws Exception {
+    List<SampleRowKeysResponse> first = Arrays.asList(createResponse("a"));
+    List<SampleRowKeysResponse> second = Arrays.asList(createResponse("b"));
+    SettableFuture<List<SampleRowKeysResponse>> secondFuture = SettableFuture.create();
+    when(mockClient.sampleRowKeysAsync(any(SampleRowKeysRequest.class)))
+        .thenReturn(Futures.immediateFuture(first), secondFuture);
+
+    Assert.assertEquals(first, underTest.getSampleRowKeysAsync().get());
+    Assert.assertEquals(first, underTest.getSampleRowKeysAsync().get());
+    verify(mockClient, times(1)).sampleRowKeysAsync(any(SampleRowKeysRequest.class));
+
+    time.addAndGet(TimeUnit.MILLISECONDS.toNanos(800));
+    ListenableFuture<List<SampleRowKeysResponse>> future = underTest.getSampleRowKeysAsync();
+    Assert.assertTrue(future.isDone());
+    Assert.assertEquals(first, future.get());
+    verify(mockClient, times(2)).sampleRowKeysAsync(any(SampleRowKeysRequest.class));
+
+    secondFuture.set(second);
+    Assert.assertEquals(second, underTest.getSampleRowKeysAsync().get());
+  }
+
+  @Test
+  public void testExpiredSampleRowKeysWaitForRefresh() throws Exception {
+    List<SampleRowKeysResponse> first = Arrays.asList(createResponse("a"));
+    List<SampleRowKeysResponse> second = Arrays.asList(createResponse("b"));
+    SettableFuture<List<SampleRowKeysResponse>> secondFuture = SettableFuture.create();
+    when(mockClient.sampleRowKeysAsync(any(SampleRowKeysRequest.class)))
+        .thenReturn(Futures.immediateFuture(first), secondFuture);
+
+    Assert.assertEquals(first, underTest.getSampleRowKeysAsync().get());
+    time.addAndGet(TimeUnit.SECONDS.toNanos(2));
+    ListenableFuture<List<SampleRowKeysResponse>> future = underTest.getSampleRowKeysAsync();
+    Assert.assertFalse(future.isDone());
+    secondFuture.set(second);
+    Assert.assertEquals(second, future.get());
+  }
+
+  @Test
+  public void testReload() throws Exception {
+    List<SampleRowKeysResponse> first = Arrays.asList(createResponse("a"));
+    List<SampleRowKeysResponse> second = Arrays.asList(createResponse("b"));
+    when(mockClient.sampleRowKeysAsync(any(SampleRowKeysRequest.class)))
+        .thenReturn(Futures.immediateFuture(first), Futures.immediateFuture(second));
+
+    Assert.assertEquals(first, underTest.getSampleRowKeysAsync().get());
+    Assert.assertEquals(second, underTest.reload().get());
+    Assert.assertEquals(Arrays.asList(ByteString.copyFromUtf8("b")), underTest.getSplitKeys());
+  }
+
+  @Test
+  public void testGetTabletIndex() {
+    List<ByteString> splitKeys =
+        Arrays.asList(ByteString.copyFromUtf8("b"), ByteString.copyFromUtf8("d"));
+    Assert.assertEquals(0, KeyRangeIndex.getTabletIndex(splitKeys, ByteString.copyFromUtf8("a")));
+    Assert.assertEquals(1, KeyRangeIndex.getTabletIndex(splitKeys, ByteString.copyFromUtf8("b")));
+    Assert.assertEquals(1, KeyRangeIndex.getTabletIndex(splitKeys, ByteString.copyFromUtf8("c")));
+    Assert.assertEquals(2, KeyRangeIndex.getTabletIndex(splitKeys, ByteString.copyFromUtf8("d")));
+    Assert.assertEquals(2, KeyRangeIndex.getTabletIndex(splitKeys, ByteString.copyFromUtf8("z")));
+  }
+
+  private static SampleRowKeysResponse createResponse(String key) {
+    return SampleRowKeysResponse.newBuilder().setRowKey(ByteString.copyFromUtf8(key)).build();
+  }
+}
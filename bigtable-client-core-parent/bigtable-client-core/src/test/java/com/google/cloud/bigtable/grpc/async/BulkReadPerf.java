@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc.async;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.bigtable.v2.ReadRowsRequest;
+import com.google.bigtable.v2.RowSet;
+import com.google.cloud.bigtable.grpc.BigtableDataClient;
+import com.google.cloud.bigtable.grpc.BigtableTableName;
+import com.google.cloud.bigtable.grpc.scanner.FlatRow;
+import com.google.cloud.bigtable.grpc.scanner.ScanHandler;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.ByteString;
+
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Measures the throughput of multi-gets through {@link BulkRead} as the simulated latency per key
+ * changes. The {@link BigtableDataClient} is simulated; each read responds after
+ * {@link #RPC_LATENCY_MS} plus a per key latency. The batch size chosen by the
+ * {@link AdaptiveBatchSizer} is printed after each run.
+ */
+public class BulkReadPerf {
+  final static int ROW_COUNT = 100_000;
+  final static int BATCH_SIZE = 100;
+  final static int RPC_LATENCY_MS = 5;
+  final static long[] KEY_LATENCY_MICROS = { 0, 10, 100, 1000 };
+
+  public static void main(String[] args) throws Exception {
+    ScheduledExecutorService responseExecutor = Executors.newScheduledThreadPool(4);
+    try {
+      for (int i = 0; i < 3; i++) {
+        System.out.println("=======");
+        for (long keyLatencyMicros : KEY_LATENCY_MICROS) {
+          test(createClient(responseExecutor, keyLatencyMicros),
+            keyLatencyMicros + " micros/key");
+        }
+      }
+    } finally {
+      responseExecutor.shutdownNow();
+    }
+  }
+
+  private static BigtableDataClient createClient(final ScheduledExecutorService responseExecutor,
+      final long keyLatencyMicros) {
+    BigtableDataClient client = Mockito.mock(BigtableDataClient.class);
+    when(client.readFlatRows(any(ReadRowsRequest.class), any(StreamObserver.class)))
+        .thenAnswer(new Answer<ScanHandler>() {
+          @SuppressWarnings("unchecked")
+          @Override
+          public ScanHandler answer(InvocationOnMock invocation) throws Throwable {
+            final ReadRowsRequest request = invocation.getArgumentAt(0, ReadRowsRequest.class);
+            final StreamObserver<FlatRow> observer =
+                invocation.getArgumentAt(1, StreamObserver.class);
+            responseExecutor.schedule(new Runnable() {
+              @Override
+              public void run() {
+                for (ByteString key : request.getRows().getRowKeysList()) {
+                  observer.onNext(FlatRow.newBuilder().withRowKey(key)
+                      .addCell("cf", ByteString.EMPTY, 0, key).build());
+                }
+                observer.onCompleted();
+              }
+            }, TimeUnit.MILLISECONDS.toMicros(RPC_LATENCY_MS)
+                + keyLatencyMicros * request.getRows().getRowKeysCount(), TimeUnit.MICROSECONDS);
+            return Mockito.mock(ScanHandler.class);
+          }
+        });
+    return client;
+  }
+
+  private static void test(BigtableDataClient client, String label) throws Exception {
+    BigtableTableName tableName =
+        new BigtableTableName("projects/SomeProject/instances/SomeInstance/tables/SomeTable");
+    BulkRead underTest = new BulkRead(client, tableName, new AdaptiveBatchSizer(BATCH_SIZE));
+
+    long start = System.nanoTime();
+    List<ListenableFuture<FlatRow>> futures = new ArrayList<>(ROW_COUNT);
+    for (int i = 0; i < ROW_COUNT; i++) {
+      ByteString key = ByteString.copyFromUtf8(String.format("row%08d", i));
+      futures.add(underTest.add(ReadRowsRequest.newBuilder()
+          .setTableName(tableName.toString())
+          .setRows(RowSet.newBuilder().addRowKeys(key))
+          .build()));
+      if (futures.size() % (BATCH_SIZE * 10) == 0) {
+        underTest.flush();
+      }
+    }
+    underTest.flush();
+    Futures.allAsList(futures).get(5, TimeUnit.MINUTES);
+    long totalTime = System.nanoTime() - start;
+    System.out.println(String.format("%s: read %d rows in %d ms.  %f rows/sec.  batch size %d",
+      label, ROW_COUNT, totalTime / 1000000, ROW_COUNT * 1000000000.0 / totalTime,
+      underTest.getBatchSizes()));
+  }
+}
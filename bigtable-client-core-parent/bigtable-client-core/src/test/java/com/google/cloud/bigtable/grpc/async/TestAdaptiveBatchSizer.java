@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc.async;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link AdaptiveBatchSizer}.
+ */
+@RunWith(JUnit4.class)
+public class TestAdaptiveBatchSizer {
+
+  @Test
+  public void testStartsAtMax() {
+    AdaptiveBatchSizer underTest = new AdaptiveBatchSizer(100);
+    Assert.assertEquals(100, underTest.getBatchSize());
+    Assert.assertEquals(100, underTest.getMaxBatchSize());
+  }
+
+  @Test
+  public void testSpreadsKeysEvenly() {
+    AdaptiveBatchSizer underTest = new AdaptiveBatchSizer(100);
+    Assert.assertEquals(1, underTest.getBatchSize(0));
+    Assert.assertEquals(30, underTest.getBatchSize(30));
+    Assert.assertEquals(100, underTest.getBatchSize(100));
+    // 101 keys should be two batches of 51 and 50, rather than 100 and 1.
+    Assert.assertEquals(51, underTest.getBatchSize(101));
+    Assert.assertEquals(100, underTest.getBatchSize(1000));
+  }
+
+  @Test
+  public void testShrinksWhenSlow() {
+    AdaptiveBatchSizer underTest = new AdaptiveBatchSizer(10, 100, 100, TimeUnit.MILLISECONDS);
+    // 100 keys in 400ms is 4ms per key, so 25 keys fit in 100ms.
+    underTest.update(100, TimeUnit.MILLISECONDS.toNanos(400));
+    Assert.assertEquals(25, underTest.getBatchSize());
+
+    // Very slow keys are bounded by the minimum.
+    for (int i = 0; i < 50; i++) {
+      underTest.update(10, TimeUnit.SECONDS.toNanos(10));
+    }
+    Assert.assertEquals(10, underTest.getBatchSize());
+  }
+
+  @Test
+  public void testHighFixedLatencyDoesNotShrinkBatches() {
+    AdaptiveBatchSizer underTest = new AdaptiveBatchSizer(10, 100, 100, TimeUnit.MILLISECONDS);
+    // A 200ms round trip, which is more than the target, and 0.1ms per key.
+    for (int i = 0; i < 100; i++) {
+      int keyCount = underTest.getBatchSize();
+      underTest.update(keyCount, TimeUnit.MICROSECONDS.toNanos(200000 + 100 * keyCount));
+      Assert.assertTrue(underTest.getBatchSize() > 10);
+    }
+    Assert.assertEquals(100, underTest.getBatchSize());
+  }
+
+  @Test
+  public void testSeparatesOverheadFromCostPerKey() {
+    AdaptiveBatchSizer underTest = new AdaptiveBatchSizer(10, 100, 100, TimeUnit.MILLISECONDS);
+    // A 200ms round trip and 2ms per key, so 50 keys fit in 100ms on top of the round trip.
+    for (int i = 0; i < 100; i++) {
+      int keyCount = underTest.getBatchSize();
+      underTest.update(keyCount, TimeUnit.MILLISECONDS.toNanos(200 + 2 * keyCount));
+    }
+    Assert.assertEquals(50, underTest.getBatchSize());
+  }
+
+  @Test
+  public void testShrinksWhenSlowAfterSizesSettle() {
+    AdaptiveBatchSizer underTest = new AdaptiveBatchSizer(10, 100, 100, TimeUnit.MILLISECONDS);
+    // A 200ms round trip and 2ms per key settles at 50 keys per batch.
+    for (int i = 0; i < 100; i++) {
+      int keyCount = underTest.getBatchSize();
+      underTest.update(keyCount, TimeUnit.MILLISECONDS.toNanos(200 + 2 * keyCount));
+    }
+    Assert.assertEquals(50, underTest.getBatchSize());
+
+    // The same batches now take twice as long. With the 200ms round trip, that is 8ms per key.
+    for (int i = 0; i < 50; i++) {
+      underTest.update(50, TimeUnit.MILLISECONDS.toNanos(600));
+    }
+    Assert.assertEquals(12, underTest.getBatchSize());
+  }
+
+  @Test
+  public void testGrowsWhenFast() {
+    AdaptiveBatchSizer underTest = new AdaptiveBatchSizer(10, 100, 100, TimeUnit.MILLISECONDS);
+    underTest.update(10, TimeUnit.SECONDS.toNanos(1));
+    Assert.assertEquals(10, underTest.getBatchSize());
+    for (int i = 0; i < 50; i++) {
+      underTest.update(10, TimeUnit.MILLISECONDS.toNanos(1));
+    }
+    Assert.assertEquals(100, underTest.getBatchSize());
+  }
+}
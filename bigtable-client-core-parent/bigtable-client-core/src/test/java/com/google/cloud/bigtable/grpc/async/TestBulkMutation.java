@@ -21,8 +21,10 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -36,6 +38,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -50,6 +53,7 @@ import com.google.cloud.bigtable.config.BulkOptions;
 import com.google.cloud.bigtable.grpc.BigtableDataClient;
 import com.google.cloud.bigtable.grpc.BigtableInstanceName;
 import com.google.cloud.bigtable.grpc.BigtableTableName;
+import com.google.cloud.bigtable.grpc.EncodedMutateRowsClient;
 import com.google.cloud.bigtable.grpc.async.BulkMutation.Batch;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
@@ -81,7 +85,7 @@ public class TestBulkMutation {
         .build();
   }
 
-  @Mock private BigtableDataClient client;
+  @Mock(extraInterfaces = EncodedMutateRowsClient.class) private BigtableDataClient client;
   @Mock private ScheduledExecutorService retryExecutorService;
   @Mock private ScheduledFuture mockScheduledFuture;
 
@@ -358,6 +362,167 @@ public class TestBulkMutation {
     Assert.assertTrue(underTest.currentBatch.builder.getEntriesList().contains(lastRequest));
   }
 
+  @Test
+  public void testEncodedMutations() throws Exception {
+    SettableFuture<List<MutateRowsResponse>> encodedFuture = SettableFuture.create();
+    when(((EncodedMutateRowsClient) client).mutateRowsAsync(any(EncodedMutateRowsRequest.class)))
+        .thenReturn(encodedFuture);
+    underTest = new BulkMutation(TABLE_NAME, client, operationAccountant, retryExecutorService,
+        BULK_OPTIONS.toBuilder().setUseEncodedMutations(true).build());
+
+    MutateRowsRequest.Entry entry = createRequestEntry();
+    ListenableFuture<MutateRowResponse> rowFuture = underTest.add(entry);
+    Assert.assertEquals(0, underTest.currentBatch.builder.getEntriesCount());
+    Assert.assertEquals(1, underTest.currentBatch.encodedBuilder.getEntriesCount());
+    underTest.sendUnsent();
+
+    ArgumentCaptor<EncodedMutateRowsRequest> captor =
+        ArgumentCaptor.forClass(EncodedMutateRowsRequest.class);
+    verify((EncodedMutateRowsClient) client, times(1)).mutateRowsAsync(captor.capture());
+    verify(client, never()).mutateRowsAsync(any(MutateRowsRequest.class));
+    EncodedMutateRowsRequest request = captor.getValue();
+    MutateRowsRequest expected = MutateRowsRequest.newBuilder()
+        .setTableName(TABLE_NAME.toString())
+        .addEntries(entry)
+        .build();
+    Assert.assertEquals(expected, request.toMutateRowsRequest());
+
+    MutateRowsResponse.Builder responseBuilder = MutateRowsResponse.newBuilder();
+    responseBuilder.addEntriesBuilder().setIndex(0).getStatusBuilder()
+        .setCode(Status.Code.OK.value());
+    encodedFuture.set(Arrays.asList(responseBuilder.build()));
+
+    Assert.assertEquals(MutateRowResponse.getDefaultInstance(), rowFuture.get());
+    Assert.assertTrue(request.isReleased());
+  }
+
+  @Test
+  public void testEncodedMutationsWithoutEncodedClient() throws Exception {
+    BigtableDataClient plainClient = Mockito.mock(BigtableDataClient.class);
+    when(plainClient.mutateRowsAsync(any(MutateRowsRequest.class))).thenReturn(future);
+    underTest = new BulkMutation(TABLE_NAME, plainClient, operationAccountant,
+        retryExecutorService, BULK_OPTIONS.toBuilder().setUseEncodedMutations(true).build());
+
+    MutateRowsRequest.Entry entry = createRequestEntry();
+    underTest.add(entry);
+    Assert.assertNull(underTest.currentBatch.encodedBuilder);
+    underTest.sendUnsent();
+
+    MutateRowsRequest expected = MutateRowsRequest.newBuilder()
+        .setTableName(TABLE_NAME.toString())
+        .addEntries(entry)
+        .build();
+    verify(plainClient, times(1)).mutateRowsAsync(eq(expected));
+  }
+
+  @Test
+  public void testCoalesceMutations() throws Exception {
+    underTest = new BulkMutation(TABLE_NAME, client, operationAccountant, retryExecutorService,
+        BULK_OPTIONS.toBuilder().setCoalesceMutations(true).build());
+
+    MutateRowsRequest.Entry first = createEntry("row1", "v1");
+    MutateRowsRequest.Entry other = createEntry("row2", "v2");
+    MutateRowsRequest.Entry second = createEntry("row1", "v3");
+    ListenableFuture<MutateRowResponse> firstFuture = underTest.add(first);
+    ListenableFuture<MutateRowResponse> otherFuture = underTest.add(other);
+    ListenableFuture<MutateRowResponse> secondFuture = underTest.add(second);
+
+    Batch batch = underTest.currentBatch;
+    Assert.assertEquals(2, batch.getRequestCount());
+    MutateRowsRequest.Entry expected = first.toBuilder()
+        .addAllMutations(second.getMutationsList())
+        .build();
+    Assert.assertEquals(Arrays.asList(expected, other), batch.builder.getEntriesList());
+
+    // Cancelling one future does not affect the other mutations of the same row.
+    secondFuture.cancel(true);
+
+    MutateRowsResponse.Builder responseBuilder = MutateRowsResponse.newBuilder();
+    responseBuilder.addEntriesBuilder().setIndex(0).getStatusBuilder()
+        .setCode(Status.Code.OK.value());
+    responseBuilder.addEntriesBuilder().setIndex(1).getStatusBuilder()
+        .setCode(Status.Code.NOT_FOUND.value());
+    future.set(Arrays.asList(responseBuilder.build()));
+    underTest.sendUnsent();
+
+    Assert.assertEquals(MutateRowResponse.getDefaultInstance(), firstFuture.get());
+    Assert.assertTrue(secondFuture.isCancelled());
+    try {
+      otherFuture.get();
+      Assert.fail("Expected exception");
+    } catch (ExecutionException e) {
+      Assert.assertEquals(Status.Code.NOT_FOUND, Status.fromThrowable(e).getCode());
+    }
+  }
+
+  @Test
+  public void testCoalescedMutationsDoNotCountAsRows() {
+    underTest = new BulkMutation(TABLE_NAME, client, operationAccountant, retryExecutorService,
+        BULK_OPTIONS.toBuilder().setCoalesceMutations(true).build());
+    for (int i = 0; i < MAX_ROW_COUNT; i++) {
+      underTest.add(createEntry("row" + i, "v"));
+    }
+    underTest.add(createEntry("row0", "v2"));
+    Assert.assertEquals(MAX_ROW_COUNT, underTest.currentBatch.getRequestCount());
+    verify(client, never()).mutateRowsAsync(any(MutateRowsRequest.class));
+
+    underTest.add(createEntry("row" + MAX_ROW_COUNT, "v"));
+    verify(client, times(1)).mutateRowsAsync(any(MutateRowsRequest.class));
+    Assert.assertEquals(1, underTest.currentBatch.getRequestCount());
+  }
+
+  @Test
+  public void testFullBatchIsSentOnExecutor() throws Exception {
+    final List<Runnable> sends = new ArrayList<>();
+    Executor sendExecutor = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        sends.add(command);
+      }
+    };
+    for (int i = 0; i < MAX_ROW_COUNT; i++) {
+      underTest.add(createEntry("row" + i, "v"), sendExecutor);
+    }
+    ListenableFuture<MutateRowResponse> last =
+        underTest.add(createEntry("row" + MAX_ROW_COUNT, "v"), sendExecutor);
+
+    // The full batch is handed to the executor, and the new entry starts the next batch.
+    Assert.assertEquals(1, sends.size());
+    verify(client, never()).mutateRowsAsync(any(MutateRowsRequest.class));
+    Assert.assertEquals(1, underTest.currentBatch.getRequestCount());
+    Assert.assertTrue(operationAccountant.hasInflightOperations());
+
+    sends.get(0).run();
+    verify(client, times(1)).mutateRowsAsync(any(MutateRowsRequest.class));
+    Assert.assertFalse(last.isDone());
+  }
+
+  @Test
+  public void testRejectedBatchIsSentOnCallingThread() {
+    Executor sendExecutor = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        throw new RejectedExecutionException();
+      }
+    };
+    for (int i = 0; i <= MAX_ROW_COUNT; i++) {
+      underTest.add(createEntry("row" + i, "v"), sendExecutor);
+    }
+    verify(client, times(1)).mutateRowsAsync(any(MutateRowsRequest.class));
+  }
+
+  private static MutateRowsRequest.Entry createEntry(String rowKey, String value) {
+    SetCell setCell = SetCell.newBuilder()
+        .setFamilyName("cf1")
+        .setColumnQualifier(QUALIFIER)
+        .setValue(ByteString.copyFromUtf8(value))
+        .build();
+    return MutateRowsRequest.Entry.newBuilder()
+        .setRowKey(ByteString.copyFromUtf8(rowKey))
+        .addMutations(Mutation.newBuilder().setSetCell(setCell))
+        .build();
+  }
+
   private BulkMutation createBulkMutation() {
     return new BulkMutation(TABLE_NAME, client, operationAccountant, retryExecutorService,
         BULK_OPTIONS);
@@ -20,14 +20,13 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.Assert;
@@ -46,15 +45,19 @@ import com.google.bigtable.v2.ReadRowsRequest;
 import com.google.bigtable.v2.RowSet;
 import com.google.cloud.bigtable.grpc.BigtableDataClient;
 import com.google.cloud.bigtable.grpc.BigtableTableName;
+import com.google.cloud.bigtable.grpc.KeyRangeIndex;
 import com.google.cloud.bigtable.grpc.scanner.FlatRow;
-import com.google.cloud.bigtable.grpc.scanner.ResultScanner;
+import com.google.cloud.bigtable.grpc.scanner.ScanHandler;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.ByteString;
 
+import io.grpc.stub.StreamObserver;
+
 /**
  * Tests for {@link BulkRead}.
  */
 @RunWith(JUnit4.class)
+@SuppressWarnings("unchecked")
 public class TestBulkRead {
 
   private static final BigtableTableName TABLE_NAME =
@@ -63,29 +66,43 @@ public class TestBulkRead {
   @Mock
   BigtableDataClient mockClient;
 
-  @Mock
-  ExecutorService mockThreadPool;
-
-  @Mock
-  ResultScanner<FlatRow> mockScanner;
-
   private BulkRead underTest;
 
   @Before
   public void setup() {
     MockitoAnnotations.initMocks(this);
+    underTest = new BulkRead(mockClient, TABLE_NAME, new AdaptiveBatchSizer(5));
+  }
 
-    // immediately execute the Runnable.
-    when(mockThreadPool.submit(any(Runnable.class))).thenAnswer(new Answer<Void>() {
+  /**
+   * Tests that flush() does not wait for the response, and that the futures are resolved from the
+   * {@link StreamObserver} callbacks.
+   */
+  @Test
+  public void testFlushDoesNotBlock() throws Exception {
+    final List<StreamObserver<FlatRow>> observers = new ArrayList<>();
+    when(mockClient.readFlatRows(any(ReadRowsRequest.class), any(StreamObserver.class)))
+        .thenAnswer(new Answer<ScanHandler>() {
+          @Override
+          public ScanHandler answer(InvocationOnMock invocation) throws Throwable {
+            observers.add(invocation.getArgumentAt(1, StreamObserver.class));
+            return Mockito.mock(ScanHandler.class);
+          }
+        });
+    FlatRow row = createRow(ByteString.copyFromUtf8("Key"));
+    ListenableFuture<FlatRow> found = underTest.add(createRequest(row.getRowKey()));
+    ListenableFuture<FlatRow> missing =
+        underTest.add(createRequest(ByteString.copyFromUtf8("Missing")));
+    underTest.flush();
+    Assert.assertEquals(1, observers.size());
+    Assert.assertFalse(found.isDone());
 
-      @Override
-      public Void answer(InvocationOnMock invocation) throws Throwable {
-        invocation.getArgumentAt(0, Runnable.class).run();
-        return null;
-      }
-    });
+    observers.get(0).onNext(row);
+    Assert.assertEquals(row, found.get(0, TimeUnit.MILLISECONDS));
+    Assert.assertFalse(missing.isDone());
 
-    underTest = new BulkRead(mockClient, TABLE_NAME, 5, mockThreadPool);
+    observers.get(0).onCompleted();
+    Assert.assertNull(missing.get(0, TimeUnit.MILLISECONDS));
   }
 
   /**
@@ -93,12 +110,12 @@ public class TestBulkRead {
    */
   @Test
   public void testBatchOfOne() throws Exception {
-    when(mockClient.readFlatRows(any(ReadRowsRequest.class))).thenReturn(mockScanner);
     FlatRow row = createRow(ByteString.copyFromUtf8("Key"));
-    when(mockScanner.next()).thenReturn(row).thenReturn(null);
+    when(mockClient.readFlatRows(any(ReadRowsRequest.class), any(StreamObserver.class)))
+        .thenAnswer(createStreamingAnswer(Arrays.asList(row.getRowKey()).iterator()));
     ListenableFuture<FlatRow> future = underTest.add(createRequest(row.getRowKey()));
     underTest.flush();
-    verify(mockClient, times(1)).readFlatRows(any(ReadRowsRequest.class));
+    verify(mockClient, times(1)).readFlatRows(any(ReadRowsRequest.class), any(StreamObserver.class));
     Assert.assertEquals(row, future.get(10, TimeUnit.MILLISECONDS));
   }
 
@@ -107,14 +124,14 @@ public class TestBulkRead {
    */
   @Test
   public void testDuplicateKey() throws Exception {
-    when(mockClient.readFlatRows(any(ReadRowsRequest.class))).thenReturn(mockScanner);
     FlatRow row = createRow(ByteString.copyFromUtf8("Key"));
-    when(mockScanner.next()).thenReturn(row).thenReturn(null);
+    when(mockClient.readFlatRows(any(ReadRowsRequest.class), any(StreamObserver.class)))
+        .thenAnswer(createStreamingAnswer(Arrays.asList(row.getRowKey()).iterator()));
     ReadRowsRequest request = createRequest(row.getRowKey());
     ListenableFuture<FlatRow> future1 = underTest.add(request);
     ListenableFuture<FlatRow> future2 = underTest.add(request);
     underTest.flush();
-    verify(mockClient, times(1)).readFlatRows(any(ReadRowsRequest.class));
+    verify(mockClient, times(1)).readFlatRows(any(ReadRowsRequest.class), any(StreamObserver.class));
     Assert.assertEquals(row, future1.get(10, TimeUnit.MILLISECONDS));
     Assert.assertEquals(row, future2.get(10, TimeUnit.MILLISECONDS));
   }
@@ -126,13 +143,13 @@ public class TestBulkRead {
   public void testBatchOfOneHundred() throws Exception {
     List<ByteString> rowKeys = createRandomKeys(100);
     List<ListenableFuture<FlatRow>> futures =
-        addRows(rowKeys, new Answer<ResultScanner<FlatRow>>() {
+        addRows(rowKeys, new Answer<ScanHandler>() {
           @Override
-          public ResultScanner<FlatRow> answer(InvocationOnMock invocation) throws Throwable {
+          public ScanHandler answer(InvocationOnMock invocation) throws Throwable {
             ReadRowsRequest request = invocation.getArgumentAt(0, ReadRowsRequest.class);
             List<ByteString> list = new ArrayList<>(request.getRows().getRowKeysList());
             Collections.shuffle(list);
-            return createMockScanner(list.iterator());
+            return createStreamingAnswer(list.iterator()).answer(invocation);
           }
         });
     for (int i = 0; i < rowKeys.size(); i++) {
@@ -150,13 +167,13 @@ public class TestBulkRead {
   public void testMissingResponses() throws Exception {
     List<ByteString> rowKeys = createRandomKeys(100);
     final Set<ByteString> missing = new HashSet<>();
-    List<ListenableFuture<FlatRow>> futures = addRows(rowKeys, new Answer<ResultScanner<FlatRow>>() {
+    List<ListenableFuture<FlatRow>> futures = addRows(rowKeys, new Answer<ScanHandler>() {
       @Override
-      public ResultScanner<FlatRow> answer(InvocationOnMock invocation) throws Throwable {
+      public ScanHandler answer(InvocationOnMock invocation) throws Throwable {
         ReadRowsRequest request = invocation.getArgumentAt(0, ReadRowsRequest.class);
         ArrayList<ByteString> rowKeysList = new ArrayList<>(request.getRows().getRowKeysList());
         missing.add(rowKeysList.remove((int) Math.random() * rowKeysList.size()));
-        return createMockScanner(rowKeysList.iterator());
+        return createStreamingAnswer(rowKeysList.iterator()).answer(invocation);
       }
     });
     for (int i = 0; i < rowKeys.size(); i++) {
@@ -170,6 +187,122 @@ public class TestBulkRead {
     }
   }
 
+  /**
+   * Tests that adjacent keys are read with a range, and that unrequested rows are discarded.
+   */
+  @Test
+  public void testAdjacentKeysAreReadAsRange() throws Exception {
+    List<ByteString> rowKeys = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      rowKeys.add(ByteString.copyFromUtf8("key" + (i * 2)));
+    }
+    final List<ReadRowsRequest> requests = new ArrayList<>();
+    List<ListenableFuture<FlatRow>> futures = addRows(rowKeys, new Answer<ScanHandler>() {
+      @Override
+      public ScanHandler answer(InvocationOnMock invocation) throws Throwable {
+        requests.add(invocation.getArgumentAt(0, ReadRowsRequest.class));
+        List<ByteString> keys = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+          keys.add(ByteString.copyFromUtf8("key" + i));
+        }
+        return createStreamingAnswer(keys.iterator()).answer(invocation);
+      }
+    });
+    Assert.assertEquals(0, requests.get(0).getRows().getRowKeysCount());
+    Assert.assertEquals(1, requests.get(0).getRows().getRowRangesCount());
+    for (int i = 0; i < rowKeys.size(); i++) {
+      Assert.assertEquals(rowKeys.get(i), futures.get(i).get(10, TimeUnit.MILLISECONDS).getRowKey());
+    }
+  }
+
+  /**
+   * Tests that every RPC only has the keys of a single tablet.
+   */
+  @Test
+  public void testBatchesAreAlignedToTablets() throws Exception {
+    KeyRangeIndex keyRangeIndex = Mockito.mock(KeyRangeIndex.class);
+    when(keyRangeIndex.getSplitKeys()).thenReturn(
+      Arrays.asList(ByteString.copyFromUtf8("b"), ByteString.copyFromUtf8("c")));
+    underTest = new BulkRead(mockClient, TABLE_NAME, new AdaptiveBatchSizer(5), keyRangeIndex);
+    List<ByteString> rowKeys = new ArrayList<>();
+    for (String key : new String[] { "a1", "a5", "b1", "b5", "b9", "c1" }) {
+      rowKeys.add(ByteString.copyFromUtf8(key));
+    }
+    final List<ReadRowsRequest> requests = new ArrayList<>();
+    when(mockClient.readFlatRows(any(ReadRowsRequest.class), any(StreamObserver.class)))
+        .thenAnswer(new Answer<ScanHandler>() {
+          @Override
+          public ScanHandler answer(InvocationOnMock invocation) throws Throwable {
+            ReadRowsRequest request = invocation.getArgumentAt(0, ReadRowsRequest.class);
+            requests.add(request);
+            return createStreamingAnswer(request.getRows().getRowKeysList().iterator())
+                .answer(invocation);
+          }
+        });
+    List<ListenableFuture<FlatRow>> futures = new ArrayList<>();
+    for (ByteString key : rowKeys) {
+      futures.add(underTest.add(createRequest(key)));
+    }
+    underTest.flush();
+    Assert.assertEquals(3, requests.size());
+    Assert.assertEquals(rowKeys.subList(0, 2), requests.get(0).getRows().getRowKeysList());
+    Assert.assertEquals(rowKeys.subList(2, 5), requests.get(1).getRows().getRowKeysList());
+    Assert.assertEquals(rowKeys.subList(5, 6), requests.get(2).getRows().getRowKeysList());
+    for (int i = 0; i < rowKeys.size(); i++) {
+      Assert.assertEquals(rowKeys.get(i), futures.get(i).get(10, TimeUnit.MILLISECONDS).getRowKey());
+    }
+  }
+
+  /**
+   * Tests that sparse keys over many tablets share RPCs, rather than sending one RPC per tablet.
+   */
+  @Test
+  public void testSparseKeysShareRpcs() throws Exception {
+    List<ByteString> splitKeys = new ArrayList<>();
+    List<ByteString> rowKeys = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      splitKeys.add(ByteString.copyFromUtf8(String.format("k%02d", i)));
+      rowKeys.add(ByteString.copyFromUtf8(String.format("k%02d-row", i)));
+    }
+    KeyRangeIndex keyRangeIndex = Mockito.mock(KeyRangeIndex.class);
+    when(keyRangeIndex.getSplitKeys()).thenReturn(splitKeys);
+    underTest = new BulkRead(mockClient, TABLE_NAME, new AdaptiveBatchSizer(10), keyRangeIndex);
+    final List<ReadRowsRequest> requests = new ArrayList<>();
+    when(mockClient.readFlatRows(any(ReadRowsRequest.class), any(StreamObserver.class)))
+        .thenAnswer(new Answer<ScanHandler>() {
+          @Override
+          public ScanHandler answer(InvocationOnMock invocation) throws Throwable {
+            ReadRowsRequest request = invocation.getArgumentAt(0, ReadRowsRequest.class);
+            requests.add(request);
+            return createStreamingAnswer(request.getRows().getRowKeysList().iterator())
+                .answer(invocation);
+          }
+        });
+    List<ListenableFuture<FlatRow>> futures = new ArrayList<>();
+    for (ByteString key : rowKeys) {
+      futures.add(underTest.add(createRequest(key)));
+    }
+    underTest.flush();
+    Assert.assertEquals(2, requests.size());
+    Assert.assertEquals(rowKeys.subList(0, 10), requests.get(0).getRows().getRowKeysList());
+    Assert.assertEquals(rowKeys.subList(10, 20), requests.get(1).getRows().getRowKeysList());
+    for (int i = 0; i < rowKeys.size(); i++) {
+      Assert.assertEquals(rowKeys.get(i), futures.get(i).get(10, TimeUnit.MILLISECONDS).getRowKey());
+    }
+  }
+
+  @Test
+  public void testGroupByTablet() {
+    List<ByteString> keys = Arrays.asList(ByteString.copyFromUtf8("a"),
+      ByteString.copyFromUtf8("b"), ByteString.copyFromUtf8("c"), ByteString.copyFromUtf8("e"));
+    List<ByteString> splitKeys =
+        Arrays.asList(ByteString.copyFromUtf8("b"), ByteString.copyFromUtf8("d"));
+    Assert.assertEquals(Arrays.asList(keys.subList(0, 1), keys.subList(1, 3), keys.subList(3, 4)),
+      BulkRead.groupByTablet(keys, splitKeys));
+    Assert.assertEquals(Collections.singletonList(keys),
+      BulkRead.groupByTablet(keys, Collections.<ByteString> emptyList()));
+  }
+
   // /////////////// HELPERS ////////////////
 
   /**
@@ -178,12 +311,12 @@ public class TestBulkRead {
    * {@link ListenableFuture}s.
    *
    * @param rowKeys The row keys to retrieve.
-   * @param scannerGenerator Generates {@link ResultScanner}s that will generate FlatRows to be
-   *     processed by {@link BulkRead}.
+   * @param scannerGenerator Sends FlatRows to the {@link StreamObserver} to be processed by
+   *     {@link BulkRead}.
    */
   private List<ListenableFuture<FlatRow>> addRows(
-      List<ByteString> rowKeys, Answer<ResultScanner<FlatRow>> scannerGenerator) {
-    when(mockClient.readFlatRows(any(ReadRowsRequest.class)))
+      List<ByteString> rowKeys, Answer<ScanHandler> scannerGenerator) {
+    when(mockClient.readFlatRows(any(ReadRowsRequest.class), any(StreamObserver.class)))
         .thenAnswer(scannerGenerator);
 
     List<ListenableFuture<FlatRow>> futures = new ArrayList<>();
@@ -192,7 +325,7 @@ public class TestBulkRead {
     }
     underTest.flush();
     verify(mockClient, times(rowKeys.size() / underTest.getBatchSizes()))
-        .readFlatRows(any(ReadRowsRequest.class));
+        .readFlatRows(any(ReadRowsRequest.class), any(StreamObserver.class));
     return futures;
   }
 
@@ -206,24 +339,26 @@ public class TestBulkRead {
   }
 
   /**
-   * Creates a mock {@link ResultScanner} that will return a {@link FlatRow} for every key in the
-   * input.
+   * Creates an {@link Answer} that will send a {@link FlatRow} for every key in the input to the
+   * {@link StreamObserver} passed to {@link BigtableDataClient#readFlatRows(ReadRowsRequest,
+   * StreamObserver)}, and then complete the stream.
    * @param keyIterator An {@link Iterator} for the keys
-   * @return A {@link ResultScanner} that will sequentially return {@link FlatRow} corresponding to
-   *         the order of the input.
-   * @throws IOException
+   * @return An {@link Answer} that will sequentially send {@link FlatRow} corresponding to the
+   *         order of the input.
    */
-  @SuppressWarnings("unchecked")
-  private static ResultScanner<FlatRow> createMockScanner(final Iterator<ByteString> keyIterator)
-      throws IOException {
-    ResultScanner<FlatRow> mock = Mockito.mock(ResultScanner.class);
-    when(mock.next()).then(new Answer<FlatRow>() {
+  private static Answer<ScanHandler> createStreamingAnswer(final Iterator<ByteString> keyIterator) {
+    return new Answer<ScanHandler>() {
+      @SuppressWarnings("unchecked")
       @Override
-      public FlatRow answer(InvocationOnMock invocation) throws Throwable {
-        return keyIterator.hasNext() ? createRow(keyIterator.next()) : null;
+      public ScanHandler answer(InvocationOnMock invocation) throws Throwable {
+        StreamObserver<FlatRow> observer = invocation.getArgumentAt(1, StreamObserver.class);
+        while (keyIterator.hasNext()) {
+          observer.onNext(createRow(keyIterator.next()));
+        }
+        observer.onCompleted();
+        return Mockito.mock(ScanHandler.class);
       }
-    });
-    return mock;
+    };
   }
 
   /**
@@ -239,7 +374,7 @@ public class TestBulkRead {
    */
   private static FlatRow createRow(ByteString key) {
     return FlatRow.newBuilder().withRowKey(key)
-        .addCell("family", ByteString.EMPTY, System.currentTimeMillis(), ByteString.EMPTY).build();
+        .addCell("family", ByteString.EMPTY, 1L, ByteString.EMPTY).build();
   }
 
 }
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc.async;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.bigtable.v2.MutateRowsRequest;
+import com.google.bigtable.v2.Mutation;
+import com.google.bigtable.v2.Mutation.DeleteFromRow;
+import com.google.bigtable.v2.Mutation.SetCell;
+import com.google.common.io.ByteStreams;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+
+import io.grpc.Drainable;
+
+/**
+ * Tests for {@link EncodedMutateRowsRequest}
+ */
+@RunWith(JUnit4.class)
+public class TestEncodedMutateRowsRequest {
+
+  private static final String TABLE_NAME = "projects/p/instances/i/tables/t";
+
+  private static MutateRowsRequest.Entry createEntry(String key, long timestamp, int valueSize) {
+    return MutateRowsRequest.Entry.newBuilder()
+        .setRowKey(ByteString.copyFromUtf8(key))
+        .addMutations(Mutation.newBuilder().setSetCell(SetCell.newBuilder()
+            .setFamilyName("cf")
+            .setColumnQualifier(ByteString.copyFromUtf8("q"))
+            .setTimestampMicros(timestamp)
+            .setValue(ByteString.copyFrom(new byte[valueSize]))))
+        .build();
+  }
+
+  private static MutateRowsRequest createRequest() {
+    return MutateRowsRequest.newBuilder()
+        .setTableName(TABLE_NAME)
+        .setAppProfileId("profile")
+        .addEntries(createEntry("a", 1000, 10))
+        .addEntries(createEntry("b", 2000, 200))
+        .addEntries(createEntry("c", 3000, 3000))
+        .build();
+  }
+
+  /**
+   * An {@link EncodedEntry} that writes a {@link MutateRowsRequest.Entry}.
+   */
+  private static EncodedEntry toEncodedEntry(final MutateRowsRequest.Entry entry,
+      final boolean idempotent) {
+    return new EncodedEntry() {
+      @Override
+      public int getSerializedSize() {
+        return entry.getSerializedSize();
+      }
+
+      @Override
+      public int getMutationsCount() {
+        return entry.getMutationsCount();
+      }
+
+      @Override
+      public boolean isIdempotent() {
+        return idempotent;
+      }
+
+      @Override
+      public void writeTo(CodedOutputStream output) throws IOException {
+        entry.writeTo(output);
+      }
+    };
+  }
+
+  @Test
+  public void testRoundTrip() {
+    MutateRowsRequest request = createRequest();
+    EncodedMutateRowsRequest encoded = EncodedMutateRowsRequest.fromRequest(request);
+    Assert.assertEquals(3, encoded.getEntriesCount());
+    Assert.assertEquals(request.getSerializedSize(), encoded.getSerializedSize());
+    Assert.assertEquals(request, encoded.toMutateRowsRequest());
+    Assert.assertTrue(encoded.isIdempotent());
+    Assert.assertEquals(request.getEntries(1), encoded.getEntry(1));
+  }
+
+  @Test
+  public void testMarshaller() throws IOException {
+    MutateRowsRequest request = createRequest();
+    EncodedMutateRowsRequest encoded = EncodedMutateRowsRequest.fromRequest(request);
+
+    InputStream stream = EncodedMutateRowsRequest.MARSHALLER.stream(encoded);
+    Assert.assertEquals(request.getSerializedSize(), stream.available());
+    Assert.assertArrayEquals(request.toByteArray(), ByteStreams.toByteArray(stream));
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    stream = EncodedMutateRowsRequest.MARSHALLER.stream(encoded);
+    Assert.assertEquals(request.getSerializedSize(), ((Drainable) stream).drainTo(output));
+    Assert.assertArrayEquals(request.toByteArray(), output.toByteArray());
+
+    // Single byte reads.
+    stream = EncodedMutateRowsRequest.MARSHALLER.stream(encoded);
+    output.reset();
+    for (int value = stream.read(); value != -1; value = stream.read()) {
+      output.write(value);
+    }
+    Assert.assertArrayEquals(request.toByteArray(), output.toByteArray());
+
+    EncodedMutateRowsRequest parsed = EncodedMutateRowsRequest.MARSHALLER
+        .parse(EncodedMutateRowsRequest.MARSHALLER.stream(encoded));
+    Assert.assertEquals(request, parsed.toMutateRowsRequest());
+  }
+
+  @Test
+  public void testEncodedEntry() {
+    MutateRowsRequest.Entry entry = createEntry("a", 1000, 10);
+    EncodedMutateRowsRequest.Builder builder = EncodedMutateRowsRequest.newBuilder(TABLE_NAME);
+    builder.addEntry(toEncodedEntry(entry, true));
+    builder.addEntry(entry);
+    Assert.assertEquals(2, builder.getEntriesCount());
+    EncodedMutateRowsRequest encoded = builder.build();
+    Assert.assertEquals(entry, encoded.getEntry(0));
+    Assert.assertEquals(entry, encoded.getEntry(1));
+    Assert.assertEquals("", encoded.getAppProfileId());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testEncodedEntrySizeMismatch() {
+    final MutateRowsRequest.Entry entry = createEntry("a", 1000, 10);
+    EncodedEntry badEntry = new EncodedEntry() {
+      @Override
+      public int getSerializedSize() {
+        return entry.getSerializedSize() + 1;
+      }
+
+      @Override
+      public int getMutationsCount() {
+        return entry.getMutationsCount();
+      }
+
+      @Override
+      public boolean isIdempotent() {
+        return true;
+      }
+
+      @Override
+      public void writeTo(CodedOutputStream output) throws IOException {
+        entry.writeTo(output);
+      }
+    };
+    EncodedMutateRowsRequest.newBuilder(TABLE_NAME).addEntry(badEntry);
+  }
+
+  @Test
+  public void testIdempotency() {
+    MutateRowsRequest.Entry deleteEntry = MutateRowsRequest.Entry.newBuilder()
+        .setRowKey(ByteString.copyFromUtf8("d"))
+        .addMutations(Mutation.newBuilder().setDeleteFromRow(DeleteFromRow.getDefaultInstance()))
+        .build();
+    EncodedMutateRowsRequest encoded = EncodedMutateRowsRequest.newBuilder(TABLE_NAME)
+        .addEntry(createEntry("a", 1000, 10))
+        .addEntry(deleteEntry)
+        .addEntry(createEntry("b", 0, 10))
+        .addEntry(toEncodedEntry(createEntry("c", 0, 10), false))
+        .build();
+    Assert.assertFalse(encoded.isIdempotent());
+    Assert.assertTrue(encoded.retainEntries(new int[] { 0 }).isIdempotent());
+    Assert.assertFalse(encoded.retainEntries(new int[] { 0, 1 }).isIdempotent());
+    Assert.assertFalse(encoded.retainEntries(new int[] { 2 }).isIdempotent());
+    Assert.assertFalse(encoded.retainEntries(new int[] { 3 }).isIdempotent());
+  }
+
+  @Test
+  public void testRetainEntries() throws IOException {
+    MutateRowsRequest request = createRequest();
+    EncodedMutateRowsRequest retry =
+        EncodedMutateRowsRequest.fromRequest(request).retainEntries(new int[] { 0, 2 });
+    MutateRowsRequest expected = MutateRowsRequest.newBuilder()
+        .setTableName(TABLE_NAME)
+        .setAppProfileId("profile")
+        .addEntries(request.getEntries(0))
+        .addEntries(request.getEntries(2))
+        .build();
+    Assert.assertEquals(expected, retry.toMutateRowsRequest());
+    Assert.assertArrayEquals(expected.toByteArray(),
+      ByteStreams.toByteArray(EncodedMutateRowsRequest.MARSHALLER.stream(retry)));
+  }
+
+  @Test
+  public void testWithAppProfileId() {
+    EncodedMutateRowsRequest encoded =
+        EncodedMutateRowsRequest.fromRequest(createRequest()).withAppProfileId("other");
+    Assert.assertEquals(createRequest().toBuilder().setAppProfileId("other").build(),
+      encoded.toMutateRowsRequest());
+  }
+
+  @Test
+  public void testBufferGrowth() {
+    EncodedMutateRowsRequest.Builder builder = EncodedMutateRowsRequest.newBuilder(TABLE_NAME);
+    MutateRowsRequest.Builder expected = MutateRowsRequest.newBuilder().setTableName(TABLE_NAME);
+    for (int i = 0; i < 100; i++) {
+      MutateRowsRequest.Entry entry =
+          createEntry("key" + i, i + 1, EncodedMutateRowsRequest.MIN_BUFFER_SIZE / 10);
+      builder.addEntry(entry);
+      expected.addEntries(entry);
+    }
+    EncodedMutateRowsRequest encoded = builder.build();
+    Assert.assertEquals(expected.build(), encoded.toMutateRowsRequest());
+  }
+
+  @Test
+  public void testRelease() {
+    EncodedMutateRowsRequest encoded = EncodedMutateRowsRequest.fromRequest(createRequest());
+    EncodedMutateRowsRequest retry = encoded.retainEntries(new int[] { 1 });
+    encoded.release();
+    Assert.assertTrue(encoded.isReleased());
+    Assert.assertTrue(retry.isReleased());
+    // Releasing again is a no-op.
+    encoded.release();
+    try {
+      retry.getEntry(0);
+      Assert.fail("Expected an exception");
+    } catch (IllegalStateException expected) {
+    }
+    try {
+      EncodedMutateRowsRequest.MARSHALLER.stream(encoded);
+      Assert.fail("Expected an exception");
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testBuildOnce() {
+    EncodedMutateRowsRequest.Builder builder = EncodedMutateRowsRequest.newBuilder(TABLE_NAME);
+    builder.build();
+    builder.build();
+  }
+}
@@ -35,7 +35,7 @@ import com.google.bigtable.v2.Mutation;
 import com.google.bigtable.v2.Mutation.SetCell;
 import com.google.cloud.bigtable.config.RetryOptions;
 import com.google.cloud.bigtable.config.RetryOptionsUtil;
-import com.google.cloud.bigtable.grpc.async.MutateRowsRequestManager.ProcessingStatus;
+import com.google.cloud.bigtable.grpc.async.AbstractMutateRowsRequestManager.ProcessingStatus;
 import com.google.rpc.Status;
 
 import io.grpc.Status.Code;
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc.async;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.bigtable.v2.MutateRowsRequest;
+import com.google.bigtable.v2.Mutation;
+import com.google.bigtable.v2.Mutation.SetCell;
+import com.google.cloud.bigtable.grpc.async.MutationSpillLog.SpilledEntry;
+import com.google.protobuf.ByteString;
+
+/**
+ * Tests for {@link MutationSpillLog}.
+ */
+@RunWith(JUnit4.class)
+public class TestMutationSpillLog {
+
+  private static final int SEGMENT_SIZE = 1024;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File directory;
+  private MutationSpillLog underTest;
+
+  @Before
+  public void setup() throws IOException {
+    directory = new File(temporaryFolder.getRoot(), "spill");
+    underTest = new MutationSpillLog(directory, SEGMENT_SIZE);
+  }
+
+  @After
+  public void teardown() throws IOException {
+    underTest.close();
+  }
+
+  private static MutateRowsRequest.Entry createEntry(int i) {
+    return MutateRowsRequest.Entry.newBuilder()
+        .setRowKey(ByteString.copyFromUtf8("key" + i))
+        .addMutations(Mutation.newBuilder().setSetCell(SetCell.newBuilder()
+            .setFamilyName("cf")
+            .setColumnQualifier(ByteString.copyFromUtf8("q"))
+            .setTimestampMicros(1000)
+            .setValue(ByteString.copyFrom(new byte[100]))))
+        .build();
+  }
+
+  private void reopen() throws IOException {
+    underTest.close();
+    underTest = new MutationSpillLog(directory, SEGMENT_SIZE);
+  }
+
+  @Test
+  public void testEntriesAreReadInOrder() throws IOException {
+    for (int i = 0; i < 30; i++) {
+      underTest.append(createEntry(i));
+    }
+    // The entries do not fit in one segment.
+    Assert.assertTrue(underTest.getSegmentCount() > 1);
+    Assert.assertEquals(30, underTest.size());
+    for (int i = 0; i < 30; i++) {
+      SpilledEntry spilledEntry = underTest.poll();
+      Assert.assertEquals(createEntry(i), spilledEntry.getEntry());
+      spilledEntry.complete();
+    }
+    Assert.assertNull(underTest.poll());
+    Assert.assertTrue(underTest.isEmpty());
+    // Only the segment that is written to is kept.
+    Assert.assertEquals(1, underTest.getSegmentCount());
+  }
+
+  @Test
+  public void testIncompleteEntriesAreReplayed() throws IOException {
+    for (int i = 0; i < 30; i++) {
+      underTest.append(createEntry(i));
+    }
+    SpilledEntry first = underTest.poll();
+    SpilledEntry second = underTest.poll();
+    SpilledEntry third = underTest.poll();
+    first.complete();
+    // Entries are only complete once the entries before them are complete.
+    third.complete();
+    reopen();
+
+    Assert.assertEquals(29, underTest.size());
+    for (int i = 1; i < 30; i++) {
+      Assert.assertEquals(createEntry(i), underTest.poll().getEntry());
+    }
+    Assert.assertNull(underTest.poll());
+    second.complete();
+  }
+
+  @Test
+  public void testTornRecordIsNotReplayed() throws IOException {
+    underTest.append(createEntry(0));
+    underTest.append(createEntry(1));
+    underTest.close();
+
+    // Corrupt the value of the second record.
+    File segment = new File(directory, "spill-00000000000000000000.log");
+    int recordSize = MutationSpillLog.RECORD_HEADER_SIZE + createEntry(0).getSerializedSize();
+    try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      file.seek(MutationSpillLog.HEADER_SIZE + recordSize + recordSize - 1);
+      file.write(1);
+    }
+
+    underTest = new MutationSpillLog(directory, SEGMENT_SIZE);
+    Assert.assertEquals(1, underTest.size());
+    Assert.assertEquals(createEntry(0), underTest.poll().getEntry());
+
+    // New entries overwrite the torn record.
+    underTest.append(createEntry(2));
+    reopen();
+    Assert.assertEquals(createEntry(0), underTest.poll().getEntry());
+    Assert.assertEquals(createEntry(2), underTest.poll().getEntry());
+    Assert.assertNull(underTest.poll());
+  }
+
+  @Test
+  public void testDirectoryIsLocked() throws IOException {
+    try {
+      new MutationSpillLog(directory, SEGMENT_SIZE);
+      Assert.fail("Expected an exception");
+    } catch (IOException expected) {
+    }
+    reopen();
+  }
+
+  @Test(expected = IOException.class)
+  public void testEntryLargerThanSegment() throws IOException {
+    underTest.append(MutateRowsRequest.Entry.newBuilder()
+        .setRowKey(ByteString.copyFrom(new byte[SEGMENT_SIZE]))
+        .build());
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc.async;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.bigtable.v2.ReadRowsRequest;
+import com.google.bigtable.v2.RowFilter;
+import com.google.bigtable.v2.RowSet;
+import com.google.cloud.bigtable.grpc.BigtableDataClient;
+import com.google.cloud.bigtable.grpc.BigtableTableName;
+import com.google.cloud.bigtable.grpc.scanner.FlatRow;
+import com.google.cloud.bigtable.grpc.scanner.ScanHandler;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.ByteString;
+
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Tests for {@link ReadCoalescer}.
+ */
+@RunWith(JUnit4.class)
+@SuppressWarnings("unchecked")
+public class TestReadCoalescer {
+
+  private static final BigtableTableName TABLE_NAME =
+      new BigtableTableName("projects/SomeProject/instances/SomeInstance/tables/SomeTable");
+
+  @Mock
+  BigtableDataClient mockClient;
+
+  @Mock
+  ScheduledExecutorService mockScheduler;
+
+  private List<StreamObserver<FlatRow>> observers;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    observers = new ArrayList<>();
+    when(mockClient.readFlatRows(any(ReadRowsRequest.class), any(StreamObserver.class)))
+        .thenAnswer(new Answer<ScanHandler>() {
+          @Override
+          public ScanHandler answer(InvocationOnMock invocation) throws Throwable {
+            observers.add(invocation.getArgumentAt(1, StreamObserver.class));
+            return Mockito.mock(ScanHandler.class);
+          }
+        });
+  }
+
+  @Test
+  public void testIdenticalReadsShareAnRpc() throws Exception {
+    ReadCoalescer underTest = create(0);
+    ListenableFuture<FlatRow> first = underTest.read(createRequest("key"));
+    ListenableFuture<FlatRow> second = underTest.read(createRequest("key"));
+    Assert.assertEquals(1, observers.size());
+
+    FlatRow row = createRow("key");
+    observers.get(0).onNext(row);
+    observers.get(0).onCompleted();
+    Assert.assertEquals(row, first.get(0, TimeUnit.MILLISECONDS));
+    Assert.assertEquals(row, second.get(0, TimeUnit.MILLISECONDS));
+
+    // Once the first read completes, a new read for the key goes to the server.
+    underTest.read(createRequest("key"));
+    Assert.assertEquals(2, observers.size());
+  }
+
+  @Test
+  public void testDifferentFiltersAreNotShared() throws Exception {
+    ReadCoalescer underTest = create(0);
+    underTest.read(createRequest("key"));
+    underTest.read(createRequest("key",
+      RowFilter.newBuilder().setCellsPerRowLimitFilter(1).build()));
+    Assert.assertEquals(2, observers.size());
+  }
+
+  @Test
+  public void testCancellingASharedReadDoesNotCancelOthers() throws Exception {
+    ReadCoalescer underTest = create(0);
+    ListenableFuture<FlatRow> first = underTest.read(createRequest("key"));
+    ListenableFuture<FlatRow> second = underTest.read(createRequest("key"));
+    first.cancel(true);
+    observers.get(0).onCompleted();
+    Assert.assertNull(second.get(0, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testDistinctKeysAreBatchedInWindow() throws Exception {
+    ReadCoalescer underTest = create(1000);
+    ArgumentCaptor<Runnable> flushCaptor = ArgumentCaptor.forClass(Runnable.class);
+    ListenableFuture<FlatRow> first = underTest.read(createRequest("key1"));
+    ListenableFuture<FlatRow> second = underTest.read(createRequest("key2"));
+    verify(mockScheduler, times(1))
+        .schedule(flushCaptor.capture(), Mockito.eq(1000L), Mockito.eq(TimeUnit.MICROSECONDS));
+    Assert.assertEquals(0, observers.size());
+
+    flushCaptor.getValue().run();
+    ArgumentCaptor<ReadRowsRequest> requestCaptor = ArgumentCaptor.forClass(ReadRowsRequest.class);
+    verify(mockClient, times(1)).readFlatRows(requestCaptor.capture(), any(StreamObserver.class));
+    Assert.assertEquals(2, requestCaptor.getValue().getRows().getRowKeysCount());
+
+    observers.get(0).onNext(createRow("key2"));
+    observers.get(0).onCompleted();
+    Assert.assertNull(first.get(0, TimeUnit.MILLISECONDS));
+    Assert.assertEquals(createRow("key2"), second.get(0, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testFullBatchIsSentBeforeWindow() throws Exception {
+    ReadCoalescer underTest = new ReadCoalescer(mockClient, TABLE_NAME, new AdaptiveBatchSizer(2),
+        mockScheduler, 1, TimeUnit.SECONDS);
+    underTest.read(createRequest("key1"));
+    underTest.read(createRequest("key2"));
+    Assert.assertEquals(1, observers.size());
+  }
+
+  private ReadCoalescer create(long windowMicros) {
+    return new ReadCoalescer(mockClient, TABLE_NAME, new AdaptiveBatchSizer(100), mockScheduler,
+        windowMicros, TimeUnit.MICROSECONDS);
+  }
+
+  private static ReadRowsRequest createRequest(String key) {
+    return createRequest(key, RowFilter.getDefaultInstance());
+  }
+
+  private static ReadRowsRequest createRequest(String key, RowFilter filter) {
+    return ReadRowsRequest.newBuilder()
+        .setTableName(TABLE_NAME.toString())
+        .setRows(RowSet.newBuilder().addRowKeys(ByteString.copyFromUtf8(key)))
+        .setFilter(filter)
+        .build();
+  }
+
+  private static FlatRow createRow(String key) {
+    return FlatRow.newBuilder().withRowKey(ByteString.copyFromUtf8(key)).build();
+  }
+}
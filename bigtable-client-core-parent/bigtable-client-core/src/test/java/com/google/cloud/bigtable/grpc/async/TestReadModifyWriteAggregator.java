@@ -0,0 +1,192 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc.async;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.bigtable.v2.Cell;
+import com.google.bigtable.v2.Column;
+import com.google.bigtable.v2.Family;
+import com.google.bigtable.v2.ReadModifyWriteRowRequest;
+import com.google.bigtable.v2.ReadModifyWriteRowResponse;
+import com.google.bigtable.v2.ReadModifyWriteRule;
+import com.google.bigtable.v2.Row;
+import com.google.cloud.bigtable.grpc.BigtableDataClient;
+import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.ByteString;
+
+import io.grpc.Status;
+
+/**
+ * Tests for {@link ReadModifyWriteAggregator}.
+ */
+@RunWith(JUnit4.class)
+public class TestReadModifyWriteAggregator {
+
+  private static final String TABLE_NAME =
+      "projects/SomeProject/instances/SomeInstance/tables/SomeTable";
+  private static final ByteString ROW_KEY = ByteString.copyFromUtf8("row");
+  private static final ByteString COUNTER = ByteString.copyFromUtf8("counter");
+  private static final ByteString LOG = ByteString.copyFromUtf8("log");
+
+  @Mock
+  BigtableDataClient mockClient;
+
+  @Mock
+  ScheduledExecutorService mockScheduler;
+
+  private SettableFuture<ReadModifyWriteRowResponse> rpcFuture;
+  private ReadModifyWriteAggregator underTest;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    rpcFuture = SettableFuture.create();
+    when(mockClient.readModifyWriteRowAsync(any(ReadModifyWriteRowRequest.class)))
+        .thenReturn(rpcFuture);
+    underTest = new ReadModifyWriteAggregator(mockClient, mockScheduler, 1, TimeUnit.MILLISECONDS);
+  }
+
+  private static ReadModifyWriteRowRequest createRequest(long increment, String append) {
+    return ReadModifyWriteRowRequest.newBuilder()
+        .setTableName(TABLE_NAME)
+        .setRowKey(ROW_KEY)
+        .addRules(ReadModifyWriteRule.newBuilder()
+            .setFamilyName("cf")
+            .setColumnQualifier(COUNTER)
+            .setIncrementAmount(increment))
+        .addRules(ReadModifyWriteRule.newBuilder()
+            .setFamilyName("cf")
+            .setColumnQualifier(LOG)
+            .setAppendValue(ByteString.copyFromUtf8(append)))
+        .build();
+  }
+
+  private static ReadModifyWriteRowResponse createResponse(long counter, String log) {
+    Row row = Row.newBuilder()
+        .setKey(ROW_KEY)
+        .addFamilies(Family.newBuilder()
+            .setName("cf")
+            .addColumns(Column.newBuilder()
+                .setQualifier(COUNTER)
+                .addCells(Cell.newBuilder()
+                    .setTimestampMicros(1000)
+                    .setValue(ByteString.copyFrom(Longs.toByteArray(counter)))))
+            .addColumns(Column.newBuilder()
+                .setQualifier(LOG)
+                .addCells(Cell.newBuilder()
+                    .setTimestampMicros(1000)
+                    .setValue(ByteString.copyFromUtf8(log)))))
+        .build();
+    return ReadModifyWriteRowResponse.newBuilder().setRow(row).build();
+  }
+
+  @Test
+  public void testRequestsAreAggregated() throws Exception {
+    ListenableFuture<ReadModifyWriteRowResponse> first =
+        underTest.readModifyWriteRowAsync(createRequest(1, "a"));
+    ListenableFuture<ReadModifyWriteRowResponse> second =
+        underTest.readModifyWriteRowAsync(createRequest(2, "bc"));
+    ListenableFuture<ReadModifyWriteRowResponse> third =
+        underTest.readModifyWriteRowAsync(createRequest(3, "d"));
+    verify(mockScheduler, times(1)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    verify(mockClient, never()).readModifyWriteRowAsync(any(ReadModifyWriteRowRequest.class));
+
+    underTest.flush();
+    ArgumentCaptor<ReadModifyWriteRowRequest> captor =
+        ArgumentCaptor.forClass(ReadModifyWriteRowRequest.class);
+    verify(mockClient, times(1)).readModifyWriteRowAsync(captor.capture());
+    Assert.assertEquals(createRequest(6, "abcd"), captor.getValue());
+
+    // The cells had a value of 10 and "x" before the requests.
+    rpcFuture.set(createResponse(16, "xabcd"));
+    Assert.assertEquals(createResponse(11, "xa"), first.get());
+    Assert.assertEquals(createResponse(13, "xabc"), second.get());
+    Assert.assertEquals(createResponse(16, "xabcd"), third.get());
+  }
+
+  @Test
+  public void testDifferentCellsAreNotAggregated() {
+    underTest.readModifyWriteRowAsync(createRequest(1, "a"));
+    underTest.readModifyWriteRowAsync(createRequest(1, "a").toBuilder()
+        .setRowKey(ByteString.copyFromUtf8("other")).build());
+    underTest.readModifyWriteRowAsync(createRequest(1, "a").toBuilder().removeRules(1).build());
+    underTest.flush();
+    verify(mockClient, times(3)).readModifyWriteRowAsync(any(ReadModifyWriteRowRequest.class));
+  }
+
+  @Test
+  public void testRepeatedCellIsSentDirectly() {
+    ReadModifyWriteRowRequest request = createRequest(1, "a").toBuilder()
+        .addRules(ReadModifyWriteRule.newBuilder()
+            .setFamilyName("cf")
+            .setColumnQualifier(COUNTER)
+            .setIncrementAmount(1))
+        .build();
+    Assert.assertFalse(ReadModifyWriteAggregator.canAggregate(request));
+    underTest.readModifyWriteRowAsync(request);
+    verify(mockClient, times(1)).readModifyWriteRowAsync(request);
+    verify(mockScheduler, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+  }
+
+  @Test
+  public void testFailureFailsAllRequests() throws Exception {
+    ListenableFuture<ReadModifyWriteRowResponse> first =
+        underTest.readModifyWriteRowAsync(createRequest(1, "a"));
+    ListenableFuture<ReadModifyWriteRowResponse> second =
+        underTest.readModifyWriteRowAsync(createRequest(2, "b"));
+    underTest.flush();
+    rpcFuture.setException(Status.FAILED_PRECONDITION.asRuntimeException());
+    for (ListenableFuture<ReadModifyWriteRowResponse> future : Arrays.asList(first, second)) {
+      try {
+        future.get();
+        Assert.fail("Expected an exception");
+      } catch (ExecutionException e) {
+        Assert.assertEquals(Status.Code.FAILED_PRECONDITION, Status.fromThrowable(e).getCode());
+      }
+    }
+  }
+
+  @Test
+  public void testLargeAggregatesAreSentEarly() {
+    for (int i = 0; i < ReadModifyWriteAggregator.MAX_AGGREGATED_REQUESTS; i++) {
+      underTest.readModifyWriteRowAsync(createRequest(1, ""));
+    }
+    verify(mockClient, times(1)).readModifyWriteRowAsync(
+      createRequest(ReadModifyWriteAggregator.MAX_AGGREGATED_REQUESTS, ""));
+  }
+}
@@ -19,15 +19,20 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import com.google.common.util.concurrent.MoreExecutors;
+
 @RunWith(JUnit4.class)
 public class TestResourceLimiter {
   @Test
@@ -121,5 +126,90 @@ public class TestResourceLimiter {
     }
   }
 
+  @Test
+  public void testHasCapacity() throws InterruptedException {
+    ResourceLimiter underTest = new ResourceLimiter(new ResourceLimiterStats(), 10l, 2);
+    assertTrue(underTest.hasCapacity());
+    long id = underTest.registerOperationWithHeapSize(5l);
+    assertTrue(underTest.hasCapacity());
+    long id2 = underTest.registerOperationWithHeapSize(5l);
+    assertFalse(underTest.hasCapacity());
+    underTest.markCanBeCompleted(id);
+    assertTrue(underTest.hasCapacity());
+    underTest.markCanBeCompleted(id2);
+    assertTrue(underTest.hasCapacity());
+  }
+
+  @Test
+  public void testAvailabilityListener() throws InterruptedException {
+    ResourceLimiter underTest = new ResourceLimiter(new ResourceLimiterStats(), 10l, 1);
+    final AtomicInteger notifications = new AtomicInteger();
+    Runnable listener = new Runnable() {
+      @Override
+      public void run() {
+        notifications.incrementAndGet();
+      }
+    };
+
+    // There is room, so the listener runs right away.
+    underTest.addAvailabilityListener(listener, MoreExecutors.directExecutor());
+    assertEquals(1, notifications.get());
+
+    long id = underTest.registerOperationWithHeapSize(1l);
+    underTest.addAvailabilityListener(listener, MoreExecutors.directExecutor());
+    underTest.addAvailabilityListener(listener, MoreExecutors.directExecutor());
+    assertEquals(1, notifications.get());
 
+    underTest.markCanBeCompleted(id);
+    assertEquals(3, notifications.get());
+
+    // Listeners only run once.
+    underTest.markCanBeCompleted(underTest.registerOperationWithHeapSize(1l));
+    assertEquals(3, notifications.get());
+  }
+
+  @Test
+  public void testAvailabilityListenerDoesNotWaitForBlockedRegistration() throws Exception {
+    final ResourceLimiter underTest = new ResourceLimiter(new ResourceLimiterStats(), 10l, 1);
+    long id = underTest.registerOperationWithHeapSize(1l);
+    ExecutorService pool = Executors.newCachedThreadPool();
+    try {
+      final CountDownLatch registering = new CountDownLatch(1);
+      // This blocks in registerOperationWithHeapSize() while holding the limiter's monitor.
+      Future<Long> blocked = pool.submit(new Callable<Long>() {
+        @Override
+        public Long call() throws InterruptedException {
+          registering.countDown();
+          return underTest.registerOperationWithHeapSize(1l);
+        }
+      });
+      registering.await();
+      Thread.sleep(20);
+      assertFalse(blocked.isDone());
+
+      final CountDownLatch notified = new CountDownLatch(1);
+      Future<?> added = pool.submit(new Runnable() {
+        @Override
+        public void run() {
+          assertFalse(underTest.hasCapacity());
+          underTest.addAvailabilityListener(new Runnable() {
+            @Override
+            public void run() {
+              notified.countDown();
+            }
+          }, MoreExecutors.directExecutor());
+        }
+      });
+      added.get(1, TimeUnit.SECONDS);
+      assertEquals(1, notified.getCount());
+
+      // The blocked registration may take the freed slot before the listener sees it, so the
+      // listener is only guaranteed to run once that operation completes as well.
+      underTest.markCanBeCompleted(id);
+      underTest.markCanBeCompleted(blocked.get(1, TimeUnit.SECONDS));
+      assertTrue(notified.await(1, TimeUnit.SECONDS));
+    } finally {
+      pool.shutdownNow();
+    }
+  }
 }
@@ -19,6 +19,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -42,6 +43,7 @@ import com.google.bigtable.v2.BigtableGrpc;
 
 import io.grpc.CallOptions;
 import io.grpc.ClientCall;
+import io.grpc.ConnectivityState;
 import io.grpc.ManagedChannel;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
@@ -145,4 +147,32 @@ public class ChannelPoolTest {
       verify(managedChannel, times(1)).awaitTermination(anyLong(), eq(TimeUnit.NANOSECONDS));
     }
   }
+
+  @Test
+  public void testConnect() throws IOException, InterruptedException {
+    MockChannelFactory factory = new MockChannelFactory();
+    ChannelPool pool = new ChannelPool(factory, 2);
+    when(factory.channels.get(0).getState(true)).thenReturn(ConnectivityState.READY);
+    when(factory.channels.get(1).getState(true))
+        .thenReturn(ConnectivityState.CONNECTING, ConnectivityState.READY);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        invocation.getArgumentAt(1, Runnable.class).run();
+        return null;
+      }
+    }).when(factory.channels.get(1))
+        .notifyWhenStateChanged(eq(ConnectivityState.CONNECTING), any(Runnable.class));
+
+    Assert.assertEquals(2, pool.connect(1, TimeUnit.SECONDS));
+    verify(factory.channels.get(1), times(2)).getState(true);
+  }
+
+  @Test
+  public void testConnectTimesOut() throws IOException, InterruptedException {
+    MockChannelFactory factory = new MockChannelFactory();
+    ChannelPool pool = new ChannelPool(factory, 1);
+    when(factory.channels.get(0).getState(true)).thenReturn(ConnectivityState.CONNECTING);
+    Assert.assertEquals(0, pool.connect(10, TimeUnit.MILLISECONDS));
+  }
 }
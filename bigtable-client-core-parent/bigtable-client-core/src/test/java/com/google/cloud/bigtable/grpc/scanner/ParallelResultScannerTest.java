@@ -0,0 +1,169 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc.scanner;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.bigtable.v2.ReadRowsRequest;
+import com.google.bigtable.v2.RowSet;
+import com.google.cloud.bigtable.grpc.BigtableDataClient;
+import com.google.protobuf.ByteString;
+
+/**
+ * Tests for {@link ParallelResultScanner}.
+ */
+@RunWith(JUnit4.class)
+public class ParallelResultScannerTest {
+
+  private static final List<ByteString> SPLIT_KEYS =
+      Arrays.asList(key("row10"), key("row20"), key("row30"));
+
+  @Mock
+  BigtableDataClient mockClient;
+
+  private ExecutorService executor;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    executor = Executors.newCachedThreadPool();
+    when(mockClient.readFlatRows(any(ReadRowsRequest.class)))
+        .thenAnswer(new Answer<ResultScanner<FlatRow>>() {
+          @Override
+          public ResultScanner<FlatRow> answer(InvocationOnMock invocation) throws Throwable {
+            ReadRowsRequest request = invocation.getArgumentAt(0, ReadRowsRequest.class);
+            return createScanner(request.getRows().getRowKeysList().iterator());
+          }
+        });
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testOrdered() throws IOException {
+    ReadRowsRequest request = createRequest(40);
+    try (ParallelResultScanner underTest =
+        new ParallelResultScanner(mockClient, request, SPLIT_KEYS, 2, true, 1, executor)) {
+      Assert.assertEquals(4, underTest.getSegmentCount());
+      for (ByteString expectedKey : request.getRows().getRowKeysList()) {
+        Assert.assertEquals(expectedKey, underTest.next().getRowKey());
+      }
+      Assert.assertNull(underTest.next());
+    }
+    verify(mockClient, times(4)).readFlatRows(any(ReadRowsRequest.class));
+  }
+
+  @Test
+  public void testUnordered() throws IOException {
+    ReadRowsRequest request = createRequest(40);
+    Set<ByteString> keys = new HashSet<>();
+    try (ParallelResultScanner underTest =
+        new ParallelResultScanner(mockClient, request, SPLIT_KEYS, 4, false, 5, executor)) {
+      FlatRow row;
+      while ((row = underTest.next()) != null) {
+        Assert.assertTrue(keys.add(row.getRowKey()));
+      }
+    }
+    Assert.assertEquals(new HashSet<>(request.getRows().getRowKeysList()), keys);
+  }
+
+  @Test
+  public void testException() throws IOException {
+    doThrow(new IllegalStateException("Fake failure"))
+        .when(mockClient).readFlatRows(any(ReadRowsRequest.class));
+    try (ParallelResultScanner underTest = new ParallelResultScanner(mockClient,
+        createRequest(40), SPLIT_KEYS, 2, true, 1, executor)) {
+      underTest.next();
+      Assert.fail("Expected an IOException");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRowsLimit() {
+    new ParallelResultScanner(mockClient, createRequest(10).toBuilder().setRowsLimit(1).build(),
+        SPLIT_KEYS, 2, true, 1, executor);
+  }
+
+  private static ReadRowsRequest createRequest(int rowCount) {
+    RowSet.Builder rowSet = RowSet.newBuilder();
+    for (int i = 0; i < rowCount; i++) {
+      rowSet.addRowKeys(key(String.format("row%02d", i)));
+    }
+    return ReadRowsRequest.newBuilder().setRows(rowSet).build();
+  }
+
+  private static ResultScanner<FlatRow> createScanner(final Iterator<ByteString> keys) {
+    return new ResultScanner<FlatRow>() {
+      @Override
+      public FlatRow next() {
+        return keys.hasNext() ? FlatRow.newBuilder().withRowKey(keys.next()).build() : null;
+      }
+
+      @Override
+      public FlatRow[] next(int count) {
+        List<FlatRow> rows = new ArrayList<>();
+        FlatRow row;
+        while (rows.size() < count && (row = next()) != null) {
+          rows.add(row);
+        }
+        return rows.toArray(new FlatRow[rows.size()]);
+      }
+
+      @Override
+      public int available() {
+        return 0;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  private static ByteString key(String key) {
+    return ByteString.copyFromUtf8(key);
+  }
+}
@@ -15,6 +15,7 @@
  */
 package com.google.cloud.bigtable.grpc.scanner;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.anyInt;
@@ -23,6 +24,9 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
@@ -94,6 +98,48 @@ public class ResponseQueueReaderTest {
     verify(mockClientCallStreamObserver, times(1)).request(eq(1));
   }
 
+  @Test
+  public void testBulkRows() throws IOException {
+    List<FlatRow> expected = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      FlatRow row = new FlatRow(ByteString.copyFromUtf8("row" + i), null);
+      expected.add(row);
+      underTest.onNext(row);
+      underTest.addRequestResultMarker();
+    }
+    underTest.onCompleted();
+    assertEquals(5, underTest.available());
+
+    List<FlatRow> rows = new ArrayList<>();
+    assertEquals(3, underTest.getNextMergedRows(rows, 3));
+    assertEquals(expected.subList(0, 3), rows);
+    assertEquals(2, underTest.available());
+    assertEquals(2, underTest.getNextMergedRows(rows, 3));
+    assertEquals(expected, rows);
+    assertEquals(0, underTest.getNextMergedRows(rows, 3));
+    assertNull(underTest.getNextMergedRow());
+    verify(mockClientCallStreamObserver, times(0)).request(anyInt());
+  }
+
+  @Test
+  public void testBulkRowsWaitForCount() throws IOException {
+    final FlatRow row1 = new FlatRow(ByteString.copyFromUtf8("row1"), null);
+    final FlatRow row2 = new FlatRow(ByteString.copyFromUtf8("row2"), null);
+    underTest.onNext(row1);
+    underTest.addRequestResultMarker();
+    BigtableSessionSharedThreadPools.getInstance().getRetryExecutor().schedule(new Runnable() {
+      @Override
+      public void run() {
+        underTest.onNext(row2);
+        underTest.addRequestResultMarker();
+      }
+    }, 50, TimeUnit.MILLISECONDS);
+    List<FlatRow> rows = new ArrayList<>();
+    assertEquals(2, underTest.getNextMergedRows(rows, 2));
+    assertEquals(Arrays.asList(row1, row2), rows);
+    verify(mockClientCallStreamObserver, times(1)).request(eq(1));
+  }
+
   @Test
   public void testException() throws IOException {
     StatusRuntimeException exception = Status.DEADLINE_EXCEEDED.asRuntimeException();
@@ -53,6 +53,7 @@ import com.google.bigtable.v2.RowSet;
 import com.google.cloud.bigtable.config.RetryOptions;
 import com.google.cloud.bigtable.grpc.async.BigtableAsyncRpc;
 import com.google.cloud.bigtable.grpc.async.BigtableAsyncRpc.RpcMetrics;
+import com.google.cloud.bigtable.grpc.async.BigtableAsyncRpc.TableRpcMetrics;
 import com.google.cloud.bigtable.metrics.Timer;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.BytesValue;
@@ -109,6 +110,8 @@ public class RetryingReadRowsOperationTest {
   @Mock
   private RpcMetrics mockRpcMetrics;
   @Mock
+  private TableRpcMetrics mockTableRpcMetrics;
+  @Mock
   private Timer.Context mockOperationTimerContext;
   @Mock
   private Timer.Context mockRpcTimerContext;
@@ -130,6 +133,9 @@ public class RetryingReadRowsOperationTest {
     when(mockRetryableRpc.getMethodDescriptor()).thenReturn(BigtableGrpc.METHOD_READ_ROWS);
     when(mockRpcMetrics.timeOperation()).thenReturn(mockOperationTimerContext);
     when(mockRpcMetrics.timeRpc()).thenReturn(mockRpcTimerContext);
+    when(mockRpcMetrics.getTableRpcMetrics(any(String.class))).thenReturn(mockTableRpcMetrics);
+    when(mockTableRpcMetrics.timeOperation()).thenReturn(Mockito.mock(Timer.Context.class));
+    when(mockTableRpcMetrics.timeRpc()).thenReturn(Mockito.mock(Timer.Context.class));
 
     Answer<ScheduledFuture> runAutomatically = new Answer<ScheduledFuture>() {
       @Override
@@ -241,6 +247,24 @@ public class RetryingReadRowsOperationTest {
     finishOK(underTest, 1);
   }
 
+  @Test
+  public void testRetryDoesNotPrefetchWithoutAutoFlowControl()
+      throws UnsupportedEncodingException {
+    ResponseQueueReader reader = new ResponseQueueReader(10000);
+    RetryingReadRowsOperation underTest = createOperation(reader);
+    start(underTest);
+    verify(mockClientCall, times(1)).request(eq(1));
+
+    ByteString key = ByteString.copyFrom("SomeKey", "UTF-8");
+    underTest.onMessage(buildResponse(key));
+    underTest.onClose(Status.ABORTED, new Metadata());
+    // The reader requests the responses of the retried call once it is ready for them.
+    verify(mockClientCall, times(1)).request(eq(1));
+    checkRetryRequest(underTest, key, 9);
+
+    finishOK(underTest, 1);
+  }
+
   @Test
   public void testScanTimeoutSucceed() throws UnsupportedEncodingException, BigtableRetriesExhaustedException {
     RetryingReadRowsOperation underTest = createOperation(mockFlatRowObserver);
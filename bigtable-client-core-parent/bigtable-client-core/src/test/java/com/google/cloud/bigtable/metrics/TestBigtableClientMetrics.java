@@ -31,7 +31,7 @@ public class TestBigtableClientMetrics {
   private MetricRegistry originalMetricRegistry;
   private MetricLevel originalLevelToLog;
 
-  @Mock
+  @Mock(extraInterfaces = HistogramRegistry.class)
   MetricRegistry mockMetricRegistry;
 
   @Mock
@@ -43,6 +43,9 @@ public class TestBigtableClientMetrics {
   @Mock
   Counter mockCounter;
 
+  @Mock
+  Histogram mockHistogram;
+
   @Before
   public void setup() {
     originalLevelToLog = BigtableClientMetrics.getLevelToLog();
@@ -51,12 +54,16 @@ public class TestBigtableClientMetrics {
     when(mockMetricRegistry.timer(any(String.class))).thenReturn(mockTimer);
     when(mockMetricRegistry.meter(any(String.class))).thenReturn(mockMeter);
     when(mockMetricRegistry.counter(any(String.class))).thenReturn(mockCounter);
+    when(((HistogramRegistry) mockMetricRegistry).histogram(any(String.class)))
+        .thenReturn(mockHistogram);
   }
   
   @After
   public void teardown() {
     BigtableClientMetrics.setMetricRegistry(originalMetricRegistry);
     BigtableClientMetrics.setLevelToLog(originalLevelToLog);
+    BigtableClientMetrics.setMaxTableDimensions(BigtableClientMetrics.DEFAULT_MAX_TABLE_DIMENSIONS);
+    BigtableClientMetrics.clearTableDimensions();
   }
 
   @Test
@@ -74,6 +81,29 @@ public class TestBigtableClientMetrics {
     testLevel(MetricLevel.Trace, MetricLevel.Info, MetricLevel.Debug, MetricLevel.Trace);
   }
 
+  @Test
+  public void testTableDimensions() {
+    BigtableClientMetrics.clearTableDimensions();
+    BigtableClientMetrics.setMaxTableDimensions(2);
+    Assert.assertEquals("table1",
+      BigtableClientMetrics.tableDimension("projects/p/instances/i/tables/table1"));
+    Assert.assertEquals("table2", BigtableClientMetrics.tableDimension("table2"));
+    Assert.assertEquals(BigtableClientMetrics.OVERFLOW_TABLE_DIMENSION,
+      BigtableClientMetrics.tableDimension("projects/p/instances/i/tables/table3"));
+    Assert.assertEquals("table1",
+      BigtableClientMetrics.tableDimension("projects/p/instances/i/tables/table1"));
+    Assert.assertEquals(BigtableClientMetrics.OVERFLOW_TABLE_DIMENSION,
+      BigtableClientMetrics.tableDimension(null));
+  }
+
+  @Test
+  public void testHistogramWithoutHistogramRegistry() {
+    BigtableClientMetrics.setMetricRegistry(mock(MetricRegistry.class));
+    BigtableClientMetrics.setLevelToLog(MetricLevel.Info);
+    Assert.assertSame(Histogram.NULL_HISTOGRAM,
+      BigtableClientMetrics.histogram(MetricLevel.Info, "any"));
+  }
+
   private void testLevel(MetricLevel level, MetricLevel... goodLevels) {
     BigtableClientMetrics.setMetricRegistry(mockMetricRegistry);
     BigtableClientMetrics.setLevelToLog(level);
@@ -85,6 +115,7 @@ public class TestBigtableClientMetrics {
         Assert.assertSame(mockTimer, BigtableClientMetrics.timer(metricLevel, "any"));
         Assert.assertSame(mockMeter, BigtableClientMetrics.meter(metricLevel, "any"));
         Assert.assertSame(mockCounter, BigtableClientMetrics.counter(metricLevel, "any"));
+        Assert.assertSame(mockHistogram, BigtableClientMetrics.histogram(metricLevel, "any"));
       } else {
         Assert.assertSame(MetricRegistry.NULL_METRICS_REGISTRY, foundRegistry);
       }
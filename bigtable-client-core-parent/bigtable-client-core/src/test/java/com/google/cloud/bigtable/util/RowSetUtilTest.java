@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.bigtable.v2.RowRange;
+import com.google.bigtable.v2.RowSet;
+import com.google.protobuf.ByteString;
+
+/**
+ * Tests for {@link RowSetUtil}.
+ */
+public class RowSetUtilTest {
+
+  private static final List<ByteString> SPLIT_KEYS =
+      Arrays.asList(key("m"), key("d"), ByteString.EMPTY);
+
+  @Test
+  public void testFullTable() {
+    List<RowSet> segments = RowSetUtil.split(RowSet.getDefaultInstance(), SPLIT_KEYS);
+    Assert.assertEquals(3, segments.size());
+    Assert.assertEquals(
+      RowSet.newBuilder().addRowRanges(RowRange.newBuilder().setEndKeyOpen(key("d"))).build(),
+      segments.get(0));
+    Assert.assertEquals(RowSet.newBuilder().addRowRanges(
+      RowRange.newBuilder().setStartKeyClosed(key("d")).setEndKeyOpen(key("m"))).build(),
+      segments.get(1));
+    Assert.assertEquals(
+      RowSet.newBuilder().addRowRanges(RowRange.newBuilder().setStartKeyClosed(key("m"))).build(),
+      segments.get(2));
+  }
+
+  @Test
+  public void testRowKeys() {
+    RowSet rowSet = RowSet.newBuilder()
+        .addRowKeys(key("a"))
+        .addRowKeys(key("d"))
+        .addRowKeys(key("z"))
+        .build();
+    List<RowSet> segments = RowSetUtil.split(rowSet, SPLIT_KEYS);
+    Assert.assertEquals(3, segments.size());
+    Assert.assertEquals(Arrays.asList(key("a")), segments.get(0).getRowKeysList());
+    Assert.assertEquals(Arrays.asList(key("d")), segments.get(1).getRowKeysList());
+    Assert.assertEquals(Arrays.asList(key("z")), segments.get(2).getRowKeysList());
+  }
+
+  @Test
+  public void testEmptySegmentsAreOmitted() {
+    RowSet rowSet = RowSet.newBuilder()
+        .addRowRanges(RowRange.newBuilder().setStartKeyOpen(key("e")).setEndKeyClosed(key("f")))
+        .build();
+    List<RowSet> segments = RowSetUtil.split(rowSet, SPLIT_KEYS);
+    Assert.assertEquals(Arrays.asList(rowSet), segments);
+  }
+
+  @Test
+  public void testRangeEndingAtSplitKey() {
+    RowSet rowSet = RowSet.newBuilder()
+        .addRowRanges(RowRange.newBuilder().setStartKeyClosed(key("a")).setEndKeyClosed(key("d")))
+        .build();
+    List<RowSet> segments = RowSetUtil.split(rowSet, SPLIT_KEYS);
+    Assert.assertEquals(2, segments.size());
+    Assert.assertEquals(
+      RowRange.newBuilder().setStartKeyClosed(key("a")).setEndKeyOpen(key("d")).build(),
+      segments.get(0).getRowRanges(0));
+    Assert.assertEquals(
+      RowRange.newBuilder().setStartKeyClosed(key("d")).setEndKeyClosed(key("d")).build(),
+      segments.get(1).getRowRanges(0));
+  }
+
+  @Test
+  public void testNoSplitKeys() {
+    RowSet rowSet = RowSet.newBuilder().addRowKeys(key("a")).build();
+    Assert.assertEquals(Arrays.asList(rowSet),
+      RowSetUtil.split(rowSet, Arrays.<ByteString> asList()));
+  }
+
+  @Test
+  public void testCollapseKeys() {
+    List<ByteString> keys = Arrays.asList(key("a"), key("k01"), key("k02"), key("k04"),
+      key("k05"), key("k09"), key("k10"), key("z"));
+    RowSet rowSet = RowSetUtil.collapseKeys(keys, 2, 4);
+    Assert.assertEquals(Arrays.asList(key("a"), key("k09"), key("k10"), key("z")),
+      rowSet.getRowKeysList());
+    Assert.assertEquals(
+      RowRange.newBuilder().setStartKeyClosed(key("k01")).setEndKeyClosed(key("k05")).build(),
+      rowSet.getRowRanges(0));
+  }
+
+  @Test
+  public void testCollapseKeysCarriesAcrossBytes() {
+    List<ByteString> keys = Arrays.asList(
+      ByteString.copyFrom(new byte[] { 'k', 0, (byte) 0xFE }),
+      ByteString.copyFrom(new byte[] { 'k', 0, (byte) 0xFF }),
+      ByteString.copyFrom(new byte[] { 'k', 1, 0 }));
+    Assert.assertEquals(1, RowSetUtil.collapseKeys(keys, 1, 3).getRowRangesCount());
+    Assert.assertEquals(3, RowSetUtil.collapseKeys(keys, 1, 4).getRowKeysCount());
+  }
+
+  private static ByteString key(String key) {
+    return ByteString.copyFromUtf8(key);
+  }
+}
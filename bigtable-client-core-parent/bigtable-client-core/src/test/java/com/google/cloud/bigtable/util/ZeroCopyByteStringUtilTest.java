@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.util;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.protobuf.ByteString;
+
+@RunWith(JUnit4.class)
+public class ZeroCopyByteStringUtilTest {
+
+  @Test
+  public void testWrappedArrayIsNotCopied() {
+    byte[] array = createArray(100, 0);
+    Assert.assertSame(array, ZeroCopyByteStringUtil.get(ZeroCopyByteStringUtil.wrap(array)));
+  }
+
+  @Test
+  public void testRangeIsCopied() {
+    byte[] array = createArray(100, 0);
+    byte[] extracted = ZeroCopyByteStringUtil.get(ZeroCopyByteStringUtil.wrap(array, 10, 20));
+    Assert.assertArrayEquals(Arrays.copyOfRange(array, 10, 30), extracted);
+  }
+
+  @Test
+  public void testConcatenationIsCopied() {
+    // Large enough that concat() keeps the two arrays, rather than copying them into one.
+    byte[] first = createArray(1200, 0);
+    byte[] second = createArray(3, 1200);
+    ByteString concatenated =
+        ZeroCopyByteStringUtil.wrap(first).concat(ZeroCopyByteStringUtil.wrap(second));
+
+    byte[] extracted = ZeroCopyByteStringUtil.get(concatenated);
+    Assert.assertEquals(1203, extracted.length);
+    Assert.assertArrayEquals(concatenated.toByteArray(), extracted);
+  }
+
+  @Test
+  public void testEmpty() {
+    Assert.assertEquals(0, ZeroCopyByteStringUtil.get(ByteString.EMPTY).length);
+  }
+
+  private static byte[] createArray(int length, int start) {
+    byte[] array = new byte[length];
+    for (int i = 0; i < length; i++) {
+      array[i] = (byte) (start + i);
+    }
+    return array;
+  }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase2_x;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.hadoop.hbase.client.AdvancedScanResultConsumer;
+import org.apache.hadoop.hbase.client.AdvancedScanResultConsumer.ScanController;
+import org.apache.hadoop.hbase.client.AdvancedScanResultConsumer.ScanResumer;
+import org.apache.hadoop.hbase.client.Cursor;
+import org.apache.hadoop.hbase.client.Result;
+
+import com.google.bigtable.v2.ReadRowsRequest;
+import com.google.cloud.bigtable.grpc.scanner.FlatRow;
+import com.google.cloud.bigtable.grpc.scanner.ResponseBoundaryObserver;
+import com.google.cloud.bigtable.grpc.scanner.ScanHandler;
+import com.google.cloud.bigtable.hbase.adapters.Adapters;
+import com.google.common.base.Preconditions;
+
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+
+/**
+ * Streams the rows of a scan to an {@link AdvancedScanResultConsumer}, one batch per
+ * ReadRowsResponse. gRPC's automatic inbound flow control is disabled, and the next response is
+ * only requested after the consumer returns from a batch. A consumer that calls
+ * {@link ScanController#suspend()} stops the stream until it calls {@link ScanResumer#resume()},
+ * so no thread is blocked while the scan is suspended.
+ *
+ * <p>A response can still arrive while the consumer is suspended: the first call prefetches a
+ * response, and a retried call requests its first response when it starts. Such responses are held,
+ * and passed to the consumer as a single batch when it resumes.
+ *
+ * @author sduskis
+ */
+class AdvancedScanObserver
+    implements ClientResponseObserver<ReadRowsRequest, FlatRow>, ResponseBoundaryObserver,
+    ScanController {
+
+  private static final Result[] EMPTY_RESULTS = new Result[0];
+
+  private final AdvancedScanResultConsumer consumer;
+  private List<Result> batch = new ArrayList<>();
+
+  // State that is shared with ScanResumer.resume(), which can be called from any thread.
+  private ClientCallStreamObserver<ReadRowsRequest> requestStream;
+  private ScanHandler scanHandler;
+  private boolean inCallback = false;
+  private boolean suspended = false;
+  private boolean terminated = false;
+  // Whether the rows in the batch arrived while the consumer was suspended.
+  private boolean held = false;
+  // The end of the stream, if it was reached while the consumer was suspended.
+  private Runnable pendingEnd;
+
+  AdvancedScanObserver(AdvancedScanResultConsumer consumer) {
+    this.consumer = consumer;
+  }
+
+  /**
+   * Sets the {@link ScanHandler} that is used to cancel the scan when the consumer terminates it.
+   */
+  synchronized void setScanHandler(ScanHandler scanHandler) {
+    this.scanHandler = scanHandler;
+    if (terminated) {
+      scanHandler.cancel();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void beforeStart(ClientCallStreamObserver<ReadRowsRequest> requestStream) {
+    // This is called again for every retry, after the first response of the new call has been
+    // requested.
+    requestStream.disableAutoInboundFlowControl();
+    this.requestStream = requestStream;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onNext(FlatRow row) {
+    batch.add(Adapters.FLAT_ROW_ADAPTER.adaptResponse(row));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onResponseProcessed() {
+    synchronized (this) {
+      if (suspended && !terminated) {
+        held = true;
+        return;
+      }
+    }
+    deliver();
+    boolean requestNext;
+    ClientCallStreamObserver<ReadRowsRequest> requestStream;
+    synchronized (this) {
+      requestNext = !suspended && !terminated;
+      requestStream = this.requestStream;
+    }
+    // Until beforeStart() is called, the operation still requests responses automatically.
+    if (requestNext && requestStream != null) {
+      requestStream.request(1);
+    }
+  }
+
+  /**
+   * Passes the pending batch to the consumer, or a heartbeat if there were no complete rows.
+   */
+  private void deliver() {
+    if (isTerminated()) {
+      batch.clear();
+      return;
+    }
+    Result[] results = batch.isEmpty() ? EMPTY_RESULTS : batch.toArray(new Result[batch.size()]);
+    batch = new ArrayList<>();
+    setInCallback(true);
+    try {
+      if (results.length == 0) {
+        consumer.onHeartbeat(this);
+      } else {
+        consumer.onNext(results, this);
+      }
+    } finally {
+      setInCallback(false);
+    }
+    if (isTerminated()) {
+      cancel();
+      consumer.onComplete();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onError(final Throwable t) {
+    end(new Runnable() {
+      @Override
+      public void run() {
+        consumer.onError(t);
+      }
+    });
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onCompleted() {
+    boolean hold;
+    synchronized (this) {
+      held |= suspended && !batch.isEmpty();
+      hold = held;
+    }
+    if (!hold && !batch.isEmpty()) {
+      deliver();
+    }
+    end(new Runnable() {
+      @Override
+      public void run() {
+        consumer.onComplete();
+      }
+    });
+  }
+
+  /**
+   * Tells the consumer that the stream ended, unless it terminated the scan. A suspended consumer
+   * is told when it resumes.
+   */
+  private void end(Runnable notification) {
+    synchronized (this) {
+      if (terminated) {
+        return;
+      }
+      if (suspended) {
+        pendingEnd = notification;
+        return;
+      }
+    }
+    notification.run();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized ScanResumer suspend() {
+    Preconditions.checkState(inCallback, "suspend() can only be called from onNext or onHeartbeat");
+    Preconditions.checkState(!terminated, "The scan was terminated");
+    suspended = true;
+    return new ScanResumer() {
+      @Override
+      public void resume() {
+        boolean requestNext;
+        ClientCallStreamObserver<ReadRowsRequest> requestStream;
+        Runnable end;
+        boolean deliverHeld;
+        synchronized (AdvancedScanObserver.this) {
+          if (!suspended) {
+            return;
+          }
+          suspended = false;
+          deliverHeld = held;
+          held = false;
+        }
+        if (deliverHeld) {
+          // Nothing else is requested while the rows are held, so this cannot race with onNext().
+          deliver();
+        }
+        synchronized (AdvancedScanObserver.this) {
+          if (suspended) {
+            // The consumer suspended again while the held rows were delivered.
+            return;
+          }
+          end = terminated ? null : pendingEnd;
+          pendingEnd = null;
+          // If the consumer resumes before it returns, the next response is requested on return.
+          requestNext = end == null && !inCallback && !terminated;
+          requestStream = AdvancedScanObserver.this.requestStream;
+        }
+        if (end != null) {
+          end.run();
+        } else if (requestNext && requestStream != null) {
+          requestStream.request(1);
+        }
+      }
+    };
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void terminate() {
+    Preconditions.checkState(inCallback,
+      "terminate() can only be called from onNext or onHeartbeat");
+    terminated = true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Optional<Cursor> cursor() {
+    return Optional.empty();
+  }
+
+  private void cancel() {
+    ScanHandler handler;
+    synchronized (this) {
+      handler = scanHandler;
+    }
+    if (handler != null) {
+      handler.cancel();
+    }
+  }
+
+  private synchronized boolean isTerminated() {
+    return terminated;
+  }
+
+  private synchronized void setInCallback(boolean inCallback) {
+    this.inCallback = inCallback;
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase2_x;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.AdvancedScanResultConsumer;
+import org.apache.hadoop.hbase.client.Append;
+import org.apache.hadoop.hbase.client.AsyncTable;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.client.RowMutations;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.ServiceCaller;
+
+/**
+ * Bigtable implementation of {@link AsyncTable} for {@link AdvancedScanResultConsumer}s. Scans
+ * are delivered in batches, and the consumer controls the flow of the stream. All other
+ * operations are the same as {@link BigtableAsyncTable}.
+ *
+ * @author sduskis
+ */
+public class BigtableAdvancedAsyncTable implements AsyncTable<AdvancedScanResultConsumer> {
+
+  private final BigtableAsyncTable delegate;
+
+  public BigtableAdvancedAsyncTable(BigtableAsyncTable delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void scan(Scan scan, AdvancedScanResultConsumer consumer) {
+    delegate.scan(scan, consumer);
+  }
+
+  @Override
+  public TableName getName() {
+    return delegate.getName();
+  }
+
+  @Override
+  public Configuration getConfiguration() {
+    return delegate.getConfiguration();
+  }
+
+  @Override
+  public long getRpcTimeout(TimeUnit unit) {
+    return delegate.getRpcTimeout(unit);
+  }
+
+  @Override
+  public long getReadRpcTimeout(TimeUnit unit) {
+    return delegate.getReadRpcTimeout(unit);
+  }
+
+  @Override
+  public long getWriteRpcTimeout(TimeUnit unit) {
+    return delegate.getWriteRpcTimeout(unit);
+  }
+
+  @Override
+  public long getOperationTimeout(TimeUnit unit) {
+    return delegate.getOperationTimeout(unit);
+  }
+
+  @Override
+  public long getScanTimeout(TimeUnit unit) {
+    return delegate.getScanTimeout(unit);
+  }
+
+  @Override
+  public CompletableFuture<Boolean> exists(Get get) {
+    return delegate.exists(get);
+  }
+
+  @Override
+  public List<CompletableFuture<Boolean>> exists(List<Get> gets) {
+    return delegate.exists(gets);
+  }
+
+  @Override
+  public CompletableFuture<Result> get(Get get) {
+    return delegate.get(get);
+  }
+
+  @Override
+  public List<CompletableFuture<Result>> get(List<Get> gets) {
+    return delegate.get(gets);
+  }
+
+  @Override
+  public CompletableFuture<Void> put(Put put) {
+    return delegate.put(put);
+  }
+
+  @Override
+  public List<CompletableFuture<Void>> put(List<Put> puts) {
+    return delegate.put(puts);
+  }
+
+  @Override
+  public CompletableFuture<Void> delete(Delete delete) {
+    return delegate.delete(delete);
+  }
+
+  @Override
+  public List<CompletableFuture<Void>> delete(List<Delete> deletes) {
+    return delegate.delete(deletes);
+  }
+
+  @Override
+  public CompletableFuture<Result> append(Append append) {
+    return delegate.append(append);
+  }
+
+  @Override
+  public CompletableFuture<Result> increment(Increment increment) {
+    return delegate.increment(increment);
+  }
+
+  @Override
+  public CheckAndMutateBuilder checkAndMutate(byte[] row, byte[] family) {
+    return delegate.checkAndMutate(row, family);
+  }
+
+  @Override
+  public CompletableFuture<Void> mutateRow(RowMutations mutation) {
+    return delegate.mutateRow(mutation);
+  }
+
+  @Override
+  public ResultScanner getScanner(Scan scan) {
+    return delegate.getScanner(scan);
+  }
+
+  @Override
+  public CompletableFuture<List<Result>> scanAll(Scan scan) {
+    return delegate.scanAll(scan);
+  }
+
+  @Override
+  public <T> List<CompletableFuture<T>> batch(List<? extends Row> actions) {
+    return delegate.batch(actions);
+  }
+
+  @SuppressWarnings("rawtypes")
+  @Override
+  public CompletableFuture coprocessorService(Function arg0, ServiceCaller arg1, byte[] arg2) {
+    throw new UnsupportedOperationException("coprocessorService");
+  }
+
+  @SuppressWarnings("rawtypes")
+  @Override
+  public CoprocessorServiceBuilder coprocessorService(Function arg0, ServiceCaller arg1,
+      CoprocessorCallback arg2) {
+    throw new UnsupportedOperationException("coprocessorService");
+  }
+}
@@ -17,6 +17,7 @@ package com.google.cloud.bigtable.hbase2_x;
 
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -27,6 +28,7 @@ import org.apache.hadoop.hbase.client.Mutation;
 
 import com.google.cloud.bigtable.grpc.BigtableSession;
 import com.google.cloud.bigtable.hbase.BigtableBufferedMutatorHelper;
+import com.google.cloud.bigtable.hbase.BufferFullException;
 import com.google.cloud.bigtable.hbase.adapters.HBaseRequestAdapter;
 
 /**
@@ -105,6 +107,29 @@ public class BigtableAsyncBufferedMutator implements AsyncBufferedMutator {
     return FutureUtils.toCompletableFuture(helper.mutate(mutation)).thenApply(r -> null);
   }
 
+  /**
+   * Begins a Mutation without blocking. If the buffer is full, the returned future completes
+   * exceptionally right away with a {@link BufferFullException}, and the mutation is not sent.
+   *
+   * @param mutation a {@link Mutation} to send.
+   * @return a {@link CompletableFuture} that tracks the mutation.
+   * @see BigtableBufferedMutatorHelper#tryMutate(Mutation)
+   */
+  public CompletableFuture<Void> tryMutate(Mutation mutation) {
+    return FutureUtils.toCompletableFuture(helper.tryMutate(mutation)).thenApply(r -> null);
+  }
+
+  /**
+   * Runs the listener once the buffer has room for more mutations.
+   *
+   * @param listener a {@link Runnable} to run when the buffer has room.
+   * @param executor the {@link Executor} on which to run the listener.
+   * @see BigtableBufferedMutatorHelper#addBufferAvailableListener(Runnable, Executor)
+   */
+  public void addBufferAvailableListener(Runnable listener, Executor executor) {
+    helper.addBufferAvailableListener(listener, executor);
+  }
+
   /**
    * <p>hasInflightRequests.</p>
    *
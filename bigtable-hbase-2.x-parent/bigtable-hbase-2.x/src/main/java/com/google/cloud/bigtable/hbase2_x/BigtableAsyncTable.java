@@ -28,6 +28,8 @@ import com.google.cloud.bigtable.hbase.adapters.read.GetAdapter;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.CompareOperator;
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.AdvancedScanResultConsumer;
+import org.apache.hadoop.hbase.client.AdvancedScanResultConsumer.ScanController;
 import org.apache.hadoop.hbase.client.Append;
 import org.apache.hadoop.hbase.client.AsyncTable;
 import org.apache.hadoop.hbase.client.BigtableAsyncConnection;
@@ -52,14 +54,17 @@ import com.google.bigtable.v2.ReadRowsRequest;
 import com.google.cloud.bigtable.config.Logger;
 import com.google.cloud.bigtable.grpc.BigtableSession;
 import com.google.cloud.bigtable.grpc.scanner.FlatRow;
+import com.google.cloud.bigtable.hbase.AbstractBigtableRegionLocator;
 import com.google.cloud.bigtable.hbase.AbstractBigtableTable;
+import com.google.cloud.bigtable.hbase.ClientSideFilterUtil;
 import com.google.cloud.bigtable.hbase.BatchExecutor;
+import com.google.cloud.bigtable.hbase.ParallelScanUtil;
 import com.google.cloud.bigtable.hbase.adapters.Adapters;
 import com.google.cloud.bigtable.hbase.adapters.CheckAndMutateUtil;
+import com.google.cloud.bigtable.hbase.adapters.filters.FilterSplit;
 import com.google.cloud.bigtable.hbase.adapters.HBaseRequestAdapter;
 import com.google.common.base.Preconditions;
 
-import io.grpc.stub.StreamObserver;
 import io.opencensus.trace.Span;
 import io.opencensus.trace.Tracer;
 import io.opencensus.trace.Tracing;
@@ -323,12 +328,28 @@ public class BigtableAsyncTable implements AsyncTable<ScanResultConsumer> {
     LOG.trace("getScanner(Scan)");
     Span span = TRACER.spanBuilder("BigtableTable.scan").startSpan();
     try (Closeable c = TRACER.withSpan(span)) {
-      com.google.cloud.bigtable.grpc.scanner.ResultScanner<FlatRow> scanner =
-          client.getClient().readFlatRows(hbaseAdapter.adapt(scan));
-      if (AbstractBigtableTable.hasWhileMatchFilter(scan.getFilter())) {
-        return Adapters.BIGTABLE_WHILE_MATCH_RESULT_RESULT_SCAN_ADAPTER.adapt(scanner, span);
+      FilterSplit filterSplit = ClientSideFilterUtil.split(scan);
+      Scan serverScan =
+          filterSplit == null ? scan : ClientSideFilterUtil.createServerScan(scan, filterSplit);
+      ReadRowsRequest request = hbaseAdapter.adapt(serverScan);
+      com.google.cloud.bigtable.grpc.scanner.ResultScanner<FlatRow> scanner;
+      if (ParallelScanUtil.isParallel(serverScan, request)) {
+        scanner = ParallelScanUtil.createScanner(client.getClient(), serverScan, request,
+          (AbstractBigtableRegionLocator) asyncConnection.getRegionLocator(tableName));
+      } else {
+        scanner = client.getClient().readFlatRows(request);
       }
-      return Adapters.BIGTABLE_RESULT_SCAN_ADAPTER.adapt(scanner, span);
+      ResultScanner resultScanner;
+      if (AbstractBigtableTable.hasWhileMatchFilter(serverScan.getFilter())) {
+        resultScanner =
+            Adapters.BIGTABLE_WHILE_MATCH_RESULT_RESULT_SCAN_ADAPTER.adapt(scanner, span);
+      } else {
+        resultScanner = Adapters.BIGTABLE_RESULT_SCAN_ADAPTER.adapt(scanner, span);
+      }
+      if (filterSplit != null) {
+        return ClientSideFilterUtil.wrap(resultScanner, scan, filterSplit);
+      }
+      return resultScanner;
     } catch (final Throwable throwable) {
       LOG.error("Encountered exception when executing getScanner.", throwable);
 
@@ -352,29 +373,55 @@ public class BigtableAsyncTable implements AsyncTable<ScanResultConsumer> {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The consumer is called on the gRPC thread, and the next response is only requested after it
+   * returns, so a slow consumer slows down the stream instead of buffering rows. Returning false
+   * from {@link ScanResultConsumer#onNext(Result)} stops the scan.
+   */
+  @Override
   public void scan(Scan scan, final ScanResultConsumer consumer) {
-    if (AbstractBigtableTable.hasWhileMatchFilter(scan.getFilter())) {
-      throw new UnsupportedOperationException(
-          "scan with consumer and while match filter is not allowed");
-    }
-    client.getClient().readFlatRows(hbaseAdapter.adapt(scan), new StreamObserver<FlatRow>() {
+    scan(scan, new AdvancedScanResultConsumer() {
       @Override
-      public void onNext(FlatRow value) {
-        consumer.onNext(Adapters.FLAT_ROW_ADAPTER.adaptResponse(value));
+      public void onNext(Result[] results, ScanController controller) {
+        for (Result result : results) {
+          if (!consumer.onNext(result)) {
+            controller.terminate();
+            return;
+          }
+        }
       }
 
       @Override
-      public void onError(Throwable t) {
-        consumer.onError(t);
+      public void onError(Throwable error) {
+        consumer.onError(error);
       }
 
       @Override
-      public void onCompleted() {
+      public void onComplete() {
         consumer.onComplete();
       }
     });
   }
 
+  /**
+   * Streams the rows of a scan to an {@link AdvancedScanResultConsumer}, one batch per response
+   * from Cloud Bigtable. The consumer can pause the stream with {@link ScanController#suspend()};
+   * responses are only requested from the server while the consumer is not suspended.
+   *
+   * @param scan the {@link Scan} to perform.
+   * @param consumer the {@link AdvancedScanResultConsumer} that receives the rows.
+   */
+  public void scan(Scan scan, AdvancedScanResultConsumer consumer) {
+    if (AbstractBigtableTable.hasWhileMatchFilter(scan.getFilter())) {
+      throw new UnsupportedOperationException(
+          "scan with consumer and while match filter is not allowed");
+    }
+    AdvancedScanObserver observer = new AdvancedScanObserver(consumer);
+    observer.setScanHandler(client.getClient().readFlatRows(hbaseAdapter.adapt(scan), observer));
+  }
+
   @Override
   public CompletableFuture coprocessorService(Function arg0, ServiceCaller arg1, byte[] arg2) {
     throw new UnsupportedOperationException("coprocessorService");
@@ -26,6 +26,7 @@ import org.apache.hadoop.hbase.client.RegionInfoBuilder;
 
 import com.google.cloud.bigtable.config.BigtableOptions;
 import com.google.cloud.bigtable.grpc.BigtableDataClient;
+import com.google.cloud.bigtable.grpc.KeyRangeIndex;
 import com.google.cloud.bigtable.hbase.AbstractBigtableRegionLocator;
 import com.google.cloud.bigtable.hbase.adapters.SampledRowKeysAdapter;
 
@@ -42,6 +43,11 @@ public class BigtableAsyncTableRegionLocator extends AbstractBigtableRegionLocat
     super(tableName,options,client);
   }
 
+  public BigtableAsyncTableRegionLocator(TableName tableName, BigtableOptions options,
+      KeyRangeIndex keyRangeIndex) {
+    super(tableName, options, keyRangeIndex);
+  }
+
   @Override
   public TableName getName() {
     return this.tableName;
@@ -35,6 +35,7 @@ import com.google.cloud.bigtable.hbase.BigtableOptionsFactory;
 import com.google.cloud.bigtable.hbase.adapters.Adapters;
 import com.google.cloud.bigtable.hbase.adapters.HBaseRequestAdapter;
 import com.google.cloud.bigtable.hbase.adapters.HBaseRequestAdapter.MutationAdapters;
+import com.google.cloud.bigtable.hbase2_x.BigtableAdvancedAsyncTable;
 import com.google.cloud.bigtable.hbase2_x.BigtableAsyncAdmin;
 import com.google.cloud.bigtable.hbase2_x.BigtableAsyncBufferedMutator;
 import com.google.cloud.bigtable.hbase2_x.BigtableAsyncTable;
@@ -216,7 +217,7 @@ public class BigtableAsyncConnection implements AsyncConnection, Closeable {
   }
   
   @Override
-  public AsyncTableBuilder<AdvancedScanResultConsumer> getTableBuilder(TableName arg0) {
+  public AsyncTableBuilder<AdvancedScanResultConsumer> getTableBuilder(TableName tableName) {
     return new AsyncTableBuilder<AdvancedScanResultConsumer>() {
       
       @Override
@@ -261,14 +262,16 @@ public class BigtableAsyncConnection implements AsyncConnection, Closeable {
       
       @Override
       public AsyncTable<AdvancedScanResultConsumer> build() {
-        throw new UnsupportedOperationException("build");
+        return new BigtableAdvancedAsyncTable(
+            new BigtableAsyncTable(BigtableAsyncConnection.this, createAdapter(tableName)));
       }
     };
   }
 
   @Override
   public AsyncTableRegionLocator getRegionLocator(TableName tableName) {
-    return new BigtableAsyncTableRegionLocator(tableName, options, this.session.getDataClient());
+    return new BigtableAsyncTableRegionLocator(tableName, options, this.session.getKeyRangeIndex(
+        options.getInstanceName().toTableName(tableName.getNameAsString())));
   }
 
   @Override
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase2_x;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.client.AdvancedScanResultConsumer;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import com.google.cloud.bigtable.grpc.scanner.FlatRow;
+import com.google.cloud.bigtable.grpc.scanner.ScanHandler;
+import com.google.protobuf.ByteString;
+
+import io.grpc.stub.ClientCallStreamObserver;
+
+/**
+ * Unit tests for {@link AdvancedScanObserver}
+ */
+@RunWith(JUnit4.class)
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class AdvancedScanObserverTest {
+
+  /**
+   * Records the batches it receives, and suspends or terminates the scan when asked to.
+   */
+  private static class RecordingConsumer implements AdvancedScanResultConsumer {
+    final List<Result[]> batches = new ArrayList<>();
+    boolean suspendNext = false;
+    boolean terminateNext = false;
+    ScanResumer resumer;
+    boolean completed = false;
+    Throwable error;
+
+    @Override
+    public void onNext(Result[] results, ScanController controller) {
+      batches.add(results);
+      if (suspendNext) {
+        suspendNext = false;
+        resumer = controller.suspend();
+      }
+      if (terminateNext) {
+        controller.terminate();
+      }
+    }
+
+    @Override
+    public void onError(Throwable error) {
+      this.error = error;
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+  }
+
+  @Mock
+  private ClientCallStreamObserver mockRequestStream;
+
+  @Mock
+  private ScanHandler mockScanHandler;
+
+  private RecordingConsumer consumer;
+  private AdvancedScanObserver underTest;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    consumer = new RecordingConsumer();
+    underTest = new AdvancedScanObserver(consumer);
+    underTest.setScanHandler(mockScanHandler);
+    underTest.beforeStart(mockRequestStream);
+  }
+
+  @Test
+  public void testRowsAreDeliveredPerResponse() {
+    verify(mockRequestStream, times(1)).disableAutoInboundFlowControl();
+    underTest.onNext(createRow("a"));
+    underTest.onNext(createRow("b"));
+    underTest.onResponseProcessed();
+    underTest.onNext(createRow("c"));
+    underTest.onResponseProcessed();
+    underTest.onCompleted();
+
+    assertEquals(2, consumer.batches.size());
+    assertEquals(2, consumer.batches.get(0).length);
+    assertEquals("b", Bytes.toString(consumer.batches.get(0)[1].getRow()));
+    assertEquals(1, consumer.batches.get(1).length);
+    verify(mockRequestStream, times(2)).request(1);
+    assertTrue(consumer.completed);
+  }
+
+  @Test
+  public void testSuspendStopsRequests() {
+    consumer.suspendNext = true;
+    underTest.onNext(createRow("a"));
+    underTest.onResponseProcessed();
+    verify(mockRequestStream, times(0)).request(1);
+
+    consumer.resumer.resume();
+    verify(mockRequestStream, times(1)).request(1);
+    // Resuming twice does not request twice.
+    consumer.resumer.resume();
+    verify(mockRequestStream, times(1)).request(1);
+  }
+
+  @Test
+  public void testCompletionIsDeferredWhileSuspended() {
+    consumer.suspendNext = true;
+    underTest.onNext(createRow("a"));
+    underTest.onResponseProcessed();
+    underTest.onCompleted();
+    assertFalse(consumer.completed);
+
+    consumer.resumer.resume();
+    assertTrue(consumer.completed);
+    verify(mockRequestStream, times(0)).request(1);
+  }
+
+  @Test
+  public void testRetryWhileSuspendedHoldsResponse() {
+    consumer.suspendNext = true;
+    underTest.onNext(createRow("a"));
+    underTest.onResponseProcessed();
+
+    // The retried call requests its first response when it starts, even though the consumer is
+    // suspended.
+    ClientCallStreamObserver retryRequestStream = Mockito.mock(ClientCallStreamObserver.class);
+    underTest.beforeStart(retryRequestStream);
+    underTest.onNext(createRow("b"));
+    underTest.onResponseProcessed();
+    assertEquals(1, consumer.batches.size());
+    verify(retryRequestStream, times(0)).request(1);
+
+    consumer.resumer.resume();
+    assertEquals(2, consumer.batches.size());
+    assertEquals("b", Bytes.toString(consumer.batches.get(1)[0].getRow()));
+    verify(retryRequestStream, times(1)).request(1);
+    verify(mockRequestStream, times(0)).request(1);
+
+    underTest.onCompleted();
+    assertTrue(consumer.completed);
+  }
+
+  @Test
+  public void testCompletionWithHeldResponse() {
+    consumer.suspendNext = true;
+    underTest.onNext(createRow("a"));
+    underTest.onResponseProcessed();
+    underTest.onNext(createRow("b"));
+    underTest.onResponseProcessed();
+    underTest.onCompleted();
+    assertEquals(1, consumer.batches.size());
+    assertFalse(consumer.completed);
+
+    consumer.resumer.resume();
+    assertEquals(2, consumer.batches.size());
+    assertTrue(consumer.completed);
+    verify(mockRequestStream, times(0)).request(1);
+  }
+
+  @Test
+  public void testTerminateCancelsScan() {
+    consumer.terminateNext = true;
+    underTest.onNext(createRow("a"));
+    underTest.onResponseProcessed();
+    verify(mockScanHandler, times(1)).cancel();
+    verify(mockRequestStream, times(0)).request(1);
+    assertTrue(consumer.completed);
+
+    // The cancellation error is not passed on.
+    underTest.onError(new RuntimeException("cancelled"));
+    assertEquals(null, consumer.error);
+    assertEquals(1, consumer.batches.size());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testSuspendOutsideOfCallback() {
+    underTest.suspend();
+  }
+
+  private static FlatRow createRow(String key) {
+    return FlatRow.newBuilder().withRowKey(ByteString.copyFromUtf8(key))
+        .addCell("family", ByteString.copyFromUtf8("qualifier"), 1, ByteString.EMPTY).build();
+  }
+}
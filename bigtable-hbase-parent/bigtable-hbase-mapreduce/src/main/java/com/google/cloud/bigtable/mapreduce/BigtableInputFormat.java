@@ -0,0 +1,388 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.mapreduce;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.TableInputFormat;
+import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
+import org.apache.hadoop.hbase.mapreduce.TableSplit;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import com.google.bigtable.repackaged.com.google.bigtable.v2.ReadRowsRequest;
+import com.google.bigtable.repackaged.com.google.bigtable.v2.SampleRowKeysRequest;
+import com.google.bigtable.repackaged.com.google.bigtable.v2.SampleRowKeysResponse;
+import com.google.bigtable.repackaged.com.google.cloud.bigtable.config.BigtableOptions;
+import com.google.bigtable.repackaged.com.google.cloud.bigtable.grpc.BigtableSession;
+import com.google.bigtable.repackaged.com.google.cloud.bigtable.grpc.scanner.FlatRow;
+import com.google.bigtable.repackaged.com.google.cloud.bigtable.grpc.scanner.ResultScanner;
+import com.google.bigtable.repackaged.com.google.common.annotations.VisibleForTesting;
+import com.google.cloud.bigtable.hbase.BigtableOptionsFactory;
+import com.google.cloud.bigtable.hbase.adapters.Adapters;
+import com.google.cloud.bigtable.hbase.adapters.HBaseRequestAdapter;
+
+/**
+ * An {@link InputFormat} that reads a Bigtable table without going through HBase's region based
+ * machinery. Splits come from SampleRowKeys: each tablet becomes a split, and tablets that are
+ * larger than {@link #SPLIT_SIZE_BYTES_KEY} are divided into evenly sized key ranges. The records
+ * are read with a {@link ResultScanner} of {@link FlatRow}s.
+ *
+ * <p>The sizes of the splits are estimates. SampleRowKeys only gives the size of whole tablets, so
+ * the size of a tablet that is clipped by the scan, or divided into several splits, is prorated by
+ * the fraction of the tablet's key range that the split covers. Key ranges are measured by reading
+ * the keys as fractions, after the prefix that the ends of the range share. The last tablet of a
+ * table has no end key; its range is measured up to a key of {@code 0xFF} bytes that is one byte
+ * longer than its start key.
+ *
+ * <p>The table and {@link Scan} are read from {@link TableInputFormat#INPUT_TABLE} and
+ * {@link TableInputFormat#SCAN}, so this can be passed to
+ * {@link TableMapReduceUtil#initTableMapperJob(String, Scan, Class, Class, Class,
+ * org.apache.hadoop.mapreduce.Job, boolean, Class)}.
+ *
+ * @author sduskis
+ */
+public class BigtableInputFormat extends InputFormat<ImmutableBytesWritable, Result>
+    implements Configurable {
+
+  private static final Log LOG = LogFactory.getLog(BigtableInputFormat.class);
+
+  /** The target size of a split, in bytes. Tablets that are larger are sub-split. */
+  public static final String SPLIT_SIZE_BYTES_KEY = "google.bigtable.mapreduce.split.size.bytes";
+
+  /** The default size of a split: 256 MB. */
+  public static final long SPLIT_SIZE_BYTES_DEFAULT = 256L * 1024 * 1024;
+
+  private Configuration conf;
+
+  /** {@inheritDoc} */
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  private static String getTableId(Configuration conf) throws IOException {
+    String tableId = conf.get(TableInputFormat.INPUT_TABLE);
+    if (tableId == null) {
+      throw new IOException("No table was provided in " + TableInputFormat.INPUT_TABLE);
+    }
+    return tableId;
+  }
+
+  private static Scan getScan(Configuration conf) throws IOException {
+    String scan = conf.get(TableInputFormat.SCAN);
+    return scan == null ? new Scan() : TableMapReduceUtil.convertStringToScan(scan);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<InputSplit> getSplits(JobContext context) throws IOException {
+    Configuration conf = context.getConfiguration();
+    String tableId = getTableId(conf);
+    BigtableOptions options = BigtableOptionsFactory.fromConfiguration(conf);
+    List<SampleRowKeysResponse> samples;
+    try (BigtableSession session = new BigtableSession(options)) {
+      samples = session.getDataClient().sampleRowKeys(SampleRowKeysRequest.newBuilder()
+          .setTableName(options.getInstanceName().toTableNameStr(tableId))
+          .build());
+    }
+    List<InputSplit> splits = getSplits(TableName.valueOf(tableId), getScan(conf), samples,
+      conf.getLong(SPLIT_SIZE_BYTES_KEY, SPLIT_SIZE_BYTES_DEFAULT), options.getDataHost());
+    LOG.info("Created " + splits.size() + " splits from " + samples.size() + " samples of "
+        + tableId);
+    if (conf.getBoolean(TableInputFormat.SHUFFLE_MAPS, false)) {
+      // Spread the load of the first mappers across the tablet servers.
+      Collections.shuffle(splits);
+    }
+    return splits;
+  }
+
+  /**
+   * Creates the splits of the scan's key range, in key order.
+   *
+   * @param tableName the {@link TableName} of the splits.
+   * @param scan the {@link Scan} to split.
+   * @param samples the {@link SampleRowKeysResponse}s of the table.
+   * @param splitSizeBytes the target size of a split.
+   * @param location the location to report for the splits.
+   * @return a {@link List} of {@link TableSplit}s.
+   */
+  static List<InputSplit> getSplits(TableName tableName, Scan scan,
+      List<SampleRowKeysResponse> samples, long splitSizeBytes, String location) {
+    byte[] scanStartKey = scan.getStartRow();
+    byte[] scanStopKey = scan.getStopRow();
+    List<InputSplit> splits = new ArrayList<>();
+    byte[] startKey = HConstants.EMPTY_START_ROW;
+    long lastOffset = 0;
+    for (SampleRowKeysResponse sample : samples) {
+      byte[] endKey = sample.getRowKey().toByteArray();
+      // Avoid empty regions.
+      if (Bytes.equals(startKey, endKey) && startKey.length > 0) {
+        continue;
+      }
+      long offset = sample.getOffsetBytes();
+      if (isWithinRange(scanStartKey, scanStopKey, startKey, endKey)) {
+        byte[] splitStartKey = max(startKey, scanStartKey);
+        byte[] splitStopKey = min(endKey, scanStopKey);
+        // Only count the part of the tablet that the scan reads.
+        double stopPosition =
+            splitStopKey.length == 0 ? 1 : getPosition(startKey, endKey, splitStopKey);
+        double fraction = stopPosition - getPosition(startKey, endKey, splitStartKey);
+        addSplits(splits, tableName, scan, splitStartKey, splitStopKey,
+          (long) ((offset - lastOffset) * fraction), splitSizeBytes, location);
+      }
+      lastOffset = offset;
+      startKey = endKey;
+    }
+    // The last sample is usually the empty key. If it's not, or if there were no samples, then
+    // cover the rest of the table.
+    if ((startKey.length > 0 || samples.isEmpty())
+        && isWithinRange(scanStartKey, scanStopKey, startKey, HConstants.EMPTY_END_ROW)) {
+      splits.add(new TableSplit(tableName, scan, max(startKey, scanStartKey), scanStopKey,
+          location, 0));
+    }
+    return splits;
+  }
+
+  /**
+   * Adds splits of roughly {@code splitSizeBytes} each for the range, using
+   * {@link Bytes#split(byte[], byte[], int)}. A range without a stop key is split up to
+   * {@link #getSyntheticStopKey(byte[])}, and its last split keeps the empty stop key.
+   */
+  private static void addSplits(List<InputSplit> splits, TableName tableName, Scan scan,
+      byte[] startKey, byte[] stopKey, long size, long splitSizeBytes, String location) {
+    int splitCount = (int) Math.min(Integer.MAX_VALUE, (size + splitSizeBytes - 1) / splitSizeBytes);
+    byte[] splitStopKey = stopKey.length > 0 ? stopKey : getSyntheticStopKey(startKey);
+    if (splitCount > 1 && Bytes.compareTo(startKey, splitStopKey) < 0) {
+      byte[][] splitKeys = null;
+      try {
+        splitKeys = Bytes.split(startKey, splitStopKey, splitCount - 1);
+      } catch (IllegalArgumentException e) {
+        LOG.warn("Could not split [" + Bytes.toStringBinary(startKey) + ", "
+            + Bytes.toStringBinary(stopKey) + "), so using it as one split.", e);
+      }
+      if (splitKeys != null && splitKeys.length == splitCount + 1) {
+        // Bytes.split() pads keys that are close together, so restore the original ends.
+        splitKeys[0] = startKey;
+        splitKeys[splitCount] = stopKey;
+        for (int i = 0; i < splitCount; i++) {
+          splits.add(new TableSplit(tableName, scan, splitKeys[i], splitKeys[i + 1], location,
+              size / splitCount));
+        }
+        return;
+      }
+    }
+    splits.add(new TableSplit(tableName, scan, startKey, stopKey, location, size));
+  }
+
+  /**
+   * Gets a key to split an open ended range up to: the largest key that is one byte longer than the
+   * start key. Only rows that start with a {@code 0xFF} byte can be larger.
+   */
+  static byte[] getSyntheticStopKey(byte[] startKey) {
+    byte[] stopKey = new byte[startKey.length + 1];
+    Arrays.fill(stopKey, (byte) 0xFF);
+    return stopKey;
+  }
+
+  /**
+   * Estimates how far a key is into a range, assuming that the keys are spread evenly across it.
+   *
+   * @param startKey the inclusive start of the range.
+   * @param stopKey the exclusive end of the range, or an empty key for the end of the table.
+   * @param key a key.
+   * @return a value from 0, for the start of the range, to 1, for the end of the range.
+   */
+  static double getPosition(byte[] startKey, byte[] stopKey, byte[] key) {
+    if (Bytes.compareTo(key, startKey) <= 0) {
+      return 0;
+    }
+    if (stopKey.length == 0) {
+      stopKey = getSyntheticStopKey(startKey);
+    }
+    if (Bytes.compareTo(key, stopKey) >= 0) {
+      return 1;
+    }
+    // Keys within the range share the prefix of its ends.
+    int prefixLength = 0;
+    while (prefixLength < startKey.length && prefixLength < stopKey.length
+        && startKey[prefixLength] == stopKey[prefixLength]) {
+      prefixLength++;
+    }
+    double start = toFraction(startKey, prefixLength);
+    double stop = toFraction(stopKey, prefixLength);
+    if (stop <= start) {
+      return 0;
+    }
+    return Math.min(1, Math.max(0, (toFraction(key, prefixLength) - start) / (stop - start)));
+  }
+
+  /**
+   * Reads up to 8 bytes of a key, from an offset, as a fraction from 0 to 1.
+   */
+  private static double toFraction(byte[] key, int offset) {
+    double fraction = 0;
+    double scale = 1;
+    for (int i = offset; i < key.length && i < offset + 8; i++) {
+      scale /= 256;
+      fraction += (key[i] & 0xFF) * scale;
+    }
+    return fraction;
+  }
+
+  /**
+   * Checks if the range of the region is within the range of the scan.
+   */
+  private static boolean isWithinRange(byte[] scanStartKey, byte[] scanEndKey, byte[] startKey,
+      byte[] endKey) {
+    return (scanStartKey.length == 0 || endKey.length == 0
+            || Bytes.compareTo(scanStartKey, endKey) < 0)
+        && (scanEndKey.length == 0 || Bytes.compareTo(scanEndKey, startKey) > 0);
+  }
+
+  /** The larger of two start keys. */
+  private static byte[] max(byte[] startKey, byte[] scanStartKey) {
+    return Bytes.compareTo(startKey, scanStartKey) >= 0 ? startKey : scanStartKey;
+  }
+
+  /** The smaller of two stop keys, where an empty key is the end of the table. */
+  private static byte[] min(byte[] stopKey, byte[] scanStopKey) {
+    if (stopKey.length == 0) {
+      return scanStopKey;
+    }
+    if (scanStopKey.length == 0) {
+      return stopKey;
+    }
+    return Bytes.compareTo(stopKey, scanStopKey) <= 0 ? stopKey : scanStopKey;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public RecordReader<ImmutableBytesWritable, Result> createRecordReader(InputSplit split,
+      TaskAttemptContext context) {
+    return new BigtableRecordReader();
+  }
+
+  /**
+   * Reads the rows of a {@link TableSplit} with a {@link ResultScanner} of {@link FlatRow}s.
+   */
+  static class BigtableRecordReader extends RecordReader<ImmutableBytesWritable, Result> {
+    private BigtableSession session;
+    private ResultScanner<FlatRow> scanner;
+    private byte[] startKey;
+    private byte[] stopKey;
+    private final ImmutableBytesWritable key = new ImmutableBytesWritable();
+    private Result value;
+    private boolean done = false;
+
+    BigtableRecordReader() {
+    }
+
+    @VisibleForTesting
+    BigtableRecordReader(byte[] startKey, byte[] stopKey, ResultScanner<FlatRow> scanner) {
+      this.startKey = startKey;
+      this.stopKey = stopKey;
+      this.scanner = scanner;
+    }
+
+    @Override
+    public void initialize(InputSplit inputSplit, TaskAttemptContext context)
+        throws IOException {
+      TableSplit split = (TableSplit) inputSplit;
+      startKey = split.getStartRow();
+      stopKey = split.getEndRow();
+      Configuration conf = context.getConfiguration();
+      Scan scan = getScan(conf);
+      scan.setStartRow(split.getStartRow());
+      scan.setStopRow(split.getEndRow());
+      BigtableOptions options = BigtableOptionsFactory.fromConfiguration(conf);
+      ReadRowsRequest request =
+          new HBaseRequestAdapter(options, TableName.valueOf(getTableId(conf)), conf).adapt(scan);
+      session = new BigtableSession(options);
+      scanner = session.getDataClient().readFlatRows(request);
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException {
+      FlatRow row = scanner.next();
+      if (row == null) {
+        done = true;
+        value = null;
+        return false;
+      }
+      value = Adapters.FLAT_ROW_ADAPTER.adaptResponse(row);
+      key.set(value.getRow());
+      return true;
+    }
+
+    @Override
+    public ImmutableBytesWritable getCurrentKey() {
+      return key;
+    }
+
+    @Override
+    public Result getCurrentValue() {
+      return value;
+    }
+
+    /**
+     * Estimates the progress from the position of the last row in the split's key range.
+     */
+    @Override
+    public float getProgress() {
+      if (done) {
+        return 1;
+      }
+      return value == null ? 0 : (float) getPosition(startKey, stopKey, value.getRow());
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        if (scanner != null) {
+          scanner.close();
+        }
+      } finally {
+        if (session != null) {
+          session.close();
+        }
+      }
+    }
+  }
+}
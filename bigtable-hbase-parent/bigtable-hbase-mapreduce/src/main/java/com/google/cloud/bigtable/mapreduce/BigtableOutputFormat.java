@@ -0,0 +1,225 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.mapreduce;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.mapreduce.TableOutputCommitter;
+import org.apache.hadoop.hbase.mapreduce.TableOutputFormat;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import com.google.bigtable.repackaged.com.google.bigtable.v2.MutateRowResponse;
+import com.google.bigtable.repackaged.com.google.bigtable.v2.MutateRowsRequest;
+import com.google.bigtable.repackaged.com.google.cloud.bigtable.config.BigtableOptions;
+import com.google.bigtable.repackaged.com.google.cloud.bigtable.grpc.BigtableSession;
+import com.google.bigtable.repackaged.com.google.cloud.bigtable.grpc.async.BulkMutation;
+import com.google.bigtable.repackaged.com.google.cloud.bigtable.grpc.async.ResourceLimiter;
+import com.google.bigtable.repackaged.com.google.cloud.bigtable.grpc.async.ResourceLimiterStats;
+import com.google.bigtable.repackaged.com.google.common.util.concurrent.FutureCallback;
+import com.google.bigtable.repackaged.com.google.common.util.concurrent.Futures;
+import com.google.bigtable.repackaged.com.google.common.util.concurrent.MoreExecutors;
+import com.google.cloud.bigtable.hbase.BigtableOptionsFactory;
+import com.google.cloud.bigtable.hbase.adapters.HBaseRequestAdapter;
+
+/**
+ * An {@link OutputFormat} that writes {@link Put}s and {@link Delete}s to the Bigtable table in
+ * {@link TableOutputFormat#OUTPUT_TABLE}. Each task writes through a {@link BulkMutation} of its
+ * own {@link BigtableSession}, so mutations are batched into MutateRows requests without going
+ * through HBase's {@link org.apache.hadoop.hbase.client.BufferedMutator}.
+ *
+ * <p>A task is throttled by the session's {@link ResourceLimiter}, which is sized by the
+ * {@link com.google.bigtable.repackaged.com.google.cloud.bigtable.config.BulkOptions} from the
+ * configuration: {@link BigtableOptionsFactory#MAX_INFLIGHT_RPCS_KEY},
+ * {@link BigtableOptionsFactory#BIGTABLE_BUFFERED_MUTATOR_MAX_MEMORY_KEY} and
+ * {@link BigtableOptionsFactory#BIGTABLE_BUFFERED_MUTATOR_ENABLE_THROTTLING}. The number of
+ * mutations, the bytes written and the time spent waiting on the limiter are reported as
+ * {@link Counters}.
+ *
+ * @param <KEY> The type of the key. It is ignored.
+ * @author sduskis
+ */
+public class BigtableOutputFormat<KEY> extends OutputFormat<KEY, Mutation>
+    implements Configurable {
+
+  private static final Log LOG = LogFactory.getLog(BigtableOutputFormat.class);
+
+  /** The counters of a {@link BigtableRecordWriter}. */
+  public enum Counters {
+    /** The number of {@link Put}s and {@link Delete}s written. */
+    MUTATIONS,
+    /** The serialized size of the written mutations. */
+    BYTES,
+    /**
+     * The milliseconds spent waiting for the {@link ResourceLimiter}, from
+     * {@link ResourceLimiterStats#getCumulativeThrottlingTimeNanos()}.
+     */
+    THROTTLED_MILLIS
+  }
+
+  private Configuration conf;
+
+  /** {@inheritDoc} */
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public RecordWriter<KEY, Mutation> getRecordWriter(TaskAttemptContext context)
+      throws IOException {
+    Configuration conf = context.getConfiguration();
+    String tableId = conf.get(TableOutputFormat.OUTPUT_TABLE);
+    BigtableOptions options = BigtableOptionsFactory.fromConfiguration(conf);
+    BigtableSession session = new BigtableSession(options);
+    return new BigtableRecordWriter<>(session,
+        new HBaseRequestAdapter(options, TableName.valueOf(tableId), conf),
+        session.createBulkMutation(options.getInstanceName().toTableName(tableId)),
+        ResourceLimiterStats.getInstance(options.getInstanceName()),
+        context.getCounter(Counters.MUTATIONS),
+        context.getCounter(Counters.BYTES),
+        context.getCounter(Counters.THROTTLED_MILLIS));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void checkOutputSpecs(JobContext context) throws IOException {
+    if (context.getConfiguration().get(TableOutputFormat.OUTPUT_TABLE) == null) {
+      throw new IOException("No table was provided in " + TableOutputFormat.OUTPUT_TABLE);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public OutputCommitter getOutputCommitter(TaskAttemptContext context) {
+    return new TableOutputCommitter();
+  }
+
+  /**
+   * Adds {@link Put}s and {@link Delete}s to a {@link BulkMutation}. The first failed mutation
+   * fails the next {@link #write(Object, Mutation)} or {@link #close(TaskAttemptContext)}.
+   *
+   * <p>The {@link ResourceLimiterStats} are shared by all the sessions of the instance in the JVM,
+   * so the throttled time also includes waits of other writers to the instance in the same task.
+   */
+  static class BigtableRecordWriter<KEY> extends RecordWriter<KEY, Mutation> {
+    private final BigtableSession session;
+    private final HBaseRequestAdapter adapter;
+    private final BulkMutation bulkMutation;
+    private final ResourceLimiterStats resourceLimiterStats;
+    private final Counter mutationCounter;
+    private final Counter bytesCounter;
+    private final Counter throttledMillisCounter;
+    private volatile Throwable failure;
+    // Throttled time that is not reported yet because it is less than a millisecond.
+    private long throttledNanosRemainder = 0;
+
+    private final FutureCallback<MutateRowResponse> callback =
+        new FutureCallback<MutateRowResponse>() {
+          @Override
+          public void onSuccess(MutateRowResponse result) {
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            if (failure == null) {
+              failure = t;
+            }
+          }
+        };
+
+    BigtableRecordWriter(BigtableSession session, HBaseRequestAdapter adapter,
+        BulkMutation bulkMutation, ResourceLimiterStats resourceLimiterStats,
+        Counter mutationCounter, Counter bytesCounter, Counter throttledMillisCounter) {
+      this.session = session;
+      this.adapter = adapter;
+      this.bulkMutation = bulkMutation;
+      this.resourceLimiterStats = resourceLimiterStats;
+      this.mutationCounter = mutationCounter;
+      this.bytesCounter = bytesCounter;
+      this.throttledMillisCounter = throttledMillisCounter;
+    }
+
+    @Override
+    public void write(KEY key, Mutation mutation) throws IOException {
+      checkFailure();
+      MutateRowsRequest.Entry entry;
+      if (mutation instanceof Put) {
+        entry = adapter.adaptEntry((Put) mutation);
+      } else if (mutation instanceof Delete) {
+        entry = adapter.adaptEntry((Delete) mutation);
+      } else {
+        throw new IOException("Pass a Delete or a Put");
+      }
+      // BulkMutation.add() blocks while the ResourceLimiter is full, and the limiter records how
+      // long it waited.
+      long throttledNanos = resourceLimiterStats.getCumulativeThrottlingTimeNanos();
+      Futures.addCallback(bulkMutation.add(entry), callback, MoreExecutors.directExecutor());
+      throttledNanos = resourceLimiterStats.getCumulativeThrottlingTimeNanos() - throttledNanos;
+      if (throttledNanos > 0) {
+        throttledNanosRemainder += throttledNanos;
+        throttledMillisCounter.increment(
+          TimeUnit.NANOSECONDS.toMillis(throttledNanosRemainder));
+        throttledNanosRemainder %= TimeUnit.MILLISECONDS.toNanos(1);
+      }
+      mutationCounter.increment(1);
+      bytesCounter.increment(entry.getSerializedSize());
+    }
+
+    @Override
+    public void close(TaskAttemptContext context) throws IOException {
+      try {
+        bulkMutation.flush();
+        checkFailure();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while flushing mutations");
+      } finally {
+        session.close();
+      }
+      LOG.info("Wrote " + mutationCounter.getValue() + " mutations, "
+          + bytesCounter.getValue() + " bytes, throttled for "
+          + throttledMillisCounter.getValue() + " ms");
+    }
+
+    private void checkFailure() throws IOException {
+      if (failure != null) {
+        throw new IOException("Could not write a mutation", failure);
+      }
+    }
+  }
+}
@@ -39,6 +39,11 @@ public class Driver {
           "A map/reduce program that exports a table to a file.");
       programDriver.addClass("import-table", Import.class,
           "A map/reduce program that imports a table to a file.");
+      programDriver.addClass("hash-table", HashTable.class,
+          "A map/reduce program that writes a manifest of the hashes of a table's key ranges.");
+      programDriver.addClass("sync-table", SyncTable.class,
+          "A map/reduce program that rewrites the key ranges of a table that differ from a "
+              + "hash manifest.");
       programDriver.driver(args);
       exitCode = programDriver.run(args);
     } catch (Throwable e) {
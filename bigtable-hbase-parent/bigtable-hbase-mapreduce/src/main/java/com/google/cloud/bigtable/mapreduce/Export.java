@@ -88,7 +88,9 @@ public class Export {
     job.setJarByClass(Export.class);
     // Set optional scan parameters
     Scan s = getConfiguredScanForJob(conf, args);
-    TableMapReduceUtil.initTableMapperJob(tableName, s, IdentityTableMapper.class, ImmutableBytesWritable.class, Result.class, job, false);
+    // Split on the table's sampled row keys rather than on HBase regions.
+    TableMapReduceUtil.initTableMapperJob(tableName, s, IdentityTableMapper.class,
+      ImmutableBytesWritable.class, Result.class, job, false, BigtableInputFormat.class);
     // No reducers.  Just write straight to output files.
     job.setNumReduceTasks(0);
     job.setOutputFormatClass(SequenceFileOutputFormat.class);
@@ -190,7 +192,8 @@ public class Export {
     System.err.println("For performance consider the following properties:\n"
         + "   -Dhbase.client.scanner.caching=100\n"
         + "   -Dmapreduce.map.speculative=false\n"
-        + "   -Dmapreduce.reduce.speculative=false");
+        + "   -Dmapreduce.reduce.speculative=false\n"
+        + "   -D" + BigtableInputFormat.SPLIT_SIZE_BYTES_KEY + "=<split size in bytes>");
     System.err.println("For tables with very wide rows consider setting the batch size as below:\n"
         + "   -D" + EXPORT_BATCHING + "=10");
   }
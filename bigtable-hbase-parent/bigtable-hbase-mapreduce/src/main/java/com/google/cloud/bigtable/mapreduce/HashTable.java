@@ -0,0 +1,298 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.mapreduce;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.TableInputFormat;
+import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
+import org.apache.hadoop.hbase.mapreduce.TableMapper;
+import org.apache.hadoop.hbase.mapreduce.TableSplit;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import com.google.cloud.bigtable.hbase.BigtableConfiguration;
+import com.google.cloud.bigtable.hbase.BigtableOptionsFactory;
+
+/**
+ * Computes a manifest of content hashes of a table. Each split of the table is read in row order
+ * and cut into batches of roughly {@link #BATCH_SIZE_KEY} bytes. Every batch is written to a
+ * SequenceFile as its start key and a {@link KeyRangeHash} with its stop key and the hash of its
+ * cells. The batches cover the whole table, including empty ranges.
+ *
+ * <p>{@link SyncTable} uses the manifest to find and rewrite the ranges of a target table that
+ * differ from the hashed table.
+ *
+ * <p>The table is read with {@link BigtableInputFormat} if {@link
+ * BigtableOptionsFactory#PROJECT_ID_KEY} is set, and with HBase's {@link TableInputFormat}
+ * otherwise, so that an HBase table can be hashed too.
+ *
+ * @author sduskis
+ */
+public class HashTable extends Configured implements Tool {
+  private static final Log LOG = LogFactory.getLog(HashTable.class);
+  final static String NAME = "hashtable";
+
+  /** The target size of a batch, in bytes. */
+  public final static String BATCH_SIZE_KEY = "hashtable.batch.size";
+
+  /** The default size of a batch: 8 MB. */
+  public final static long DEFAULT_BATCH_SIZE = 8L * 1024 * 1024;
+
+  /**
+   * The stop key and content hash of a range of rows. The start key is the key of the manifest
+   * entry.
+   */
+  public static class KeyRangeHash implements Writable {
+    private byte[] stopKey;
+    private byte[] hash;
+
+    /** Used by Hadoop serialization. */
+    public KeyRangeHash() {
+    }
+
+    /**
+     * @param stopKey the exclusive stop key of the range, or an empty array for the end of the
+     *          table.
+     * @param hash the hash of the range's cells.
+     */
+    public KeyRangeHash(byte[] stopKey, byte[] hash) {
+      this.stopKey = stopKey;
+      this.hash = hash;
+    }
+
+    /** @return the exclusive stop key of the range. */
+    public byte[] getStopKey() {
+      return stopKey;
+    }
+
+    /** @return the hash of the range's cells. */
+    public byte[] getHash() {
+      return hash;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(DataOutput out) throws IOException {
+      Bytes.writeByteArray(out, stopKey);
+      Bytes.writeByteArray(out, hash);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      stopKey = Bytes.readByteArray(in);
+      hash = Bytes.readByteArray(in);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+      return "[" + Bytes.toStringBinary(stopKey) + ", " + Bytes.toHex(hash) + "]";
+    }
+  }
+
+  /**
+   * Hashes the cells of a sequence of {@link Result}s. {@link SyncTable} hashes the target table
+   * the same way, so any change here invalidates existing manifests.
+   */
+  static class ResultHasher {
+    private final MessageDigest digest;
+    private long batchSize = 0;
+
+    ResultHasher() {
+      try {
+        digest = MessageDigest.getInstance("MD5");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException("MD5 is not available", e);
+      }
+    }
+
+    void hashResult(Result result) {
+      update(result.getRow(), 0, result.getRow().length);
+      for (Cell cell : result.rawCells()) {
+        update(cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength());
+        update(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength());
+        digest.update(Bytes.toBytes(cell.getTimestamp()));
+        update(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+        batchSize += Bytes.SIZEOF_LONG;
+      }
+    }
+
+    /** Adds the length first, so that adjacent fields can't be confused. */
+    private void update(byte[] array, int offset, int length) {
+      digest.update(Bytes.toBytes(length));
+      digest.update(array, offset, length);
+      batchSize += length;
+    }
+
+    long getBatchSize() {
+      return batchSize;
+    }
+
+    /** @return the hash of the {@link Result}s, and resets this hasher. */
+    byte[] finish() {
+      batchSize = 0;
+      return digest.digest();
+    }
+  }
+
+  /**
+   * Creates a {@link Scan} that reads all of the cells of the range. It is shared with
+   * {@link SyncTable} so that both tables return the same cells.
+   */
+  static Scan createScan(byte[] startKey, byte[] stopKey) {
+    Scan scan = new Scan(startKey, stopKey);
+    scan.setMaxVersions();
+    scan.setCacheBlocks(false);
+    return scan;
+  }
+
+  /**
+   * Hashes the rows of a split into batches.
+   */
+  public static class HashMapper extends TableMapper<ImmutableBytesWritable, KeyRangeHash> {
+    private final ResultHasher hasher = new ResultHasher();
+    private long batchSize;
+    private byte[] batchStartKey;
+    private byte[] splitStopKey;
+
+    @Override
+    protected void setup(Context context) {
+      batchSize = context.getConfiguration().getLong(BATCH_SIZE_KEY, DEFAULT_BATCH_SIZE);
+      TableSplit split = (TableSplit) context.getInputSplit();
+      batchStartKey = split.getStartRow();
+      splitStopKey = split.getEndRow();
+    }
+
+    @Override
+    public void map(ImmutableBytesWritable key, Result value, Context context)
+        throws IOException, InterruptedException {
+      if (hasher.getBatchSize() >= batchSize) {
+        byte[] row = key.copyBytes();
+        writeBatch(context, row);
+        batchStartKey = row;
+      }
+      hasher.hashResult(value);
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      // Always write the last batch, even if it's empty, so that the split is covered.
+      writeBatch(context, splitStopKey);
+    }
+
+    private void writeBatch(Context context, byte[] stopKey)
+        throws IOException, InterruptedException {
+      context.write(new ImmutableBytesWritable(batchStartKey),
+        new KeyRangeHash(stopKey, hasher.finish()));
+    }
+  }
+
+  /**
+   * Sets up the actual job.
+   *
+   * @param conf  The current configuration.
+   * @param args  The command line parameters.
+   * @return The newly created job.
+   * @throws java.io.IOException When setting up the job fails.
+   */
+  public static Job createSubmittableJob(Configuration conf, String[] args)
+  throws IOException {
+    Class<? extends InputFormat> inputFormat = TableInputFormat.class;
+    if (conf.get(BigtableOptionsFactory.PROJECT_ID_KEY) != null) {
+      conf.setIfUnset("hbase.client.connection.impl",
+        BigtableConfiguration.getConnectionClass().getName());
+      conf.setIfUnset(BigtableOptionsFactory.BIGTABLE_RPC_TIMEOUT_MS_KEY, "60000");
+      inputFormat = BigtableInputFormat.class;
+    }
+
+    String tableName = args[0];
+    Path outputDir = new Path(args[1]);
+    Job job = Job.getInstance(conf, NAME + "_" + tableName);
+    job.setJarByClass(HashTable.class);
+    TableMapReduceUtil.initTableMapperJob(tableName, createScan(new byte[0], new byte[0]),
+      HashMapper.class, ImmutableBytesWritable.class, KeyRangeHash.class, job, false,
+      inputFormat);
+    // No reducers.  SyncTable reads each range independently.
+    job.setNumReduceTasks(0);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+    job.setOutputKeyClass(ImmutableBytesWritable.class);
+    job.setOutputValueClass(KeyRangeHash.class);
+    FileOutputFormat.setOutputPath(job, outputDir);
+    LOG.info("Hashing " + tableName + " into " + outputDir + " with " + inputFormat.getName());
+    return job;
+  }
+
+  /*
+   * @param errorMsg Error message.  Can be null.
+   */
+  private static void usage(final String errorMsg) {
+    if (errorMsg != null && errorMsg.length() > 0) {
+      System.err.println("ERROR: " + errorMsg);
+    }
+    System.err.println("Usage: HashTable [-D <property=value>]* <tablename> <outputdir>");
+    System.err.println("  To hash a Bigtable table, set:");
+    System.err.println("   -D " + BigtableOptionsFactory.PROJECT_ID_KEY + "=<bigtable project id>");
+    System.err.println("   -D " + BigtableOptionsFactory.INSTANCE_ID_KEY + "=<bigtable instance id>");
+    System.err.println("  Otherwise the HBase cluster in the configuration is hashed.");
+    System.err.println("  To change the size of the hashed batches, set:");
+    System.err.println("   -D " + BATCH_SIZE_KEY + "=<bytes, default " + DEFAULT_BATCH_SIZE + ">");
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int run(String[] args) throws Exception {
+    String[] otherArgs = new GenericOptionsParser(getConf(), args).getRemainingArgs();
+    if (otherArgs.length < 2) {
+      usage("Wrong number of arguments: " + otherArgs.length);
+      return -1;
+    }
+    Job job = createSubmittableJob(getConf(), otherArgs);
+    return (job.waitForCompletion(true) ? 0 : 1);
+  }
+
+  /**
+   * Main entry point.
+   *
+   * @param args The command line parameters.
+   * @throws java.lang.Exception When running the job fails.
+   */
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(HBaseConfiguration.create(), new HashTable(), args));
+  }
+}
@@ -46,6 +46,7 @@ import org.apache.hadoop.hbase.mapreduce.KeyValueSortReducer;
 import org.apache.hadoop.hbase.mapreduce.ResultSerialization;
 import org.apache.hadoop.hbase.mapreduce.TableMapReduceUtil;
 import org.apache.hadoop.hbase.mapreduce.TableMapper;
+import org.apache.hadoop.hbase.mapreduce.TableOutputFormat;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
@@ -446,11 +447,12 @@ public class Import extends Configured implements Tool {
             com.google.common.base.Preconditions.class);
       }
     } else {
-      // No reducers.  Just write straight to table.  Call initTableReducerJob
-      // because it sets up the TableOutputFormat.
+      // No reducers.  Just write straight to table through a BulkMutation.
       job.setMapperClass(Importer.class);
-      //TableMapReduceUtil.initTableReducerJob(tableName.getNameAsString(), null, job);
-      TableMapReduceUtil.initTableReducerJob(tableName.getNameAsString(), null, job, null, null, null, null, false);
+      job.getConfiguration().set(TableOutputFormat.OUTPUT_TABLE, tableName.getNameAsString());
+      job.setOutputFormatClass(BigtableOutputFormat.class);
+      job.setOutputKeyClass(ImmutableBytesWritable.class);
+      job.setOutputValueClass(Mutation.class);
       job.setNumReduceTasks(0);
     }
     return job;
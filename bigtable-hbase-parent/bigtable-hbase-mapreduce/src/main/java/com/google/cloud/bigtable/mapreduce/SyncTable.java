@@ -0,0 +1,356 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.mapreduce;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.TableOutputFormat;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import com.google.bigtable.repackaged.com.google.common.annotations.VisibleForTesting;
+import com.google.cloud.bigtable.hbase.BigtableConfiguration;
+import com.google.cloud.bigtable.hbase.BigtableOptionsFactory;
+
+/**
+ * Brings a Bigtable table in step with a source table, using a manifest written by
+ * {@link HashTable} for the source. Each range of the manifest is hashed again in the target
+ * table. Ranges with the same hash are skipped; the rows of the other ranges are read from both
+ * tables and the differences are written to the target through {@link BigtableOutputFormat}:
+ * <ul>
+ *   <li>cells that are missing from the target, or have a different value, are put,</li>
+ *   <li>cells that are missing from the source are deleted, and</li>
+ *   <li>rows that are missing from the source are deleted.</li>
+ * </ul>
+ *
+ * <p>The source is read with the job's configuration, overridden by the properties that start
+ * with {@link #SOURCE_CONF_PREFIX}. That allows the source to be another Bigtable instance or an
+ * HBase cluster. The source is taken to be Bigtable if the source properties set a Bigtable project
+ * or instance id; otherwise it is read with HBase's own connection, unless the source properties
+ * set {@code hbase.client.connection.impl}.
+ *
+ * @author sduskis
+ */
+public class SyncTable extends Configured implements Tool {
+  private static final Log LOG = LogFactory.getLog(SyncTable.class);
+  final static String NAME = "synctable";
+
+  /** Properties with this prefix override the job's configuration for the source table. */
+  public final static String SOURCE_CONF_PREFIX = "synctable.source.";
+  /** Constant <code>SOURCE_TABLE_KEY="synctable.source.table.name"</code> */
+  public final static String SOURCE_TABLE_KEY = "synctable.source.table.name";
+  /** Constant <code>DRY_RUN_KEY="synctable.dry.run"</code> */
+  public final static String DRY_RUN_KEY = "synctable.dry.run";
+
+  private final static String CONNECTION_IMPL_KEY = "hbase.client.connection.impl";
+
+  /** The counters of a {@link SyncMapper}. */
+  public enum Counters {
+    /** The ranges whose hashes matched. */
+    RANGES_MATCHED,
+    /** The ranges whose hashes differed. */
+    RANGES_DIFFERENT,
+    /** The cells put into the target. */
+    CELLS_PUT,
+    /** The cells deleted from the target. */
+    CELLS_DELETED,
+    /** The rows deleted from the target. */
+    ROWS_DELETED
+  }
+
+  /**
+   * Creates the configuration of the source table.
+   *
+   * @param conf the job's configuration.
+   * @return a copy of the configuration, with the {@link #SOURCE_CONF_PREFIX} properties applied.
+   */
+  static Configuration createSourceConfiguration(Configuration conf) {
+    Configuration sourceConf = new Configuration(conf);
+    if (conf.get(SOURCE_CONF_PREFIX + BigtableOptionsFactory.PROJECT_ID_KEY) == null
+        && conf.get(SOURCE_CONF_PREFIX + BigtableOptionsFactory.INSTANCE_ID_KEY) == null
+        && BigtableConfiguration.getConnectionClass().getName()
+            .equals(conf.get(CONNECTION_IMPL_KEY))) {
+      // The source is an HBase cluster; the job's connection is only for the target.
+      sourceConf.unset(CONNECTION_IMPL_KEY);
+    }
+    for (Map.Entry<String, String> entry : conf) {
+      String key = entry.getKey();
+      if (key.startsWith(SOURCE_CONF_PREFIX) && !key.equals(SOURCE_TABLE_KEY)) {
+        sourceConf.set(key.substring(SOURCE_CONF_PREFIX.length()), entry.getValue());
+      }
+    }
+    return sourceConf;
+  }
+
+  /**
+   * Compares each range of the manifest and writes the differences.
+   */
+  public static class SyncMapper
+      extends Mapper<ImmutableBytesWritable, HashTable.KeyRangeHash, ImmutableBytesWritable,
+          Mutation> {
+    private final HashTable.ResultHasher hasher = new HashTable.ResultHasher();
+    private Connection sourceConnection;
+    private Connection targetConnection;
+    private Table sourceTable;
+    private Table targetTable;
+    private boolean dryRun;
+
+    public SyncMapper() {
+    }
+
+    @VisibleForTesting
+    SyncMapper(Table sourceTable, Table targetTable) {
+      this.sourceTable = sourceTable;
+      this.targetTable = targetTable;
+    }
+
+    @Override
+    protected void setup(Context context) throws IOException {
+      Configuration conf = context.getConfiguration();
+      dryRun = conf.getBoolean(DRY_RUN_KEY, false);
+      sourceConnection = ConnectionFactory.createConnection(createSourceConfiguration(conf));
+      sourceTable = sourceConnection.getTable(TableName.valueOf(conf.get(SOURCE_TABLE_KEY)));
+      targetConnection = ConnectionFactory.createConnection(conf);
+      targetTable =
+          targetConnection.getTable(TableName.valueOf(conf.get(TableOutputFormat.OUTPUT_TABLE)));
+    }
+
+    @Override
+    public void map(ImmutableBytesWritable key, HashTable.KeyRangeHash value, Context context)
+        throws IOException, InterruptedException {
+      byte[] startKey = key.copyBytes();
+      try (ResultScanner scanner =
+          targetTable.getScanner(HashTable.createScan(startKey, value.getStopKey()))) {
+        for (Result result : scanner) {
+          hasher.hashResult(result);
+        }
+      }
+      if (Bytes.equals(value.getHash(), hasher.finish())) {
+        context.getCounter(Counters.RANGES_MATCHED).increment(1);
+        return;
+      }
+      context.getCounter(Counters.RANGES_DIFFERENT).increment(1);
+      LOG.info("Range [" + Bytes.toStringBinary(startKey) + ", "
+          + Bytes.toStringBinary(value.getStopKey()) + ") differs");
+      if (!dryRun) {
+        syncRange(startKey, value.getStopKey(), context);
+      }
+    }
+
+    /**
+     * Reads the range from both tables in row order and writes the differences.
+     */
+    private void syncRange(byte[] startKey, byte[] stopKey, Context context)
+        throws IOException, InterruptedException {
+      try (ResultScanner sourceScanner =
+              sourceTable.getScanner(HashTable.createScan(startKey, stopKey));
+          ResultScanner targetScanner =
+              targetTable.getScanner(HashTable.createScan(startKey, stopKey))) {
+        Iterator<Result> sourceRows = sourceScanner.iterator();
+        Iterator<Result> targetRows = targetScanner.iterator();
+        Result source = next(sourceRows);
+        Result target = next(targetRows);
+        while (source != null || target != null) {
+          int compare = source == null ? 1
+              : target == null ? -1
+              : Bytes.compareTo(source.getRow(), target.getRow());
+          if (compare < 0) {
+            syncCells(source.getRow(), source.rawCells(), new Cell[0], context);
+            source = next(sourceRows);
+          } else if (compare > 0) {
+            context.write(new ImmutableBytesWritable(target.getRow()),
+              new Delete(target.getRow()));
+            context.getCounter(Counters.ROWS_DELETED).increment(1);
+            target = next(targetRows);
+          } else {
+            syncCells(source.getRow(), source.rawCells(), target.rawCells(), context);
+            source = next(sourceRows);
+            target = next(targetRows);
+          }
+        }
+      }
+    }
+
+    private static Result next(Iterator<Result> rows) {
+      return rows.hasNext() ? rows.next() : null;
+    }
+
+    /**
+     * Merges the sorted cells of a row. Cells only in the source, or with a different value, are
+     * put; cells only in the target are deleted by timestamp.
+     */
+    private static void syncCells(byte[] row, Cell[] sourceCells, Cell[] targetCells,
+        Context context) throws IOException, InterruptedException {
+      Put put = new Put(row);
+      Delete delete = new Delete(row);
+      int s = 0;
+      int t = 0;
+      while (s < sourceCells.length || t < targetCells.length) {
+        int compare = s == sourceCells.length ? 1
+            : t == targetCells.length ? -1
+            : KeyValue.COMPARATOR.compare(sourceCells[s], targetCells[t]);
+        if (compare < 0) {
+          put.add(sourceCells[s++]);
+        } else if (compare > 0) {
+          Cell cell = targetCells[t++];
+          delete.addColumn(CellUtil.cloneFamily(cell), CellUtil.cloneQualifier(cell),
+            cell.getTimestamp());
+        } else {
+          if (!CellUtil.matchingValue(sourceCells[s], targetCells[t])) {
+            put.add(sourceCells[s]);
+          }
+          s++;
+          t++;
+        }
+      }
+      ImmutableBytesWritable key = new ImmutableBytesWritable(row);
+      if (!put.isEmpty()) {
+        context.write(key, put);
+        context.getCounter(Counters.CELLS_PUT).increment(put.size());
+      }
+      if (!delete.isEmpty()) {
+        context.write(key, delete);
+        context.getCounter(Counters.CELLS_DELETED).increment(delete.size());
+      }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException {
+      try {
+        sourceTable.close();
+        targetTable.close();
+      } finally {
+        try {
+          sourceConnection.close();
+        } finally {
+          targetConnection.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Sets up the actual job.
+   *
+   * @param conf  The current configuration.
+   * @param args  The command line parameters.
+   * @return The newly created job.
+   * @throws java.io.IOException When setting up the job fails.
+   */
+  public static Job createSubmittableJob(Configuration conf, String[] args)
+  throws IOException {
+    conf.setIfUnset(CONNECTION_IMPL_KEY, BigtableConfiguration.getConnectionClass().getName());
+    conf.setIfUnset(BigtableOptionsFactory.BIGTABLE_RPC_TIMEOUT_MS_KEY, "60000");
+
+    String sourceTableName = args[0];
+    String targetTableName = args[1];
+    Path manifestDir = new Path(args[2]);
+    conf.set(SOURCE_TABLE_KEY, sourceTableName);
+    conf.set(TableOutputFormat.OUTPUT_TABLE, targetTableName);
+    Job job = Job.getInstance(conf, NAME + "_" + targetTableName);
+    job.setJarByClass(SyncTable.class);
+    job.setInputFormatClass(SequenceFileInputFormat.class);
+    FileInputFormat.setInputPaths(job, manifestDir);
+    job.setMapperClass(SyncMapper.class);
+    // No reducers.  Just write straight to table through a BulkMutation.
+    job.setOutputFormatClass(BigtableOutputFormat.class);
+    job.setOutputKeyClass(ImmutableBytesWritable.class);
+    job.setOutputValueClass(Mutation.class);
+    job.setNumReduceTasks(0);
+    return job;
+  }
+
+  /*
+   * @param errorMsg Error message.  Can be null.
+   */
+  private static void usage(final String errorMsg) {
+    if (errorMsg != null && errorMsg.length() > 0) {
+      System.err.println("ERROR: " + errorMsg);
+    }
+    System.err.println(
+      "Usage: SyncTable [-D <property=value>]* <sourcetable> <targettable> <manifestdir>");
+    System.err.println("  <manifestdir> is the output of HashTable for <sourcetable>.");
+    System.err.println(" Mandatory properties:");
+    System.err.println("  -D " + BigtableOptionsFactory.PROJECT_ID_KEY + "=<bigtable project id>");
+    System.err.println("  -D " + BigtableOptionsFactory.INSTANCE_ID_KEY + "=<bigtable instance id>");
+    System.err.println(" The source is read from HBase with the job's configuration. To change");
+    System.err.println(" its properties, prefix them with " + SOURCE_CONF_PREFIX + ", for example:");
+    System.err.println("  -D " + SOURCE_CONF_PREFIX + "hbase.zookeeper.quorum=<source quorum>");
+    System.err.println(" To read the source from Bigtable, set its instance id (and project id,");
+    System.err.println(" if it is in another project):");
+    System.err.println("  -D " + SOURCE_CONF_PREFIX + BigtableOptionsFactory.INSTANCE_ID_KEY
+        + "=<source instance id>");
+    System.err.println(" To only count the ranges that differ, set:");
+    System.err.println("  -D " + DRY_RUN_KEY + "=true");
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int run(String[] args) throws Exception {
+    String[] otherArgs = new GenericOptionsParser(getConf(), args).getRemainingArgs();
+    if (otherArgs.length < 3) {
+      usage("Wrong number of arguments: " + otherArgs.length);
+      return -1;
+    }
+    if (getConf().get(BigtableOptionsFactory.PROJECT_ID_KEY) == null) {
+      usage("Must specify the property " + BigtableOptionsFactory.PROJECT_ID_KEY);
+      return -1;
+    }
+    if (getConf().get(BigtableOptionsFactory.INSTANCE_ID_KEY) == null) {
+      usage("Must specify the property " + BigtableOptionsFactory.INSTANCE_ID_KEY);
+      return -1;
+    }
+    Job job = createSubmittableJob(getConf(), otherArgs);
+    return (job.waitForCompletion(true) ? 0 : 1);
+  }
+
+  /**
+   * Main entry point.
+   *
+   * @param args The command line parameters.
+   * @throws java.lang.Exception When running the job fails.
+   */
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(HBaseConfiguration.create(), new SyncTable(), args));
+  }
+}
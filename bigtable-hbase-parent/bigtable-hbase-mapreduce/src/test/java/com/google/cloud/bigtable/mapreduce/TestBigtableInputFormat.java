@@ -0,0 +1,228 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.mapreduce;
+
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.mapreduce.TableSplit;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mockito;
+
+import com.google.bigtable.repackaged.com.google.bigtable.v2.SampleRowKeysResponse;
+import com.google.bigtable.repackaged.com.google.cloud.bigtable.grpc.scanner.FlatRow;
+import com.google.bigtable.repackaged.com.google.cloud.bigtable.grpc.scanner.ResultScanner;
+import com.google.bigtable.repackaged.com.google.protobuf.ByteString;
+
+/**
+ * Tests for {@link BigtableInputFormat}.
+ */
+@RunWith(JUnit4.class)
+public class TestBigtableInputFormat {
+
+  private static final TableName TABLE_NAME = TableName.valueOf("table");
+  private static final String LOCATION = "bigtable.googleapis.com";
+  private static final long LARGE_SPLIT_SIZE = 1000000;
+
+  @Test
+  public void testOneSplitPerTablet() throws Exception {
+    List<InputSplit> splits = BigtableInputFormat.getSplits(TABLE_NAME, new Scan(),
+      samples("b", 100, "d", 300, "", 600), LARGE_SPLIT_SIZE, LOCATION);
+    Assert.assertEquals(3, splits.size());
+    assertSplit(splits.get(0), "", "b", 100);
+    assertSplit(splits.get(1), "b", "d", 200);
+    assertSplit(splits.get(2), "d", "", 300);
+    Assert.assertEquals(LOCATION, ((TableSplit) splits.get(0)).getRegionLocation());
+  }
+
+  @Test
+  public void testSplitsAreClippedToTheScan() throws Exception {
+    Scan scan = new Scan(Bytes.toBytes("c"), Bytes.toBytes("e"));
+    List<InputSplit> splits = BigtableInputFormat.getSplits(TABLE_NAME, scan,
+      samples("b", 100, "d", 300, "", 600), LARGE_SPLIT_SIZE, LOCATION);
+    Assert.assertEquals(2, splits.size());
+    // "c" is half way from "b" to "d", so half of the tablet is read.
+    assertSplit(splits.get(0), "c", "d", 100);
+    // "e" is close to the start of the last tablet, which goes up to 0xFFFF.
+    assertSplit(splits.get(1), "d", "e", 1);
+  }
+
+  @Test
+  public void testOpenLastTabletIsSubSplit() throws Exception {
+    List<InputSplit> splits = BigtableInputFormat.getSplits(TABLE_NAME, new Scan(),
+      samples("b", 100, "", 1100), 250, LOCATION);
+    Assert.assertEquals(5, splits.size());
+    assertSplit(splits.get(0), "", "b", 100);
+    Assert.assertArrayEquals(Bytes.toBytes("b"), ((TableSplit) splits.get(1)).getStartRow());
+    Assert.assertArrayEquals(HConstants.EMPTY_END_ROW, ((TableSplit) splits.get(4)).getEndRow());
+    assertContiguous(splits);
+    for (InputSplit split : splits.subList(1, 5)) {
+      Assert.assertEquals(250, split.getLength());
+    }
+  }
+
+  @Test
+  public void testLastSampleIsNotEmpty() throws Exception {
+    List<InputSplit> splits = BigtableInputFormat.getSplits(TABLE_NAME, new Scan(),
+      samples("b", 100), LARGE_SPLIT_SIZE, LOCATION);
+    Assert.assertEquals(2, splits.size());
+    assertSplit(splits.get(0), "", "b", 100);
+    assertSplit(splits.get(1), "b", "", 0);
+  }
+
+  @Test
+  public void testEmptySamples() throws Exception {
+    Scan scan = new Scan(Bytes.toBytes("c"), Bytes.toBytes("e"));
+    List<InputSplit> splits = BigtableInputFormat.getSplits(TABLE_NAME, scan,
+      Collections.<SampleRowKeysResponse> emptyList(), LARGE_SPLIT_SIZE, LOCATION);
+    Assert.assertEquals(1, splits.size());
+    assertSplit(splits.get(0), "c", "e", 0);
+
+    // A table with a single tablet only returns the empty key.
+    splits = BigtableInputFormat.getSplits(TABLE_NAME, new Scan(), samples("", 100),
+      LARGE_SPLIT_SIZE, LOCATION);
+    Assert.assertEquals(1, splits.size());
+    assertSplit(splits.get(0), "", "", 100);
+  }
+
+  @Test
+  public void testDuplicateSamplesAreSkipped() throws Exception {
+    List<InputSplit> splits = BigtableInputFormat.getSplits(TABLE_NAME, new Scan(),
+      samples("b", 100, "b", 100, "", 300), LARGE_SPLIT_SIZE, LOCATION);
+    Assert.assertEquals(2, splits.size());
+    assertSplit(splits.get(0), "", "b", 100);
+    assertSplit(splits.get(1), "b", "", 200);
+  }
+
+  @Test
+  public void testSubSplitCounts() throws Exception {
+    // Exactly twice the split size.
+    List<InputSplit> splits = BigtableInputFormat.getSplits(TABLE_NAME, new Scan(),
+      samples("b", 0, "d", 600, "", 600), 300, LOCATION);
+    Assert.assertEquals(4, splits.size());
+    assertContiguous(splits);
+    Assert.assertArrayEquals(Bytes.toBytes("b"), ((TableSplit) splits.get(1)).getStartRow());
+    Assert.assertArrayEquals(Bytes.toBytes("d"), ((TableSplit) splits.get(2)).getEndRow());
+    Assert.assertEquals(300, splits.get(1).getLength());
+    Assert.assertEquals(300, splits.get(2).getLength());
+
+    // Any remainder needs another split.
+    splits = BigtableInputFormat.getSplits(TABLE_NAME, new Scan(),
+      samples("b", 0, "d", 1000, "", 1000), 300, LOCATION);
+    Assert.assertEquals(6, splits.size());
+    assertContiguous(splits);
+    for (InputSplit split : splits.subList(1, 5)) {
+      Assert.assertEquals(250, split.getLength());
+    }
+
+    // A tablet that fits in a split is not divided.
+    splits = BigtableInputFormat.getSplits(TABLE_NAME, new Scan(),
+      samples("b", 0, "d", 300, "", 300), 300, LOCATION);
+    Assert.assertEquals(3, splits.size());
+  }
+
+  @Test
+  public void testGetPosition() {
+    byte[] a = Bytes.toBytes("a");
+    byte[] c = Bytes.toBytes("c");
+    Assert.assertEquals(0, BigtableInputFormat.getPosition(a, c, a), 0);
+    Assert.assertEquals(0.5, BigtableInputFormat.getPosition(a, c, Bytes.toBytes("b")), 0);
+    Assert.assertEquals(1, BigtableInputFormat.getPosition(a, c, c), 0);
+    Assert.assertEquals(1, BigtableInputFormat.getPosition(a, c, Bytes.toBytes("d")), 0);
+    // Keys are compared after their common prefix.
+    Assert.assertEquals(0.5, BigtableInputFormat.getPosition(Bytes.toBytes("prefix-a"),
+      Bytes.toBytes("prefix-c"), Bytes.toBytes("prefix-b")), 0);
+    // An empty stop key is the end of the table.
+    Assert.assertEquals(0.5, BigtableInputFormat.getPosition(HConstants.EMPTY_START_ROW,
+      HConstants.EMPTY_END_ROW, new byte[] { (byte) 0x80 }), 0.01);
+  }
+
+  @Test
+  public void testGetSyntheticStopKey() {
+    Assert.assertArrayEquals(new byte[] { (byte) 0xFF },
+      BigtableInputFormat.getSyntheticStopKey(HConstants.EMPTY_START_ROW));
+    Assert.assertArrayEquals(new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF },
+      BigtableInputFormat.getSyntheticStopKey(Bytes.toBytes("ab")));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testGetProgress() throws Exception {
+    ResultScanner<FlatRow> scanner = Mockito.mock(ResultScanner.class);
+    when(scanner.next()).thenReturn(createRow("b"), createRow("c"), null);
+    BigtableInputFormat.BigtableRecordReader underTest = new BigtableInputFormat.BigtableRecordReader(
+        Bytes.toBytes("a"), Bytes.toBytes("e"), scanner);
+    Assert.assertEquals(0, underTest.getProgress(), 0);
+    Assert.assertTrue(underTest.nextKeyValue());
+    Assert.assertEquals(0.25, underTest.getProgress(), 0);
+    Assert.assertTrue(underTest.nextKeyValue());
+    Assert.assertEquals(0.5, underTest.getProgress(), 0);
+    Assert.assertFalse(underTest.nextKeyValue());
+    Assert.assertEquals(1, underTest.getProgress(), 0);
+    underTest.close();
+    Mockito.verify(scanner).close();
+  }
+
+  // /////////////// HELPERS ////////////////
+
+  /**
+   * Creates {@link SampleRowKeysResponse}s from pairs of keys and offsets.
+   */
+  private static List<SampleRowKeysResponse> samples(Object... keysAndOffsets) {
+    List<SampleRowKeysResponse> samples = new ArrayList<>();
+    for (int i = 0; i < keysAndOffsets.length; i += 2) {
+      samples.add(SampleRowKeysResponse.newBuilder()
+          .setRowKey(ByteString.copyFromUtf8((String) keysAndOffsets[i]))
+          .setOffsetBytes(((Number) keysAndOffsets[i + 1]).longValue())
+          .build());
+    }
+    return samples;
+  }
+
+  private static FlatRow createRow(String key) {
+    return FlatRow.newBuilder()
+        .withRowKey(ByteString.copyFromUtf8(key))
+        .addCell("family", ByteString.copyFromUtf8("qualifier"), 1, ByteString.copyFromUtf8("value"))
+        .build();
+  }
+
+  private static void assertSplit(InputSplit split, String startKey, String stopKey, long size)
+      throws Exception {
+    TableSplit tableSplit = (TableSplit) split;
+    Assert.assertEquals(startKey, Bytes.toString(tableSplit.getStartRow()));
+    Assert.assertEquals(stopKey, Bytes.toString(tableSplit.getEndRow()));
+    Assert.assertEquals(size, tableSplit.getLength());
+  }
+
+  private static void assertContiguous(List<InputSplit> splits) {
+    for (int i = 1; i < splits.size(); i++) {
+      Assert.assertTrue(Arrays.equals(((TableSplit) splits.get(i - 1)).getEndRow(),
+        ((TableSplit) splits.get(i)).getStartRow()));
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.mapreduce;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.counters.GenericCounter;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.bigtable.repackaged.com.google.bigtable.v2.MutateRowResponse;
+import com.google.bigtable.repackaged.com.google.bigtable.v2.MutateRowsRequest;
+import com.google.bigtable.repackaged.com.google.cloud.bigtable.config.BigtableOptions;
+import com.google.bigtable.repackaged.com.google.cloud.bigtable.grpc.BigtableSession;
+import com.google.bigtable.repackaged.com.google.cloud.bigtable.grpc.async.BulkMutation;
+import com.google.bigtable.repackaged.com.google.cloud.bigtable.grpc.async.ResourceLimiterStats;
+import com.google.bigtable.repackaged.com.google.common.util.concurrent.SettableFuture;
+import com.google.cloud.bigtable.hbase.BigtableOptionsFactory;
+import com.google.cloud.bigtable.hbase.adapters.HBaseRequestAdapter;
+
+/**
+ * Tests for {@link BigtableOutputFormat.BigtableRecordWriter}.
+ */
+@RunWith(JUnit4.class)
+public class TestBigtableOutputFormat {
+
+  private static final byte[] ROW = Bytes.toBytes("row");
+  private static final byte[] FAMILY = Bytes.toBytes("family");
+  private static final byte[] QUALIFIER = Bytes.toBytes("qualifier");
+
+  @Mock
+  private BigtableSession session;
+
+  @Mock
+  private BulkMutation bulkMutation;
+
+  @Mock
+  private ResourceLimiterStats resourceLimiterStats;
+
+  private HBaseRequestAdapter adapter;
+  private SettableFuture<MutateRowResponse> future;
+  private Counter mutationCounter;
+  private Counter bytesCounter;
+  private Counter throttledMillisCounter;
+  private BigtableOutputFormat.BigtableRecordWriter<Object> underTest;
+
+  @Before
+  public void setUp() throws IOException {
+    MockitoAnnotations.initMocks(this);
+    Configuration configuration = new Configuration(false);
+    configuration.set(BigtableOptionsFactory.PROJECT_ID_KEY, "project");
+    configuration.set(BigtableOptionsFactory.INSTANCE_ID_KEY, "instance");
+    BigtableOptions options = BigtableOptionsFactory.fromConfiguration(configuration);
+    adapter = new HBaseRequestAdapter(options, TableName.valueOf("table"), configuration);
+
+    future = SettableFuture.create();
+    when(bulkMutation.add(any(MutateRowsRequest.Entry.class))).thenReturn(future);
+    mutationCounter = new GenericCounter();
+    bytesCounter = new GenericCounter();
+    throttledMillisCounter = new GenericCounter();
+    underTest = new BigtableOutputFormat.BigtableRecordWriter<>(session, adapter, bulkMutation,
+        resourceLimiterStats, mutationCounter, bytesCounter, throttledMillisCounter);
+  }
+
+  @Test
+  public void testWritesPutsAndDeletes() throws Exception {
+    Put put = new Put(ROW).addColumn(FAMILY, QUALIFIER, 1L, Bytes.toBytes("value"));
+    Delete delete = new Delete(ROW);
+    underTest.write(null, put);
+    underTest.write(null, delete);
+    verify(bulkMutation).add(adapter.adaptEntry(put));
+    verify(bulkMutation).add(adapter.adaptEntry(delete));
+    Assert.assertEquals(2, mutationCounter.getValue());
+    Assert.assertEquals(adapter.adaptEntry(put).getSerializedSize()
+        + adapter.adaptEntry(delete).getSerializedSize(), bytesCounter.getValue());
+
+    underTest.close(null);
+    verify(bulkMutation).flush();
+    verify(session).close();
+  }
+
+  @Test
+  public void testOtherMutationsAreRejected() throws Exception {
+    try {
+      underTest.write(null, new Increment(ROW).addColumn(FAMILY, QUALIFIER, 1));
+      Assert.fail("Expected an IOException");
+    } catch (IOException expected) {
+    }
+    verify(bulkMutation, never()).add(any(MutateRowsRequest.Entry.class));
+    Assert.assertEquals(0, mutationCounter.getValue());
+    Assert.assertEquals(0, bytesCounter.getValue());
+  }
+
+  @Test
+  public void testFailureFailsTheNextWrite() throws Exception {
+    underTest.write(null, new Delete(ROW));
+    RuntimeException cause = new RuntimeException("failed");
+    future.setException(cause);
+    try {
+      underTest.write(null, new Delete(ROW));
+      Assert.fail("Expected an IOException");
+    } catch (IOException expected) {
+      Assert.assertSame(cause, expected.getCause());
+    }
+    Assert.assertEquals(1, mutationCounter.getValue());
+  }
+
+  @Test
+  public void testFailureFailsClose() throws Exception {
+    underTest.write(null, new Delete(ROW));
+    RuntimeException cause = new RuntimeException("failed");
+    future.setException(cause);
+    try {
+      underTest.close(null);
+      Assert.fail("Expected an IOException");
+    } catch (IOException expected) {
+      Assert.assertSame(cause, expected.getCause());
+    }
+    // The session is closed even if a mutation failed.
+    verify(session).close();
+  }
+
+  @Test
+  public void testThrottledMillis() throws Exception {
+    // The limiter's cumulative throttling time is read before and after every add().
+    when(resourceLimiterStats.getCumulativeThrottlingTimeNanos())
+        .thenReturn(0L, 400000L, 400000L, 1100000L, 1100000L, 3600000L, 3600000L, 3600000L);
+
+    // 0.4ms is carried over.
+    underTest.write(null, new Delete(ROW));
+    Assert.assertEquals(0, throttledMillisCounter.getValue());
+    // 0.4ms + 0.7ms reports 1ms, and carries 0.1ms.
+    underTest.write(null, new Delete(ROW));
+    Assert.assertEquals(1, throttledMillisCounter.getValue());
+    // 0.1ms + 2.5ms reports 2ms, and carries 0.6ms.
+    underTest.write(null, new Delete(ROW));
+    Assert.assertEquals(3, throttledMillisCounter.getValue());
+    // Writes that are not throttled report nothing.
+    underTest.write(null, new Delete(ROW));
+    Assert.assertEquals(3, throttledMillisCounter.getValue());
+    Assert.assertEquals(4, mutationCounter.getValue());
+  }
+}
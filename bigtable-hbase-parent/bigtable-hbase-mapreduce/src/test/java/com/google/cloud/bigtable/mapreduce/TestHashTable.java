@@ -0,0 +1,177 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.mapreduce;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.mapreduce.TableSplit;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Tests for {@link HashTable}.
+ */
+@RunWith(JUnit4.class)
+public class TestHashTable {
+
+  private static final byte[] FAMILY = Bytes.toBytes("family");
+
+  @Mock
+  private Mapper<ImmutableBytesWritable, Result, ImmutableBytesWritable,
+      HashTable.KeyRangeHash>.Context context;
+
+  private final ArgumentCaptor<ImmutableBytesWritable> keys =
+      ArgumentCaptor.forClass(ImmutableBytesWritable.class);
+  private final ArgumentCaptor<HashTable.KeyRangeHash> values =
+      ArgumentCaptor.forClass(HashTable.KeyRangeHash.class);
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+  }
+
+  @Test
+  public void testIdenticalResultsHashTheSame() {
+    Result result1 = createResult("row1", "q", 1, "value");
+    Result result2 = createResult("row2", "q", 1, "value");
+    Assert.assertArrayEquals(hash(result1, result2), hash(result1, result2));
+
+    // A hasher is reset by finish().
+    HashTable.ResultHasher hasher = new HashTable.ResultHasher();
+    hasher.hashResult(createResult("other", "q", 1, "value"));
+    hasher.finish();
+    hasher.hashResult(result1);
+    hasher.hashResult(result2);
+    Assert.assertTrue(hasher.getBatchSize() > 0);
+    Assert.assertArrayEquals(hash(result1, result2), hasher.finish());
+    Assert.assertEquals(0, hasher.getBatchSize());
+  }
+
+  @Test
+  public void testDifferentResultsHashDifferently() {
+    byte[] hash = hash(createResult("row", "q", 1, "value"));
+    Assert.assertFalse(Arrays.equals(hash, hash(createResult("row2", "q", 1, "value"))));
+    Assert.assertFalse(Arrays.equals(hash, hash(createResult("row", "q2", 1, "value"))));
+    Assert.assertFalse(Arrays.equals(hash, hash(createResult("row", "q", 2, "value"))));
+    Assert.assertFalse(Arrays.equals(hash, hash(createResult("row", "q", 1, "value2"))));
+    // Moving bytes from one field to the next is a different result too.
+    Assert.assertFalse(Arrays.equals(hash, hash(createResult("row", "qv", 1, "alue"))));
+  }
+
+  @Test
+  public void testBatchSize() {
+    HashTable.ResultHasher hasher = new HashTable.ResultHasher();
+    hasher.hashResult(createResult("row", "q", 1, "value"));
+    // The row, family, qualifier, timestamp and value.
+    Assert.assertEquals(3 + FAMILY.length + 1 + Bytes.SIZEOF_LONG + 5, hasher.getBatchSize());
+  }
+
+  @Test
+  public void testEmptySplitIsCovered() throws Exception {
+    HashTable.HashMapper underTest = createMapper(Long.MAX_VALUE, "b", "d");
+    underTest.cleanup(context);
+
+    verify(context, times(1)).write(keys.capture(), values.capture());
+    assertBatch(0, "b", "d");
+    Assert.assertArrayEquals(hash(), values.getValue().getHash());
+  }
+
+  @Test
+  public void testBatchesCoverTheSplit() throws Exception {
+    // Every row fills a batch.
+    HashTable.HashMapper underTest = createMapper(1, "b", "");
+    Result result1 = createResult("c", "q", 1, "value");
+    Result result2 = createResult("d", "q", 1, "value");
+    map(underTest, result1);
+    map(underTest, result2);
+    underTest.cleanup(context);
+
+    verify(context, times(2)).write(keys.capture(), values.capture());
+    assertBatch(0, "b", "d");
+    Assert.assertArrayEquals(hash(result1), values.getAllValues().get(0).getHash());
+    // The last batch always goes up to the end of the split.
+    assertBatch(1, "d", "");
+    Assert.assertArrayEquals(hash(result2), values.getAllValues().get(1).getHash());
+  }
+
+  @Test
+  public void testLastBatchIsWrittenWhenFull() throws Exception {
+    HashTable.HashMapper underTest = createMapper(1, "", "");
+    Result result = createResult("c", "q", 1, "value");
+    map(underTest, result);
+    underTest.cleanup(context);
+
+    verify(context, times(1)).write(keys.capture(), values.capture());
+    assertBatch(0, "", "");
+    Assert.assertArrayEquals(hash(result), values.getValue().getHash());
+  }
+
+  // /////////////// HELPERS ////////////////
+
+  private HashTable.HashMapper createMapper(long batchSize, String startKey, String stopKey) {
+    Configuration conf = new Configuration(false);
+    conf.setLong(HashTable.BATCH_SIZE_KEY, batchSize);
+    when(context.getConfiguration()).thenReturn(conf);
+    when(context.getInputSplit()).thenReturn(new TableSplit(TableName.valueOf("table"),
+        new Scan(), Bytes.toBytes(startKey), Bytes.toBytes(stopKey), "location"));
+    HashTable.HashMapper mapper = new HashTable.HashMapper();
+    mapper.setup(context);
+    return mapper;
+  }
+
+  private void map(HashTable.HashMapper mapper, Result result) throws Exception {
+    mapper.map(new ImmutableBytesWritable(result.getRow()), result, context);
+  }
+
+  private void assertBatch(int index, String startKey, String stopKey) {
+    Assert.assertEquals(startKey, Bytes.toString(keys.getAllValues().get(index).copyBytes()));
+    Assert.assertEquals(stopKey, Bytes.toString(values.getAllValues().get(index).getStopKey()));
+  }
+
+  static Result createResult(String row, String qualifier, long timestamp, String value) {
+    List<Cell> cells = Arrays.<Cell> asList(new KeyValue(Bytes.toBytes(row), FAMILY,
+        Bytes.toBytes(qualifier), timestamp, Bytes.toBytes(value)));
+    return Result.create(cells);
+  }
+
+  private static byte[] hash(Result... results) {
+    HashTable.ResultHasher hasher = new HashTable.ResultHasher();
+    for (Result result : results) {
+      hasher.hashResult(result);
+    }
+    return hasher.finish();
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.mapreduce;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.cloud.bigtable.hbase.BigtableConfiguration;
+import com.google.cloud.bigtable.hbase.BigtableOptionsFactory;
+
+/**
+ * Tests for {@link SyncTable}.
+ */
+@RunWith(JUnit4.class)
+public class TestSyncTable {
+
+  private static final byte[] FAMILY = Bytes.toBytes("family");
+  private static final byte[] START_KEY = Bytes.toBytes("a");
+  private static final byte[] STOP_KEY = Bytes.toBytes("z");
+
+  @Mock
+  private Table sourceTable;
+
+  @Mock
+  private Table targetTable;
+
+  @Mock
+  private Mapper<ImmutableBytesWritable, HashTable.KeyRangeHash, ImmutableBytesWritable,
+      Mutation>.Context context;
+
+  private final Counters counters = new Counters();
+  private final ArgumentCaptor<Mutation> mutations = ArgumentCaptor.forClass(Mutation.class);
+  private SyncTable.SyncMapper underTest;
+
+  @Before
+  public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    when(context.getCounter(any(SyncTable.Counters.class))).thenAnswer(new Answer<Counter>() {
+      @Override
+      public Counter answer(InvocationOnMock invocation) {
+        return counters.findCounter(invocation.getArgumentAt(0, SyncTable.Counters.class));
+      }
+    });
+    underTest = new SyncTable.SyncMapper(sourceTable, targetTable);
+  }
+
+  @Test
+  public void testMatchingRangeIsSkipped() throws Exception {
+    List<Result> rows = Arrays.asList(
+      createResult(cell("b", "q", 1, "value")),
+      createResult(cell("c", "q", 1, "value")));
+    setRows(sourceTable, rows);
+    setRows(targetTable, rows);
+
+    map(hash(rows));
+
+    Assert.assertEquals(1, getCounter(SyncTable.Counters.RANGES_MATCHED));
+    Assert.assertEquals(0, getCounter(SyncTable.Counters.RANGES_DIFFERENT));
+    verify(context, never()).write(any(ImmutableBytesWritable.class), any(Mutation.class));
+    verify(sourceTable, never()).getScanner(any(Scan.class));
+  }
+
+  @Test
+  public void testDifferencesAreWritten() throws Exception {
+    List<Result> sourceRows = Arrays.asList(
+      // Missing from the target.
+      createResult(cell("b", "q", 1, "value")),
+      // Has a cell with the same value, a changed cell, and is missing a cell of the target.
+      createResult(cell("c", "q1", 1, "same"), cell("c", "q2", 1, "new")),
+      // The same in both.
+      createResult(cell("e", "q", 1, "value")));
+    List<Result> targetRows = Arrays.asList(
+      createResult(cell("c", "q1", 1, "same"), cell("c", "q2", 1, "old"),
+        cell("c", "q3", 2, "extra")),
+      // Missing from the source.
+      createResult(cell("d", "q", 1, "value")),
+      createResult(cell("e", "q", 1, "value")));
+    setRows(sourceTable, sourceRows);
+    setRows(targetTable, targetRows);
+
+    map(hash(sourceRows));
+
+    Assert.assertEquals(0, getCounter(SyncTable.Counters.RANGES_MATCHED));
+    Assert.assertEquals(1, getCounter(SyncTable.Counters.RANGES_DIFFERENT));
+    verify(context, Mockito.times(4)).write(any(ImmutableBytesWritable.class),
+      mutations.capture());
+    List<Mutation> written = mutations.getAllValues();
+
+    Put missingRow = (Put) written.get(0);
+    Assert.assertEquals("b", Bytes.toString(missingRow.getRow()));
+    assertCells(missingRow, cell("b", "q", 1, "value"));
+
+    Put changedCell = (Put) written.get(1);
+    Assert.assertEquals("c", Bytes.toString(changedCell.getRow()));
+    assertCells(changedCell, cell("c", "q2", 1, "new"));
+
+    Delete extraCell = (Delete) written.get(2);
+    Assert.assertEquals("c", Bytes.toString(extraCell.getRow()));
+    List<Cell> deletedCells = extraCell.getFamilyCellMap().get(FAMILY);
+    Assert.assertEquals(1, deletedCells.size());
+    Assert.assertEquals(KeyValue.Type.Delete.getCode(), deletedCells.get(0).getTypeByte());
+    Assert.assertEquals("q3", Bytes.toString(CellUtil.cloneQualifier(deletedCells.get(0))));
+    Assert.assertEquals(2, deletedCells.get(0).getTimestamp());
+
+    Delete extraRow = (Delete) written.get(3);
+    Assert.assertEquals("d", Bytes.toString(extraRow.getRow()));
+    Assert.assertTrue(extraRow.isEmpty());
+
+    Assert.assertEquals(2, getCounter(SyncTable.Counters.CELLS_PUT));
+    Assert.assertEquals(1, getCounter(SyncTable.Counters.CELLS_DELETED));
+    Assert.assertEquals(1, getCounter(SyncTable.Counters.ROWS_DELETED));
+  }
+
+  @Test
+  public void testSourceConfiguration() {
+    Configuration conf = new Configuration(false);
+    conf.set("hbase.client.connection.impl", BigtableConfiguration.getConnectionClass().getName());
+    conf.set(SyncTable.SOURCE_CONF_PREFIX + "hbase.zookeeper.quorum", "source-quorum");
+    conf.set(SyncTable.SOURCE_TABLE_KEY, "source-table");
+    Configuration sourceConf = SyncTable.createSourceConfiguration(conf);
+    // Without a Bigtable project or instance, the source is read with HBase's connection.
+    Assert.assertNull(sourceConf.get("hbase.client.connection.impl"));
+    Assert.assertEquals("source-quorum", sourceConf.get("hbase.zookeeper.quorum"));
+    Assert.assertNull(sourceConf.get("table.name"));
+
+    conf.set(SyncTable.SOURCE_CONF_PREFIX + BigtableOptionsFactory.INSTANCE_ID_KEY, "source");
+    sourceConf = SyncTable.createSourceConfiguration(conf);
+    Assert.assertEquals(BigtableConfiguration.getConnectionClass().getName(),
+      sourceConf.get("hbase.client.connection.impl"));
+    Assert.assertEquals("source", sourceConf.get(BigtableOptionsFactory.INSTANCE_ID_KEY));
+  }
+
+  // /////////////// HELPERS ////////////////
+
+  private void map(byte[] hash) throws Exception {
+    underTest.map(new ImmutableBytesWritable(START_KEY), new HashTable.KeyRangeHash(STOP_KEY, hash),
+      context);
+  }
+
+  private long getCounter(SyncTable.Counters counter) {
+    return counters.findCounter(counter).getValue();
+  }
+
+  /**
+   * Makes every scan of the table return the rows.
+   */
+  private static void setRows(Table table, final List<Result> rows) throws Exception {
+    when(table.getScanner(any(Scan.class))).thenAnswer(new Answer<ResultScanner>() {
+      @Override
+      public ResultScanner answer(InvocationOnMock invocation) {
+        ResultScanner scanner = Mockito.mock(ResultScanner.class);
+        when(scanner.iterator()).thenReturn(new ArrayList<>(rows).iterator());
+        return scanner;
+      }
+    });
+  }
+
+  private static Cell cell(String row, String qualifier, long timestamp, String value) {
+    return new KeyValue(Bytes.toBytes(row), FAMILY, Bytes.toBytes(qualifier), timestamp,
+        Bytes.toBytes(value));
+  }
+
+  private static Result createResult(Cell... cells) {
+    return Result.create(cells);
+  }
+
+  private static byte[] hash(List<Result> rows) {
+    HashTable.ResultHasher hasher = new HashTable.ResultHasher();
+    for (Result row : rows) {
+      hasher.hashResult(row);
+    }
+    return hasher.finish();
+  }
+
+  private static void assertCells(Put put, Cell... expected) {
+    List<Cell> cells = put.getFamilyCellMap().get(FAMILY);
+    Assert.assertEquals(expected.length, cells.size());
+    for (int i = 0; i < expected.length; i++) {
+      Assert.assertEquals(0, KeyValue.COMPARATOR.compare(expected[i], cells.get(i)));
+      Assert.assertTrue(CellUtil.matchingValue(expected[i], cells.get(i)));
+    }
+  }
+}
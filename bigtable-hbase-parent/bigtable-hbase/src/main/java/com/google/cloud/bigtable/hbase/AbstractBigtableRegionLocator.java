@@ -18,6 +18,7 @@
 package com.google.cloud.bigtable.hbase;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 
@@ -25,43 +26,63 @@ import org.apache.hadoop.hbase.HRegionLocation;
 import org.apache.hadoop.hbase.ServerName;
 import org.apache.hadoop.hbase.TableName;
 
-import com.google.bigtable.v2.SampleRowKeysRequest;
 import com.google.bigtable.v2.SampleRowKeysResponse;
 import com.google.cloud.bigtable.config.BigtableOptions;
-import com.google.cloud.bigtable.config.Logger;
 import com.google.cloud.bigtable.grpc.BigtableDataClient;
-import com.google.cloud.bigtable.grpc.BigtableTableName;
+import com.google.cloud.bigtable.grpc.KeyRangeIndex;
 import com.google.cloud.bigtable.hbase.adapters.SampledRowKeysAdapter;
 import com.google.common.base.Function;
-import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * <p> AbstractBigtbleRegionLocator class. </p>
- * 
+ *
+ * <p>The regions come from a {@link KeyRangeIndex}, which refreshes its SampleRowKeys snapshot in
+ * the background. Locators that are created with the {@link KeyRangeIndex} of a
+ * {@link com.google.cloud.bigtable.grpc.BigtableSession} share it with the other users of the
+ * session.
+ *
  * @author rupeshit
  *
  */
 public abstract class AbstractBigtableRegionLocator {
   // Reuse the results from previous calls during this time.
-  /** Constant <code>MAX_REGION_AGE_MILLIS=60 * 1000</code> */
-  public static long MAX_REGION_AGE_MILLIS = 60 * 1000;
-
-  /** Constant <code>LOG</code> */
-  private static final Logger LOG = new Logger(AbstractBigtableRegionLocator.class);
+  /**
+   * Constant <code>MAX_REGION_AGE_MILLIS=60 * 1000</code>
+   *
+   * @deprecated This is only used by locators that are created with a {@link BigtableDataClient}.
+   *             Locators that share the {@link KeyRangeIndex} of a
+   *             {@link com.google.cloud.bigtable.grpc.BigtableSession} use
+   *             {@link KeyRangeIndex#DEFAULT_MAX_AGE_MILLIS}.
+   */
+  @Deprecated
+  public static long MAX_REGION_AGE_MILLIS = KeyRangeIndex.DEFAULT_MAX_AGE_MILLIS;
 
   protected final TableName tableName;
-  private ListenableFuture<List<HRegionLocation>> regionsFuture;
-  private final BigtableDataClient client;
+  private final KeyRangeIndex keyRangeIndex;
   private final SampledRowKeysAdapter adapter;
-  private final BigtableTableName bigtableTableName;
-  private long regionsFetchTimeMillis;
-  
+  // The last snapshot that was adapted, and its regions.
+  private List<SampleRowKeysResponse> adaptedResponses;
+  private List<HRegionLocation> regions;
+
   public AbstractBigtableRegionLocator (TableName tableName, BigtableOptions options, BigtableDataClient client) {
+    this(tableName, options, new KeyRangeIndex(client,
+        options.getInstanceName().toTableName(tableName.getNameAsString()), MAX_REGION_AGE_MILLIS,
+        TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * <p>Constructor for AbstractBigtableRegionLocator.</p>
+   *
+   * @param tableName a {@link TableName} object.
+   * @param options a {@link BigtableOptions} object.
+   * @param keyRangeIndex the {@link KeyRangeIndex} of the table.
+   */
+  public AbstractBigtableRegionLocator(TableName tableName, BigtableOptions options,
+      KeyRangeIndex keyRangeIndex) {
     this.tableName = tableName;
-    this.client = client;
-    this.bigtableTableName = options.getInstanceName().toTableName(tableName.getNameAsString());
+    this.keyRangeIndex = keyRangeIndex;
     ServerName serverName = ServerName.valueOf(options.getDataHost(), options.getPort(), 0);
     this.adapter = getSampledRowKeysAdapter(tableName, serverName);
   }
@@ -72,41 +93,26 @@ public abstract class AbstractBigtableRegionLocator {
   /**
    * The list of regions will be sorted and cover all the possible rows.
    */
-  protected synchronized ListenableFuture<List<HRegionLocation>> getRegionsAsync(boolean reload) {
-    // If we don't need to refresh and we have a recent enough version, just use that.
-    if (!reload && regionsFuture != null &&
-        regionsFetchTimeMillis + MAX_REGION_AGE_MILLIS > System.currentTimeMillis()) {
-      return this.regionsFuture;
-    }
-
-    SampleRowKeysRequest.Builder request = SampleRowKeysRequest.newBuilder();
-    request.setTableName(bigtableTableName.toString());
-    LOG.debug("Sampling rowkeys for table %s", request.getTableName());
-
-    try {
-      ListenableFuture<List<SampleRowKeysResponse>> future = client.sampleRowKeysAsync(request.build());
-      this.regionsFuture = Futures
-          .transform(future, new Function<List<SampleRowKeysResponse>, List<HRegionLocation>>() {
-            @Override
-            public List<HRegionLocation> apply(@Nullable List<SampleRowKeysResponse> input) {
-              return adapter.adaptResponse(input);
-            }
-          });
-      Futures.addCallback(this.regionsFuture, new FutureCallback<List<HRegionLocation>>() {
-        @Override public void onSuccess(@Nullable List<HRegionLocation> result) {
-        }
-        @Override public void onFailure(Throwable t) {
-          synchronized (AbstractBigtableRegionLocator.this) {
-            regionsFuture = null;
-          }
+  protected ListenableFuture<List<HRegionLocation>> getRegionsAsync(boolean reload) {
+    ListenableFuture<List<SampleRowKeysResponse>> future =
+        reload ? keyRangeIndex.reload() : keyRangeIndex.getSampleRowKeysAsync();
+    return Futures.transform(future,
+      new Function<List<SampleRowKeysResponse>, List<HRegionLocation>>() {
+        @Override
+        public List<HRegionLocation> apply(@Nullable List<SampleRowKeysResponse> input) {
+          return adapt(input);
         }
       });
-      regionsFetchTimeMillis = System.currentTimeMillis();
-      return this.regionsFuture;
-    } catch(Throwable throwable) {
-      regionsFuture = null;
-      Futures.immediateFailedFuture(throwable);
+  }
+
+  /**
+   * Adapts a snapshot, reusing the regions of the previous call if the snapshot did not change.
+   */
+  private synchronized List<HRegionLocation> adapt(List<SampleRowKeysResponse> responses) {
+    if (responses != adaptedResponses) {
+      regions = adapter.adaptResponse(responses);
+      adaptedResponses = responses;
     }
-    return regionsFuture;
+    return regions;
   }
 }
@@ -17,11 +17,13 @@ package com.google.cloud.bigtable.hbase;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 import com.google.cloud.bigtable.hbase.adapters.read.GetAdapter;
 import org.apache.hadoop.conf.Configuration;
@@ -63,13 +65,16 @@ import com.google.bigtable.v2.CheckAndMutateRowResponse;
 import com.google.bigtable.v2.MutateRowRequest;
 import com.google.bigtable.v2.ReadModifyWriteRowRequest;
 import com.google.bigtable.v2.ReadModifyWriteRowResponse;
+import com.google.bigtable.v2.ReadRowsRequest;
 import com.google.cloud.bigtable.config.BigtableOptions;
 import com.google.cloud.bigtable.config.Logger;
 import com.google.cloud.bigtable.grpc.BigtableDataClient;
 import com.google.cloud.bigtable.grpc.BigtableSession;
+import com.google.cloud.bigtable.grpc.async.ReadCoalescer;
 import com.google.cloud.bigtable.grpc.scanner.FlatRow;
 import com.google.cloud.bigtable.hbase.adapters.Adapters;
 import com.google.cloud.bigtable.hbase.adapters.CheckAndMutateUtil;
+import com.google.cloud.bigtable.hbase.adapters.filters.FilterSplit;
 import com.google.cloud.bigtable.hbase.adapters.HBaseRequestAdapter;
 import com.google.cloud.bigtable.metrics.BigtableClientMetrics;
 import com.google.cloud.bigtable.metrics.BigtableClientMetrics.MetricLevel;
@@ -263,7 +268,11 @@ public abstract class AbstractBigtableTable implements Table {
 
   private FlatRow getResults(Get get, String method) throws IOException {
     try (Timer.Context ignored = metrics.getTimer.time()) {
-      List<FlatRow> list = client.readFlatRowsList(hbaseAdapter.adapt(get));
+      ReadRowsRequest request = hbaseAdapter.adapt(get);
+      if (options.isReadCoalescingEnabled()) {
+        return getCoalescedResult(request);
+      }
+      List<FlatRow> list = client.readFlatRowsList(request);
       switch(list.size()) {
       case 0:
         return null;
@@ -275,6 +284,22 @@ public abstract class AbstractBigtableTable implements Table {
     }
   }
 
+  private FlatRow getCoalescedResult(ReadRowsRequest request) throws IOException {
+    ReadCoalescer readCoalescer =
+        bigtableConnection.getSession().getReadCoalescer(hbaseAdapter.getBigtableTableName());
+    try {
+      return readCoalescer.read(request).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading " + request.getRows());
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException("Could not read " + request.getRows(), e.getCause());
+    }
+  }
+
   protected Result convertToResult(FlatRow row) {
     if (row == null) {
       return Adapters.FLAT_ROW_ADAPTER.adaptResponse(null);
@@ -289,12 +314,28 @@ public abstract class AbstractBigtableTable implements Table {
     LOG.trace("getScanner(Scan)");
     Span span = TRACER.spanBuilder("BigtableTable.scan").startSpan();
     try (Closeable c = TRACER.withSpan(span)) {
-      com.google.cloud.bigtable.grpc.scanner.ResultScanner<FlatRow> scanner =
-          client.readFlatRows(hbaseAdapter.adapt(scan));
-      if (hasWhileMatchFilter(scan.getFilter())) {
-        return Adapters.BIGTABLE_WHILE_MATCH_RESULT_RESULT_SCAN_ADAPTER.adapt(scanner, span);
+      FilterSplit filterSplit = ClientSideFilterUtil.split(scan);
+      Scan serverScan =
+          filterSplit == null ? scan : ClientSideFilterUtil.createServerScan(scan, filterSplit);
+      ReadRowsRequest request = hbaseAdapter.adapt(serverScan);
+      com.google.cloud.bigtable.grpc.scanner.ResultScanner<FlatRow> scanner;
+      if (ParallelScanUtil.isParallel(serverScan, request)) {
+        scanner = ParallelScanUtil.createScanner(client, serverScan, request,
+          (AbstractBigtableRegionLocator) bigtableConnection.getRegionLocator(tableName));
+      } else {
+        scanner = client.readFlatRows(request);
+      }
+      ResultScanner resultScanner;
+      if (hasWhileMatchFilter(serverScan.getFilter())) {
+        resultScanner =
+            Adapters.BIGTABLE_WHILE_MATCH_RESULT_RESULT_SCAN_ADAPTER.adapt(scanner, span);
+      } else {
+        resultScanner = Adapters.BIGTABLE_RESULT_SCAN_ADAPTER.adapt(scanner, span);
+      }
+      if (filterSplit != null) {
+        return ClientSideFilterUtil.wrap(resultScanner, scan, filterSplit);
       }
-      return Adapters.BIGTABLE_RESULT_SCAN_ADAPTER.adapt(scanner, span);
+      return resultScanner;
     } catch (Throwable throwable) {
       LOG.error("Encountered exception when executing getScanner.", throwable);
       throw new IOException(
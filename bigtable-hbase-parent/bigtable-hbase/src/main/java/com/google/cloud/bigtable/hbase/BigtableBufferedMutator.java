@@ -18,6 +18,7 @@ package com.google.cloud.bigtable.hbase;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.hadoop.conf.Configuration;
@@ -136,6 +137,31 @@ public class BigtableBufferedMutator implements BufferedMutator {
     addCallback(helper.mutate(mutation), mutation);
   }
 
+  /**
+   * Begins a Mutation without blocking. If the buffer is full, the returned future fails right
+   * away with a {@link BufferFullException}, and the mutation is not sent. Unlike
+   * {@link #mutate(Mutation)}, failures are only reported through the returned future, and not
+   * to the {@link org.apache.hadoop.hbase.client.BufferedMutator.ExceptionListener}.
+   *
+   * @param mutation a {@link Mutation} to send.
+   * @return a {@link ListenableFuture} that tracks the mutation.
+   * @see BigtableBufferedMutatorHelper#tryMutate(Mutation)
+   */
+  public ListenableFuture<?> tryMutate(Mutation mutation) {
+    return helper.tryMutate(mutation);
+  }
+
+  /**
+   * Runs the listener once the buffer has room for more mutations.
+   *
+   * @param listener a {@link Runnable} to run when the buffer has room.
+   * @param executor the {@link Executor} on which to run the listener.
+   * @see BigtableBufferedMutatorHelper#addBufferAvailableListener(Runnable, Executor)
+   */
+  public void addBufferAvailableListener(Runnable listener, Executor executor) {
+    helper.addBufferAvailableListener(listener, executor);
+  }
+
   /**
    * Create a {@link RetriesExhaustedWithDetailsException} if there were any async exceptions and
    * send it to the {@link org.apache.hadoop.hbase.client.BufferedMutator.ExceptionListener}.
@@ -15,9 +15,15 @@
  */
 package com.google.cloud.bigtable.hbase;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
@@ -30,15 +36,28 @@ import org.apache.hadoop.hbase.client.Increment;
 import org.apache.hadoop.hbase.client.Mutation;
 import org.apache.hadoop.hbase.client.Put;
 
+import com.google.bigtable.v2.MutateRowResponse;
+import com.google.bigtable.v2.MutateRowsRequest;
+import com.google.bigtable.v2.ReadModifyWriteRowRequest;
+import com.google.bigtable.v2.ReadModifyWriteRowResponse;
 import com.google.cloud.bigtable.config.BigtableOptions;
 import com.google.cloud.bigtable.config.Logger;
 import com.google.cloud.bigtable.grpc.BigtableSession;
+import com.google.cloud.bigtable.grpc.BigtableSessionSharedThreadPools;
 import com.google.cloud.bigtable.grpc.BigtableTableName;
 import com.google.cloud.bigtable.grpc.async.AsyncExecutor;
 import com.google.cloud.bigtable.grpc.async.BulkMutation;
+import com.google.cloud.bigtable.grpc.async.EncodedEntry;
+import com.google.cloud.bigtable.grpc.async.MutationSpillLog;
+import com.google.cloud.bigtable.grpc.async.MutationSpillLog.SpilledEntry;
+import com.google.cloud.bigtable.grpc.async.ResourceLimiter;
 import com.google.cloud.bigtable.hbase.adapters.HBaseRequestAdapter;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
 /**
  * A helper for Bigtable's {@link org.apache.hadoop.hbase.client.BufferedMutator} implementations.
@@ -50,6 +69,9 @@ public class BigtableBufferedMutatorHelper {
   /** Constant <code>LOG</code> */
   protected static final Logger LOG = new Logger(BigtableBufferedMutatorHelper.class);
 
+  /** The number of helpers of a table that can spill at the same time. */
+  private static final int MAX_SPILL_LOGS_PER_TABLE = 16;
+
   private final Configuration configuration;
 
   /**
@@ -64,10 +86,28 @@ public class BigtableBufferedMutatorHelper {
 
   private final HBaseRequestAdapter adapter;
   private final AsyncExecutor asyncExecutor;
+  private final ResourceLimiter resourceLimiter;
 
   private BulkMutation bulkMutation = null;
 
   private BigtableOptions options;
+  private final boolean useEncodedMutations;
+
+  /**
+   * Holds puts and deletes while the {@link ResourceLimiter} is full, if a spill directory is
+   * configured. Appending to and draining from the log are guarded by {@link #spillLock}, so that
+   * entries are sent in the order in which they were added.
+   */
+  private final MutationSpillLog spillLog;
+  private final Object spillLock = new Object();
+
+  /**
+   * The futures of the entries that were spilled by this helper, in the order in which they were
+   * spilled. Entries that were replayed from an earlier process have no futures.
+   */
+  private final Deque<SettableFuture<MutateRowResponse>> spilledFutures = new ArrayDeque<>();
+  private int replayedCount;
+  private boolean drainScheduled = false;
 
   /**
    * <p>
@@ -88,9 +128,43 @@ public class BigtableBufferedMutatorHelper {
     this.adapter = adapter;
     this.configuration = configuration;
     this.options = session.getOptions();
+    this.useEncodedMutations = options.getBulkOptions().useEncodedMutations();
     this.asyncExecutor = session.createAsyncExecutor();
+    this.resourceLimiter = session.getResourceLimiter();
     BigtableTableName tableName = this.adapter.getBigtableTableName();
     this.bulkMutation = session.createBulkMutation(tableName);
+    this.spillLog = openSpillLog(options.getBulkOptions().getSpillDirectory(), tableName);
+    if (spillLog != null && !spillLog.isEmpty()) {
+      synchronized (spillLock) {
+        replayedCount = spillLog.size();
+        scheduleDrain();
+      }
+    }
+  }
+
+  /**
+   * Opens a {@link MutationSpillLog} in the first numbered subdirectory of the table's spill
+   * directory that is not used by another log. Each helper of a table needs a log of its own, and a
+   * restarted process reopens the same subdirectories, so it replays what was left in them.
+   */
+  private static MutationSpillLog openSpillLog(String spillDirectory,
+      BigtableTableName tableName) {
+    if (spillDirectory == null) {
+      return null;
+    }
+    File tableDirectory = new File(spillDirectory, tableName.getTableId());
+    IOException lastException = null;
+    for (int i = 0; i < MAX_SPILL_LOGS_PER_TABLE; i++) {
+      try {
+        return new MutationSpillLog(new File(tableDirectory, String.valueOf(i)),
+            MutationSpillLog.DEFAULT_SEGMENT_SIZE);
+      } catch (IOException e) {
+        lastException = e;
+      }
+    }
+    LOG.warn("Could not open a spill directory in %s. Mutations will not be spilled.",
+      lastException, tableDirectory);
+    return null;
   }
 
   public void close() throws IOException {
@@ -99,12 +173,24 @@ public class BigtableBufferedMutatorHelper {
       flush();
       asyncExecutor.flush();
       closed = true;
+      if (spillLog != null) {
+        synchronized (spillLock) {
+          spillLog.close();
+        }
+      }
     } finally {
       closedWriteLock.unlock();
     }
   }
 
   public void flush() throws IOException {
+    if (spillLog != null) {
+      synchronized (spillLock) {
+        while (!spillLog.isEmpty()) {
+          sendSpilledEntry();
+        }
+      }
+    }
     // If there is a bulk mutation in progress, then send it.
     if (bulkMutation != null) {
       try {
@@ -140,7 +226,7 @@ public class BigtableBufferedMutatorHelper {
     try {
       List<ListenableFuture<?>> futures = new ArrayList<>(mutations.size());
       for (Mutation mutation : mutations) {
-        futures.add(offer(mutation));
+        futures.add(offer(mutation, null));
       }
       return futures;
     } finally {
@@ -160,18 +246,72 @@ public class BigtableBufferedMutatorHelper {
       if (closed) {
         throw new IllegalStateException("Cannot mutate when the BufferedMutator is closed.");
       }
-      return offer(mutation);
+      return offer(mutation, null);
+    } finally {
+      closedReadLock.unlock();
+    }
+  }
+
+  /**
+   * Begins a Mutation without blocking. If the buffer is full, the mutation is not buffered, and
+   * the returned future fails right away with a {@link BufferFullException}; callers can retry
+   * after {@link BufferFullException#getRetryAfterMillis()}, or once a listener registered with
+   * {@link #addBufferAvailableListener(Runnable, Executor)} runs. The future also fails right away
+   * if the mutator is closed or closing.
+   *
+   * <p>A mutation that fills a batch hands the full batch to the shared batch thread pool, which
+   * waits for the {@link ResourceLimiter} if needed. Increments and Appends are sent from that pool
+   * as well.
+   *
+   * @param mutation a {@link Mutation} to send.
+   * @return a {@link ListenableFuture} that tracks the mutation.
+   */
+  public ListenableFuture<?> tryMutate(Mutation mutation) {
+    // Do not wait for a close() that is in progress.
+    if (!closedReadLock.tryLock()) {
+      return Futures.immediateFailedFuture(
+        new IllegalStateException("Cannot mutate when the BufferedMutator is closed."));
+    }
+    try {
+      if (closed) {
+        return Futures.immediateFailedFuture(
+          new IllegalStateException("Cannot mutate when the BufferedMutator is closed."));
+      }
+      if (spillLog == null && resourceLimiter != null && !resourceLimiter.hasCapacity()) {
+        return Futures.immediateFailedFuture(
+          new BufferFullException(resourceLimiter.getRetryAfterMillis()));
+      }
+      return offer(mutation, BigtableSessionSharedThreadPools.getInstance().getBatchThreadPool());
     } finally {
       closedReadLock.unlock();
     }
   }
 
+  /**
+   * Runs the listener once the buffer has room for more mutations, or right away if it already
+   * does. Each listener is run once; register a new listener after every
+   * {@link BufferFullException}.
+   *
+   * @param listener a {@link Runnable} to run when the buffer has room.
+   * @param executor the {@link Executor} on which to run the listener.
+   */
+  public void addBufferAvailableListener(Runnable listener, Executor executor) {
+    if (resourceLimiter == null) {
+      executor.execute(listener);
+    } else {
+      resourceLimiter.addAvailabilityListener(listener, executor);
+    }
+  }
+
   /**
    * Send the operations to the async executor asynchronously.  The conversion from hbase
    * object to cloud bigtable proto and the async call both take time (microseconds worth) that
    * could be parallelized, or at least removed from the user's thread.
+   *
+   * @param sendExecutor if not null, full batches and read-modify-write calls, which may block, are
+   *     sent on this {@link Executor} instead of on the calling thread.
    */
-  private ListenableFuture<?> offer(Mutation mutation) {
+  private ListenableFuture<?> offer(Mutation mutation, Executor sendExecutor) {
     if (closed) {
       Futures.immediateFailedFuture(
         new IllegalStateException("Cannot mutate when the BufferedMutator is closed."));
@@ -181,14 +321,20 @@ public class BigtableBufferedMutatorHelper {
       if (mutation == null) {
         future = Futures.immediateFailedFuture(
           new IllegalArgumentException("Cannot perform a mutation on a null object."));
+      } else if (spillLog != null && (mutation instanceof Put || mutation instanceof Delete)) {
+        future = addOrSpill(mutation, sendExecutor);
       } else if (mutation instanceof Put) {
-        future = bulkMutation.add(adapter.adaptEntry((Put) mutation));
+        if (useEncodedMutations) {
+          future = add(adapter.adaptEncodedEntry((Put) mutation), sendExecutor);
+        } else {
+          future = add(adapter.adaptEntry((Put) mutation), sendExecutor);
+        }
       } else if (mutation instanceof Delete) {
-        future = bulkMutation.add(adapter.adaptEntry((Delete) mutation));
+        future = add(adapter.adaptEntry((Delete) mutation), sendExecutor);
       } else if (mutation instanceof Increment) {
-        future = asyncExecutor.readModifyWriteRowAsync(adapter.adapt((Increment) mutation));
+        future = readModifyWriteRow(adapter.adapt((Increment) mutation), sendExecutor);
       } else if (mutation instanceof Append) {
-        future = asyncExecutor.readModifyWriteRowAsync(adapter.adapt((Append) mutation));
+        future = readModifyWriteRow(adapter.adapt((Append) mutation), sendExecutor);
       } else {
         future = Futures.immediateFailedFuture(new IllegalArgumentException(
             "Encountered unknown mutation type: " + mutation.getClass()));
@@ -201,6 +347,148 @@ public class BigtableBufferedMutatorHelper {
     return future;
   }
 
+  /**
+   * Adds the entry to the {@link BulkMutation}. A full batch is sent on the sendExecutor if there
+   * is one.
+   */
+  private ListenableFuture<MutateRowResponse> add(MutateRowsRequest.Entry entry,
+      Executor sendExecutor) {
+    return sendExecutor == null ? bulkMutation.add(entry) : bulkMutation.add(entry, sendExecutor);
+  }
+
+  private ListenableFuture<MutateRowResponse> add(EncodedEntry entry, Executor sendExecutor) {
+    return sendExecutor == null ? bulkMutation.add(entry) : bulkMutation.add(entry, sendExecutor);
+  }
+
+  /**
+   * Calls {@link AsyncExecutor#readModifyWriteRowAsync(ReadModifyWriteRowRequest)}, on the
+   * sendExecutor if there is one.
+   */
+  private ListenableFuture<ReadModifyWriteRowResponse> readModifyWriteRow(
+      final ReadModifyWriteRowRequest request, Executor sendExecutor) throws InterruptedException {
+    if (sendExecutor == null) {
+      return asyncExecutor.readModifyWriteRowAsync(request);
+    }
+    ListenableFutureTask<ListenableFuture<ReadModifyWriteRowResponse>> task =
+        ListenableFutureTask.create(new Callable<ListenableFuture<ReadModifyWriteRowResponse>>() {
+          @Override
+          public ListenableFuture<ReadModifyWriteRowResponse> call() throws Exception {
+            return asyncExecutor.readModifyWriteRowAsync(request);
+          }
+        });
+    sendExecutor.execute(task);
+    return Futures.dereference(task);
+  }
+
+  /**
+   * Adds a put or a delete to the {@link BulkMutation}, or appends it to the {@link #spillLog} if
+   * the {@link ResourceLimiter} is full or if there are spilled entries that were not sent yet.
+   */
+  private ListenableFuture<MutateRowResponse> addOrSpill(Mutation mutation,
+      Executor sendExecutor) {
+    MutateRowsRequest.Entry entry = mutation instanceof Put ? adapter.adaptEntry((Put) mutation)
+        : adapter.adaptEntry((Delete) mutation);
+    synchronized (spillLock) {
+      if (spillLog.isEmpty() && (resourceLimiter == null || resourceLimiter.hasCapacity())) {
+        return add(entry, sendExecutor);
+      }
+      try {
+        spillLog.append(entry);
+      } catch (IOException e) {
+        LOG.warn("Could not spill a mutation. Sending it directly.", e);
+        return add(entry, sendExecutor);
+      }
+      SettableFuture<MutateRowResponse> future = SettableFuture.create();
+      spilledFutures.addLast(future);
+      scheduleDrain();
+      return future;
+    }
+  }
+
+  /**
+   * Drains the {@link #spillLog} once the {@link ResourceLimiter} has room. Must be called while
+   * holding the {@link #spillLock}.
+   */
+  private void scheduleDrain() {
+    if (drainScheduled) {
+      return;
+    }
+    drainScheduled = true;
+    Runnable drain = new Runnable() {
+      @Override
+      public void run() {
+        drainSpillLog();
+      }
+    };
+    ExecutorService executor = BigtableSessionSharedThreadPools.getInstance().getBatchThreadPool();
+    if (resourceLimiter == null) {
+      executor.execute(drain);
+    } else {
+      resourceLimiter.addAvailabilityListener(drain, executor);
+    }
+  }
+
+  private void drainSpillLog() {
+    synchronized (spillLock) {
+      drainScheduled = false;
+      if (closed) {
+        return;
+      }
+      while (!spillLog.isEmpty()
+          && (resourceLimiter == null || resourceLimiter.hasCapacity())) {
+        sendSpilledEntry();
+      }
+      if (!spillLog.isEmpty()) {
+        scheduleDrain();
+      }
+    }
+  }
+
+  /**
+   * Moves the oldest spilled entry to the {@link BulkMutation}. Must be called while holding the
+   * {@link #spillLock}.
+   */
+  private void sendSpilledEntry() {
+    final SpilledEntry spilledEntry = spillLog.poll();
+    if (spilledEntry == null) {
+      return;
+    }
+    final SettableFuture<MutateRowResponse> future;
+    if (replayedCount > 0) {
+      replayedCount--;
+      future = null;
+    } else {
+      future = spilledFutures.pollFirst();
+    }
+    if (spilledEntry.getEntry() == null) {
+      // The entry could not be read.
+      if (future != null) {
+        future.setException(new IOException("A spilled mutation could not be read."));
+      }
+      return;
+    }
+    Futures.addCallback(bulkMutation.add(spilledEntry.getEntry()),
+      new FutureCallback<MutateRowResponse>() {
+        @Override
+        public void onSuccess(MutateRowResponse result) {
+          spilledEntry.complete();
+          if (future != null) {
+            future.set(result);
+          }
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          // The failure is reported to the caller, so the entry should not be replayed.
+          spilledEntry.complete();
+          if (future != null) {
+            future.setException(t);
+          } else {
+            LOG.warn("A replayed mutation failed.", t);
+          }
+        }
+      }, MoreExecutors.directExecutor());
+  }
 
   /**
    * <p>hasInflightRequests.</p>
@@ -209,6 +497,7 @@ public class BigtableBufferedMutatorHelper {
    */
   public boolean hasInflightRequests() {
     return this.asyncExecutor.hasInflightRequests()
-        || (bulkMutation != null && !bulkMutation.isFlushed());
+        || (bulkMutation != null && !bulkMutation.isFlushed())
+        || (spillLog != null && !spillLog.isEmpty());
   }
 }
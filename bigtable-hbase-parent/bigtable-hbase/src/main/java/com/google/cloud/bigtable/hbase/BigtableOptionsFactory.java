@@ -44,6 +44,7 @@ import org.apache.hadoop.hbase.util.VersionInfo;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Static methods to convert an instance of {@link org.apache.hadoop.conf.Configuration}
@@ -210,6 +211,35 @@ public class BigtableOptionsFactory {
   public static final String BIGTABLE_BULK_AUTOFLUSH_MS_KEY =
       "google.bigtable.bulk.autoflush.ms";
 
+  /**
+   * Key to set to true to serialize buffered mutations directly into the buffer of their bulk
+   * request, rather than into intermediate protobuf objects.
+   */
+  public static final String BIGTABLE_BULK_ENCODED_MUTATIONS_ENABLE_KEY =
+      "google.bigtable.bulk.encoded.mutations.enable";
+
+  /**
+   * Key to set to true to merge buffered mutations to the same row into one entry of a bulk
+   * request. The mutations of a row are then applied atomically, in the order they were added.
+   */
+  public static final String BIGTABLE_BULK_COALESCE_MUTATIONS_ENABLE_KEY =
+      "google.bigtable.bulk.coalesce.mutations.enable";
+
+  /**
+   * Key to set to a local directory to which a BufferedMutator spills its mutations while the
+   * buffer is full, instead of blocking. Each table uses a subdirectory, in which every
+   * BufferedMutator of the table has a numbered directory of its own.
+   */
+  public static final String BIGTABLE_BULK_SPILL_DIRECTORY_KEY =
+      "google.bigtable.bulk.spill.directory";
+
+  /**
+   * Key to set to true to group the keys of a multi-get by tablet before they are split into RPCs.
+   * The tablet boundaries are loaded with SampleRowKeys in the background.
+   */
+  public static final String BIGTABLE_BULK_READ_TABLET_ALIGNMENT_ENABLE_KEY =
+      "google.bigtable.bulk.read.tablet.alignment.enable";
+
   /** Constant <code>MAX_INFLIGHT_RPCS_KEY="google.bigtable.buffered.mutator.max.in"{trunked}</code> */
   public static final String MAX_INFLIGHT_RPCS_KEY =
       "google.bigtable.buffered.mutator.max.inflight.rpcs";
@@ -248,6 +278,61 @@ public class BigtableOptionsFactory {
   public static final String BIGTABLE_USE_CACHED_DATA_CHANNEL_POOL =
       "google.bigtable.use.cached.data.channel.pool";
 
+  /**
+   * Key to set to a boolean flag indicating whether or not the connection should be warmed up when
+   * it's created. Warming up connects all data channels and fetches credentials before the first
+   * RPC. See {@link com.google.cloud.bigtable.grpc.BigtableSession#warmUp(String...)}.
+   */
+  public static final String BIGTABLE_WARM_UP_ENABLE_KEY = "google.bigtable.grpc.warmup.enable";
+
+  /**
+   * Key to set to a comma separated list of table ids on which to send a SampleRowKeys request
+   * during warm up. This is only used if {@link #BIGTABLE_WARM_UP_ENABLE_KEY} is true.
+   */
+  public static final String BIGTABLE_WARM_UP_TABLES_KEY = "google.bigtable.grpc.warmup.tables";
+
+  /**
+   * Key to set to true to coalesce concurrent single row gets of the same table into shared RPCs.
+   */
+  public static final String BIGTABLE_READ_COALESCING_ENABLE_KEY =
+      "google.bigtable.read.coalescing.enable";
+
+  /**
+   * Key to set the number of microseconds that a coalesced get waits for other gets before its
+   * multi-get is sent. This is only used if {@link #BIGTABLE_READ_COALESCING_ENABLE_KEY} is true.
+   */
+  public static final String BIGTABLE_READ_COALESCING_WINDOW_MICROS_KEY =
+      "google.bigtable.read.coalescing.window.micros";
+
+  /** Constant <code>BIGTABLE_READ_COALESCING_WINDOW_MICROS_DEFAULT=1000</code> */
+  public static final long BIGTABLE_READ_COALESCING_WINDOW_MICROS_DEFAULT = 1000;
+
+  /**
+   * Key to set to true to aggregate buffered increments and appends to the same cells into shared
+   * ReadModifyWriteRow RPCs.
+   */
+  public static final String BIGTABLE_READ_MODIFY_WRITE_AGGREGATION_ENABLE_KEY =
+      "google.bigtable.read.modify.write.aggregation.enable";
+
+  /**
+   * Key to set the number of microseconds that an increment or append waits for other requests to
+   * the same cells. This is only used if {@link #BIGTABLE_READ_MODIFY_WRITE_AGGREGATION_ENABLE_KEY}
+   * is true.
+   */
+  public static final String BIGTABLE_READ_MODIFY_WRITE_AGGREGATION_WINDOW_MICROS_KEY =
+      "google.bigtable.read.modify.write.aggregation.window.micros";
+
+  /** Constant <code>BIGTABLE_READ_MODIFY_WRITE_AGGREGATION_WINDOW_MICROS_DEFAULT=1000</code> */
+  public static final long BIGTABLE_READ_MODIFY_WRITE_AGGREGATION_WINDOW_MICROS_DEFAULT = 1000;
+
+  /**
+   * Key to set to true to adapt {@link org.apache.hadoop.hbase.client.Put}s without copying their
+   * row keys, qualifiers and values. Puts must not be modified after they are passed to a table or
+   * a buffered mutator when this is enabled.
+   */
+  public static final String BIGTABLE_ZERO_COPY_PUTS_ENABLE_KEY =
+      "google.bigtable.mutation.zero.copy.enable";
+
   /**
    * The number of asynchronous workers to use for buffered mutator operations.
    */
@@ -352,6 +437,24 @@ public class BigtableOptionsFactory {
         configuration.getBoolean(BIGTABLE_USE_CACHED_DATA_CHANNEL_POOL, false);
     builder.setUseCachedDataPool(useCachedDataPool);
 
+    if (configuration.getBoolean(BIGTABLE_WARM_UP_ENABLE_KEY, false)) {
+      builder.enableWarmUp(configuration.getTrimmedStrings(BIGTABLE_WARM_UP_TABLES_KEY));
+    }
+
+    if (configuration.getBoolean(BIGTABLE_READ_COALESCING_ENABLE_KEY, false)) {
+      builder.enableReadCoalescing(
+        configuration.getLong(BIGTABLE_READ_COALESCING_WINDOW_MICROS_KEY,
+          BIGTABLE_READ_COALESCING_WINDOW_MICROS_DEFAULT),
+        TimeUnit.MICROSECONDS);
+    }
+
+    if (configuration.getBoolean(BIGTABLE_READ_MODIFY_WRITE_AGGREGATION_ENABLE_KEY, false)) {
+      builder.enableReadModifyWriteAggregation(
+        configuration.getLong(BIGTABLE_READ_MODIFY_WRITE_AGGREGATION_WINDOW_MICROS_KEY,
+          BIGTABLE_READ_MODIFY_WRITE_AGGREGATION_WINDOW_MICROS_DEFAULT),
+        TimeUnit.MICROSECONDS);
+    }
+
     // This information is in addition to bigtable-client-core version, and jdk version.
     StringBuilder agentBuilder = new StringBuilder();
     agentBuilder.append("hbase-").append(VersionInfo.getVersion());
@@ -383,6 +486,13 @@ public class BigtableOptionsFactory {
         configuration.getLong(
             BIGTABLE_BULK_AUTOFLUSH_MS_KEY,
             BIGTABLE_BULK_AUTOFLUSH_MS_DEFAULT));
+    bulkOptionsBuilder.setUseEncodedMutations(
+        configuration.getBoolean(BIGTABLE_BULK_ENCODED_MUTATIONS_ENABLE_KEY, false));
+    bulkOptionsBuilder.setCoalesceMutations(
+        configuration.getBoolean(BIGTABLE_BULK_COALESCE_MUTATIONS_ENABLE_KEY, false));
+    bulkOptionsBuilder.setSpillDirectory(configuration.get(BIGTABLE_BULK_SPILL_DIRECTORY_KEY));
+    bulkOptionsBuilder.setAlignBulkReadsToTablets(
+        configuration.getBoolean(BIGTABLE_BULK_READ_TABLET_ALIGNMENT_ENABLE_KEY, false));
 
     int defaultRpcCount = BIGTABLE_MAX_INFLIGHT_RPCS_PER_CHANNEL_DEFAULT
         * bigtableOptionsBuilder.getDataChannelCount();
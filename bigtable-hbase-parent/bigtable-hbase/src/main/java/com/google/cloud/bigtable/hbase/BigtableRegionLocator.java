@@ -28,6 +28,7 @@ import org.apache.hadoop.hbase.util.Pair;
 import com.google.cloud.bigtable.config.BigtableOptions;
 import com.google.cloud.bigtable.config.Logger;
 import com.google.cloud.bigtable.grpc.BigtableDataClient;
+import com.google.cloud.bigtable.grpc.KeyRangeIndex;
 
 /**
  * <p>BigtableRegionLocator class.</p>
@@ -51,6 +52,18 @@ public abstract class BigtableRegionLocator extends AbstractBigtableRegionLocato
     super(tableName,options,client);
   }
 
+  /**
+   * <p>Constructor for BigtableRegionLocator.</p>
+   *
+   * @param tableName a {@link org.apache.hadoop.hbase.TableName} object.
+   * @param options a {@link com.google.cloud.bigtable.config.BigtableOptions} object.
+   * @param keyRangeIndex the {@link com.google.cloud.bigtable.grpc.KeyRangeIndex} of the table.
+   */
+  public BigtableRegionLocator(TableName tableName, BigtableOptions options,
+      KeyRangeIndex keyRangeIndex) {
+    super(tableName, options, keyRangeIndex);
+  }
+
   /** {@inheritDoc} */
   @Override
   public HRegionLocation getRegionLocation(byte[] row) throws IOException {
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.io.IOException;
+
+/**
+ * Signals that a mutation was not buffered by
+ * {@link BigtableBufferedMutatorHelper#tryMutate(org.apache.hadoop.hbase.client.Mutation)}
+ * because the buffer was full. The mutation can be retried after
+ * {@link #getRetryAfterMillis()}, or once a listener registered with
+ * {@link BigtableBufferedMutatorHelper#addBufferAvailableListener(Runnable, java.util.concurrent.Executor)}
+ * runs.
+ *
+ * @author sduskis
+ */
+public class BufferFullException extends IOException {
+
+  private static final long serialVersionUID = -5370853373155716451L;
+
+  private final long retryAfterMillis;
+
+  /**
+   * <p>Constructor for BufferFullException.</p>
+   *
+   * @param retryAfterMillis an estimate of when the buffer will have room, in milliseconds.
+   */
+  public BufferFullException(long retryAfterMillis) {
+    super("The buffer is full. Retry after " + retryAfterMillis + " ms.");
+    this.retryAfterMillis = retryAfterMillis;
+  }
+
+  /**
+   * @return an estimate of when the buffer will have room, in milliseconds.
+   */
+  public long getRetryAfterMillis() {
+    return retryAfterMillis;
+  }
+}
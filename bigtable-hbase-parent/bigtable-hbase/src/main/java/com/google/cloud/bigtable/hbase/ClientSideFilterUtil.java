@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.cloud.bigtable.hbase.adapters.Adapters;
+import com.google.cloud.bigtable.hbase.adapters.filters.ClientSideFilterResultScanner;
+import com.google.cloud.bigtable.hbase.adapters.filters.FilterSplit;
+
+/**
+ * Opt-in hybrid filter evaluation. By default, a {@link Scan} with a filter that can not be
+ * adapted to a {@link com.google.bigtable.v2.RowFilter} is rejected. A {@link Scan} with the
+ * {@link #SCAN_CLIENT_SIDE_FILTERING_ATTRIBUTE} attribute instead sends the supported part of the
+ * filter to Cloud Bigtable, and evaluates the rest on the client with a
+ * {@link ClientSideFilterResultScanner}. See
+ * {@link com.google.cloud.bigtable.hbase.adapters.filters.FilterAdapter#splitFilter(Scan,
+ * org.apache.hadoop.hbase.filter.Filter)} for how filters are split.
+ *
+ * <p>When part of the filter is evaluated on the client, the {@link Scan#getLimit()} is enforced on
+ * the client as well.
+ */
+public class ClientSideFilterUtil {
+
+  /** {@link Scan} attribute that allows client side filter evaluation, as a boolean. */
+  public static final String SCAN_CLIENT_SIDE_FILTERING_ATTRIBUTE =
+      "bigtable.scan.client.side.filtering";
+
+  private ClientSideFilterUtil() {
+  }
+
+  /**
+   * Allows the unsupported parts of the {@link Scan}'s filter to be evaluated on the client.
+   *
+   * @param scan the {@link Scan} to configure.
+   * @return the scan
+   */
+  public static Scan enableClientSideFiltering(Scan scan) {
+    scan.setAttribute(SCAN_CLIENT_SIDE_FILTERING_ATTRIBUTE, Bytes.toBytes(true));
+    return scan;
+  }
+
+  /**
+   * @param scan a {@link Scan}.
+   * @return a {@link FilterSplit} if the scan allows client side filtering and part of its filter
+   *         has to be evaluated on the client, or null otherwise.
+   */
+  public static FilterSplit split(Scan scan) {
+    byte[] enabled = scan.getAttribute(SCAN_CLIENT_SIDE_FILTERING_ATTRIBUTE);
+    if (enabled == null || !Bytes.toBoolean(enabled) || scan.getFilter() == null) {
+      return null;
+    }
+    FilterSplit split = Adapters.FILTER_ADAPTER.splitFilter(scan, scan.getFilter());
+    return split.getClientFilter() == null ? null : split;
+  }
+
+  /**
+   * Creates the {@link Scan} to send to Cloud Bigtable: a copy of the scan with only the server
+   * side filter, and without a limit.
+   *
+   * @param scan the original {@link Scan}.
+   * @param split the {@link FilterSplit} from {@link #split(Scan)}.
+   * @return the {@link Scan} to adapt.
+   * @throws IOException if the scan can not be copied.
+   */
+  public static Scan createServerScan(Scan scan, FilterSplit split) throws IOException {
+    Scan serverScan = new Scan(scan);
+    serverScan.setFilter(split.getServerFilter());
+    serverScan.setLimit(-1);
+    return serverScan;
+  }
+
+  /**
+   * Wraps the scanner of a server {@link Scan} so that it evaluates the client side filter.
+   *
+   * @param scanner the {@link ResultScanner} for the server {@link Scan}.
+   * @param scan the original {@link Scan}.
+   * @param split the {@link FilterSplit} from {@link #split(Scan)}.
+   * @return a {@link ResultScanner} with the rows that match the original filter.
+   */
+  public static ResultScanner wrap(ResultScanner scanner, Scan scan, FilterSplit split) {
+    return new ClientSideFilterResultScanner(scanner, split.getClientFilter(), scan.getLimit());
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.bigtable.v2.ReadRowsRequest;
+import com.google.cloud.bigtable.grpc.BigtableDataClient;
+import com.google.cloud.bigtable.grpc.BigtableSessionSharedThreadPools;
+import com.google.cloud.bigtable.grpc.scanner.FlatRow;
+import com.google.cloud.bigtable.grpc.scanner.ParallelResultScanner;
+import com.google.cloud.bigtable.grpc.scanner.ResultScanner;
+import com.google.cloud.bigtable.util.ByteStringer;
+import com.google.protobuf.ByteString;
+
+/**
+ * Opt-in parallel scans. A {@link Scan} with the {@link #SCAN_PARALLELISM_ATTRIBUTE} attribute is
+ * split at the region boundaries from {@link AbstractBigtableRegionLocator}, and the regions are
+ * read concurrently by a {@link ParallelResultScanner}. Rows are returned in key order unless
+ * {@link #SCAN_UNORDERED_ATTRIBUTE} is set.
+ *
+ * <p>Scans with a {@link org.apache.hadoop.hbase.filter.WhileMatchFilter} or a row limit are
+ * always read with a single stream.
+ */
+public class ParallelScanUtil {
+
+  /** {@link Scan} attribute with the maximum number of concurrent streams, as an int. */
+  public static final String SCAN_PARALLELISM_ATTRIBUTE = "bigtable.scan.parallelism";
+
+  /** {@link Scan} attribute that allows rows to be returned out of key order, as a boolean. */
+  public static final String SCAN_UNORDERED_ATTRIBUTE = "bigtable.scan.unordered";
+
+  /**
+   * {@link Scan} attribute with the number of rows each stream may read ahead, as an int. If it's
+   * not set, {@link Scan#getCaching()} is used when it's positive.
+   */
+  public static final String SCAN_PREFETCH_ROWS_ATTRIBUTE = "bigtable.scan.prefetch.rows";
+
+  private ParallelScanUtil() {
+  }
+
+  /**
+   * Marks a {@link Scan} to be read with up to {@code parallelism} concurrent streams.
+   *
+   * @param scan the {@link Scan} to configure.
+   * @param parallelism the maximum number of concurrent streams.
+   * @param ordered false if rows may be returned out of key order.
+   * @return the scan
+   */
+  public static Scan setParallelism(Scan scan, int parallelism, boolean ordered) {
+    scan.setAttribute(SCAN_PARALLELISM_ATTRIBUTE, Bytes.toBytes(parallelism));
+    scan.setAttribute(SCAN_UNORDERED_ATTRIBUTE, Bytes.toBytes(!ordered));
+    return scan;
+  }
+
+  /**
+   * @param scan a {@link Scan}.
+   * @param request the {@link ReadRowsRequest} adapted from the scan.
+   * @return true if the scan asked for parallel reads, and can be read in parallel.
+   */
+  public static boolean isParallel(Scan scan, ReadRowsRequest request) {
+    return getParallelism(scan) > 1
+        && request.getRowsLimit() == 0
+        && !AbstractBigtableTable.hasWhileMatchFilter(scan.getFilter());
+  }
+
+  /**
+   * Creates a {@link ParallelResultScanner} for a scan for which {@link #isParallel(Scan,
+   * ReadRowsRequest)} is true.
+   *
+   * @param client the {@link BigtableDataClient} to read with.
+   * @param scan the {@link Scan} with the parallel scan attributes.
+   * @param request the {@link ReadRowsRequest} adapted from the scan.
+   * @param regionLocator the {@link AbstractBigtableRegionLocator} for the table.
+   * @return a {@link ResultScanner} that reads the regions concurrently.
+   * @throws IOException if the region boundaries could not be fetched.
+   */
+  public static ResultScanner<FlatRow> createScanner(BigtableDataClient client, Scan scan,
+      ReadRowsRequest request, AbstractBigtableRegionLocator regionLocator) throws IOException {
+    List<HRegionLocation> regions;
+    try {
+      regions = regionLocator.getRegionsAsync(false).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while fetching region boundaries");
+    } catch (ExecutionException e) {
+      throw new IOException("Could not fetch region boundaries", e.getCause());
+    }
+    List<ByteString> splitKeys = new ArrayList<>(regions.size());
+    for (HRegionLocation region : regions) {
+      splitKeys.add(ByteStringer.wrap(region.getRegionInfo().getStartKey()));
+    }
+    byte[] unordered = scan.getAttribute(SCAN_UNORDERED_ATTRIBUTE);
+    return new ParallelResultScanner(client, request, splitKeys, getParallelism(scan),
+        unordered == null || !Bytes.toBoolean(unordered), getPrefetchRows(scan),
+        BigtableSessionSharedThreadPools.getInstance().getBatchThreadPool());
+  }
+
+  /**
+   * @param scan a {@link Scan}.
+   * @return the number of rows that each stream of a parallel scan may read ahead of the caller.
+   */
+  static int getPrefetchRows(Scan scan) {
+    byte[] prefetchRows = scan.getAttribute(SCAN_PREFETCH_ROWS_ATTRIBUTE);
+    if (prefetchRows != null) {
+      return Bytes.toInt(prefetchRows);
+    }
+    if (scan.getCaching() > 0) {
+      return scan.getCaching();
+    }
+    return ParallelResultScanner.DEFAULT_PREFETCH_ROWS;
+  }
+
+  private static int getParallelism(Scan scan) {
+    byte[] parallelism = scan.getAttribute(SCAN_PARALLELISM_ATTRIBUTE);
+    return parallelism == null ? 1 : Bytes.toInt(parallelism);
+  }
+}
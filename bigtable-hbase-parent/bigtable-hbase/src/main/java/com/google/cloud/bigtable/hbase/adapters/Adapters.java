@@ -21,6 +21,7 @@ import org.apache.hadoop.hbase.client.Append;
 import org.apache.hadoop.hbase.client.Increment;
 import com.google.cloud.bigtable.config.BigtableOptions;
 import com.google.cloud.bigtable.grpc.scanner.FlatRow;
+import com.google.cloud.bigtable.hbase.BigtableOptionsFactory;
 import com.google.cloud.bigtable.hbase.adapters.filters.BigtableWhileMatchResultScannerAdapter;
 import com.google.cloud.bigtable.hbase.adapters.filters.FilterAdapter;
 import com.google.cloud.bigtable.hbase.adapters.read.BigtableResultScannerAdapter;
@@ -87,7 +88,10 @@ public final class Adapters {
    */
   public static PutAdapter createPutAdapter(Configuration config, BigtableOptions options) {
     boolean setClientTimestamp = !options.getRetryOptions().allowRetriesWithoutTimestamp();
-    return new PutAdapter(config.getInt("hbase.client.keyvalue.maxsize", -1), setClientTimestamp);
+    boolean zeroCopy =
+        config.getBoolean(BigtableOptionsFactory.BIGTABLE_ZERO_COPY_PUTS_ENABLE_KEY, false);
+    return new PutAdapter(config.getInt("hbase.client.keyvalue.maxsize", -1), setClientTimestamp,
+        zeroCopy);
   }
 
   private Adapters() {
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Put;
+
+import com.google.bigtable.v2.MutateRowsRequest;
+import com.google.bigtable.v2.Mutation;
+import com.google.bigtable.v2.Mutation.SetCell;
+import com.google.cloud.bigtable.grpc.async.EncodedEntry;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * An {@link EncodedEntry} that writes the {@link Cell}s of a {@link Put} as SetCell mutations,
+ * straight from the {@link Cell}s' arrays. The bytes are the same as those of the
+ * {@link MutateRowsRequest.Entry} that {@link PutAdapter} creates, but no {@link Mutation}s or
+ * {@link com.google.protobuf.ByteString}s are created.
+ *
+ * <p>Sizes and timestamps are computed when the entry is created; the {@link Put} must not be
+ * modified until the entry is written.
+ *
+ * @author sduskis
+ */
+class EncodedPutEntry implements EncodedEntry {
+
+  private final byte[] row;
+  private final byte[][] families;
+  private final Cell[] cells;
+  private final long[] timestamps;
+  private final int[] setCellSizes;
+  private final int serializedSize;
+  private final boolean idempotent;
+
+  /**
+   * @param put the {@link Put} to encode.
+   * @param timestamps the Bigtable timestamp of each {@link Cell}, in the order of
+   *          {@link Put#getFamilyCellMap()}.
+   */
+  EncodedPutEntry(Put put, long[] timestamps) {
+    this.row = put.getRow();
+    this.families = new byte[timestamps.length][];
+    this.cells = new Cell[timestamps.length];
+    this.timestamps = timestamps;
+    this.setCellSizes = new int[timestamps.length];
+
+    int size = computeBytesSize(MutateRowsRequest.Entry.ROW_KEY_FIELD_NUMBER, row.length);
+    boolean allIdempotent = true;
+    int i = 0;
+    for (Map.Entry<byte[], List<Cell>> entry : put.getFamilyCellMap().entrySet()) {
+      byte[] family = entry.getKey();
+      for (Cell cell : entry.getValue()) {
+        families[i] = family;
+        cells[i] = cell;
+        int setCellSize = computeBytesSize(SetCell.FAMILY_NAME_FIELD_NUMBER, family.length)
+            + computeBytesSize(SetCell.COLUMN_QUALIFIER_FIELD_NUMBER, cell.getQualifierLength())
+            + computeBytesSize(SetCell.VALUE_FIELD_NUMBER, cell.getValueLength());
+        if (timestamps[i] != 0) {
+          setCellSize += CodedOutputStream
+              .computeInt64Size(SetCell.TIMESTAMP_MICROS_FIELD_NUMBER, timestamps[i]);
+        }
+        setCellSizes[i] = setCellSize;
+        size += computeMessageSize(MutateRowsRequest.Entry.MUTATIONS_FIELD_NUMBER,
+          computeMessageSize(Mutation.SET_CELL_FIELD_NUMBER, setCellSize));
+        allIdempotent &= timestamps[i] > 0;
+        i++;
+      }
+    }
+    this.serializedSize = size;
+    this.idempotent = allIdempotent;
+  }
+
+  /**
+   * Computes the size of a bytes field. proto3 omits empty fields.
+   */
+  private static int computeBytesSize(int fieldNumber, int length) {
+    return length == 0 ? 0 : computeMessageSize(fieldNumber, length);
+  }
+
+  /**
+   * Computes the size of a length delimited field.
+   */
+  private static int computeMessageSize(int fieldNumber, int length) {
+    return CodedOutputStream.computeTagSize(fieldNumber)
+        + CodedOutputStream.computeUInt32SizeNoTag(length) + length;
+  }
+
+  private static void writeBytes(CodedOutputStream output, int fieldNumber, byte[] array,
+      int offset, int length) throws IOException {
+    if (length > 0) {
+      writeLengthDelimitedPrefix(output, fieldNumber, length);
+      output.writeRawBytes(array, offset, length);
+    }
+  }
+
+  private static void writeLengthDelimitedPrefix(CodedOutputStream output, int fieldNumber,
+      int length) throws IOException {
+    output.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    output.writeUInt32NoTag(length);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getSerializedSize() {
+    return serializedSize;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getMutationsCount() {
+    return cells.length;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isIdempotent() {
+    return idempotent;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void writeTo(CodedOutputStream output) throws IOException {
+    writeBytes(output, MutateRowsRequest.Entry.ROW_KEY_FIELD_NUMBER, row, 0, row.length);
+    for (int i = 0; i < cells.length; i++) {
+      Cell cell = cells[i];
+      int setCellSize = setCellSizes[i];
+      writeLengthDelimitedPrefix(output, MutateRowsRequest.Entry.MUTATIONS_FIELD_NUMBER,
+        computeMessageSize(Mutation.SET_CELL_FIELD_NUMBER, setCellSize));
+      writeLengthDelimitedPrefix(output, Mutation.SET_CELL_FIELD_NUMBER, setCellSize);
+      writeBytes(output, SetCell.FAMILY_NAME_FIELD_NUMBER, families[i], 0, families[i].length);
+      writeBytes(output, SetCell.COLUMN_QUALIFIER_FIELD_NUMBER, cell.getQualifierArray(),
+        cell.getQualifierOffset(), cell.getQualifierLength());
+      if (timestamps[i] != 0) {
+        output.writeInt64(SetCell.TIMESTAMP_MICROS_FIELD_NUMBER, timestamps[i]);
+      }
+      writeBytes(output, SetCell.VALUE_FIELD_NUMBER, cell.getValueArray(), cell.getValueOffset(),
+        cell.getValueLength());
+    }
+  }
+}
@@ -32,6 +32,7 @@ import com.google.bigtable.v2.ReadModifyWriteRowRequest;
 import com.google.bigtable.v2.ReadRowsRequest;
 import com.google.cloud.bigtable.config.BigtableOptions;
 import com.google.cloud.bigtable.grpc.BigtableTableName;
+import com.google.cloud.bigtable.grpc.async.EncodedEntry;
 import com.google.cloud.bigtable.hbase.adapters.read.DefaultReadHooks;
 import com.google.cloud.bigtable.hbase.adapters.read.ReadHooks;
 
@@ -210,6 +211,16 @@ public class HBaseRequestAdapter {
     return mutationAdapters.putAdapter.toEntry(put);
   }
 
+  /**
+   * <p>adaptEncodedEntry.</p>
+   *
+   * @param put a {@link org.apache.hadoop.hbase.client.Put} object.
+   * @return a {@link com.google.cloud.bigtable.grpc.async.EncodedEntry} object.
+   */
+  public EncodedEntry adaptEncodedEntry(Put put) {
+    return mutationAdapters.putAdapter.toEncodedEntry(put);
+  }
+
   /**
    * <p>adapt.</p>
    *
@@ -44,16 +44,26 @@ public abstract class MutationAdapter<T extends Row>
   @Override
   public final MutateRowRequest.Builder adapt(T operation) {
     return MutateRowRequest.newBuilder()
-        .setRowKey(ByteString.copyFrom(operation.getRow()))
+        .setRowKey(adaptRowKey(operation))
         .addAllMutations(adaptMutations(operation));
   }
 
   public final MutateRowsRequest.Entry toEntry(T operation) {
     return MutateRowsRequest.Entry.newBuilder()
-        .setRowKey(ByteString.copyFrom(operation.getRow()))
+        .setRowKey(adaptRowKey(operation))
         .addAllMutations(adaptMutations(operation)).build();
   }
 
+  /**
+   * Converts the row key of an HBase {@link Mutation}. The default implementation copies it.
+   *
+   * @param operation The HBase {@link Mutation} to convert
+   * @return the row key as a {@link ByteString}
+   */
+  protected ByteString adaptRowKey(T operation) {
+    return ByteString.copyFrom(operation.getRow());
+  }
+
   /**
    * Converts an HBase {@link Mutation} which represents a set of changes to a single row from an
    * HBase perspective to a collection of Cloud Bigtable {@link com.google.bigtable.v2.Mutation}
@@ -20,9 +20,11 @@ import com.google.bigtable.v2.MutateRowRequest;
 import com.google.bigtable.v2.Mutation;
 import com.google.bigtable.v2.Mutation.MutationCase;
 import com.google.bigtable.v2.Mutation.SetCell;
+import com.google.cloud.bigtable.grpc.async.EncodedEntry;
 import com.google.cloud.bigtable.hbase.BigtableConstants;
 import com.google.cloud.bigtable.hbase.adapters.read.RowCell;
 import com.google.cloud.bigtable.hbase.util.TimestampConverter;
+import com.google.cloud.bigtable.util.ByteStringer;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.protobuf.ByteString;
 
@@ -31,22 +33,38 @@ import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.client.Put;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Adapt an HBase {@link Put} Operation into a Cloud Bigtable {@link
  * com.google.bigtable.v2.MutateRowRequest.Builder} or {@link
  * com.google.bigtable.v2.MutateRowsRequest.Entry}.
  *
+ * <p>By default, the row key, qualifiers and values are copied out of the {@link Put}. In zero copy
+ * mode, the request wraps the backing arrays of the {@link Put}'s {@link Cell}s instead, which
+ * saves a copy of every value on the write path. The caller must then treat the {@link Put} as
+ * immutable: changing its arrays after it was adapted changes the request that is sent.
+ *
+ * <p>Column family names are cached by the adapter, since a table only has a few of them.
+ *
  * @author sduskis
  * @version $Id: $Id
  */
 public class PutAdapter extends MutationAdapter<Put> {
+  // A table has a handful of families; the limit protects against unbounded growth if an
+  // adapter is used with arbitrary family names.
+  private static final int MAX_CACHED_FAMILIES = 1000;
+
   private final int maxKeyValueSize;
   private final boolean setClientTimestamp;
+  private final boolean zeroCopy;
+  private final ConcurrentMap<ByteBuffer, ByteString> familyCache;
 
   @VisibleForTesting
   Clock clock = Clock.SYSTEM;
@@ -57,8 +75,7 @@ public class PutAdapter extends MutationAdapter<Put> {
    * @param maxKeyValueSize a int.
    */
   public PutAdapter(int maxKeyValueSize) {
-    this.maxKeyValueSize = maxKeyValueSize;
-    this.setClientTimestamp = true;
+    this(maxKeyValueSize, true);
   }
 
   /**
@@ -68,12 +85,47 @@ public class PutAdapter extends MutationAdapter<Put> {
    * @param setClientTimestamp a boolean.
    */
   public PutAdapter(int maxKeyValueSize, boolean setClientTimestamp) {
+    this(maxKeyValueSize, setClientTimestamp, false);
+  }
+
+  /**
+   * <p>Constructor for PutAdapter.</p>
+   *
+   * @param maxKeyValueSize a int.
+   * @param setClientTimestamp a boolean.
+   * @param zeroCopy true if the request should wrap the arrays of the {@link Put} rather than
+   *          copy them.
+   */
+  public PutAdapter(int maxKeyValueSize, boolean setClientTimestamp, boolean zeroCopy) {
+    this(maxKeyValueSize, setClientTimestamp, zeroCopy,
+        new ConcurrentHashMap<ByteBuffer, ByteString>());
+  }
+
+  private PutAdapter(int maxKeyValueSize, boolean setClientTimestamp, boolean zeroCopy,
+      ConcurrentMap<ByteBuffer, ByteString> familyCache) {
     this.maxKeyValueSize = maxKeyValueSize;
     this.setClientTimestamp = setClientTimestamp;
+    this.zeroCopy = zeroCopy;
+    this.familyCache = familyCache;
   }
 
   PutAdapter withServerSideTimestamps() {
-    return new PutAdapter(maxKeyValueSize, false);
+    return new PutAdapter(maxKeyValueSize, false, zeroCopy, familyCache);
+  }
+
+  /**
+   * <p>isZeroCopy.</p>
+   *
+   * @return true if the request wraps the arrays of the {@link Put} rather than copying them.
+   */
+  public boolean isZeroCopy() {
+    return zeroCopy;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected ByteString adaptRowKey(Put operation) {
+    return zeroCopy ? ByteStringer.wrap(operation.getRow()) : super.adaptRowKey(operation);
   }
 
   @Override
@@ -82,47 +134,31 @@ public class PutAdapter extends MutationAdapter<Put> {
       throw new IllegalArgumentException("No columns to insert");
     }
 
-    // Bigtable uses a 1ms granularity. Use this timestamp if the Put does not have one specified to
-    // make mutations idempotent.
-    long currentTimestampMicros = setClientTimestamp ? clock.currentTimeMillis() * 1000 : -1;
+    long currentTimestampMicros = getCurrentTimestampMicros();
     final int rowLength = operation.getRow().length;
 
     List<Mutation> mutations = new ArrayList<>(operation.size());
     for (Entry<byte[], List<Cell>> entry : operation.getFamilyCellMap().entrySet()) {
-      ByteString familyString = ByteString.copyFrom(entry.getKey());
+      ByteString familyString = getFamily(entry.getKey());
       int familySize = familyString.size();
 
       for (Cell cell : entry.getValue()) {
         int qualifierLength = cell.getQualifierLength();
         int valueLength = cell.getValueLength();
-        // Since we are not using the interface involving KeyValues, we reconstruct how big they would be.
-        // 20 bytes for metadata plus the length of all the elements.
-        int keyValueSize = (20 + rowLength + familySize + qualifierLength + valueLength);
-        if (maxKeyValueSize > 0 && keyValueSize > maxKeyValueSize) {
-          throw new IllegalArgumentException("KeyValue size too large");
-        }
-
-        ByteString cellQualifierByteString = ByteString.copyFrom(
-            cell.getQualifierArray(),
-            cell.getQualifierOffset(),
-            qualifierLength);
-
-        ByteString value = ByteString.copyFrom(
-            cell.getValueArray(),
-            cell.getValueOffset(),
-            valueLength);
-
-        long timestampMicros = currentTimestampMicros;
-        if (cell.getTimestamp() != HConstants.LATEST_TIMESTAMP) {
-          timestampMicros = TimestampConverter.hbase2bigtable(cell.getTimestamp());
-        }
+        checkKeyValueSize(rowLength, familySize, cell);
+
+        ByteString cellQualifierByteString =
+            toByteString(cell.getQualifierArray(), cell.getQualifierOffset(), qualifierLength);
+
+        ByteString value =
+            toByteString(cell.getValueArray(), cell.getValueOffset(), valueLength);
 
         mutations.add(Mutation.newBuilder()
             .setSetCell(SetCell.newBuilder()
                 .setFamilyNameBytes(familyString)
                 .setColumnQualifier(cellQualifierByteString)
                 .setValue(value)
-                .setTimestampMicros(timestampMicros)
+                .setTimestampMicros(getTimestampMicros(cell, currentTimestampMicros))
                 .build())
             .build());
       }
@@ -130,6 +166,83 @@ public class PutAdapter extends MutationAdapter<Put> {
     return mutations;
   }
 
+  /**
+   * Creates an {@link EncodedEntry} that serializes the {@link Put} without building
+   * {@link Mutation}s. It produces the same bytes as {@code toEntry(put)}. The {@link Put} must
+   * not be modified until the entry is written.
+   *
+   * @param put a {@link Put} object.
+   * @return an {@link EncodedEntry} for the {@link Put}.
+   */
+  public EncodedEntry toEncodedEntry(Put put) {
+    if (put.isEmpty()) {
+      throw new IllegalArgumentException("No columns to insert");
+    }
+    if (put.getRow().length == 0) {
+      throw new IllegalArgumentException("Request has an empty rowkey");
+    }
+
+    long currentTimestampMicros = getCurrentTimestampMicros();
+    int rowLength = put.getRow().length;
+    long[] timestamps = new long[put.size()];
+    int i = 0;
+    for (Entry<byte[], List<Cell>> entry : put.getFamilyCellMap().entrySet()) {
+      int familySize = entry.getKey().length;
+      for (Cell cell : entry.getValue()) {
+        checkKeyValueSize(rowLength, familySize, cell);
+        timestamps[i++] = getTimestampMicros(cell, currentTimestampMicros);
+      }
+    }
+    return new EncodedPutEntry(put, timestamps);
+  }
+
+  /**
+   * Bigtable uses a 1ms granularity. This timestamp is used if the Put does not have one
+   * specified, to make mutations idempotent.
+   */
+  private long getCurrentTimestampMicros() {
+    return setClientTimestamp ? clock.currentTimeMillis() * 1000 : -1;
+  }
+
+  private static long getTimestampMicros(Cell cell, long currentTimestampMicros) {
+    if (cell.getTimestamp() != HConstants.LATEST_TIMESTAMP) {
+      return TimestampConverter.hbase2bigtable(cell.getTimestamp());
+    }
+    return currentTimestampMicros;
+  }
+
+  private void checkKeyValueSize(int rowLength, int familySize, Cell cell) {
+    // Since we are not using the interface involving KeyValues, we reconstruct how big they would be.
+    // 20 bytes for metadata plus the length of all the elements.
+    int keyValueSize =
+        (20 + rowLength + familySize + cell.getQualifierLength() + cell.getValueLength());
+    if (maxKeyValueSize > 0 && keyValueSize > maxKeyValueSize) {
+      throw new IllegalArgumentException("KeyValue size too large");
+    }
+  }
+
+  private ByteString toByteString(byte[] array, int offset, int length) {
+    return zeroCopy
+        ? ByteStringer.wrap(array, offset, length)
+        : ByteString.copyFrom(array, offset, length);
+  }
+
+  /**
+   * Gets the cached {@link ByteString} of a column family. The cache owns a copy of the name, so
+   * it is not affected by later changes to the caller's array.
+   */
+  private ByteString getFamily(byte[] family) {
+    ByteString familyString = familyCache.get(ByteBuffer.wrap(family));
+    if (familyString == null) {
+      byte[] copy = family.clone();
+      familyString = ByteStringer.wrap(copy);
+      if (familyCache.size() < MAX_CACHED_FAMILIES) {
+        familyCache.putIfAbsent(ByteBuffer.wrap(copy), familyString);
+      }
+    }
+    return familyString;
+  }
+
   /**
    * <p>adapt.</p>
    *
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters.filters;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.AbstractClientScanner;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.Filter.ReturnCode;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.cloud.bigtable.config.Logger;
+
+/**
+ * A {@link ResultScanner} that evaluates an HBase {@link Filter} against the {@link Result}s of
+ * another {@link ResultScanner}, the way an HBase region server would. This is used for the parts
+ * of a filter that can not be adapted to a {@link com.google.bigtable.v2.RowFilter}, such as
+ * custom {@link Filter} subclasses. The filter sees the cells that were returned by Cloud
+ * Bigtable, after the server side part of the filter was applied.
+ *
+ * @author sduskis
+ * @version $Id: $Id
+ */
+public class ClientSideFilterResultScanner extends AbstractClientScanner {
+
+  /** Constant <code>LOG</code> */
+  protected static final Logger LOG = new Logger(ClientSideFilterResultScanner.class);
+
+  // HBase 2 filters implement filterCell(Cell) and filterRowKey(Cell), which don't exist in
+  // HBase 1. Use them when they're available, since the HBase 1 methods are not called in HBase 2.
+  private static final Method FILTER_CELL_METHOD = getFilterMethod("filterCell");
+  private static final Method FILTER_ROW_KEY_METHOD = getFilterMethod("filterRowKey");
+
+  private static Method getFilterMethod(String name) {
+    try {
+      return Filter.class.getMethod(name, Cell.class);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  private final ResultScanner delegate;
+  private final Filter filter;
+  private final int limit;
+  private int rowCount = 0;
+  private boolean done = false;
+
+  /**
+   * <p>Constructor for ClientSideFilterResultScanner.</p>
+   *
+   * @param delegate the {@link ResultScanner} with the rows from Cloud Bigtable.
+   * @param filter the {@link Filter} to evaluate. A copy is used if the filter can be
+   *          serialized, so that stateful filters such as {@link
+   *          org.apache.hadoop.hbase.filter.PageFilter} start fresh for every scan.
+   * @param limit the maximum number of rows to return, or a non positive number for no limit.
+   */
+  public ClientSideFilterResultScanner(ResultScanner delegate, Filter filter, int limit) {
+    this.delegate = delegate;
+    this.filter = copy(filter);
+    this.limit = limit;
+  }
+
+  /**
+   * Copies a {@link Filter} through its serialization, the same way that HBase sends filters to
+   * the region servers.
+   */
+  private static Filter copy(Filter filter) {
+    try {
+      Method parseFrom = filter.getClass().getMethod("parseFrom", byte[].class);
+      return (Filter) parseFrom.invoke(null, (Object) filter.toByteArray());
+    } catch (Exception e) {
+      LOG.debug("Could not copy %s, using it directly.", filter.getClass().getName());
+      return filter;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Result next() throws IOException {
+    while (!done) {
+      if ((limit > 0 && rowCount >= limit) || filter.filterAllRemaining()) {
+        done = true;
+        break;
+      }
+      Result result = delegate.next();
+      if (result == null) {
+        done = true;
+        break;
+      }
+      Result filtered = filterRow(result);
+      if (filtered != null) {
+        rowCount++;
+        return filtered;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Evaluates the filter against a single row.
+   *
+   * @return the remaining cells of the row, or null if the row was filtered out.
+   */
+  Result filterRow(Result result) throws IOException {
+    Cell[] cells = result.rawCells();
+    if (cells == null || cells.length == 0) {
+      return null;
+    }
+    filter.reset();
+    if (filterRowKey(cells[0]) || filter.filterAllRemaining()) {
+      return null;
+    }
+    List<Cell> kept = new ArrayList<>(cells.length);
+    Cell skipColumn = null;
+    Cell hint = null;
+    cellLoop:
+    for (Cell cell : cells) {
+      if (skipColumn != null && isSameColumn(skipColumn, cell)) {
+        continue;
+      }
+      skipColumn = null;
+      if (hint != null && compare(cell, hint) < 0) {
+        continue;
+      }
+      hint = null;
+      ReturnCode returnCode = filterCell(cell);
+      switch (returnCode) {
+      case INCLUDE:
+        kept.add(filter.transformCell(cell));
+        break;
+      case INCLUDE_AND_NEXT_COL:
+        kept.add(filter.transformCell(cell));
+        skipColumn = cell;
+        break;
+      case INCLUDE_AND_SEEK_NEXT_ROW:
+        kept.add(filter.transformCell(cell));
+        break cellLoop;
+      case SKIP:
+        break;
+      case NEXT_COL:
+        skipColumn = cell;
+        break;
+      case SEEK_NEXT_USING_HINT:
+        hint = filter.getNextCellHint(cell);
+        if (hint == null) {
+          skipColumn = cell;
+        }
+        break;
+      case NEXT_ROW:
+        break cellLoop;
+      default:
+        throw new IllegalStateException("Unknown filter return code: " + returnCode);
+      }
+    }
+    if (filter.hasFilterRow()) {
+      filter.filterRowCells(kept);
+    }
+    // Like a region server, don't call filterRow() for rows without cells, so that filters such as
+    // PageFilter don't count them.
+    if (kept.isEmpty() || filter.filterRow()) {
+      return null;
+    }
+    return Result.create(kept);
+  }
+
+  private boolean filterRowKey(Cell cell) throws IOException {
+    if (FILTER_ROW_KEY_METHOD != null) {
+      return (Boolean) invoke(FILTER_ROW_KEY_METHOD, cell);
+    }
+    return filter.filterRowKey(cell.getRowArray(), cell.getRowOffset(), cell.getRowLength());
+  }
+
+  @SuppressWarnings("deprecation")
+  private ReturnCode filterCell(Cell cell) throws IOException {
+    if (FILTER_CELL_METHOD != null) {
+      return (ReturnCode) invoke(FILTER_CELL_METHOD, cell);
+    }
+    return filter.filterKeyValue(cell);
+  }
+
+  private Object invoke(Method method, Cell cell) throws IOException {
+    try {
+      return method.invoke(filter, cell);
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Could not evaluate " + filter.getClass().getName(), e.getCause());
+    } catch (IllegalAccessException e) {
+      throw new IOException("Could not evaluate " + filter.getClass().getName(), e);
+    }
+  }
+
+  private static boolean isSameColumn(Cell cell1, Cell cell2) {
+    return Bytes.equals(cell1.getFamilyArray(), cell1.getFamilyOffset(), cell1.getFamilyLength(),
+        cell2.getFamilyArray(), cell2.getFamilyOffset(), cell2.getFamilyLength())
+        && Bytes.equals(cell1.getQualifierArray(), cell1.getQualifierOffset(),
+          cell1.getQualifierLength(), cell2.getQualifierArray(), cell2.getQualifierOffset(),
+          cell2.getQualifierLength());
+  }
+
+  /**
+   * Compares two cells of the same row in scan order: family, qualifier, then newest first.
+   */
+  private static int compare(Cell cell1, Cell cell2) {
+    int result = Bytes.compareTo(cell1.getRowArray(), cell1.getRowOffset(), cell1.getRowLength(),
+      cell2.getRowArray(), cell2.getRowOffset(), cell2.getRowLength());
+    if (result != 0) {
+      return result;
+    }
+    result = Bytes.compareTo(cell1.getFamilyArray(), cell1.getFamilyOffset(),
+      cell1.getFamilyLength(), cell2.getFamilyArray(), cell2.getFamilyOffset(),
+      cell2.getFamilyLength());
+    if (result != 0) {
+      return result;
+    }
+    result = Bytes.compareTo(cell1.getQualifierArray(), cell1.getQualifierOffset(),
+      cell1.getQualifierLength(), cell2.getQualifierArray(), cell2.getQualifierOffset(),
+      cell2.getQualifierLength());
+    if (result != 0) {
+      return result;
+    }
+    return Long.compare(cell2.getTimestamp(), cell1.getTimestamp());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() {
+    done = true;
+    delegate.close();
+  }
+
+  /**
+   * This is an HBase concept that was added in HBase 1.0.2.  It's not relevant for Cloud
+   * Bigtable.  It will not be called from the HBase code and should not be called by the user.
+   */
+  // Developers Note: Do not add @Override so that this can remain backwards compatible with
+  // 1.0.1.
+  public boolean renewLease() {
+    throw new UnsupportedOperationException("renewLease");
+  }
+}
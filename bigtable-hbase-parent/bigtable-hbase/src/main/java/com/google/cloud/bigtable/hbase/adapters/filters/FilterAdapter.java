@@ -205,6 +205,95 @@ public class FilterAdapter {
     }
   }
 
+  /**
+   * Splits a filter into a part that can be adapted to a {@link RowFilter}, and a part that has to
+   * be evaluated on the client. The conjuncts of {@link FilterList.Operator#MUST_PASS_ALL}
+   * FilterLists are split individually. Any other unsupported filter, including a
+   * {@link FilterList.Operator#MUST_PASS_ONE} FilterList with an unsupported member, is evaluated on
+   * the client as a whole. If anything is evaluated on the client, {@link PageFilter}s are moved to
+   * the client as well, since they must only count the rows that match all of the filters.
+   *
+   * <p>In HBase, every member of a FilterList sees the original cells. A MUST_PASS_ALL FilterList
+   * that contains a filter that transforms or limits cells, such as a {@link KeyOnlyFilter} or a
+   * {@link ColumnPaginationFilter}, is therefore evaluated on the client as a whole, so that its
+   * client side members don't see cells that were already changed by the server.
+   *
+   * @param scan a {@link org.apache.hadoop.hbase.client.Scan} object.
+   * @param filter a {@link org.apache.hadoop.hbase.filter.Filter} object.
+   * @return a {@link FilterSplit}.
+   */
+  public FilterSplit splitFilter(Scan scan, Filter filter) {
+    if (isFilterSupported(scan, filter)) {
+      return new FilterSplit(filter, null);
+    }
+    List<Filter> serverFilters = new ArrayList<>();
+    List<Filter> clientFilters = new ArrayList<>();
+    collectSplitFilters(scan, filter, serverFilters, clientFilters);
+    return new FilterSplit(combine(serverFilters), combine(clientFilters));
+  }
+
+  private void collectSplitFilters(Scan scan, Filter filter, List<Filter> serverFilters,
+      List<Filter> clientFilters) {
+    if (filter instanceof FilterList
+        && ((FilterList) filter).getOperator() == FilterList.Operator.MUST_PASS_ALL
+        && !containsCellTransformingFilter(filter)) {
+      for (Filter subFilter : ((FilterList) filter).getFilters()) {
+        collectSplitFilters(scan, subFilter, serverFilters, clientFilters);
+      }
+    } else if (!(filter instanceof PageFilter) && isFilterSupported(scan, filter)) {
+      serverFilters.add(filter);
+    } else {
+      clientFilters.add(filter);
+    }
+  }
+
+  /**
+   * Filters that change the cells of a row, or depend on the cells that other filters have seen.
+   * Splitting them from the rest of a FilterList changes the results.
+   */
+  private static final List<Class<? extends Filter>> CELL_TRANSFORMING_FILTERS =
+      ImmutableList.<Class<? extends Filter>> of(
+        KeyOnlyFilter.class,
+        FirstKeyOnlyFilter.class,
+        ColumnPaginationFilter.class,
+        ColumnCountGetFilter.class,
+        WhileMatchFilter.class,
+        SingleColumnValueExcludeFilter.class);
+
+  private static boolean containsCellTransformingFilter(Filter filter) {
+    if (filter instanceof FilterList) {
+      for (Filter subFilter : ((FilterList) filter).getFilters()) {
+        if (containsCellTransformingFilter(subFilter)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    for (Class<? extends Filter> filterClass : CELL_TRANSFORMING_FILTERS) {
+      if (filterClass.isInstance(filter)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isFilterSupported(Scan scan, Filter filter) {
+    List<FilterSupportStatus> filterSupportStatuses = new ArrayList<>();
+    collectUnsupportedStatuses(new FilterAdapterContext(scan, null), filter, filterSupportStatuses);
+    return filterSupportStatuses.isEmpty();
+  }
+
+  private static Filter combine(List<Filter> filters) {
+    switch (filters.size()) {
+    case 0:
+      return null;
+    case 1:
+      return filters.get(0);
+    default:
+      return new FilterList(FilterList.Operator.MUST_PASS_ALL, filters);
+    }
+  }
+
   public RangeSet<RowKeyWrapper> getIndexScanHint(Filter filter) {
     return getAdapterForFilterOrThrow(filter).getIndexScanHint(filter);
   }
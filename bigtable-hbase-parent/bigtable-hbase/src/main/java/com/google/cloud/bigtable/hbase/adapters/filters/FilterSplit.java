@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters.filters;
+
+import org.apache.hadoop.hbase.filter.Filter;
+
+/**
+ * The result of {@link FilterAdapter#splitFilter(org.apache.hadoop.hbase.client.Scan, Filter)}: a
+ * {@link Filter} that can be adapted to a {@link com.google.bigtable.v2.RowFilter}, and a
+ * {@link Filter} that has to be evaluated on the client. A row matches the original filter if it
+ * matches both.
+ *
+ * @author sduskis
+ * @version $Id: $Id
+ */
+public class FilterSplit {
+  private final Filter serverFilter;
+  private final Filter clientFilter;
+
+  FilterSplit(Filter serverFilter, Filter clientFilter) {
+    this.serverFilter = serverFilter;
+    this.clientFilter = clientFilter;
+  }
+
+  /**
+   * @return the part of the filter that can be sent to Cloud Bigtable, or null if there is none.
+   */
+  public Filter getServerFilter() {
+    return serverFilter;
+  }
+
+  /**
+   * @return the part of the filter that has to be evaluated on the client, or null if there is
+   *         none.
+   */
+  public Filter getClientFilter() {
+    return clientFilter;
+  }
+}
@@ -20,9 +20,11 @@ import static com.google.cloud.bigtable.data.v2.wrappers.Filters.FILTERS;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
-import com.google.cloud.bigtable.config.Logger;
 import org.apache.hadoop.hbase.filter.FuzzyRowFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.Pair;
@@ -33,17 +35,34 @@ import com.google.bigtable.v2.RowFilter;
 import com.google.cloud.bigtable.data.v2.wrappers.Filters.InterleaveFilter;
 import com.google.cloud.bigtable.hbase.adapters.read.ReaderExpressionHelper;
 import com.google.cloud.bigtable.hbase.adapters.read.ReaderExpressionHelper.QuoteMetaOutputStream;
+import com.google.cloud.bigtable.util.RowKeyUtil;
+import com.google.cloud.bigtable.util.RowKeyWrapper;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableRangeSet;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import com.google.protobuf.ByteString;
 
 /**
  * An adapter for {@link org.apache.hadoop.hbase.filter.FuzzyRowFilter}.
  *
+ * <p>Each fuzzy key is matched with a row key regular expression. In addition, the fixed leading
+ * bytes of each fuzzy key are used as an index scan hint, so that only the matching row ranges are
+ * read. A single fuzzy byte that is followed by more fixed bytes is enumerated into one range per
+ * possible value, as long as the number of ranges stays under {@link #MAX_RANGES_PER_KEY}.
+ *
  * @author sduskis
  * @version $Id: $Id
  */
 public class FuzzyRowFilterAdapter extends TypedFilterAdapterBase<FuzzyRowFilter> {
   private static final RowFilter ALL_VALUES_FILTER = FILTERS.pass().toProto();
 
+  /** The maximum number of row ranges that a single fuzzy key is expanded into. */
+  static final int MAX_RANGES_PER_KEY = 256;
+
+  private static final byte FIXED_MASK = -1;
+
   private static Field FUZZY_KEY_DATA_FIELD;
   private static Exception FUZZY_KEY_DATA_FIELD_EXCEPTION;
 
@@ -72,7 +91,6 @@ public class FuzzyRowFilterAdapter extends TypedFilterAdapterBase<FuzzyRowFilter
           createSingleRowFilter(
               pair.getFirst(), pair.getSecond()));
     }
-    new Logger(FuzzyRowFilterAdapter.class).error("Adapted: " + interleave.toProto());
     return interleave.toProto();
   }
 
@@ -81,7 +99,7 @@ public class FuzzyRowFilterAdapter extends TypedFilterAdapterBase<FuzzyRowFilter
         new ByteArrayOutputStream(key.length * 2);
     QuoteMetaOutputStream quotingStream = new QuoteMetaOutputStream(baos);
     for (int i = 0; i < mask.length; i++) {
-      if (mask[i] == -1) {
+      if (mask[i] == FIXED_MASK) {
         quotingStream.write(key[i]);
       } else {
         // Write unquoted to match any byte at this position:
@@ -108,6 +126,93 @@ public class FuzzyRowFilterAdapter extends TypedFilterAdapterBase<FuzzyRowFilter
     }
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public RangeSet<RowKeyWrapper> getIndexScanHint(FuzzyRowFilter filter) {
+    List<Pair<byte[], byte[]>> pairs;
+    try {
+      pairs = extractFuzzyRowFilterPairs(filter);
+    } catch (IOException e) {
+      // adapt() will fail with the same exception.
+      return ImmutableRangeSet.of(Range.<RowKeyWrapper> all());
+    }
+    if (pairs.isEmpty()) {
+      return ImmutableRangeSet.of(Range.<RowKeyWrapper> all());
+    }
+    TreeRangeSet<RowKeyWrapper> result = TreeRangeSet.create();
+    for (Pair<byte[], byte[]> pair : pairs) {
+      for (byte[] prefix : getFixedPrefixes(pair.getFirst(), pair.getSecond())) {
+        if (prefix.length == 0) {
+          return ImmutableRangeSet.of(Range.<RowKeyWrapper> all());
+        }
+        result.add(toRange(prefix));
+      }
+    }
+    return ImmutableRangeSet.copyOf(result);
+  }
+
+  /**
+   * Computes the row key prefixes that every row matching a fuzzy key starts with. The leading
+   * fixed bytes form the first prefix. If they are followed by a single fuzzy byte and then by more
+   * fixed bytes, the fuzzy byte is replaced by each of its 256 values, and the prefixes continue
+   * with the next fixed bytes.
+   *
+   * @return the prefixes, or a single empty prefix if the key starts with a fuzzy byte.
+   */
+  static List<byte[]> getFixedPrefixes(byte[] key, byte[] mask) {
+    if (key.length != mask.length) {
+      return Collections.singletonList(new byte[0]);
+    }
+    List<byte[]> prefixes = Collections.singletonList(new byte[0]);
+    int position = 0;
+    while (position < mask.length) {
+      int fixedEnd = position;
+      while (fixedEnd < mask.length && mask[fixedEnd] == FIXED_MASK) {
+        fixedEnd++;
+      }
+      prefixes = append(prefixes, key, position, fixedEnd);
+      if (fixedEnd == mask.length || fixedEnd == 0
+          || prefixes.size() * 256 > MAX_RANGES_PER_KEY
+          || fixedEnd + 1 >= mask.length || mask[fixedEnd + 1] != FIXED_MASK) {
+        // Only a fuzzy byte that is followed by a fixed byte narrows the ranges further.
+        break;
+      }
+      prefixes = enumerate(prefixes);
+      position = fixedEnd + 1;
+    }
+    return prefixes;
+  }
+
+  private static List<byte[]> append(List<byte[]> prefixes, byte[] key, int from, int to) {
+    if (from == to) {
+      return prefixes;
+    }
+    List<byte[]> result = new ArrayList<>(prefixes.size());
+    for (byte[] prefix : prefixes) {
+      result.add(Bytes.add(prefix, Arrays.copyOfRange(key, from, to)));
+    }
+    return result;
+  }
+
+  private static List<byte[]> enumerate(List<byte[]> prefixes) {
+    List<byte[]> result = new ArrayList<>(prefixes.size() * 256);
+    for (byte[] prefix : prefixes) {
+      for (int value = 0; value < 256; value++) {
+        result.add(Bytes.add(prefix, new byte[] { (byte) value }));
+      }
+    }
+    return result;
+  }
+
+  private static Range<RowKeyWrapper> toRange(byte[] prefix) {
+    byte[] end = RowKeyUtil.calculateTheClosestNextRowKeyForPrefix(prefix);
+    RowKeyWrapper start = new RowKeyWrapper(ByteString.copyFrom(prefix));
+    if (end.length == 0) {
+      return Range.atLeast(start);
+    }
+    return Range.closedOpen(start, new RowKeyWrapper(ByteString.copyFrom(end)));
+  }
+
   /** {@inheritDoc} */
   @Override
   public FilterSupportStatus isFilterSupported(
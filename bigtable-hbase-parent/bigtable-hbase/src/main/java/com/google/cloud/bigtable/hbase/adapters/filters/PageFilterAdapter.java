@@ -46,6 +46,10 @@ public class PageFilterAdapter extends TypedFilterAdapterBase<PageFilter> {
     context.getReadHooks().composePreSendHook(new Function<ReadRowsRequest, ReadRowsRequest>() {
       @Override
       public ReadRowsRequest apply(ReadRowsRequest request) {
+        // A Scan limit may have already set a smaller rows limit.
+        if (request.getRowsLimit() > 0 && request.getRowsLimit() <= pageSize) {
+          return request;
+        }
         return request.toBuilder().setRowsLimit(pageSize).build();
       }
     });
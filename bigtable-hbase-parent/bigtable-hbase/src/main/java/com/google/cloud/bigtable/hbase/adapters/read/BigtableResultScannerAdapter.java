@@ -75,6 +75,24 @@ public class BigtableResultScannerAdapter<T> {
         return rowAdapter.adaptResponse(row);
       }
 
+      /**
+       * Reads the rows that have already arrived in bulk, rather than one {@link #next()} at a time.
+       */
+      @Override
+      public Result[] next(int nbRows) throws IOException {
+        T[] rows = bigtableResultScanner.next(nbRows);
+        if (rows.length < nbRows) {
+          // Fewer rows than requested signals EOF.
+          closeSpan();
+        }
+        Result[] results = new Result[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+          results[i] = rowAdapter.adaptResponse(rows[i]);
+        }
+        rowCount += rows.length;
+        return results;
+      }
+
       @Override
       public void close() {
         try {
@@ -57,9 +57,8 @@ public class GetAdapter implements ReadOperationAdapter<Get> {
   @Override
   public ReadRowsRequest.Builder adapt(Get operation, ReadHooks readHooks) {
     Scan operationAsScan = new Scan(addKeyOnlyFilter(operation));
-    scanAdapter.throwIfUnsupportedScan(operationAsScan);
     return ReadRowsRequest.newBuilder()
-        .setFilter(scanAdapter.buildFilter(operationAsScan, readHooks))
+        .setFilter(scanAdapter.checkAndBuildFilter(operationAsScan, readHooks))
         .setRows(RowSet.newBuilder().addRowKeys(ByteString.copyFrom(operation.getRow())));
   }
 
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters.read;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterBase;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.SkipFilter;
+import org.apache.hadoop.hbase.filter.WhileMatchFilter;
+
+import com.google.bigtable.v2.ReadRowsRequest;
+import com.google.bigtable.v2.RowFilter;
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.protobuf.ByteString;
+
+/**
+ * An LRU cache of the {@link RowFilter}s built by {@link ScanAdapter}. Services often send the
+ * same filter shape over and over, and adapting it means walking the HBase {@link Filter} tree,
+ * quoting regular expressions and building protos. The cache is keyed on a fingerprint of
+ * everything that {@link ScanAdapter#buildFilter(Scan, ReadHooks)} reads from the {@link Scan}:
+ * the serialized {@link Filter} tree, the requested columns, the time range and the max versions.
+ *
+ * <p>Filters may also register {@link ReadHooks}, for example to set a rows limit. Those hooks are
+ * recorded along with the {@link RowFilter}, and are replayed on every cache hit.
+ *
+ * <p>Filter trees that contain a {@link Filter} without its own serialization, such as a custom
+ * {@link FilterBase} subclass, are never cached, since two different instances would have the
+ * same fingerprint.
+ *
+ * @author sduskis
+ * @version $Id: $Id
+ */
+public class RowFilterCache {
+
+  /** The default maximum number of cached filters. */
+  public static final int DEFAULT_MAX_SIZE = 1000;
+
+  private static final ConcurrentMap<Class<?>, Boolean> SERIALIZABLE_CLASSES =
+      new ConcurrentHashMap<>();
+
+  /**
+   * A {@link RowFilter} and the pre-send hooks that were registered while it was built.
+   */
+  private static class Entry {
+    private final RowFilter filter;
+    private final List<Function<ReadRowsRequest, ReadRowsRequest>> hooks;
+
+    Entry(RowFilter filter, List<Function<ReadRowsRequest, ReadRowsRequest>> hooks) {
+      this.filter = filter;
+      this.hooks = hooks;
+    }
+  }
+
+  /**
+   * A {@link ReadHooks} that passes hooks on to another {@link ReadHooks}, and remembers them.
+   */
+  static class RecordingReadHooks implements ReadHooks {
+    private final ReadHooks delegate;
+    private final List<Function<ReadRowsRequest, ReadRowsRequest>> hooks = new ArrayList<>();
+
+    RecordingReadHooks(ReadHooks delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void composePreSendHook(Function<ReadRowsRequest, ReadRowsRequest> newHook) {
+      delegate.composePreSendHook(newHook);
+      hooks.add(newHook);
+    }
+
+    @Override
+    public ReadRowsRequest applyPreSendHook(ReadRowsRequest readRowsRequest) {
+      return delegate.applyPreSendHook(readRowsRequest);
+    }
+  }
+
+  private final Cache<ByteString, Entry> cache;
+
+  /**
+   * <p>Constructor for RowFilterCache.</p>
+   *
+   * @param maxSize the maximum number of cached filters. 0 disables the cache.
+   */
+  public RowFilterCache(int maxSize) {
+    this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+  }
+
+  /**
+   * Computes the cache key of a {@link Scan}.
+   *
+   * @param scan a {@link Scan}.
+   * @return the fingerprint, or null if the {@link Scan} can not be cached.
+   */
+  public static ByteString fingerprint(Scan scan) {
+    Filter filter = scan.getFilter();
+    if (filter != null && !isSerializable(filter)) {
+      return null;
+    }
+    ByteString.Output output = ByteString.newOutput();
+    DataOutputStream data = new DataOutputStream(output);
+    try {
+      data.writeInt(scan.getMaxVersions());
+      data.writeLong(scan.getTimeRange().getMin());
+      data.writeLong(scan.getTimeRange().getMax());
+      for (Map.Entry<byte[], NavigableSet<byte[]>> entry : scan.getFamilyMap().entrySet()) {
+        writeBytes(data, entry.getKey());
+        NavigableSet<byte[]> qualifiers = entry.getValue();
+        data.writeInt(qualifiers == null ? -1 : qualifiers.size());
+        if (qualifiers != null) {
+          for (byte[] qualifier : qualifiers) {
+            writeBytes(data, qualifier);
+          }
+        }
+      }
+      if (filter != null) {
+        data.writeUTF(filter.getClass().getName());
+        writeBytes(data, filter.toByteArray());
+      }
+      data.flush();
+    } catch (IOException e) {
+      return null;
+    }
+    return output.toByteString();
+  }
+
+  private static void writeBytes(DataOutputStream data, byte[] bytes) throws IOException {
+    data.writeInt(bytes.length);
+    data.write(bytes);
+  }
+
+  /**
+   * @return true if every {@link Filter} in the tree has its own serialization.
+   */
+  private static boolean isSerializable(Filter filter) {
+    Class<?> filterClass = filter.getClass();
+    Boolean serializable = SERIALIZABLE_CLASSES.get(filterClass);
+    if (serializable == null) {
+      try {
+        Class<?> declaringClass = filterClass.getMethod("toByteArray").getDeclaringClass();
+        serializable = declaringClass != Filter.class && declaringClass != FilterBase.class;
+      } catch (NoSuchMethodException e) {
+        serializable = false;
+      }
+      SERIALIZABLE_CLASSES.put(filterClass, serializable);
+    }
+    if (!serializable) {
+      return false;
+    }
+    if (filter instanceof FilterList) {
+      for (Filter subFilter : ((FilterList) filter).getFilters()) {
+        if (!isSerializable(subFilter)) {
+          return false;
+        }
+      }
+    } else if (filter instanceof SkipFilter) {
+      return isSerializable(((SkipFilter) filter).getFilter());
+    } else if (filter instanceof WhileMatchFilter) {
+      return isSerializable(((WhileMatchFilter) filter).getFilter());
+    }
+    return true;
+  }
+
+  /**
+   * Looks up a cached {@link RowFilter}, and replays its hooks on {@code hooks}.
+   *
+   * @param key the fingerprint of the {@link Scan}.
+   * @param hooks the {@link ReadHooks} of the current request.
+   * @return the cached {@link RowFilter}, or null if there is none.
+   */
+  public RowFilter get(ByteString key, ReadHooks hooks) {
+    Entry entry = cache.getIfPresent(key);
+    if (entry == null) {
+      return null;
+    }
+    for (Function<ReadRowsRequest, ReadRowsRequest> hook : entry.hooks) {
+      hooks.composePreSendHook(hook);
+    }
+    return entry.filter;
+  }
+
+  /**
+   * Caches a {@link RowFilter} that was built with a {@link RecordingReadHooks}.
+   */
+  void put(ByteString key, RowFilter filter, RecordingReadHooks hooks) {
+    List<Function<ReadRowsRequest, ReadRowsRequest>> recorded = hooks.hooks.isEmpty()
+        ? Collections.<Function<ReadRowsRequest, ReadRowsRequest>> emptyList()
+        : new ArrayList<>(hooks.hooks);
+    cache.put(key, new Entry(filter, recorded));
+  }
+
+  /**
+   * @return the number of cached filters.
+   */
+  public long size() {
+    return cache.size();
+  }
+}
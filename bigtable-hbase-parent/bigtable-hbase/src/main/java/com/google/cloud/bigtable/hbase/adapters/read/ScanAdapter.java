@@ -55,6 +55,7 @@ public class ScanAdapter implements ReadOperationAdapter<Scan> {
 
   private final FilterAdapter filterAdapter;
   private final RowRangeAdapter rowRangeAdapter;
+  private final RowFilterCache filterCache;
 
   /**
    * <p>Constructor for ScanAdapter.</p>
@@ -62,8 +63,21 @@ public class ScanAdapter implements ReadOperationAdapter<Scan> {
    * @param filterAdapter a {@link com.google.cloud.bigtable.hbase.adapters.filters.FilterAdapter} object.
    */
   public ScanAdapter(FilterAdapter filterAdapter, RowRangeAdapter rowRangeAdapter) {
+    this(filterAdapter, rowRangeAdapter, new RowFilterCache(RowFilterCache.DEFAULT_MAX_SIZE));
+  }
+
+  /**
+   * <p>Constructor for ScanAdapter.</p>
+   *
+   * @param filterAdapter a {@link com.google.cloud.bigtable.hbase.adapters.filters.FilterAdapter} object.
+   * @param rowRangeAdapter a {@link RowRangeAdapter} object.
+   * @param filterCache a {@link RowFilterCache} for the filters built by this adapter.
+   */
+  public ScanAdapter(FilterAdapter filterAdapter, RowRangeAdapter rowRangeAdapter,
+      RowFilterCache filterCache) {
     this.filterAdapter = filterAdapter;
     this.rowRangeAdapter = rowRangeAdapter;
+    this.filterCache = filterCache;
   }
 
   /**
@@ -75,13 +89,38 @@ public class ScanAdapter implements ReadOperationAdapter<Scan> {
     if (scan.getFilter() != null) {
       filterAdapter.throwIfUnsupportedFilter(scan, scan.getFilter());
     }
+    throwIfUnsupportedMaxResults(scan);
+  }
 
+  private static void throwIfUnsupportedMaxResults(Scan scan) {
     if (scan.getMaxResultsPerColumnFamily() != UNSET_MAX_RESULTS_PER_COLUMN_FAMILY) {
       throw new UnsupportedOperationException(
           "Limiting of max results per column family is not supported.");
     }
   }
 
+  /**
+   * Checks that the scan is supported, and builds its {@link RowFilter}. This is equivalent to
+   * {@link #throwIfUnsupportedScan(Scan)} followed by {@link #buildFilter(Scan, ReadHooks)}, but
+   * skips both the check and the adaptation when the filter is in the {@link RowFilterCache}.
+   *
+   * @param scan a {@link org.apache.hadoop.hbase.client.Scan} object.
+   * @param hooks a {@link com.google.cloud.bigtable.hbase.adapters.read.ReadHooks} object.
+   * @return a {@link com.google.bigtable.v2.RowFilter} object.
+   */
+  public RowFilter checkAndBuildFilter(Scan scan, ReadHooks hooks) {
+    throwIfUnsupportedMaxResults(scan);
+    ByteString key = RowFilterCache.fingerprint(scan);
+    if (key != null) {
+      RowFilter cached = filterCache.get(key, hooks);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    throwIfUnsupportedScan(scan);
+    return buildFilter(scan, hooks, key);
+  }
+
   /**
    * Given a Scan, build a RowFilter that include matching columns
    *
@@ -90,6 +129,27 @@ public class ScanAdapter implements ReadOperationAdapter<Scan> {
    * @return a {@link com.google.bigtable.v2.RowFilter} object.
    */
   public RowFilter buildFilter(Scan scan, ReadHooks hooks) {
+    ByteString key = RowFilterCache.fingerprint(scan);
+    if (key != null) {
+      RowFilter cached = filterCache.get(key, hooks);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    return buildFilter(scan, hooks, key);
+  }
+
+  private RowFilter buildFilter(Scan scan, ReadHooks hooks, ByteString key) {
+    if (key == null) {
+      return createFilter(scan, hooks);
+    }
+    RowFilterCache.RecordingReadHooks recordingHooks = new RowFilterCache.RecordingReadHooks(hooks);
+    RowFilter filter = createFilter(scan, recordingHooks);
+    filterCache.put(key, filter, recordingHooks);
+    return filter;
+  }
+
+  private RowFilter createFilter(Scan scan, ReadHooks hooks) {
     ChainFilter chain = FILTERS.chain();
     Optional<Filters.Filter> familyFilter = createColumnFamilyFilter(scan);
     if (familyFilter.isPresent()) {
@@ -115,14 +175,18 @@ public class ScanAdapter implements ReadOperationAdapter<Scan> {
   /** {@inheritDoc} */
   @Override
   public ReadRowsRequest.Builder adapt(Scan scan, ReadHooks readHooks) {
-    throwIfUnsupportedScan(scan);
+    RowFilter filter = checkAndBuildFilter(scan, readHooks);
 
     RowSet rowSet = getRowSet(scan);
     rowSet = narrowRowSet(rowSet, scan.getFilter());
 
-    return ReadRowsRequest.newBuilder()
+    ReadRowsRequest.Builder builder = ReadRowsRequest.newBuilder()
         .setRows(rowSet)
-        .setFilter(buildFilter(scan, readHooks));
+        .setFilter(filter);
+    if (scan.getLimit() > 0) {
+      builder.setRowsLimit(scan.getLimit());
+    }
+    return builder;
   }
 
   private RowSet getRowSet(Scan scan) {
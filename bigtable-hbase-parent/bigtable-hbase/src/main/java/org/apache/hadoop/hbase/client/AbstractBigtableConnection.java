@@ -20,6 +20,7 @@ import com.google.cloud.bigtable.config.BigtableOptions;
 import com.google.cloud.bigtable.config.Logger;
 import com.google.cloud.bigtable.grpc.BigtableSession;
 import com.google.cloud.bigtable.grpc.BigtableTableAdminClient;
+import com.google.cloud.bigtable.grpc.BigtableTableName;
 import com.google.cloud.bigtable.hbase.BigtableBufferedMutator;
 import com.google.cloud.bigtable.hbase.BigtableOptionsFactory;
 import com.google.cloud.bigtable.hbase.BigtableRegionLocator;
@@ -226,7 +227,10 @@ public abstract class AbstractBigtableConnection implements Connection, Closeabl
     RegionLocator locator = getCachedLocator(tableName);
 
     if (locator == null) {
-      locator = new BigtableRegionLocator(tableName, getOptions(), getSession().getDataClient()) {
+      BigtableTableName bigtableTableName =
+          getOptions().getInstanceName().toTableName(tableName.getNameAsString());
+      locator = new BigtableRegionLocator(tableName, getOptions(),
+          getSession().getKeyRangeIndex(bigtableTableName)) {
 
         @Override
         public SampledRowKeysAdapter getSampledRowKeysAdapter(TableName tableName,
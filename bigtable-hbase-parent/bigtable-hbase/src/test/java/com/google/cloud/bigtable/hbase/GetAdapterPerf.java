@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import com.google.cloud.bigtable.hbase.adapters.filters.FilterAdapter;
+import com.google.cloud.bigtable.hbase.adapters.read.DefaultReadHooks;
+import com.google.cloud.bigtable.hbase.adapters.read.GetAdapter;
+import com.google.cloud.bigtable.hbase.adapters.read.RowFilterCache;
+import com.google.cloud.bigtable.hbase.adapters.read.RowRangeAdapter;
+import com.google.cloud.bigtable.hbase.adapters.read.ScanAdapter;
+
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.ColumnPrefixFilter;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+import org.apache.hadoop.hbase.filter.ValueFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+
+/**
+ * Simple microbenchmark for adapting a {@link Get} with and without the {@link RowFilterCache}.
+ */
+public class GetAdapterPerf {
+  private static final byte[] FAMILY = Bytes.toBytes("Family1");
+
+  static int count = 1_000_000;
+
+  public static void main(String[] args) throws IOException {
+    FilterAdapter filterAdapter = FilterAdapter.buildAdapter();
+    GetAdapter uncached = new GetAdapter(
+        new ScanAdapter(filterAdapter, new RowRangeAdapter(), new RowFilterCache(0)));
+    GetAdapter cached = new GetAdapter(new ScanAdapter(filterAdapter, new RowRangeAdapter(),
+        new RowFilterCache(RowFilterCache.DEFAULT_MAX_SIZE)));
+
+    Get get = new Get(Bytes.toBytes("rowKey0"));
+    get.addColumn(FAMILY, Bytes.toBytes("qualifier1"));
+    get.addColumn(FAMILY, Bytes.toBytes("qualifier2"));
+    get.setTimeRange(0, 1000);
+    get.setFilter(new FilterList(
+        new ColumnPrefixFilter(Bytes.toBytes("qual")),
+        new ValueFilter(CompareOp.NOT_EQUAL, new BinaryComparator(Bytes.toBytes("value.*"))),
+        new SingleColumnValueFilter(FAMILY, Bytes.toBytes("qualifier1"), CompareOp.EQUAL,
+            Bytes.toBytes("[a-z]+"))));
+
+    for (int i = 0; i < 10; i++) {
+      getAdapterPerf("uncached", uncached, get);
+      getAdapterPerf("cached", cached, get);
+    }
+  }
+
+  private static void getAdapterPerf(String name, GetAdapter adapter, Get get) {
+    System.gc();
+    long start = System.nanoTime();
+    for (int i = 0; i < count; i++) {
+      adapter.adapt(get, new DefaultReadHooks()).build();
+    }
+    long time = System.nanoTime() - start;
+    System.out.println(
+        String.format("%s: %,d gets adapted in %,d ms.  %,d nanos per get.", name, count,
+            time / 1000000, time / count));
+  }
+}
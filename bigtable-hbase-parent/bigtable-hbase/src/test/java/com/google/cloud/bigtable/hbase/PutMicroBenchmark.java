@@ -38,6 +38,8 @@ import io.grpc.MethodDescriptor;
 import io.grpc.Status;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.security.GeneralSecurityException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -49,6 +51,8 @@ public class PutMicroBenchmark {
   private final static int REAL_CHANNEL_PUT_COUNT = 100;
   private final static int FAKE_CHANNEL_PUT_COUNT = 100_000;
   private static final int VALUE_SIZE = 100;
+  private static final int LARGE_VALUE_SIZE = 10 * 1024;
+  private static final int ADAPT_PUT_COUNT = 100_000;
   private static BigtableOptions options;
 
   public static void main(String[] args) throws Exception {
@@ -67,6 +71,8 @@ public class PutMicroBenchmark {
         new HBaseRequestAdapter(options, TableName.valueOf(tableId), new Configuration(false));
 
     testCreatePuts(10_000);
+    testAdaptPuts(TableName.valueOf(tableId), VALUE_SIZE);
+    testAdaptPuts(TableName.valueOf(tableId), LARGE_VALUE_SIZE);
 
     Put put = createPut();
     System.out.println(String.format("Put size: %d, proto size: %d", put.heapSize(),
@@ -118,6 +124,50 @@ public class PutMicroBenchmark {
     return put;
   }
 
+  /**
+   * Compares the throughput and allocation of adapting {@link Put}s with and without
+   * {@link BigtableOptionsFactory#BIGTABLE_ZERO_COPY_PUTS_ENABLE_KEY}.
+   */
+  private static void testAdaptPuts(TableName tableName, int valueSize) {
+    DataGenerationHelper dataHelper = new DataGenerationHelper();
+    Put put = createPuts(dataHelper.randomData("testrow-"),
+      dataHelper.randomData("testQualifier-", NUM_CELLS),
+      dataHelper.randomData("testValue-", NUM_CELLS, valueSize));
+
+    for (boolean zeroCopy : new boolean[] { false, true }) {
+      Configuration config = new Configuration(false);
+      config.setBoolean(BigtableOptionsFactory.BIGTABLE_ZERO_COPY_PUTS_ENABLE_KEY, zeroCopy);
+      HBaseRequestAdapter adapter = new HBaseRequestAdapter(options, tableName, config);
+      String key = String.format("Adapted %d byte values, zero copy: %s", valueSize, zeroCopy);
+      for (int j = 0; j < 5; j++) {
+        long startBytes = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ADAPT_PUT_COUNT; i++) {
+          adapter.adaptEntry(put);
+        }
+        print(key, start, ADAPT_PUT_COUNT);
+        long allocated = getAllocatedBytes() - startBytes;
+        if (startBytes >= 0) {
+          System.out.printf("%s, allocated %,d bytes/put", key, allocated / ADAPT_PUT_COUNT);
+          System.out.println();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the number of bytes allocated by the current thread, or -1 if the JVM does not report
+   *         it.
+   */
+  private static long getAllocatedBytes() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
   protected static void run(final HBaseRequestAdapter hbaseAdapter, final Put put, ChannelPool cp,
       final int putCount) throws InterruptedException {
     final BigtableDataClient client = new BigtableDataGrpcClient(cp,
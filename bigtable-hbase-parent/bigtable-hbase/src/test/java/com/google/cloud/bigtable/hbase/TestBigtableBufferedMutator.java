@@ -18,13 +18,19 @@ package com.google.cloud.bigtable.hbase;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.TableName;
@@ -35,24 +41,34 @@ import org.apache.hadoop.hbase.client.Increment;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.google.bigtable.v2.MutateRowRequest;
 import com.google.bigtable.v2.MutateRowResponse;
 import com.google.bigtable.v2.MutateRowsRequest;
 import com.google.bigtable.v2.ReadModifyWriteRowRequest;
+import com.google.bigtable.v2.ReadModifyWriteRowResponse;
 import com.google.cloud.bigtable.config.BigtableOptions;
 import com.google.cloud.bigtable.grpc.BigtableSession;
 import com.google.cloud.bigtable.grpc.BigtableTableName;
 import com.google.cloud.bigtable.grpc.async.AsyncExecutor;
 import com.google.cloud.bigtable.grpc.async.BulkMutation;
+import com.google.cloud.bigtable.grpc.async.ResourceLimiter;
+import com.google.cloud.bigtable.grpc.async.ResourceLimiterStats;
 import com.google.cloud.bigtable.hbase.adapters.HBaseRequestAdapter;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 
 /**
@@ -66,6 +82,9 @@ public class TestBigtableBufferedMutator {
   private static final Put SIMPLE_PUT =
       new Put(EMPTY_BYTES).addColumn(EMPTY_BYTES, EMPTY_BYTES, EMPTY_BYTES);
 
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   @Mock
   private BigtableSession mockSession;
 
@@ -189,4 +208,140 @@ public class TestBigtableBufferedMutator {
     verify(mockBulkMutation, times(1)).flush();
     verify(mockAsyncExecutor, times(1)).flush();
   }
+
+  @Test
+  public void testTryMutate() throws Exception {
+    ResourceLimiter resourceLimiter = new ResourceLimiter(new ResourceLimiterStats(), 100l, 1);
+    when(mockSession.getResourceLimiter()).thenReturn(resourceLimiter);
+    when(mockBulkMutation.add(any(MutateRowsRequest.Entry.class), any(Executor.class)))
+        .thenReturn(future);
+    BigtableBufferedMutator underTest = createMutator(new Configuration(false));
+    Assert.assertSame(future, underTest.tryMutate(SIMPLE_PUT));
+
+    long id = resourceLimiter.registerOperationWithHeapSize(1l);
+    ListenableFuture<?> rejected = underTest.tryMutate(SIMPLE_PUT);
+    Assert.assertTrue(rejected.isDone());
+    try {
+      rejected.get();
+      Assert.fail("Expected an exception");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof BufferFullException);
+      Assert.assertTrue(((BufferFullException) e.getCause()).getRetryAfterMillis() > 0);
+    }
+    verify(mockBulkMutation, times(1))
+        .add(any(MutateRowsRequest.Entry.class), any(Executor.class));
+    // A full batch is sent on the batch pool, rather than on the caller's thread.
+    verify(mockBulkMutation, never()).add(any(MutateRowsRequest.Entry.class));
+
+    final AtomicBoolean available = new AtomicBoolean();
+    underTest.addBufferAvailableListener(new Runnable() {
+      @Override
+      public void run() {
+        available.set(true);
+      }
+    }, MoreExecutors.directExecutor());
+    Assert.assertFalse(available.get());
+    resourceLimiter.markCanBeCompleted(id);
+    Assert.assertTrue(available.get());
+    Assert.assertSame(future, underTest.tryMutate(SIMPLE_PUT));
+  }
+
+  @Test
+  public void testTryMutateIncrementIsSentOnBatchPool() throws Exception {
+    final Thread caller = Thread.currentThread();
+    final SettableFuture<Thread> sender = SettableFuture.create();
+    when(mockAsyncExecutor.readModifyWriteRowAsync(any(ReadModifyWriteRowRequest.class)))
+        .then(new Answer<ListenableFuture<ReadModifyWriteRowResponse>>() {
+          @Override
+          public ListenableFuture<ReadModifyWriteRowResponse> answer(InvocationOnMock invocation) {
+            sender.set(Thread.currentThread());
+            return Futures.immediateFuture(ReadModifyWriteRowResponse.getDefaultInstance());
+          }
+        });
+    BigtableBufferedMutator underTest = createMutator(new Configuration(false));
+    ListenableFuture<?> result =
+        underTest.tryMutate(new Increment(EMPTY_BYTES).addColumn(EMPTY_BYTES, EMPTY_BYTES, 1));
+    Assert.assertEquals(ReadModifyWriteRowResponse.getDefaultInstance(),
+      result.get(10, TimeUnit.SECONDS));
+    Assert.assertNotSame(caller, sender.get());
+  }
+
+  @Test
+  public void testTryMutateAfterClose() throws Exception {
+    BigtableBufferedMutator underTest = createMutator(new Configuration(false));
+    underTest.close();
+    ListenableFuture<?> rejected = underTest.tryMutate(SIMPLE_PUT);
+    try {
+      rejected.get();
+      Assert.fail("Expected an exception");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  public void testSpillWhenFull() throws Exception {
+    ResourceLimiter resourceLimiter = new ResourceLimiter(new ResourceLimiterStats(), 100l, 1);
+    when(mockSession.getResourceLimiter()).thenReturn(resourceLimiter);
+    when(mockBulkMutation.add(any(MutateRowsRequest.Entry.class))).thenReturn(future);
+    Configuration config = new Configuration(false);
+    config.set(BigtableOptionsFactory.BIGTABLE_BULK_SPILL_DIRECTORY_KEY,
+      temporaryFolder.getRoot().getAbsolutePath());
+    BigtableBufferedMutator underTest = createMutator(config);
+
+    long id = resourceLimiter.registerOperationWithHeapSize(1l);
+    ListenableFuture<?> first = underTest.tryMutate(SIMPLE_PUT);
+    ListenableFuture<?> second = underTest.tryMutate(new Delete(EMPTY_BYTES));
+    Assert.assertTrue(underTest.hasInflightRequests());
+    verify(mockBulkMutation, never()).add(any(MutateRowsRequest.Entry.class));
+
+    // The spilled mutations are sent once there is room.
+    resourceLimiter.markCanBeCompleted(id);
+    verify(mockBulkMutation, timeout(10000).times(2)).add(any(MutateRowsRequest.Entry.class));
+    Assert.assertFalse(first.isDone());
+    future.set(MutateRowResponse.getDefaultInstance());
+    first.get();
+    second.get();
+    underTest.close();
+  }
+
+  @Test
+  public void testMutatorsOfATableSpillSeparately() throws Exception {
+    ResourceLimiter resourceLimiter = new ResourceLimiter(new ResourceLimiterStats(), 100l, 1);
+    when(mockSession.getResourceLimiter()).thenReturn(resourceLimiter);
+    when(mockBulkMutation.add(any(MutateRowsRequest.Entry.class))).thenReturn(future);
+    Configuration config = new Configuration(false);
+    config.set(BigtableOptionsFactory.BIGTABLE_BULK_SPILL_DIRECTORY_KEY,
+      temporaryFolder.getRoot().getAbsolutePath());
+    BigtableBufferedMutator first = createMutator(config);
+    BigtableBufferedMutator second = createMutator(config);
+
+    resourceLimiter.registerOperationWithHeapSize(1l);
+    ListenableFuture<?> firstFuture = first.tryMutate(SIMPLE_PUT);
+    ListenableFuture<?> secondFuture = second.tryMutate(SIMPLE_PUT);
+    // Both mutations were spilled, rather than rejected because the buffer is full.
+    Assert.assertFalse(firstFuture.isDone());
+    Assert.assertFalse(secondFuture.isDone());
+    verify(mockBulkMutation, never()).add(any(MutateRowsRequest.Entry.class));
+    Assert.assertEquals(2, temporaryFolder.getRoot().listFiles()[0].listFiles().length);
+  }
+
+  @Test
+  public void testFlushSendsSpilledMutations() throws Exception {
+    ResourceLimiter resourceLimiter = new ResourceLimiter(new ResourceLimiterStats(), 100l, 1);
+    when(mockSession.getResourceLimiter()).thenReturn(resourceLimiter);
+    when(mockBulkMutation.add(any(MutateRowsRequest.Entry.class))).thenReturn(future);
+    Configuration config = new Configuration(false);
+    config.set(BigtableOptionsFactory.BIGTABLE_BULK_SPILL_DIRECTORY_KEY,
+      temporaryFolder.getRoot().getAbsolutePath());
+    BigtableBufferedMutator underTest = createMutator(config);
+
+    resourceLimiter.registerOperationWithHeapSize(1l);
+    underTest.mutate(SIMPLE_PUT);
+    verify(mockBulkMutation, never()).add(any(MutateRowsRequest.Entry.class));
+    underTest.flush();
+    verify(mockBulkMutation, times(1)).add(any(MutateRowsRequest.Entry.class));
+    when(mockBulkMutation.isFlushed()).thenReturn(true);
+    Assert.assertFalse(underTest.hasInflightRequests());
+  }
 }
@@ -17,6 +17,7 @@ package com.google.cloud.bigtable.hbase;
 
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.hadoop.conf.Configuration;
 import org.junit.Assert;
@@ -131,4 +132,28 @@ public class TestBigtableOptionsFactory {
     assertEquals(111, retryOptions.getMaxElapsedBackoffMillis());
     assertEquals(123, retryOptions.getReadPartialRowTimeoutMillis());
   }
+
+  @Test
+  public void testWarmUpOptions() throws IOException {
+    Assert.assertFalse(BigtableOptionsFactory.fromConfiguration(configuration).isWarmUpEnabled());
+    configuration.setBoolean(BigtableOptionsFactory.BIGTABLE_WARM_UP_ENABLE_KEY, true);
+    configuration.set(BigtableOptionsFactory.BIGTABLE_WARM_UP_TABLES_KEY, "table1, table2");
+    BigtableOptions options = BigtableOptionsFactory.fromConfiguration(configuration);
+    Assert.assertTrue(options.isWarmUpEnabled());
+    assertEquals(Arrays.asList("table1", "table2"), options.getWarmUpTableIds());
+  }
+
+  @Test
+  public void testReadCoalescingOptions() throws IOException {
+    Assert.assertFalse(
+      BigtableOptionsFactory.fromConfiguration(configuration).isReadCoalescingEnabled());
+    configuration.setBoolean(BigtableOptionsFactory.BIGTABLE_READ_COALESCING_ENABLE_KEY, true);
+    BigtableOptions options = BigtableOptionsFactory.fromConfiguration(configuration);
+    Assert.assertTrue(options.isReadCoalescingEnabled());
+    assertEquals(BigtableOptionsFactory.BIGTABLE_READ_COALESCING_WINDOW_MICROS_DEFAULT,
+      options.getReadCoalescingWindowMicros());
+    configuration.setLong(BigtableOptionsFactory.BIGTABLE_READ_COALESCING_WINDOW_MICROS_KEY, 0);
+    options = BigtableOptionsFactory.fromConfiguration(configuration);
+    assertEquals(0, options.getReadCoalescingWindowMicros());
+  }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.PrefixFilter;
+import org.apache.hadoop.hbase.filter.WhileMatchFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.bigtable.v2.ReadRowsRequest;
+import com.google.cloud.bigtable.grpc.scanner.ParallelResultScanner;
+
+/**
+ * Tests for {@link ParallelScanUtil}.
+ */
+@RunWith(JUnit4.class)
+public class TestParallelScanUtil {
+
+  private static final ReadRowsRequest REQUEST = ReadRowsRequest.getDefaultInstance();
+
+  @Test
+  public void testNotParallelByDefault() {
+    Assert.assertFalse(ParallelScanUtil.isParallel(new Scan(), REQUEST));
+    Assert.assertFalse(
+      ParallelScanUtil.isParallel(ParallelScanUtil.setParallelism(new Scan(), 1, true), REQUEST));
+  }
+
+  @Test
+  public void testParallel() {
+    Scan scan = ParallelScanUtil.setParallelism(new Scan(), 4, false);
+    Assert.assertTrue(ParallelScanUtil.isParallel(scan, REQUEST));
+    Assert.assertTrue(
+      Bytes.toBoolean(scan.getAttribute(ParallelScanUtil.SCAN_UNORDERED_ATTRIBUTE)));
+  }
+
+  @Test
+  public void testRowsLimitIsNotParallel() {
+    Scan scan = ParallelScanUtil.setParallelism(new Scan(), 4, true);
+    Assert.assertFalse(ParallelScanUtil.isParallel(scan,
+      ReadRowsRequest.newBuilder().setRowsLimit(10).build()));
+  }
+
+  @Test
+  public void testWhileMatchFilterIsNotParallel() {
+    Scan scan = ParallelScanUtil.setParallelism(new Scan(), 4, true);
+    scan.setFilter(new WhileMatchFilter(new PrefixFilter(Bytes.toBytes("a"))));
+    Assert.assertFalse(ParallelScanUtil.isParallel(scan, REQUEST));
+  }
+
+  @Test
+  public void testPrefetchRows() {
+    Assert.assertEquals(ParallelResultScanner.DEFAULT_PREFETCH_ROWS,
+      ParallelScanUtil.getPrefetchRows(new Scan()));
+    Scan scan = new Scan().setCaching(500);
+    Assert.assertEquals(500, ParallelScanUtil.getPrefetchRows(scan));
+    scan.setAttribute(ParallelScanUtil.SCAN_PREFETCH_ROWS_ATTRIBUTE, Bytes.toBytes(20));
+    Assert.assertEquals(20, ParallelScanUtil.getPrefetchRows(scan));
+  }
+}
@@ -15,13 +15,19 @@
  */
 package com.google.cloud.bigtable.hbase.adapters;
 
+import com.google.api.client.util.Clock;
 import com.google.bigtable.v2.MutateRowRequest;
+import com.google.bigtable.v2.MutateRowsRequest;
 import com.google.bigtable.v2.Mutation;
 import com.google.bigtable.v2.Mutation.MutationCase;
 import com.google.bigtable.v2.Mutation.SetCell;
 import com.google.cloud.bigtable.grpc.BigtableDataGrpcClient;
+import com.google.cloud.bigtable.grpc.async.EncodedEntry;
 import com.google.cloud.bigtable.hbase.DataGenerationHelper;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
 
+import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.client.Put;
 import org.junit.Assert;
 import org.junit.Test;
@@ -238,4 +244,84 @@ public class TestPutAdapter {
     Assert.assertTrue(BigtableDataGrpcClient.IS_RETRYABLE_MUTATION.apply(request));
     testTwoWay(hbasePut, adapter);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testZeroCopyWrapsCellArrays() throws IOException {
+    PutAdapter zeroCopyAdapter = new PutAdapter(-1, false, true);
+
+    byte[] row = dataHelper.randomData("rk-");
+    byte[] family = dataHelper.randomData("f1");
+    byte[] qualifier = dataHelper.randomData("qual1");
+    byte[] value = dataHelper.randomData("v1");
+
+    Put hbasePut = new Put(row).addColumn(family, qualifier, 1L, value);
+    MutateRowRequest request = zeroCopyAdapter.adapt(hbasePut).build();
+    Assert.assertEquals(new PutAdapter(-1, false).adapt(hbasePut).build(), request);
+
+    // The request shares the value array of the cell.
+    Cell cell = hbasePut.get(family, qualifier).get(0);
+    cell.getValueArray()[cell.getValueOffset()] = 'x';
+    Assert.assertEquals('x', request.getMutations(0).getSetCell().getValue().byteAt(0));
+
+    testTwoWay(hbasePut, zeroCopyAdapter);
+  }
+
+  @Test
+  public void testFamiliesAreCached() {
+    byte[] family = dataHelper.randomData("f1");
+    Put first = new Put(dataHelper.randomData("rk-"))
+        .addColumn(family, dataHelper.randomData("qual1"), dataHelper.randomData("v1"));
+    Put second = new Put(dataHelper.randomData("rk-"))
+        .addColumn(family.clone(), dataHelper.randomData("qual1"), dataHelper.randomData("v1"));
+
+    ByteString firstFamily = adapter.adapt(first).getMutations(0).getSetCell().getFamilyNameBytes();
+    Assert.assertSame(firstFamily,
+      adapter.adapt(second).getMutations(0).getSetCell().getFamilyNameBytes());
+
+    // The cached family does not change with the caller's array.
+    byte[] expected = family.clone();
+    family[0] = 'x';
+    Assert.assertArrayEquals(expected, firstFamily.toByteArray());
+  }
+
+  @Test
+  public void testEncodedEntryMatchesEntry() throws IOException {
+    PutAdapter fixedClockAdapter = new PutAdapter(-1);
+    fixedClockAdapter.clock = new Clock() {
+      @Override
+      public long currentTimeMillis() {
+        return 1000L;
+      }
+    };
+    Put put = new Put(dataHelper.randomData("rk-"))
+        .addColumn(dataHelper.randomData("f1"), dataHelper.randomData("qual1"), 5L,
+          dataHelper.randomData("v1"))
+        .addColumn(dataHelper.randomData("f1"), new byte[0], new byte[0])
+        .addColumn(dataHelper.randomData("f2"), dataHelper.randomData("qual2"),
+          new byte[300]);
+    assertEncodedEntry(fixedClockAdapter, put, true);
+    assertEncodedEntry(fixedClockAdapter.withServerSideTimestamps(), put, false);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEncodedEntryValueTooLarge() {
+    Put put = new Put(dataHelper.randomData("rk-"))
+        .addColumn(dataHelper.randomData("f1"), dataHelper.randomData("qual1"), new byte[100]);
+    new PutAdapter(50).toEncodedEntry(put);
+  }
+
+  private static void assertEncodedEntry(PutAdapter adapter, Put put, boolean idempotent)
+      throws IOException {
+    MutateRowsRequest.Entry expected = adapter.toEntry(put);
+    EncodedEntry encoded = adapter.toEncodedEntry(put);
+    Assert.assertEquals(expected.getSerializedSize(), encoded.getSerializedSize());
+    Assert.assertEquals(expected.getMutationsCount(), encoded.getMutationsCount());
+    Assert.assertEquals(idempotent, encoded.isIdempotent());
+
+    byte[] bytes = new byte[encoded.getSerializedSize()];
+    CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+    encoded.writeTo(output);
+    output.checkNoSpaceLeft();
+    Assert.assertArrayEquals(expected.toByteArray(), bytes);
+  }
+}
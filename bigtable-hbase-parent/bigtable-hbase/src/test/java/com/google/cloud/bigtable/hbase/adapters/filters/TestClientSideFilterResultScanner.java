@@ -0,0 +1,192 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters.filters;
+
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.ColumnPrefixFilter;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterBase;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FilterList.Operator;
+import org.apache.hadoop.hbase.filter.InclusiveStopFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.PageFilter;
+import org.apache.hadoop.hbase.filter.PrefixFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * Tests for {@link ClientSideFilterResultScanner} and {@link FilterAdapter#splitFilter(Scan,
+ * Filter)}.
+ */
+@RunWith(JUnit4.class)
+public class TestClientSideFilterResultScanner {
+
+  private static final byte[] FAMILY = Bytes.toBytes("family");
+
+  /** An unsupported filter that only keeps cells with a value that starts with "x". */
+  private static class ValueStartsWithXFilter extends FilterBase {
+    @Override
+    public ReturnCode filterKeyValue(Cell cell) {
+      return CellUtil.cloneValue(cell)[0] == 'x' ? ReturnCode.INCLUDE : ReturnCode.SKIP;
+    }
+  }
+
+  private final FilterAdapter filterAdapter = FilterAdapter.buildAdapter();
+
+  @Mock
+  ResultScanner delegate;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+  }
+
+  @Test
+  public void testSupportedFilterIsNotSplit() {
+    Filter filter = new PrefixFilter(Bytes.toBytes("a"));
+    FilterSplit split = filterAdapter.splitFilter(new Scan(), filter);
+    Assert.assertSame(filter, split.getServerFilter());
+    Assert.assertNull(split.getClientFilter());
+  }
+
+  @Test
+  public void testConjunctionIsSplit() {
+    Filter prefix = new PrefixFilter(Bytes.toBytes("a"));
+    Filter custom = new ValueStartsWithXFilter();
+    Filter columnPrefix = new ColumnPrefixFilter(Bytes.toBytes("q"));
+    Filter page = new PageFilter(10);
+    FilterSplit split = filterAdapter.splitFilter(new Scan(), new FilterList(prefix,
+        new FilterList(custom, columnPrefix), page));
+
+    FilterList server = (FilterList) split.getServerFilter();
+    Assert.assertEquals(Arrays.asList(prefix, columnPrefix), server.getFilters());
+    FilterList client = (FilterList) split.getClientFilter();
+    Assert.assertEquals(Arrays.asList(custom, page), client.getFilters());
+  }
+
+  @Test
+  public void testUnsupportedDisjunctionIsEvaluatedOnClient() {
+    Filter filter = new FilterList(Operator.MUST_PASS_ONE, new PrefixFilter(Bytes.toBytes("a")),
+        new ValueStartsWithXFilter());
+    FilterSplit split = filterAdapter.splitFilter(new Scan(), filter);
+    Assert.assertNull(split.getServerFilter());
+    Assert.assertSame(filter, split.getClientFilter());
+  }
+
+  @Test
+  public void testTransformingFilterListIsEvaluatedOnClient() throws IOException {
+    Filter filter = new FilterList(new KeyOnlyFilter(), new ValueStartsWithXFilter());
+    FilterSplit split = filterAdapter.splitFilter(new Scan(), filter);
+    Assert.assertNull(split.getServerFilter());
+    Assert.assertSame(filter, split.getClientFilter());
+
+    // The custom filter sees the original values; the KeyOnlyFilter strips them afterwards.
+    when(delegate.next()).thenReturn(
+      createResult("row1", "xa"),
+      createResult("row2", "b"),
+      null);
+    ClientSideFilterResultScanner underTest =
+        new ClientSideFilterResultScanner(delegate, split.getClientFilter(), -1);
+    Result first = underTest.next();
+    Assert.assertEquals("row1", Bytes.toString(first.getRow()));
+    Assert.assertEquals(1, first.rawCells().length);
+    Assert.assertEquals(0, first.rawCells()[0].getValueLength());
+    Assert.assertNull(underTest.next());
+  }
+
+  @Test
+  public void testCellsAreFiltered() throws IOException {
+    when(delegate.next()).thenReturn(
+      createResult("row1", "a", "xb"),
+      createResult("row2", "a", "b"),
+      createResult("row3", "xa"),
+      null);
+    ClientSideFilterResultScanner underTest =
+        new ClientSideFilterResultScanner(delegate, new ValueStartsWithXFilter(), -1);
+
+    Result first = underTest.next();
+    Assert.assertEquals("row1", Bytes.toString(first.getRow()));
+    Assert.assertEquals(1, first.rawCells().length);
+    Assert.assertEquals("xb", Bytes.toString(CellUtil.cloneValue(first.rawCells()[0])));
+    Assert.assertEquals("row3", Bytes.toString(underTest.next().getRow()));
+    Assert.assertNull(underTest.next());
+  }
+
+  @Test
+  public void testRowKeyFilterStopsScan() throws IOException {
+    when(delegate.next()).thenReturn(
+      createResult("row1", "a"),
+      createResult("row2", "a"),
+      createResult("row3", "a"),
+      null);
+    ClientSideFilterResultScanner underTest = new ClientSideFilterResultScanner(delegate,
+        new InclusiveStopFilter(Bytes.toBytes("row2")), -1);
+
+    Assert.assertEquals("row1", Bytes.toString(underTest.next().getRow()));
+    Assert.assertEquals("row2", Bytes.toString(underTest.next().getRow()));
+    Assert.assertNull(underTest.next());
+  }
+
+  @Test
+  public void testPageFilterAndLimitCountMatchingRows() throws IOException {
+    when(delegate.next()).thenReturn(
+      createResult("row1", "a"),
+      createResult("row2", "xa"),
+      createResult("row3", "xa"),
+      createResult("row4", "xa"),
+      null);
+    Filter filter = new FilterList(new ValueStartsWithXFilter(), new PageFilter(2));
+    ClientSideFilterResultScanner underTest =
+        new ClientSideFilterResultScanner(delegate, filter, -1);
+    Assert.assertEquals("row2", Bytes.toString(underTest.next().getRow()));
+    Assert.assertEquals("row3", Bytes.toString(underTest.next().getRow()));
+    Assert.assertNull(underTest.next());
+
+    when(delegate.next()).thenReturn(
+      createResult("row2", "xa"),
+      createResult("row3", "xa"),
+      null);
+    underTest = new ClientSideFilterResultScanner(delegate, new ValueStartsWithXFilter(), 1);
+    Assert.assertEquals("row2", Bytes.toString(underTest.next().getRow()));
+    Assert.assertNull(underTest.next());
+  }
+
+  private static Result createResult(String row, String... values) {
+    Cell[] cells = new Cell[values.length];
+    for (int i = 0; i < values.length; i++) {
+      cells[i] = new KeyValue(Bytes.toBytes(row), FAMILY, Bytes.toBytes("q" + i), 1L,
+          Bytes.toBytes(values[i]));
+    }
+    return Result.create(cells);
+  }
+}
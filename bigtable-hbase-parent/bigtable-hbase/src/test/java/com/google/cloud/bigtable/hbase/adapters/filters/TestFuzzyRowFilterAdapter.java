@@ -20,7 +20,10 @@ import static com.google.cloud.bigtable.data.v2.wrappers.Filters.FILTERS;
 import com.google.bigtable.v2.RowFilter;
 import com.google.bigtable.v2.RowFilter.Interleave;
 import com.google.cloud.bigtable.data.v2.wrappers.Filters;
+import com.google.cloud.bigtable.util.RowKeyWrapper;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
 import com.google.protobuf.ByteString;
 
 import org.apache.hadoop.hbase.client.Scan;
@@ -58,4 +61,45 @@ import java.util.List;
 
     Assert.assertEquals(expected, adaptedFilter);
   }
-}
\ No newline at end of file
+
+  @Test public void fixedPrefixIsUsedAsScanHint() throws IOException {
+    FuzzyRowFilter filter = new FuzzyRowFilter(ImmutableList.of(
+        new Pair<>(Bytes.toBytes("ab??"), new byte[] { 0, 0, 1, 1 }),
+        new Pair<>(Bytes.toBytes("cd"), new byte[] { 0, 0 })));
+    RangeSet<RowKeyWrapper> hint = adapter.getIndexScanHint(filter);
+    Assert.assertEquals(2, hint.asRanges().size());
+    Assert.assertTrue(hint.encloses(range("ab", "ac")));
+    Assert.assertTrue(hint.encloses(range("cd", "ce")));
+    Assert.assertFalse(hint.contains(wrap("b")));
+  }
+
+  @Test public void leadingFuzzyByteScansEverything() throws IOException {
+    FuzzyRowFilter filter = new FuzzyRowFilter(ImmutableList.of(
+        new Pair<>(Bytes.toBytes("ab"), new byte[] { 0, 0 }),
+        new Pair<>(Bytes.toBytes("?b"), new byte[] { 1, 0 })));
+    Assert.assertTrue(adapter.getIndexScanHint(filter).encloses(Range.<RowKeyWrapper> all()));
+  }
+
+  @Test public void singleFuzzyByteIsEnumerated() throws IOException {
+    List<byte[]> prefixes = FuzzyRowFilterAdapter.getFixedPrefixes(
+        Bytes.toBytes("a?bc?d"), new byte[] { -1, 0, -1, -1, 0, -1 });
+    Assert.assertEquals(256, prefixes.size());
+    Assert.assertArrayEquals(new byte[] { 'a', 0, 'b', 'c' }, prefixes.get(0));
+    Assert.assertArrayEquals(new byte[] { 'a', (byte) 0xFF, 'b', 'c' }, prefixes.get(255));
+  }
+
+  @Test public void trailingFuzzyBytesAreNotEnumerated() throws IOException {
+    List<byte[]> prefixes = FuzzyRowFilterAdapter.getFixedPrefixes(
+        Bytes.toBytes("ab??c"), new byte[] { -1, -1, 0, 0, -1 });
+    Assert.assertEquals(1, prefixes.size());
+    Assert.assertArrayEquals(Bytes.toBytes("ab"), prefixes.get(0));
+  }
+
+  private static Range<RowKeyWrapper> range(String start, String end) {
+    return Range.closedOpen(wrap(start), wrap(end));
+  }
+
+  private static RowKeyWrapper wrap(String key) {
+    return new RowKeyWrapper(ByteString.copyFromUtf8(key));
+  }
+}
@@ -120,4 +120,14 @@ public class TestPageFilterAdapter {
     ReadRowsRequest postHookRequest = hooks.applyPreSendHook(request);
     Assert.assertEquals(20, postHookRequest.getRowsLimit());
   }
+
+  @Test
+  public void smallerRowsLimitIsKept() throws IOException {
+    ReadHooks hooks = new DefaultReadHooks();
+    FilterAdapterContext context = new FilterAdapterContext(new Scan(), hooks);
+    pageFilterAdapter.adapt(context, new PageFilter(20));
+
+    ReadRowsRequest request = ReadRowsRequest.newBuilder().setRowsLimit(5).build();
+    Assert.assertEquals(5, hooks.applyPreSendHook(request).getRowsLimit());
+  }
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters.read;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.FilterBase;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.PageFilter;
+import org.apache.hadoop.hbase.filter.PrefixFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.bigtable.v2.ReadRowsRequest;
+import com.google.cloud.bigtable.hbase.adapters.filters.FilterAdapter;
+
+/**
+ * Tests for {@link RowFilterCache}.
+ */
+@RunWith(JUnit4.class)
+public class TestRowFilterCache {
+
+  private static final byte[] FAMILY = Bytes.toBytes("family");
+
+  private final RowFilterCache cache = new RowFilterCache(RowFilterCache.DEFAULT_MAX_SIZE);
+  private final ScanAdapter scanAdapter =
+      new ScanAdapter(FilterAdapter.buildAdapter(), new RowRangeAdapter(), cache);
+  private final GetAdapter getAdapter = new GetAdapter(scanAdapter);
+
+  @Test
+  public void testEquivalentGetsShareAFilter() {
+    ReadRowsRequest first =
+        getAdapter.adapt(createGet("row1", "prefix"), new DefaultReadHooks()).build();
+    ReadRowsRequest second =
+        getAdapter.adapt(createGet("row2", "prefix"), new DefaultReadHooks()).build();
+    Assert.assertEquals(1, cache.size());
+    Assert.assertSame(first.getFilter(), second.getFilter());
+  }
+
+  @Test
+  public void testDifferentFiltersAreNotShared() {
+    ReadRowsRequest first =
+        getAdapter.adapt(createGet("row", "prefix1"), new DefaultReadHooks()).build();
+    ReadRowsRequest second =
+        getAdapter.adapt(createGet("row", "prefix2"), new DefaultReadHooks()).build();
+    Assert.assertEquals(2, cache.size());
+    Assert.assertNotEquals(first.getFilter(), second.getFilter());
+  }
+
+  @Test
+  public void testScanSettingsArePartOfTheKey() throws IOException {
+    Scan scan = new Scan().addColumn(FAMILY, Bytes.toBytes("q1"));
+    Assert.assertNotEquals(RowFilterCache.fingerprint(scan),
+      RowFilterCache.fingerprint(new Scan(scan).setMaxVersions(2)));
+    Assert.assertNotEquals(RowFilterCache.fingerprint(scan),
+      RowFilterCache.fingerprint(new Scan(scan).setTimeRange(0, 10)));
+    Assert.assertNotEquals(RowFilterCache.fingerprint(scan),
+      RowFilterCache.fingerprint(new Scan(scan).addColumn(FAMILY, Bytes.toBytes("q2"))));
+    Assert.assertEquals(RowFilterCache.fingerprint(scan),
+      RowFilterCache.fingerprint(new Scan(scan)));
+  }
+
+  @Test
+  public void testHooksAreReplayed() throws IOException {
+    Scan scan = new Scan().setFilter(new PageFilter(10));
+    DefaultReadHooks firstHooks = new DefaultReadHooks();
+    scanAdapter.adapt(scan, firstHooks);
+    DefaultReadHooks secondHooks = new DefaultReadHooks();
+    scanAdapter.adapt(new Scan(scan), secondHooks);
+
+    Assert.assertEquals(1, cache.size());
+    ReadRowsRequest request = ReadRowsRequest.getDefaultInstance();
+    Assert.assertEquals(10, firstHooks.applyPreSendHook(request).getRowsLimit());
+    Assert.assertEquals(10, secondHooks.applyPreSendHook(request).getRowsLimit());
+  }
+
+  @Test
+  public void testFiltersWithoutSerializationAreNotCached() {
+    Scan scan = new Scan().setFilter(new FilterList(new PrefixFilter(Bytes.toBytes("a")),
+        new FilterBase() {
+          @Override
+          public ReturnCode filterKeyValue(Cell cell) {
+            return ReturnCode.INCLUDE;
+          }
+        }));
+    Assert.assertNull(RowFilterCache.fingerprint(scan));
+  }
+
+  @Test
+  public void testZeroSizeDisablesCache() {
+    RowFilterCache disabled = new RowFilterCache(0);
+    GetAdapter adapter = new GetAdapter(
+        new ScanAdapter(FilterAdapter.buildAdapter(), new RowRangeAdapter(), disabled));
+    adapter.adapt(createGet("row", "prefix"), new DefaultReadHooks());
+    Assert.assertEquals(0, disabled.size());
+  }
+
+  private static Get createGet(String row, String prefix) {
+    Get get = new Get(Bytes.toBytes(row));
+    get.addFamily(FAMILY);
+    get.setFilter(new PrefixFilter(Bytes.toBytes(prefix)));
+    return get;
+  }
+}
@@ -95,6 +95,19 @@ public class TestScanAdapter {
       request.getRows());
   }
 
+  @Test
+  public void testLimitIsPushedDown() {
+    Scan scan = new Scan().setLimit(10);
+    ReadRowsRequest.Builder request = scanAdapter.adapt(scan, throwingReadHooks);
+    Assert.assertEquals(10, request.getRowsLimit());
+  }
+
+  @Test
+  public void testNoLimit() {
+    ReadRowsRequest.Builder request = scanAdapter.adapt(new Scan(), throwingReadHooks);
+    Assert.assertEquals(0, request.getRowsLimit());
+  }
+
   @Test
   public void testStartAndEndKeysAreSet() {
     byte[] startKey = Bytes.toBytes("startKey");
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.test.simulator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.UUID;
+
+import com.google.common.base.Preconditions;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+
+/**
+ * Runs a {@link SimulatedBigtableService} in an in-process gRPC server. It needs no network,
+ * gcloud or emulator binary, so tests and benchmarks that use it are hermetic.
+ *
+ * <p>Clients connect with a channel from {@link #createChannel()}, for example through a
+ * {@code ChannelPool.ChannelFactory}:
+ *
+ * <pre>
+ * BigtableSimulator simulator = new BigtableSimulator().start();
+ * simulator.getService().setLatency(SimulatedBigtableService.Rpc.MUTATE_ROWS,
+ *     LatencyDistribution.logNormal(5, 50, TimeUnit.MILLISECONDS));
+ * ManagedChannel channel = simulator.createChannel();
+ * </pre>
+ *
+ * @author sduskis
+ */
+public class BigtableSimulator implements Closeable {
+
+  private final SimulatedBigtableService service;
+  private final String serverName = "bigtable-simulator-" + UUID.randomUUID();
+  private Server server;
+
+  /**
+   * Creates a simulator with a new {@link SimulatedBigtableService}.
+   */
+  public BigtableSimulator() {
+    this(new SimulatedBigtableService());
+  }
+
+  /**
+   * @param service the {@link SimulatedBigtableService} to serve.
+   */
+  public BigtableSimulator(SimulatedBigtableService service) {
+    this.service = Preconditions.checkNotNull(service);
+  }
+
+  /**
+   * Starts the server.
+   *
+   * @return this simulator.
+   * @throws IOException if the server could not be started.
+   */
+  public synchronized BigtableSimulator start() throws IOException {
+    Preconditions.checkState(server == null, "The simulator was already started");
+    server = InProcessServerBuilder.forName(serverName).addService(service).build().start();
+    return this;
+  }
+
+  /**
+   * @return the {@link SimulatedBigtableService}, to configure latency and faults.
+   */
+  public SimulatedBigtableService getService() {
+    return service;
+  }
+
+  /**
+   * @return the name of the in-process server, for an {@link InProcessChannelBuilder}.
+   */
+  public String getServerName() {
+    return serverName;
+  }
+
+  /**
+   * @return a new {@link ManagedChannel} to the simulator. The caller must shut it down.
+   */
+  public ManagedChannel createChannel() {
+    return InProcessChannelBuilder.forName(serverName).build();
+  }
+
+  /**
+   * Stops the server and the service's scheduler.
+   */
+  @Override
+  public synchronized void close() {
+    if (server != null) {
+      server.shutdownNow();
+      server = null;
+    }
+    service.shutdown();
+  }
+}
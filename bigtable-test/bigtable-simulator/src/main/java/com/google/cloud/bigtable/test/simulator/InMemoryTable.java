@@ -0,0 +1,630 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.test.simulator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import com.google.bigtable.v2.Cell;
+import com.google.bigtable.v2.Column;
+import com.google.bigtable.v2.ColumnRange;
+import com.google.bigtable.v2.Family;
+import com.google.bigtable.v2.Mutation;
+import com.google.bigtable.v2.ReadModifyWriteRule;
+import com.google.bigtable.v2.Row;
+import com.google.bigtable.v2.RowFilter;
+import com.google.bigtable.v2.RowRange;
+import com.google.bigtable.v2.RowSet;
+import com.google.bigtable.v2.TimestampRange;
+import com.google.common.primitives.Longs;
+import com.google.common.primitives.UnsignedBytes;
+import com.google.protobuf.ByteString;
+
+import io.grpc.Status;
+
+/**
+ * A sorted, in-memory Bigtable table. Rows are kept in key order, and cells in family, qualifier
+ * and descending timestamp order, like Bigtable returns them. Every operation on a row is atomic.
+ *
+ * <p>Only the {@link RowFilter}s that are common in the HBase adapters are supported; the others
+ * fail with {@link Status#UNIMPLEMENTED}.
+ *
+ * @author sduskis
+ */
+class InMemoryTable {
+
+  /** Orders keys as unsigned bytes. */
+  static final Comparator<ByteString> KEY_COMPARATOR = new Comparator<ByteString>() {
+    @Override
+    public int compare(ByteString a, ByteString b) {
+      int length = Math.min(a.size(), b.size());
+      for (int i = 0; i < length; i++) {
+        int result = UnsignedBytes.compare(a.byteAt(i), b.byteAt(i));
+        if (result != 0) {
+          return result;
+        }
+      }
+      return a.size() - b.size();
+    }
+  };
+
+  /** A cell of a row, as the filters see it. */
+  private static class FlatCell {
+    final String family;
+    final ByteString qualifier;
+    final long timestamp;
+    final ByteString value;
+    final List<String> labels;
+
+    FlatCell(String family, ByteString qualifier, long timestamp, ByteString value,
+        List<String> labels) {
+      this.family = family;
+      this.qualifier = qualifier;
+      this.timestamp = timestamp;
+      this.value = value;
+      this.labels = labels;
+    }
+  }
+
+  /** Orders {@link FlatCell}s by family, qualifier and descending timestamp. */
+  private static final Comparator<FlatCell> CELL_COMPARATOR = new Comparator<FlatCell>() {
+    @Override
+    public int compare(FlatCell a, FlatCell b) {
+      int result = a.family.compareTo(b.family);
+      if (result == 0) {
+        result = KEY_COMPARATOR.compare(a.qualifier, b.qualifier);
+      }
+      if (result == 0) {
+        result = Longs.compare(b.timestamp, a.timestamp);
+      }
+      return result;
+    }
+  };
+
+  /** family -> qualifier -> timestamp (descending) -> value */
+  private static class StoredRow extends TreeMap<String, NavigableMap<ByteString,
+      NavigableMap<Long, ByteString>>> {
+    private static final long serialVersionUID = 1L;
+  }
+
+  private final NavigableMap<ByteString, StoredRow> rows = new TreeMap<>(KEY_COMPARATOR);
+
+  /**
+   * @return the number of rows in the table.
+   */
+  synchronized int getRowCount() {
+    return rows.size();
+  }
+
+  /**
+   * Removes all rows.
+   */
+  synchronized void clear() {
+    rows.clear();
+  }
+
+  /**
+   * Applies the mutations to a row atomically. Nothing is applied if a mutation is invalid.
+   *
+   * @throws io.grpc.StatusRuntimeException if the row key or a mutation is invalid.
+   */
+  synchronized void mutateRow(ByteString rowKey, List<Mutation> mutations) {
+    checkRowKey(rowKey);
+    for (Mutation mutation : mutations) {
+      validate(mutation);
+    }
+    StoredRow row = rows.get(rowKey);
+    if (row == null) {
+      row = new StoredRow();
+    }
+    long now = nowMicros();
+    for (Mutation mutation : mutations) {
+      apply(row, mutation, now);
+    }
+    if (row.isEmpty()) {
+      rows.remove(rowKey);
+    } else {
+      rows.put(rowKey, row);
+    }
+  }
+
+  /**
+   * Evaluates a predicate on a row and applies one of the lists of mutations.
+   *
+   * @return true if the predicate matched any cells.
+   */
+  synchronized boolean checkAndMutateRow(ByteString rowKey, RowFilter predicate,
+      List<Mutation> trueMutations, List<Mutation> falseMutations) {
+    checkRowKey(rowKey);
+    StoredRow row = rows.get(rowKey);
+    boolean matched = false;
+    if (row != null) {
+      List<FlatCell> cells = flatten(row);
+      matched = !(predicate.equals(RowFilter.getDefaultInstance()) ? cells
+          : filter(rowKey, cells, predicate)).isEmpty();
+    }
+    mutateRow(rowKey, matched ? trueMutations : falseMutations);
+    return matched;
+  }
+
+  /**
+   * Applies increment and append rules to the latest cells of their columns.
+   *
+   * @return a {@link Row} with the new cells.
+   */
+  synchronized Row readModifyWriteRow(ByteString rowKey, List<ReadModifyWriteRule> rules) {
+    checkRowKey(rowKey);
+    StoredRow row = rows.get(rowKey);
+    if (row == null) {
+      row = new StoredRow();
+    }
+    long now = nowMicros();
+    // The new values are kept aside until all of the rules succeed.
+    StoredRow modified = new StoredRow();
+    for (ReadModifyWriteRule rule : rules) {
+      checkFamily(rule.getFamilyName());
+      NavigableMap<Long, ByteString> column =
+          peekColumn(row, rule.getFamilyName(), rule.getColumnQualifier());
+      NavigableMap<Long, ByteString> modifiedColumn =
+          getColumn(modified, rule.getFamilyName(), rule.getColumnQualifier());
+      NavigableMap<Long, ByteString> latest = modifiedColumn.isEmpty() ? column : modifiedColumn;
+      ByteString current = latest.isEmpty() ? ByteString.EMPTY : latest.firstEntry().getValue();
+      long timestamp = column.isEmpty() ? now : Math.max(now, column.firstKey());
+      ByteString value;
+      switch (rule.getRuleCase()) {
+      case APPEND_VALUE:
+        value = current.concat(rule.getAppendValue());
+        break;
+      case INCREMENT_AMOUNT:
+        if (!current.isEmpty() && current.size() != Longs.BYTES) {
+          throw Status.INVALID_ARGUMENT
+              .withDescription("Cannot increment a value that is not a 64-bit integer")
+              .asRuntimeException();
+        }
+        long previous = current.isEmpty() ? 0 : Longs.fromByteArray(current.toByteArray());
+        value = ByteString.copyFrom(Longs.toByteArray(previous + rule.getIncrementAmount()));
+        break;
+      default:
+        throw Status.INVALID_ARGUMENT.withDescription("A rule must set a value")
+            .asRuntimeException();
+      }
+      modifiedColumn.clear();
+      modifiedColumn.put(timestamp, value);
+    }
+    List<FlatCell> cells = flatten(modified);
+    for (FlatCell cell : cells) {
+      getColumn(row, cell.family, cell.qualifier).put(cell.timestamp, cell.value);
+    }
+    if (!row.isEmpty()) {
+      rows.put(rowKey, row);
+    }
+    return toRow(rowKey, cells);
+  }
+
+  /**
+   * Reads the rows in a {@link RowSet}, in key order. Rows with no cells after filtering are
+   * skipped.
+   *
+   * @param rowSet the rows to read. An empty set reads the whole table.
+   * @param filter the {@link RowFilter} to apply. The default instance returns all cells.
+   * @param rowsLimit the maximum number of rows to return, or 0 for no limit.
+   */
+  synchronized List<Row> readRows(RowSet rowSet, RowFilter filter, long rowsLimit) {
+    return readRows(rowSet, filter, null, rowsLimit);
+  }
+
+  /**
+   * Reads the rows in a {@link RowSet} that come after a key, in key order. Streams use this to
+   * read a few rows at a time.
+   *
+   * @param rowSet the rows to read. An empty set reads the whole table.
+   * @param filter the {@link RowFilter} to apply. The default instance returns all cells.
+   * @param lastKey the key of the last row that was read, or null to read from the start.
+   * @param rowsLimit the maximum number of rows to return, or 0 for no limit.
+   */
+  synchronized List<Row> readRows(RowSet rowSet, RowFilter filter, ByteString lastKey,
+      long rowsLimit) {
+    NavigableMap<ByteString, StoredRow> selected = select(rowSet);
+    if (lastKey != null) {
+      selected = selected.tailMap(lastKey, false);
+    }
+    List<Row> result = new ArrayList<>();
+    for (Map.Entry<ByteString, StoredRow> entry : selected.entrySet()) {
+      List<FlatCell> cells = flatten(entry.getValue());
+      if (!filter.equals(RowFilter.getDefaultInstance())) {
+        cells = filter(entry.getKey(), cells, filter);
+      }
+      if (!cells.isEmpty()) {
+        result.add(toRow(entry.getKey(), cells));
+        if (rowsLimit > 0 && result.size() >= rowsLimit) {
+          break;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Samples the row keys of the table about every {@code intervalBytes}. The last sample is the
+   * empty key with the size of the table.
+   *
+   * @return the sampled keys and their offsets.
+   */
+  synchronized List<Map.Entry<ByteString, Long>> sampleRowKeys(long intervalBytes) {
+    List<Map.Entry<ByteString, Long>> samples = new ArrayList<>();
+    long offset = 0;
+    long nextSample = intervalBytes;
+    for (Map.Entry<ByteString, StoredRow> entry : rows.entrySet()) {
+      if (offset >= nextSample) {
+        samples.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), offset));
+        nextSample = offset + intervalBytes;
+      }
+      offset += entry.getKey().size();
+      for (FlatCell cell : flatten(entry.getValue())) {
+        offset += cell.family.length() + cell.qualifier.size() + cell.value.size() + Longs.BYTES;
+      }
+    }
+    samples.add(new AbstractMap.SimpleImmutableEntry<>(ByteString.EMPTY, offset));
+    return samples;
+  }
+
+  private NavigableMap<ByteString, StoredRow> select(RowSet rowSet) {
+    if (rowSet.getRowKeysCount() == 0 && rowSet.getRowRangesCount() == 0) {
+      return rows;
+    }
+    NavigableMap<ByteString, StoredRow> selected = new TreeMap<>(KEY_COMPARATOR);
+    for (ByteString key : rowSet.getRowKeysList()) {
+      StoredRow row = rows.get(key);
+      if (row != null) {
+        selected.put(key, row);
+      }
+    }
+    for (RowRange range : rowSet.getRowRangesList()) {
+      selected.putAll(select(range));
+    }
+    return selected;
+  }
+
+  private NavigableMap<ByteString, StoredRow> select(RowRange range) {
+    NavigableMap<ByteString, StoredRow> selected = rows;
+    switch (range.getStartKeyCase()) {
+    case START_KEY_CLOSED:
+      selected = selected.tailMap(range.getStartKeyClosed(), true);
+      break;
+    case START_KEY_OPEN:
+      selected = selected.tailMap(range.getStartKeyOpen(), false);
+      break;
+    default:
+      break;
+    }
+    switch (range.getEndKeyCase()) {
+    case END_KEY_OPEN:
+      if (!range.getEndKeyOpen().isEmpty()) {
+        selected = selected.headMap(range.getEndKeyOpen(), false);
+      }
+      break;
+    case END_KEY_CLOSED:
+      if (!range.getEndKeyClosed().isEmpty()) {
+        selected = selected.headMap(range.getEndKeyClosed(), true);
+      }
+      break;
+    default:
+      break;
+    }
+    return selected;
+  }
+
+  private static void checkRowKey(ByteString rowKey) {
+    if (rowKey.isEmpty()) {
+      throw Status.INVALID_ARGUMENT.withDescription("Row keys must be non-empty")
+          .asRuntimeException();
+    }
+  }
+
+  private static void checkFamily(String family) {
+    if (family.isEmpty()) {
+      throw Status.INVALID_ARGUMENT.withDescription("Family names must be non-empty")
+          .asRuntimeException();
+    }
+  }
+
+  private static void validate(Mutation mutation) {
+    switch (mutation.getMutationCase()) {
+    case SET_CELL:
+      checkFamily(mutation.getSetCell().getFamilyName());
+      if (mutation.getSetCell().getTimestampMicros() < -1) {
+        throw Status.INVALID_ARGUMENT.withDescription("Invalid timestamp").asRuntimeException();
+      }
+      break;
+    case DELETE_FROM_COLUMN:
+      checkFamily(mutation.getDeleteFromColumn().getFamilyName());
+      break;
+    case DELETE_FROM_FAMILY:
+      checkFamily(mutation.getDeleteFromFamily().getFamilyName());
+      break;
+    case DELETE_FROM_ROW:
+      break;
+    default:
+      throw Status.INVALID_ARGUMENT.withDescription("A mutation must be set")
+          .asRuntimeException();
+    }
+  }
+
+  private static void apply(StoredRow row, Mutation mutation, long now) {
+    switch (mutation.getMutationCase()) {
+    case SET_CELL:
+      Mutation.SetCell setCell = mutation.getSetCell();
+      long timestamp = setCell.getTimestampMicros() == -1 ? now : setCell.getTimestampMicros();
+      getColumn(row, setCell.getFamilyName(), setCell.getColumnQualifier())
+          .put(timestamp, setCell.getValue());
+      break;
+    case DELETE_FROM_COLUMN:
+      Mutation.DeleteFromColumn deleteFromColumn = mutation.getDeleteFromColumn();
+      NavigableMap<ByteString, NavigableMap<Long, ByteString>> family =
+          row.get(deleteFromColumn.getFamilyName());
+      if (family != null) {
+        NavigableMap<Long, ByteString> column =
+            family.get(deleteFromColumn.getColumnQualifier());
+        if (column != null) {
+          Iterator<Long> timestamps = column.keySet().iterator();
+          while (timestamps.hasNext()) {
+            if (inRange(deleteFromColumn.getTimeRange(), timestamps.next())) {
+              timestamps.remove();
+            }
+          }
+          if (column.isEmpty()) {
+            family.remove(deleteFromColumn.getColumnQualifier());
+          }
+        }
+        if (family.isEmpty()) {
+          row.remove(deleteFromColumn.getFamilyName());
+        }
+      }
+      break;
+    case DELETE_FROM_FAMILY:
+      row.remove(mutation.getDeleteFromFamily().getFamilyName());
+      break;
+    case DELETE_FROM_ROW:
+      row.clear();
+      break;
+    default:
+      throw new IllegalStateException("Unvalidated mutation: " + mutation);
+    }
+  }
+
+  private static boolean inRange(TimestampRange range, long timestamp) {
+    return timestamp >= range.getStartTimestampMicros()
+        && (range.getEndTimestampMicros() == 0 || timestamp < range.getEndTimestampMicros());
+  }
+
+  private static NavigableMap<Long, ByteString> peekColumn(StoredRow row, String familyName,
+      ByteString qualifier) {
+    NavigableMap<ByteString, NavigableMap<Long, ByteString>> family = row.get(familyName);
+    NavigableMap<Long, ByteString> column = family == null ? null : family.get(qualifier);
+    return column == null ? new TreeMap<Long, ByteString>() : column;
+  }
+
+  private static NavigableMap<Long, ByteString> getColumn(StoredRow row, String familyName,
+      ByteString qualifier) {
+    NavigableMap<ByteString, NavigableMap<Long, ByteString>> family = row.get(familyName);
+    if (family == null) {
+      family = new TreeMap<>(KEY_COMPARATOR);
+      row.put(familyName, family);
+    }
+    NavigableMap<Long, ByteString> column = family.get(qualifier);
+    if (column == null) {
+      column = new TreeMap<>(Collections.<Long> reverseOrder());
+      family.put(qualifier, column);
+    }
+    return column;
+  }
+
+  /** Bigtable timestamps have millisecond granularity. */
+  private static long nowMicros() {
+    return System.currentTimeMillis() * 1000;
+  }
+
+  private static List<FlatCell> flatten(StoredRow row) {
+    List<FlatCell> cells = new ArrayList<>();
+    for (Map.Entry<String, NavigableMap<ByteString, NavigableMap<Long, ByteString>>> family : row
+        .entrySet()) {
+      for (Map.Entry<ByteString, NavigableMap<Long, ByteString>> column : family.getValue()
+          .entrySet()) {
+        for (Map.Entry<Long, ByteString> cell : column.getValue().entrySet()) {
+          cells.add(new FlatCell(family.getKey(), column.getKey(), cell.getKey(), cell.getValue(),
+              Collections.<String> emptyList()));
+        }
+      }
+    }
+    return cells;
+  }
+
+  private static Row toRow(ByteString rowKey, List<FlatCell> cells) {
+    Row.Builder row = Row.newBuilder().setKey(rowKey);
+    Family.Builder family = null;
+    Column.Builder column = null;
+    for (FlatCell cell : cells) {
+      if (family == null || !family.getName().equals(cell.family)) {
+        addFamily(row, family, column);
+        family = Family.newBuilder().setName(cell.family);
+        column = null;
+      }
+      if (column == null || !column.getQualifier().equals(cell.qualifier)) {
+        if (column != null) {
+          family.addColumns(column);
+        }
+        column = Column.newBuilder().setQualifier(cell.qualifier);
+      }
+      column.addCells(Cell.newBuilder()
+          .setTimestampMicros(cell.timestamp)
+          .setValue(cell.value)
+          .addAllLabels(cell.labels));
+    }
+    addFamily(row, family, column);
+    return row.build();
+  }
+
+  private static void addFamily(Row.Builder row, Family.Builder family, Column.Builder column) {
+    if (family != null) {
+      if (column != null) {
+        family.addColumns(column);
+      }
+      row.addFamilies(family);
+    }
+  }
+
+  /**
+   * Applies a {@link RowFilter} to the sorted cells of a row.
+   */
+  private static List<FlatCell> filter(ByteString rowKey, List<FlatCell> cells,
+      RowFilter filter) {
+    switch (filter.getFilterCase()) {
+    case PASS_ALL_FILTER:
+      return filter.getPassAllFilter() ? cells : Collections.<FlatCell> emptyList();
+    case BLOCK_ALL_FILTER:
+      return filter.getBlockAllFilter() ? Collections.<FlatCell> emptyList() : cells;
+    case CHAIN:
+      for (RowFilter child : filter.getChain().getFiltersList()) {
+        cells = filter(rowKey, cells, child);
+      }
+      return cells;
+    case INTERLEAVE: {
+      List<FlatCell> result = new ArrayList<>();
+      for (RowFilter child : filter.getInterleave().getFiltersList()) {
+        result.addAll(filter(rowKey, cells, child));
+      }
+      // A stable sort keeps the duplicates of each filter in order.
+      Collections.sort(result, CELL_COMPARATOR);
+      return result;
+    }
+    case ROW_KEY_REGEX_FILTER:
+      return matches(filter.getRowKeyRegexFilter(), rowKey) ? cells
+          : Collections.<FlatCell> emptyList();
+    case CELLS_PER_ROW_LIMIT_FILTER:
+      return cells.subList(0, Math.min(cells.size(), filter.getCellsPerRowLimitFilter()));
+    case CELLS_PER_ROW_OFFSET_FILTER:
+      return cells.subList(Math.min(cells.size(), filter.getCellsPerRowOffsetFilter()),
+        cells.size());
+    case STRIP_VALUE_TRANSFORMER: {
+      if (!filter.getStripValueTransformer()) {
+        return cells;
+      }
+      List<FlatCell> result = new ArrayList<>(cells.size());
+      for (FlatCell cell : cells) {
+        result.add(new FlatCell(cell.family, cell.qualifier, cell.timestamp, ByteString.EMPTY,
+            cell.labels));
+      }
+      return result;
+    }
+    case APPLY_LABEL_TRANSFORMER: {
+      List<FlatCell> result = new ArrayList<>(cells.size());
+      for (FlatCell cell : cells) {
+        List<String> labels = new ArrayList<>(cell.labels);
+        labels.add(filter.getApplyLabelTransformer());
+        result.add(new FlatCell(cell.family, cell.qualifier, cell.timestamp, cell.value, labels));
+      }
+      return result;
+    }
+    default:
+      break;
+    }
+
+    // The remaining filters are applied to each cell independently.
+    List<FlatCell> result = new ArrayList<>();
+    FlatCell previous = null;
+    int cellsInColumn = 0;
+    for (FlatCell cell : cells) {
+      if (previous == null || !previous.family.equals(cell.family)
+          || !previous.qualifier.equals(cell.qualifier)) {
+        cellsInColumn = 0;
+      }
+      previous = cell;
+      cellsInColumn++;
+      if (matches(filter, cell, cellsInColumn)) {
+        result.add(cell);
+      }
+    }
+    return result;
+  }
+
+  private static boolean matches(RowFilter filter, FlatCell cell, int cellsInColumn) {
+    switch (filter.getFilterCase()) {
+    case CELLS_PER_COLUMN_LIMIT_FILTER:
+      return cellsInColumn <= filter.getCellsPerColumnLimitFilter();
+    case FAMILY_NAME_REGEX_FILTER:
+      return Pattern.compile(filter.getFamilyNameRegexFilter(), Pattern.DOTALL)
+          .matcher(cell.family).matches();
+    case COLUMN_QUALIFIER_REGEX_FILTER:
+      return matches(filter.getColumnQualifierRegexFilter(), cell.qualifier);
+    case VALUE_REGEX_FILTER:
+      return matches(filter.getValueRegexFilter(), cell.value);
+    case COLUMN_RANGE_FILTER:
+      return inRange(filter.getColumnRangeFilter(), cell);
+    case TIMESTAMP_RANGE_FILTER:
+      return inRange(filter.getTimestampRangeFilter(), cell.timestamp);
+    default:
+      throw Status.UNIMPLEMENTED
+          .withDescription("The simulator does not support " + filter.getFilterCase())
+          .asRuntimeException();
+    }
+  }
+
+  /** Matches bytes with a regex, as ISO-8859-1 so that every byte is one character. */
+  private static boolean matches(ByteString regex, ByteString value) {
+    return Pattern.compile(regex.toString(StandardCharsets.ISO_8859_1), Pattern.DOTALL)
+        .matcher(value.toString(StandardCharsets.ISO_8859_1)).matches();
+  }
+
+  private static boolean inRange(ColumnRange range, FlatCell cell) {
+    if (!range.getFamilyName().equals(cell.family)) {
+      return false;
+    }
+    int compare;
+    switch (range.getStartQualifierCase()) {
+    case START_QUALIFIER_CLOSED:
+      compare = KEY_COMPARATOR.compare(cell.qualifier, range.getStartQualifierClosed());
+      if (compare < 0) {
+        return false;
+      }
+      break;
+    case START_QUALIFIER_OPEN:
+      compare = KEY_COMPARATOR.compare(cell.qualifier, range.getStartQualifierOpen());
+      if (compare <= 0) {
+        return false;
+      }
+      break;
+    default:
+      break;
+    }
+    switch (range.getEndQualifierCase()) {
+    case END_QUALIFIER_CLOSED:
+      return KEY_COMPARATOR.compare(cell.qualifier, range.getEndQualifierClosed()) <= 0;
+    case END_QUALIFIER_OPEN:
+      return KEY_COMPARATOR.compare(cell.qualifier, range.getEndQualifierOpen()) < 0;
+    default:
+      return true;
+    }
+  }
+}
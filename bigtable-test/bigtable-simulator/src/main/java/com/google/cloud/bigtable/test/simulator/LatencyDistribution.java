@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.test.simulator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A distribution of the latency that {@link SimulatedBigtableService} adds to an RPC.
+ *
+ * @author sduskis
+ */
+public abstract class LatencyDistribution {
+
+  /** The z-score of the 99th percentile of a normal distribution. */
+  private static final double Z_99 = 2.326;
+
+  /** A distribution that adds no latency. */
+  public static final LatencyDistribution NONE = fixed(0, TimeUnit.NANOSECONDS);
+
+  /**
+   * @param latency the latency of every RPC.
+   * @param unit the {@link TimeUnit} of the latency.
+   * @return a {@link LatencyDistribution} that always returns the same latency.
+   */
+  public static LatencyDistribution fixed(long latency, TimeUnit unit) {
+    final long nanos = unit.toNanos(latency);
+    return new LatencyDistribution() {
+      @Override
+      public long nextLatencyNanos(Random random) {
+        return nanos;
+      }
+    };
+  }
+
+  /**
+   * @param min the smallest latency.
+   * @param max the largest latency.
+   * @param unit the {@link TimeUnit} of the latencies.
+   * @return a {@link LatencyDistribution} that is uniform between min and max.
+   */
+  public static LatencyDistribution uniform(long min, long max, TimeUnit unit) {
+    Preconditions.checkArgument(min <= max, "min must not be larger than max");
+    final long minNanos = unit.toNanos(min);
+    final long rangeNanos = unit.toNanos(max) - minNanos;
+    return new LatencyDistribution() {
+      @Override
+      public long nextLatencyNanos(Random random) {
+        return minNanos + (long) (random.nextDouble() * rangeNanos);
+      }
+    };
+  }
+
+  /**
+   * Creates a log-normal distribution, which has the long tail of real RPC latencies.
+   *
+   * @param median the median latency.
+   * @param p99 the 99th percentile latency.
+   * @param unit the {@link TimeUnit} of the latencies.
+   * @return a log-normal {@link LatencyDistribution}.
+   */
+  public static LatencyDistribution logNormal(long median, long p99, TimeUnit unit) {
+    Preconditions.checkArgument(0 < median && median <= p99, "0 < median <= p99 is required");
+    final double mu = Math.log(unit.toNanos(median));
+    final double sigma = Math.log((double) p99 / median) / Z_99;
+    return new LatencyDistribution() {
+      @Override
+      public long nextLatencyNanos(Random random) {
+        return (long) Math.exp(mu + sigma * random.nextGaussian());
+      }
+    };
+  }
+
+  /**
+   * @param random the source of randomness of the simulator.
+   * @return the latency of the next RPC, in nanoseconds.
+   */
+  public abstract long nextLatencyNanos(Random random);
+}
@@ -0,0 +1,498 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.test.simulator;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.bigtable.v2.BigtableGrpc;
+import com.google.bigtable.v2.CheckAndMutateRowRequest;
+import com.google.bigtable.v2.CheckAndMutateRowResponse;
+import com.google.bigtable.v2.Column;
+import com.google.bigtable.v2.Family;
+import com.google.bigtable.v2.MutateRowRequest;
+import com.google.bigtable.v2.MutateRowResponse;
+import com.google.bigtable.v2.MutateRowsRequest;
+import com.google.bigtable.v2.MutateRowsResponse;
+import com.google.bigtable.v2.ReadModifyWriteRowRequest;
+import com.google.bigtable.v2.ReadModifyWriteRowResponse;
+import com.google.bigtable.v2.ReadRowsRequest;
+import com.google.bigtable.v2.ReadRowsResponse;
+import com.google.bigtable.v2.ReadRowsResponse.CellChunk;
+import com.google.bigtable.v2.Row;
+import com.google.bigtable.v2.SampleRowKeysRequest;
+import com.google.bigtable.v2.SampleRowKeysResponse;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.BytesValue;
+import com.google.protobuf.StringValue;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * An in-memory implementation of the Bigtable data API, with configurable latency and faults.
+ * Tables are created the first time they are used, and are kept in {@link InMemoryTable}s.
+ *
+ * <p>The behavior of the server can be changed while it runs:
+ * <ul>
+ *   <li>{@link #setLatency(Rpc, LatencyDistribution)} delays the responses of an RPC. The
+ *       responses are sent from a scheduler, so no gRPC thread is blocked.</li>
+ *   <li>{@link #setMutateRowsFailureRate(double, Status.Code)} fails a fraction of the entries of
+ *       each MutateRows request. Failed entries are not applied.</li>
+ *   <li>{@link #setReadRowsResetRate(double)} fails ReadRows streams with
+ *       {@link Status#UNAVAILABLE} before a fraction of their rows.</li>
+ *   <li>{@link #setMaxMutationsPerSecond(double)} throttles mutations by delaying responses once
+ *       the rate is exceeded, like an overloaded cluster.</li>
+ * </ul>
+ *
+ * <p>ReadRows streams respect the client's flow control: rows are read and sent only while the
+ * call is ready.
+ *
+ * @author sduskis
+ */
+public class SimulatedBigtableService extends BigtableGrpc.BigtableImplBase {
+
+  /** The RPCs of the data API. */
+  public enum Rpc {
+    READ_ROWS,
+    SAMPLE_ROW_KEYS,
+    MUTATE_ROW,
+    MUTATE_ROWS,
+    CHECK_AND_MUTATE_ROW,
+    READ_MODIFY_WRITE_ROW
+  }
+
+  /** The default interval of SampleRowKeys: 64 MB. */
+  public static final long DEFAULT_SAMPLE_INTERVAL_BYTES = 64L * 1024 * 1024;
+
+  /**
+   * Hands out permits at a fixed rate. Unlike a blocking rate limiter, it returns how long a
+   * caller has to wait, so that the wait can be added to a response's latency.
+   */
+  private static class Throttler {
+    private long intervalNanos = 0;
+    private long nextFreeNanos = 0;
+
+    synchronized void setRate(double permitsPerSecond) {
+      intervalNanos = permitsPerSecond <= 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1)
+          / permitsPerSecond);
+    }
+
+    synchronized long reserve(int permits) {
+      if (intervalNanos == 0) {
+        return 0;
+      }
+      long now = System.nanoTime();
+      long start = Math.max(now, nextFreeNanos);
+      nextFreeNanos = start + permits * intervalNanos;
+      return start - now;
+    }
+  }
+
+  private final ConcurrentMap<String, InMemoryTable> tables = new ConcurrentHashMap<>();
+  private final Map<Rpc, LatencyDistribution> latencies = new ConcurrentHashMap<>();
+  private final Map<Rpc, AtomicLong> requestCounts = new ConcurrentHashMap<>();
+  private final Throttler throttler = new Throttler();
+  private final Random random;
+  private final ScheduledExecutorService scheduler;
+
+  private volatile double mutateRowsFailureRate = 0;
+  private volatile Status.Code mutateRowsFailureCode = Status.Code.UNAVAILABLE;
+  private volatile double readRowsResetRate = 0;
+  private volatile long sampleIntervalBytes = DEFAULT_SAMPLE_INTERVAL_BYTES;
+
+  /**
+   * Creates a service with a random seed.
+   */
+  public SimulatedBigtableService() {
+    this(new Random());
+  }
+
+  /**
+   * @param random the source of the randomness of latencies and faults. A seeded {@link Random}
+   *          makes a run reproducible, as long as the requests are made in the same order.
+   */
+  public SimulatedBigtableService(Random random) {
+    this.random = random;
+    this.scheduler = Executors.newScheduledThreadPool(2,
+      new ThreadFactoryBuilder().setNameFormat("bigtable-simulator-%d").setDaemon(true).build());
+    for (Rpc rpc : Rpc.values()) {
+      latencies.put(rpc, LatencyDistribution.NONE);
+      requestCounts.put(rpc, new AtomicLong());
+    }
+  }
+
+  /**
+   * @param rpc the {@link Rpc} to delay.
+   * @param latency the {@link LatencyDistribution} of the RPC's responses.
+   */
+  public void setLatency(Rpc rpc, LatencyDistribution latency) {
+    latencies.put(rpc, Preconditions.checkNotNull(latency));
+  }
+
+  /**
+   * @param rate the fraction of MutateRows entries that fail, between 0 and 1.
+   * @param code the {@link Status.Code} of the failed entries.
+   */
+  public void setMutateRowsFailureRate(double rate, Status.Code code) {
+    Preconditions.checkArgument(rate >= 0 && rate <= 1, "rate must be between 0 and 1");
+    this.mutateRowsFailureCode = Preconditions.checkNotNull(code);
+    this.mutateRowsFailureRate = rate;
+  }
+
+  /**
+   * @param rate the probability, between 0 and 1, that a ReadRows stream is reset before each
+   *          row.
+   */
+  public void setReadRowsResetRate(double rate) {
+    Preconditions.checkArgument(rate >= 0 && rate <= 1, "rate must be between 0 and 1");
+    this.readRowsResetRate = rate;
+  }
+
+  /**
+   * @param mutationsPerSecond the number of mutations per second that are served without delay,
+   *          or 0 for no limit.
+   */
+  public void setMaxMutationsPerSecond(double mutationsPerSecond) {
+    throttler.setRate(mutationsPerSecond);
+  }
+
+  /**
+   * @param intervalBytes the approximate number of bytes between the keys of SampleRowKeys.
+   */
+  public void setSampleIntervalBytes(long intervalBytes) {
+    Preconditions.checkArgument(intervalBytes > 0, "intervalBytes must be positive");
+    this.sampleIntervalBytes = intervalBytes;
+  }
+
+  /**
+   * @param rpc an {@link Rpc}.
+   * @return the number of requests of the RPC that were received.
+   */
+  public long getRequestCount(Rpc rpc) {
+    return requestCounts.get(rpc).get();
+  }
+
+  /**
+   * @param tableName the full name of a table.
+   * @return the number of rows in the table.
+   */
+  public int getRowCount(String tableName) {
+    return getTable(tableName).getRowCount();
+  }
+
+  /**
+   * Removes all tables.
+   */
+  public void clear() {
+    tables.clear();
+  }
+
+  /**
+   * Stops the scheduler of delayed responses.
+   */
+  public void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  private InMemoryTable getTable(String tableName) {
+    InMemoryTable table = tables.get(tableName);
+    if (table == null) {
+      InMemoryTable newTable = new InMemoryTable();
+      table = tables.putIfAbsent(tableName, newTable);
+      if (table == null) {
+        table = newTable;
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Runs the handler of a request after the RPC's latency and any throttling delay. Errors of the
+   * handler fail the call.
+   */
+  private void handle(Rpc rpc, int mutationCount, final StreamObserver<?> responseObserver,
+      final Runnable handler) {
+    requestCounts.get(rpc).incrementAndGet();
+    long delayNanos = latencies.get(rpc).nextLatencyNanos(random);
+    if (mutationCount > 0) {
+      delayNanos += throttler.reserve(mutationCount);
+    }
+    Runnable runnable = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          handler.run();
+        } catch (StatusRuntimeException e) {
+          responseObserver.onError(e);
+        } catch (RuntimeException e) {
+          responseObserver.onError(Status.INTERNAL.withCause(e).withDescription(e.getMessage())
+              .asRuntimeException());
+        }
+      }
+    };
+    if (delayNanos <= 0) {
+      runnable.run();
+    } else {
+      scheduler.schedule(runnable, delayNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * Sends the rows of a ReadRows request as the client asks for them. A row is only read from
+   * the table when the stream is ready, so a client that stops requesting responses, like a
+   * suspended scan, gets no more rows.
+   */
+  private class ReadRowsStream implements Runnable {
+    private final ReadRowsRequest request;
+    private final ServerCallStreamObserver<ReadRowsResponse> responseObserver;
+    private ByteString lastKey = null;
+    private long rowCount = 0;
+    private boolean started = false;
+    private boolean done = false;
+
+    ReadRowsStream(ReadRowsRequest request,
+        ServerCallStreamObserver<ReadRowsResponse> responseObserver) {
+      this.request = request;
+      this.responseObserver = responseObserver;
+    }
+
+    /** Starts the stream once the RPC's latency has passed. */
+    @Override
+    public synchronized void run() {
+      started = true;
+      drain();
+    }
+
+    synchronized void cancel() {
+      done = true;
+    }
+
+    synchronized void drain() {
+      if (!started) {
+        return;
+      }
+      try {
+        while (!done && responseObserver.isReady()) {
+          sendNextRow();
+        }
+      } catch (StatusRuntimeException e) {
+        done = true;
+        responseObserver.onError(e);
+      }
+    }
+
+    private void sendNextRow() {
+      long rowsLimit = request.getRowsLimit();
+      List<Row> rows = rowsLimit > 0 && rowCount >= rowsLimit
+          ? Collections.<Row> emptyList()
+          : getTable(request.getTableName())
+              .readRows(request.getRows(), request.getFilter(), lastKey, 1);
+      if (rows.isEmpty()) {
+        done = true;
+        responseObserver.onCompleted();
+      } else if (readRowsResetRate > 0 && random.nextDouble() < readRowsResetRate) {
+        done = true;
+        responseObserver.onError(Status.UNAVAILABLE
+            .withDescription("Simulated stream reset").asRuntimeException());
+      } else {
+        Row row = rows.get(0);
+        lastKey = row.getKey();
+        rowCount++;
+        responseObserver.onNext(toResponse(row));
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void readRows(final ReadRowsRequest request,
+      final StreamObserver<ReadRowsResponse> responseObserver) {
+    final ReadRowsStream stream = new ReadRowsStream(request,
+        (ServerCallStreamObserver<ReadRowsResponse>) responseObserver);
+    // The handlers must be set before this method returns.
+    stream.responseObserver.setOnReadyHandler(new Runnable() {
+      @Override
+      public void run() {
+        stream.drain();
+      }
+    });
+    stream.responseObserver.setOnCancelHandler(new Runnable() {
+      @Override
+      public void run() {
+        stream.cancel();
+      }
+    });
+    handle(Rpc.READ_ROWS, 0, responseObserver, stream);
+  }
+
+  /**
+   * Converts a {@link Row} to the {@link CellChunk}s of a {@link ReadRowsResponse}. The row key,
+   * family and qualifier are only set on the chunks where they change.
+   */
+  static ReadRowsResponse toResponse(Row row) {
+    ReadRowsResponse.Builder response = ReadRowsResponse.newBuilder();
+    boolean first = true;
+    for (Family family : row.getFamiliesList()) {
+      boolean newFamily = true;
+      for (Column column : family.getColumnsList()) {
+        boolean newColumn = true;
+        for (com.google.bigtable.v2.Cell cell : column.getCellsList()) {
+          CellChunk.Builder chunk = CellChunk.newBuilder()
+              .setTimestampMicros(cell.getTimestampMicros())
+              .addAllLabels(cell.getLabelsList())
+              .setValue(cell.getValue());
+          if (first) {
+            chunk.setRowKey(row.getKey());
+            first = false;
+          }
+          if (newFamily) {
+            chunk.setFamilyName(StringValue.newBuilder().setValue(family.getName()));
+            newFamily = false;
+          }
+          if (newColumn) {
+            chunk.setQualifier(BytesValue.newBuilder().setValue(column.getQualifier()));
+            newColumn = false;
+          }
+          response.addChunks(chunk);
+        }
+      }
+    }
+    int last = response.getChunksCount() - 1;
+    response.setChunks(last, response.getChunks(last).toBuilder().setCommitRow(true));
+    return response.build();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void sampleRowKeys(final SampleRowKeysRequest request,
+      final StreamObserver<SampleRowKeysResponse> responseObserver) {
+    handle(Rpc.SAMPLE_ROW_KEYS, 0, responseObserver, new Runnable() {
+      @Override
+      public void run() {
+        for (Map.Entry<ByteString, Long> sample : getTable(request.getTableName())
+            .sampleRowKeys(sampleIntervalBytes)) {
+          responseObserver.onNext(SampleRowKeysResponse.newBuilder()
+              .setRowKey(sample.getKey())
+              .setOffsetBytes(sample.getValue())
+              .build());
+        }
+        responseObserver.onCompleted();
+      }
+    });
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void mutateRow(final MutateRowRequest request,
+      final StreamObserver<MutateRowResponse> responseObserver) {
+    handle(Rpc.MUTATE_ROW, request.getMutationsCount(), responseObserver, new Runnable() {
+      @Override
+      public void run() {
+        getTable(request.getTableName()).mutateRow(request.getRowKey(),
+          request.getMutationsList());
+        responseObserver.onNext(MutateRowResponse.getDefaultInstance());
+        responseObserver.onCompleted();
+      }
+    });
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void mutateRows(final MutateRowsRequest request,
+      final StreamObserver<MutateRowsResponse> responseObserver) {
+    int mutationCount = 0;
+    for (MutateRowsRequest.Entry entry : request.getEntriesList()) {
+      mutationCount += entry.getMutationsCount();
+    }
+    handle(Rpc.MUTATE_ROWS, mutationCount, responseObserver, new Runnable() {
+      @Override
+      public void run() {
+        InMemoryTable table = getTable(request.getTableName());
+        MutateRowsResponse.Builder response = MutateRowsResponse.newBuilder();
+        for (int i = 0; i < request.getEntriesCount(); i++) {
+          MutateRowsRequest.Entry entry = request.getEntries(i);
+          Status status = Status.OK;
+          if (mutateRowsFailureRate > 0 && random.nextDouble() < mutateRowsFailureRate) {
+            status = Status.fromCode(mutateRowsFailureCode)
+                .withDescription("Simulated entry failure");
+          } else {
+            try {
+              table.mutateRow(entry.getRowKey(), entry.getMutationsList());
+            } catch (StatusRuntimeException e) {
+              status = e.getStatus();
+            }
+          }
+          com.google.rpc.Status.Builder entryStatus =
+              com.google.rpc.Status.newBuilder().setCode(status.getCode().value());
+          if (status.getDescription() != null) {
+            entryStatus.setMessage(status.getDescription());
+          }
+          response.addEntries(MutateRowsResponse.Entry.newBuilder()
+              .setIndex(i)
+              .setStatus(entryStatus));
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+      }
+    });
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void checkAndMutateRow(final CheckAndMutateRowRequest request,
+      final StreamObserver<CheckAndMutateRowResponse> responseObserver) {
+    int mutationCount = request.getTrueMutationsCount() + request.getFalseMutationsCount();
+    handle(Rpc.CHECK_AND_MUTATE_ROW, mutationCount, responseObserver, new Runnable() {
+      @Override
+      public void run() {
+        boolean matched = getTable(request.getTableName()).checkAndMutateRow(
+          request.getRowKey(), request.getPredicateFilter(), request.getTrueMutationsList(),
+          request.getFalseMutationsList());
+        responseObserver.onNext(
+          CheckAndMutateRowResponse.newBuilder().setPredicateMatched(matched).build());
+        responseObserver.onCompleted();
+      }
+    });
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void readModifyWriteRow(final ReadModifyWriteRowRequest request,
+      final StreamObserver<ReadModifyWriteRowResponse> responseObserver) {
+    handle(Rpc.READ_MODIFY_WRITE_ROW, request.getRulesCount(), responseObserver, new Runnable() {
+      @Override
+      public void run() {
+        Row row = getTable(request.getTableName()).readModifyWriteRow(request.getRowKey(),
+          request.getRulesList());
+        responseObserver.onNext(ReadModifyWriteRowResponse.newBuilder().setRow(row).build());
+        responseObserver.onCompleted();
+      }
+    });
+  }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.test.simulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.bigtable.v2.BigtableGrpc;
+import com.google.bigtable.v2.CheckAndMutateRowRequest;
+import com.google.bigtable.v2.MutateRowRequest;
+import com.google.bigtable.v2.MutateRowsRequest;
+import com.google.bigtable.v2.MutateRowsResponse;
+import com.google.bigtable.v2.Mutation;
+import com.google.bigtable.v2.Mutation.SetCell;
+import com.google.bigtable.v2.ReadModifyWriteRowRequest;
+import com.google.bigtable.v2.ReadModifyWriteRule;
+import com.google.bigtable.v2.ReadRowsRequest;
+import com.google.bigtable.v2.ReadRowsResponse;
+import com.google.bigtable.v2.ReadRowsResponse.CellChunk;
+import com.google.bigtable.v2.RowFilter;
+import com.google.bigtable.v2.RowRange;
+import com.google.bigtable.v2.RowSet;
+import com.google.bigtable.v2.SampleRowKeysRequest;
+import com.google.bigtable.v2.SampleRowKeysResponse;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Longs;
+import com.google.protobuf.ByteString;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+
+/**
+ * Tests for {@link BigtableSimulator} and {@link SimulatedBigtableService}.
+ */
+@RunWith(JUnit4.class)
+public class TestBigtableSimulator {
+
+  private static final String TABLE_NAME = "projects/p/instances/i/tables/t";
+
+  private BigtableSimulator simulator;
+  private SimulatedBigtableService service;
+  private ManagedChannel channel;
+  private BigtableGrpc.BigtableBlockingStub stub;
+
+  @Before
+  public void setup() throws Exception {
+    service = new SimulatedBigtableService(new Random(1));
+    simulator = new BigtableSimulator(service).start();
+    channel = simulator.createChannel();
+    stub = BigtableGrpc.newBlockingStub(channel);
+  }
+
+  @After
+  public void teardown() {
+    channel.shutdownNow();
+    simulator.close();
+  }
+
+  private static Mutation setCell(String qualifier, long timestamp, String value) {
+    return Mutation.newBuilder().setSetCell(SetCell.newBuilder()
+        .setFamilyName("cf")
+        .setColumnQualifier(ByteString.copyFromUtf8(qualifier))
+        .setTimestampMicros(timestamp)
+        .setValue(ByteString.copyFromUtf8(value)))
+        .build();
+  }
+
+  private void writeRows(String... keys) {
+    MutateRowsRequest.Builder request = MutateRowsRequest.newBuilder().setTableName(TABLE_NAME);
+    for (String key : keys) {
+      request.addEntries(MutateRowsRequest.Entry.newBuilder()
+          .setRowKey(ByteString.copyFromUtf8(key))
+          .addMutations(setCell("q", 1000, "old"))
+          .addMutations(setCell("q", 2000, "new")));
+    }
+    Iterator<MutateRowsResponse> responses = stub.mutateRows(request.build());
+    while (responses.hasNext()) {
+      for (MutateRowsResponse.Entry entry : responses.next().getEntriesList()) {
+        Assert.assertEquals(Status.Code.OK.value(), entry.getStatus().getCode());
+      }
+    }
+  }
+
+  private List<ReadRowsResponse> readRows(RowSet rowSet, RowFilter filter) {
+    return Lists.newArrayList(stub.readRows(ReadRowsRequest.newBuilder()
+        .setTableName(TABLE_NAME)
+        .setRows(rowSet)
+        .setFilter(filter)
+        .build()));
+  }
+
+  private static List<String> getRowKeys(List<ReadRowsResponse> responses) {
+    List<String> keys = new ArrayList<>();
+    for (ReadRowsResponse response : responses) {
+      for (CellChunk chunk : response.getChunksList()) {
+        if (!chunk.getRowKey().isEmpty()) {
+          keys.add(chunk.getRowKey().toStringUtf8());
+        }
+      }
+    }
+    return keys;
+  }
+
+  @Test
+  public void testMutateAndRead() {
+    writeRows("c", "a", "b", "d");
+    Assert.assertEquals(4, service.getRowCount(TABLE_NAME));
+
+    List<ReadRowsResponse> responses =
+        readRows(RowSet.getDefaultInstance(), RowFilter.getDefaultInstance());
+    Assert.assertEquals(Lists.newArrayList("a", "b", "c", "d"), getRowKeys(responses));
+    List<CellChunk> chunks = responses.get(0).getChunksList();
+    Assert.assertEquals(2, chunks.size());
+    Assert.assertEquals("new", chunks.get(0).getValue().toStringUtf8());
+    Assert.assertEquals("cf", chunks.get(0).getFamilyName().getValue());
+    Assert.assertFalse(chunks.get(1).hasFamilyName());
+    Assert.assertEquals("old", chunks.get(1).getValue().toStringUtf8());
+    Assert.assertTrue(chunks.get(1).getCommitRow());
+
+    RowSet rowSet = RowSet.newBuilder()
+        .addRowKeys(ByteString.copyFromUtf8("d"))
+        .addRowRanges(RowRange.newBuilder()
+            .setStartKeyOpen(ByteString.copyFromUtf8("a"))
+            .setEndKeyClosed(ByteString.copyFromUtf8("b")))
+        .build();
+    responses =
+        readRows(rowSet, RowFilter.newBuilder().setCellsPerColumnLimitFilter(1).build());
+    Assert.assertEquals(Lists.newArrayList("b", "d"), getRowKeys(responses));
+    Assert.assertEquals(1, responses.get(0).getChunksCount());
+    Assert.assertEquals("new", responses.get(0).getChunks(0).getValue().toStringUtf8());
+
+    stub.mutateRow(MutateRowRequest.newBuilder()
+        .setTableName(TABLE_NAME)
+        .setRowKey(ByteString.copyFromUtf8("a"))
+        .addMutations(Mutation.newBuilder()
+            .setDeleteFromRow(Mutation.DeleteFromRow.getDefaultInstance()))
+        .build());
+    Assert.assertEquals(3, service.getRowCount(TABLE_NAME));
+  }
+
+  @Test
+  public void testCheckAndMutateAndReadModifyWrite() {
+    writeRows("a");
+    ByteString key = ByteString.copyFromUtf8("a");
+    boolean matched = stub.checkAndMutateRow(CheckAndMutateRowRequest.newBuilder()
+        .setTableName(TABLE_NAME)
+        .setRowKey(key)
+        .setPredicateFilter(RowFilter.newBuilder()
+            .setValueRegexFilter(ByteString.copyFromUtf8("new")))
+        .addTrueMutations(setCell("matched", 1000, "yes"))
+        .build()).getPredicateMatched();
+    Assert.assertTrue(matched);
+
+    ReadModifyWriteRule increment = ReadModifyWriteRule.newBuilder()
+        .setFamilyName("cf")
+        .setColumnQualifier(ByteString.copyFromUtf8("counter"))
+        .setIncrementAmount(5)
+        .build();
+    ReadModifyWriteRowRequest request = ReadModifyWriteRowRequest.newBuilder()
+        .setTableName(TABLE_NAME)
+        .setRowKey(key)
+        .addRules(increment)
+        .addRules(increment)
+        .build();
+    stub.readModifyWriteRow(request);
+    ByteString value = stub.readModifyWriteRow(request).getRow()
+        .getFamilies(0).getColumns(0).getCells(0).getValue();
+    Assert.assertEquals(20, Longs.fromByteArray(value.toByteArray()));
+
+    List<ReadRowsResponse> responses = readRows(RowSet.getDefaultInstance(),
+      RowFilter.newBuilder().setColumnQualifierRegexFilter(ByteString.copyFromUtf8("matched"))
+          .build());
+    Assert.assertEquals("yes", responses.get(0).getChunks(0).getValue().toStringUtf8());
+  }
+
+  @Test
+  public void testMutateRowsFailures() {
+    service.setMutateRowsFailureRate(1, Status.Code.DEADLINE_EXCEEDED);
+    Iterator<MutateRowsResponse> responses = stub.mutateRows(MutateRowsRequest.newBuilder()
+        .setTableName(TABLE_NAME)
+        .addEntries(MutateRowsRequest.Entry.newBuilder()
+            .setRowKey(ByteString.copyFromUtf8("a"))
+            .addMutations(setCell("q", 1000, "value")))
+        .build());
+    MutateRowsResponse response = responses.next();
+    Assert.assertEquals(Status.Code.DEADLINE_EXCEEDED.value(),
+      response.getEntries(0).getStatus().getCode());
+    Assert.assertEquals(0, service.getRowCount(TABLE_NAME));
+    Assert.assertEquals(1, service.getRequestCount(SimulatedBigtableService.Rpc.MUTATE_ROWS));
+  }
+
+  @Test
+  public void testReadRowsReset() {
+    writeRows("a", "b");
+    service.setReadRowsResetRate(1);
+    try {
+      readRows(RowSet.getDefaultInstance(), RowFilter.getDefaultInstance());
+      Assert.fail("Expected an exception");
+    } catch (StatusRuntimeException e) {
+      Assert.assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+    }
+  }
+
+  @Test
+  public void testReadRowsFlowControl() throws Exception {
+    writeRows("a", "b", "c");
+    final BlockingQueue<ReadRowsResponse> responses = new LinkedBlockingQueue<>();
+    final AtomicReference<ClientCallStreamObserver<ReadRowsRequest>> requestStream =
+        new AtomicReference<>();
+    final CountDownLatch completed = new CountDownLatch(1);
+    BigtableGrpc.newStub(channel).readRows(
+      ReadRowsRequest.newBuilder().setTableName(TABLE_NAME).build(),
+      new ClientResponseObserver<ReadRowsRequest, ReadRowsResponse>() {
+        @Override
+        public void beforeStart(ClientCallStreamObserver<ReadRowsRequest> stream) {
+          stream.disableAutoInboundFlowControl();
+          requestStream.set(stream);
+        }
+
+        @Override
+        public void onNext(ReadRowsResponse value) {
+          responses.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+          completed.countDown();
+        }
+      });
+
+    // The stub requests the first response when the call starts.
+    Assert.assertNotNull(responses.poll(5, TimeUnit.SECONDS));
+    // No more rows are sent until the client asks for them.
+    Assert.assertNull(responses.poll(100, TimeUnit.MILLISECONDS));
+
+    requestStream.get().request(2);
+    Assert.assertNotNull(responses.poll(5, TimeUnit.SECONDS));
+    Assert.assertNotNull(responses.poll(5, TimeUnit.SECONDS));
+    requestStream.get().request(1);
+    Assert.assertTrue(completed.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testUnsupportedFilter() {
+    writeRows("a");
+    try {
+      readRows(RowSet.getDefaultInstance(),
+        RowFilter.newBuilder().setRowSampleFilter(0.5).build());
+      Assert.fail("Expected an exception");
+    } catch (StatusRuntimeException e) {
+      Assert.assertEquals(Status.Code.UNIMPLEMENTED, e.getStatus().getCode());
+    }
+  }
+
+  @Test
+  public void testLatencyAndThrottling() {
+    service.setLatency(SimulatedBigtableService.Rpc.MUTATE_ROWS,
+      LatencyDistribution.fixed(50, TimeUnit.MILLISECONDS));
+    long start = System.nanoTime();
+    writeRows("a");
+    Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+    service.setLatency(SimulatedBigtableService.Rpc.MUTATE_ROWS, LatencyDistribution.NONE);
+    // 2 mutations per request at 20 mutations per second.
+    service.setMaxMutationsPerSecond(20);
+    start = System.nanoTime();
+    for (int i = 0; i < 3; i++) {
+      writeRows("a");
+    }
+    Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+  }
+
+  @Test
+  public void testLogNormal() {
+    LatencyDistribution distribution =
+        LatencyDistribution.logNormal(10, 100, TimeUnit.MILLISECONDS);
+    Random random = new Random(1);
+    long[] samples = new long[10000];
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = distribution.nextLatencyNanos(random);
+    }
+    Arrays.sort(samples);
+    double median = samples[samples.length / 2] / 1e6;
+    double p99 = samples[samples.length * 99 / 100] / 1e6;
+    Assert.assertEquals(10, median, 1);
+    Assert.assertEquals(100, p99, 20);
+  }
+
+  @Test
+  public void testSampleRowKeys() {
+    service.setSampleIntervalBytes(1);
+    writeRows("a", "b", "c");
+    List<SampleRowKeysResponse> samples = Lists.newArrayList(
+      stub.sampleRowKeys(SampleRowKeysRequest.newBuilder().setTableName(TABLE_NAME).build()));
+    Assert.assertEquals(3, samples.size());
+    Assert.assertEquals("b", samples.get(0).getRowKey().toStringUtf8());
+    Assert.assertEquals(ByteString.EMPTY, samples.get(2).getRowKey());
+    Assert.assertTrue(samples.get(1).getOffsetBytes() > samples.get(0).getOffsetBytes());
+  }
+}